@@ -34,6 +34,7 @@ import org.apache.solr.common.SolrDocumentList;
 import com.temenos.interaction.core.entity.Entity;
 import com.temenos.interaction.core.entity.EntityProperties;
 import com.temenos.interaction.core.entity.EntityProperty;
+import com.temenos.interaction.core.entity.EntitySchema;
 import com.temenos.interaction.core.resource.CollectionResource;
 import com.temenos.interaction.core.resource.EntityResource;
 import com.temenos.interaction.odataext.odataparser.data.RowFilter;
@@ -48,12 +49,18 @@ public abstract class AbstractSolrCommand {
 	public CollectionResource<Entity> buildCollectionResource(String entityName, SolrDocumentList docs) {
 		List<EntityResource<Entity>> results = new ArrayList<EntityResource<Entity>>();
 		long numFound = docs.getNumFound();
+		// the fields of the first document are shared by those of the others,
+		// fields of the others that it does not have are held as they are
+		EntitySchema schema = null;
 		for (int i = 0; i < MAX_ENTITIES_RETURNED && i < numFound; i++) {
-			EntityProperties properties = new EntityProperties();
 			SolrDocument doc = docs.get(i);
 			Collection<String> fields = doc.getFieldNames();
+			if (schema == null) {
+				schema = EntitySchema.of(fields);
+			}
+			EntityProperties properties = new EntityProperties(schema);
 			for (String propName : fields) {
-			    properties.setProperty(new EntityProperty(propName, doc.getFirstValue(propName)));
+			    properties.setPropertyValue(propName, doc.getFirstValue(propName));
 			}
 			// Give some control to user if they have something in mind
 			customizeEntityProperties(doc, properties);
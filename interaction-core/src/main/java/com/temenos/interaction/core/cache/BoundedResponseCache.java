@@ -0,0 +1,826 @@
+package com.temenos.interaction.core.cache;
+
+/*
+ * #%L
+ * interaction-core
+ * %%
+ * Copyright (C) 2012 - 2017 Temenos Holdings N.V.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+import javax.ws.rs.core.Response;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <p>Response cache bounded by the number of entries and, optionally, by
+ * their total weight.</p>
+ *
+ * <p>Lookups do not lock. Each entry keeps an approximate count of its hits;
+ * when the cache is full the entries are visited in insertion order and those
+ * hit since the last visit have their count halved and are kept while the
+ * others are evicted, expired entries first. Entries expire after the
+ * <code>maxAge</code> they were put with, or when one of the tags they were
+ * put with is invalidated. A response read before one of its tags is
+ * invalidated is not put by {@link #putIfNotInvalidated}, which is given the
+ * stamp taken when the request started.</p>
+ *
+ * <p>An entry put with a stale-while-revalidate window is still returned by
+ * {@link #get(Object, RevalidationFactory)} during that window after it has expired, and
+ * its revalidation is run once on a small bounded executor. Revalidations that
+ * do not fit in the executor are dropped, to be attempted again by a later
+ * lookup.</p>
+ *
+ * <p>The cache keeps a snapshot of the status, headers and entity of the
+ * response, and every lookup returns a new {@link Response.ResponseBuilder}
+ * for it. The entity itself is shared and must not be changed once the
+ * response has been put in the cache.</p>
+ *
+ * <p>An entry can also keep its body as sent in a few content codings, e.g.
+ * gzip, which go with the entry. Their total length is bounded separately
+ * and a body that does not fit is simply not kept.</p>
+ */
+public class BoundedResponseCache implements RevalidatingCache, EncodedResponseCache {
+	private static final Logger LOGGER = LoggerFactory.getLogger(BoundedResponseCache.class);
+
+	public static final int DEFAULT_MAX_ENTRIES = 10000;
+	public static final int DEFAULT_REVALIDATION_THREADS = 2;
+	public static final long DEFAULT_MAX_ENCODED_LENGTH = 64L * 1024 * 1024;
+	private static final int MAX_FREQUENCY = 15;
+	private static final int MAX_ENCODINGS = 4;
+
+	/**
+	 * Calculates the weight of a cached response, e.g. an estimate of its size.
+	 */
+	public interface Weigher {
+		public int weigh(String key, Response response);
+	}
+
+	private static final Weigher SINGLETON_WEIGHER = new Weigher() {
+		@Override
+		public int weigh(String key, Response response) {
+			return 1;
+		}
+	};
+
+	private final ConcurrentMap<String, Entry> data = new ConcurrentHashMap<String, Entry>();
+	private final ConcurrentLinkedQueue<Node> evictionQueue = new ConcurrentLinkedQueue<Node>();
+	private final ReentrantLock evictionLock = new ReentrantLock();
+	private final AtomicLong weight = new AtomicLong();
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong evictions = new AtomicLong();
+	private final AtomicLong invalidations = new AtomicLong();
+	private final AtomicLong staleHits = new AtomicLong();
+	private final AtomicLong revalidations = new AtomicLong();
+	private final AtomicLong encodedHits = new AtomicLong();
+	private final AtomicLong encodedLength = new AtomicLong();
+	private volatile long maxEncodedLength = DEFAULT_MAX_ENCODED_LENGTH;
+	private final AtomicInteger staleNodes = new AtomicInteger();
+	private final ConcurrentMap<String, Set<Entry>> entriesByTag = new ConcurrentHashMap<String, Set<Entry>>();
+	// the stamp of the last invalidation of each tag ever invalidated
+	private final ConcurrentMap<String, AtomicLong> invalidationsByTag = new ConcurrentHashMap<String, AtomicLong>();
+	private final AtomicLong invalidationStamp = new AtomicLong();
+	private final int maxEntries;
+	private final long maxWeight;
+	private final Weigher weigher;
+	private final ExecutorService revalidationExecutor;
+	private final boolean ownExecutor;
+
+	public BoundedResponseCache() {
+		this(DEFAULT_MAX_ENTRIES);
+	}
+
+	/**
+	 * @param maxEntries the maximum number of cached responses
+	 */
+	public BoundedResponseCache(int maxEntries) {
+		this(maxEntries, Long.MAX_VALUE, SINGLETON_WEIGHER);
+	}
+
+	/**
+	 * @param maxEntries the maximum number of cached responses
+	 * @param maxWeight the maximum total weight of the cached responses
+	 * @param weigher calculates the weight of each response
+	 */
+	public BoundedResponseCache(int maxEntries, long maxWeight, Weigher weigher) {
+		this(maxEntries, maxWeight, weigher, createExecutor(DEFAULT_REVALIDATION_THREADS), true);
+	}
+
+	/**
+	 * @param maxEntries the maximum number of cached responses
+	 * @param maxWeight the maximum total weight of the cached responses
+	 * @param weigher calculates the weight of each response
+	 * @param revalidationExecutor runs the revalidations of stale responses, not shut down by this cache
+	 */
+	public BoundedResponseCache(int maxEntries, long maxWeight, Weigher weigher, ExecutorService revalidationExecutor) {
+		this(maxEntries, maxWeight, weigher, revalidationExecutor, false);
+	}
+
+	private BoundedResponseCache(int maxEntries, long maxWeight, Weigher weigher, ExecutorService revalidationExecutor, boolean ownExecutor) {
+		if (maxEntries < 1) {
+			throw new IllegalArgumentException("Maximum entries must be at least 1");
+		}
+		if (maxWeight < 1) {
+			throw new IllegalArgumentException("Maximum weight must be at least 1");
+		}
+		if (weigher == null) {
+			throw new IllegalArgumentException("Weigher must not be null");
+		}
+		if (revalidationExecutor == null) {
+			throw new IllegalArgumentException("Executor must not be null");
+		}
+		this.maxEntries = maxEntries;
+		this.maxWeight = maxWeight;
+		this.weigher = weigher;
+		this.revalidationExecutor = revalidationExecutor;
+		this.ownExecutor = ownExecutor;
+	}
+
+	private static ExecutorService createExecutor(int threads) {
+		ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+				new ArrayBlockingQueue<Runnable>(threads * 32), new ThreadFactory() {
+					private final AtomicInteger count = new AtomicInteger();
+
+					@Override
+					public Thread newThread(Runnable r) {
+						Thread thread = new Thread(r, "iris-cache-revalidation-" + count.incrementAndGet());
+						thread.setDaemon(true);
+						return thread;
+					}
+				});
+		pool.allowCoreThreadTimeOut(true);
+		return pool;
+	}
+
+	/** Insert a value into the cache.
+	 *  @param maxAge the entry will be invalid after this many seconds
+	 */
+	@Override
+	public void put(Object key, Response.ResponseBuilder value, int maxAge) {
+		put(key, value, maxAge, Collections.<String>emptySet(), System.currentTimeMillis());
+	}
+
+	/** Insert a value into the cache.
+	 *  @param maxAge the entry will be invalid after this many seconds
+	 *  @param tags the entry is removed when any of these tags is invalidated
+	 */
+	@Override
+	public void put(Object key, Response.ResponseBuilder value, int maxAge, Collection<String> tags) {
+		put(key, value, maxAge, tags, System.currentTimeMillis());
+	}
+
+	/** Insert a value into the cache.
+	 *  @param maxAge the entry will be invalid after this many seconds
+	 *  @param staleWhileRevalidate the entry will be served while it is revalidated for this many seconds after
+	 *  @param tags the entry is removed when any of these tags is invalidated
+	 */
+	@Override
+	public void put(Object key, Response.ResponseBuilder value, int maxAge, int staleWhileRevalidate, Collection<String> tags) {
+		put(key, value, maxAge, staleWhileRevalidate, tags, System.currentTimeMillis());
+	}
+
+	/** Insert a value into the cache, unless any of its tags has been invalidated since the stamp was taken.
+	 *  @param maxAge the entry will be invalid after this many seconds
+	 *  @param tags the entry is removed when any of these tags is invalidated
+	 *  @param invalidationStamp from {@link #getInvalidationStamp()}, taken before the value was read
+	 */
+	@Override
+	public void putIfNotInvalidated(Object key, Response.ResponseBuilder value, int maxAge, Collection<String> tags,
+			long invalidationStamp) {
+		put(key, value, maxAge, 0, tags, invalidationStamp, System.currentTimeMillis());
+	}
+
+	/** Insert a value into the cache, unless any of its tags has been invalidated since the stamp was taken.
+	 *  @param maxAge the entry will be invalid after this many seconds
+	 *  @param staleWhileRevalidate the entry will be served while it is revalidated for this many seconds after
+	 *  @param tags the entry is removed when any of these tags is invalidated
+	 *  @param invalidationStamp from {@link #getInvalidationStamp()}, taken before the value was read
+	 */
+	@Override
+	public void putIfNotInvalidated(Object key, Response.ResponseBuilder value, int maxAge, int staleWhileRevalidate,
+			Collection<String> tags, long invalidationStamp) {
+		put(key, value, maxAge, staleWhileRevalidate, tags, invalidationStamp, System.currentTimeMillis());
+	}
+
+	// logic without live time exposed for testing
+	void put(Object key, Response.ResponseBuilder value, int maxAge, long now) {
+		put(key, value, maxAge, 0, Collections.<String>emptySet(), now);
+	}
+
+	void put(Object key, Response.ResponseBuilder value, int maxAge, Collection<String> tags, long now) {
+		put(key, value, maxAge, 0, tags, now);
+	}
+
+	void put(Object key, Response.ResponseBuilder value, int maxAge, int staleWhileRevalidate, Collection<String> tags, long now) {
+		put(key, value, maxAge, staleWhileRevalidate, tags, Long.MAX_VALUE, now);
+	}
+
+	void put(Object key, Response.ResponseBuilder value, int maxAge, int staleWhileRevalidate, Collection<String> tags,
+			long invalidationStamp, long now) {
+		if (key == null) {
+			LOGGER.warn("Attempt to cache null key");
+			return;
+		}
+		if (value == null || maxAge <= 0) {
+			return;
+		}
+		String cacheKey = key.toString();
+		Response response = value.clone().build();
+		int entryWeight = weigher.weigh(cacheKey, response);
+		if (entryWeight > maxWeight) {
+			LOGGER.debug("Response for [{}] too heavy to cache", cacheKey);
+			return;
+		}
+		ResponseSnapshot snapshot = new ResponseSnapshot(response);
+		String[] entryTags = tags != null ? tags.toArray(new String[tags.size()]) : new String[0];
+		if (isInvalidatedSince(entryTags, invalidationStamp)) {
+			LOGGER.debug("Response for [{}] invalidated while being read, not cached", cacheKey);
+			return;
+		}
+		long expires = now + 1000L * maxAge;
+		long staleUntil = expires + 1000L * Math.max(0, staleWhileRevalidate);
+		Entry entry;
+		while (true) {
+			Entry old = data.get(cacheKey);
+			entry = new Entry(snapshot, expires, staleUntil, entryWeight, entryTags, old != null ? old.node : new Node(cacheKey));
+			// index the entry before it can be found so that it can always be invalidated
+			indexTags(entry);
+			if (old == null) {
+				if (data.putIfAbsent(cacheKey, entry) == null) {
+					weight.addAndGet(entryWeight);
+					evictionQueue.add(entry.node);
+					break;
+				}
+			} else {
+				// replaced entries keep their place and hits
+				if (data.replace(cacheKey, old, entry)) {
+					weight.addAndGet(entryWeight - old.weight);
+					unindexTags(old);
+					releaseEncodings(old);
+					break;
+				}
+			}
+			unindexTags(entry);
+		}
+		if (entry.invalidated || isInvalidatedSince(entryTags, invalidationStamp)) {
+			// invalidated while being put, after the check above
+			removeInvalidated(entry);
+		}
+		if (isOverCapacity()) {
+			evict(now);
+		} else if (staleNodes.get() > maxEntries) {
+			purgeStaleNodes();
+		}
+	}
+
+	/**
+	 * Remove the entries put with any of these tags.
+	 */
+	@Override
+	public void invalidate(Collection<String> tags) {
+		if (tags == null) {
+			return;
+		}
+		long stamp = invalidationStamp.incrementAndGet();
+		for (String tag : tags) {
+			// recorded before the entries are removed, so that a response read
+			// earlier is either not put or removed here
+			recordInvalidation(tag, stamp);
+			Set<Entry> tagged = entriesByTag.get(tag);
+			if (tagged == null) {
+				continue;
+			}
+			for (Iterator<Entry> it = tagged.iterator(); it.hasNext();) {
+				Entry entry = it.next();
+				it.remove();
+				entry.invalidated = true;
+				removeInvalidated(entry);
+			}
+		}
+	}
+
+	/**
+	 * The stamp of the last invalidation, to be taken before reading the value
+	 * that is put with one of the <code>putIfNotInvalidated</code> methods.
+	 */
+	@Override
+	public long getInvalidationStamp() {
+		return invalidationStamp.get();
+	}
+
+	/** Retrieve a value from the cache
+	 *  @return the value if present and valid
+	 */
+	@Override
+	public Response.ResponseBuilder get(Object key) {
+		return get(key, System.currentTimeMillis());
+	}
+
+	Response.ResponseBuilder get(Object key, long now) {
+		if (key == null) {
+			return null;
+		}
+		Entry entry = data.get(key.toString());
+		if (entry == null || entry.expires <= now) {
+			// expired entries are left for eviction
+			misses.incrementAndGet();
+			return null;
+		}
+		return hit(entry);
+	}
+
+	/** Retrieve a value from the cache, scheduling its revalidation if it is stale
+	 *  @param revalidation creates what refreshes the entry, run at most once at a time per entry
+	 *  @return the value if present and valid, or stale within its stale-while-revalidate window
+	 */
+	@Override
+	public Response.ResponseBuilder get(Object key, RevalidationFactory revalidation) {
+		return get(key, revalidation, System.currentTimeMillis());
+	}
+
+	Response.ResponseBuilder get(Object key, RevalidationFactory revalidation, long now) {
+		if (key == null) {
+			return null;
+		}
+		Entry entry = data.get(key.toString());
+		if (entry == null || entry.staleUntil <= now) {
+			misses.incrementAndGet();
+			return null;
+		}
+		if (entry.expires <= now) {
+			staleHits.incrementAndGet();
+			revalidate(entry, revalidation);
+		}
+		return hit(entry);
+	}
+
+	private Response.ResponseBuilder hit(Entry entry) {
+		hits.incrementAndGet();
+		Node node = entry.node;
+		if (node.frequency < MAX_FREQUENCY) {
+			// not atomic, an approximate count is good enough
+			node.frequency++;
+		}
+		return entry.snapshot.toResponseBuilder();
+	}
+
+	/** Retrieve the body of a valid value in a content coding
+	 *  @return the value with the encoded body if present and valid, and it has been kept
+	 */
+	@Override
+	public Response.ResponseBuilder getEncoded(Object key, String contentCoding, String accept) {
+		return getEncoded(key, contentCoding, accept, System.currentTimeMillis());
+	}
+
+	Response.ResponseBuilder getEncoded(Object key, String contentCoding, String accept, long now) {
+		if (key == null || contentCoding == null) {
+			return null;
+		}
+		Entry entry = data.get(key.toString());
+		if (entry == null || entry.expires <= now) {
+			// a miss is counted by the plain lookup that follows
+			return null;
+		}
+		EncodedBody encoded = entry.encodings.get(encodingKey(contentCoding, accept));
+		if (encoded == null) {
+			return null;
+		}
+		encodedHits.incrementAndGet();
+		return hit(entry)
+				.entity(encoded.body)
+				.type(encoded.contentType)
+				.header("Content-Encoding", contentCoding)
+				.header("Content-Length", String.valueOf(encoded.body.length))
+				.header("Vary", "Accept-Encoding");
+	}
+
+	/** Keep the body of a value in a content coding, as long as the value
+	 *  still has this entity
+	 */
+	@Override
+	public void putEncoded(Object key, Object entity, String contentCoding, String accept, String contentType, byte[] body) {
+		if (key == null || contentCoding == null || body == null) {
+			return;
+		}
+		Entry entry = data.get(key.toString());
+		if (entry == null || entry.snapshot.entity != entity || entry.encodings.size() >= MAX_ENCODINGS) {
+			return;
+		}
+		if (encodedLength.addAndGet(body.length) > maxEncodedLength) {
+			encodedLength.addAndGet(-body.length);
+			LOGGER.debug("No room for encoded response of [{}]", entry.node.key);
+			return;
+		}
+		if (entry.encodings.putIfAbsent(encodingKey(contentCoding, accept), new EncodedBody(contentType, body)) != null) {
+			encodedLength.addAndGet(-body.length);
+			return;
+		}
+		entry.encodedLength.addAndGet(body.length);
+		if (data.get(entry.node.key) != entry) {
+			// removed meanwhile
+			releaseEncodings(entry);
+		}
+	}
+
+	private static String encodingKey(String contentCoding, String accept) {
+		return accept != null ? contentCoding + " " + accept : contentCoding;
+	}
+
+	private void releaseEncodings(Entry entry) {
+		encodedLength.addAndGet(-entry.encodedLength.getAndSet(0));
+	}
+
+	private void revalidate(final Entry entry, RevalidationFactory revalidationFactory) {
+		if (revalidationFactory == null || !entry.revalidating.compareAndSet(false, true)) {
+			return;
+		}
+		final Runnable revalidation;
+		try {
+			revalidation = revalidationFactory.createRevalidation();
+		} catch (RuntimeException e) {
+			LOGGER.warn("Failed to create revalidation of cached response for [" + entry.node.key + "]", e);
+			entry.revalidating.set(false);
+			return;
+		}
+		try {
+			revalidationExecutor.execute(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						revalidation.run();
+					} catch (RuntimeException e) {
+						LOGGER.warn("Failed to revalidate cached response for [" + entry.node.key + "]", e);
+					} finally {
+						// allows another attempt if no fresh response was put
+						entry.revalidating.set(false);
+					}
+				}
+			});
+			revalidations.incrementAndGet();
+		} catch (RejectedExecutionException ree) {
+			LOGGER.debug("Revalidation executor saturated, serving [{}] stale", entry.node.key);
+			entry.revalidating.set(false);
+		}
+	}
+
+	/**
+	 * Stop the revalidation threads created by this cache, an executor
+	 * supplied to it is left alone.
+	 */
+	public void shutdown() {
+		if (ownExecutor) {
+			revalidationExecutor.shutdownNow();
+		}
+	}
+
+	/**
+	 * Remove all the cached responses.
+	 */
+	public void clear() {
+		evictionLock.lock();
+		try {
+			evictionQueue.clear();
+			data.clear();
+			entriesByTag.clear();
+			weight.set(0);
+			encodedLength.set(0);
+			staleNodes.set(0);
+		} finally {
+			evictionLock.unlock();
+		}
+	}
+
+	/**
+	 * Number of lookups that found a valid response.
+	 */
+	public long getHits() {
+		return hits.get();
+	}
+
+	/**
+	 * Number of lookups that found no valid response.
+	 */
+	public long getMisses() {
+		return misses.get();
+	}
+
+	/**
+	 * Number of responses removed to keep the cache within its bounds.
+	 */
+	public long getEvictions() {
+		return evictions.get();
+	}
+
+	/**
+	 * Number of lookups that found an expired response within its
+	 * stale-while-revalidate window, included in the hits.
+	 */
+	public long getStaleHits() {
+		return staleHits.get();
+	}
+
+	/**
+	 * Number of revalidations of stale responses scheduled.
+	 */
+	public long getRevalidations() {
+		return revalidations.get();
+	}
+
+	/**
+	 * Number of responses removed because one of their tags was invalidated.
+	 */
+	public long getInvalidations() {
+		return invalidations.get();
+	}
+
+	/**
+	 * Number of lookups that found a response with its body in the requested
+	 * content coding, included in the hits.
+	 */
+	public long getEncodedHits() {
+		return encodedHits.get();
+	}
+
+	/**
+	 * Total length of the encoded bodies kept with the responses.
+	 */
+	public long getEncodedLength() {
+		return encodedLength.get();
+	}
+
+	public long getMaxEncodedLength() {
+		return maxEncodedLength;
+	}
+
+	/**
+	 * @param maxEncodedLength the maximum total length of the encoded bodies, 0 to keep none
+	 */
+	public void setMaxEncodedLength(long maxEncodedLength) {
+		if (maxEncodedLength < 0) {
+			throw new IllegalArgumentException("Maximum encoded length must not be negative");
+		}
+		this.maxEncodedLength = maxEncodedLength;
+	}
+
+	/**
+	 * Number of responses in the cache, including the expired ones not
+	 * evicted yet.
+	 */
+	public int size() {
+		return data.size();
+	}
+
+	/**
+	 * Total weight of the responses in the cache.
+	 */
+	public long getWeight() {
+		return weight.get();
+	}
+
+	/** inspect the cache state
+	 * @param now a timestamp
+	 * @return list of all keys which are stored and not expired as of the provided timestamp
+	 */
+	public List<String> validStoredKeys(long now) {
+		List<String> keys = new ArrayList<String>();
+		for (Map.Entry<String, Entry> e : data.entrySet()) {
+			if (e.getValue().expires > now) {
+				keys.add(e.getKey());
+			}
+		}
+		return keys;
+	}
+
+	@Override
+	public String toString() {
+		return "BoundedResponseCache[size=" + data.size() + ", weight=" + weight + ", hits=" + hits
+				+ ", misses=" + misses + ", staleHits=" + staleHits + ", revalidations=" + revalidations
+				+ ", evictions=" + evictions + ", invalidations=" + invalidations
+				+ ", encodedHits=" + encodedHits + ", encodedLength=" + encodedLength + "]";
+	}
+
+	private void removeInvalidated(Entry entry) {
+		if (data.remove(entry.node.key, entry)) {
+			weight.addAndGet(-entry.weight);
+			unindexTags(entry);
+			releaseEncodings(entry);
+			invalidations.incrementAndGet();
+			// its node is left in the eviction queue
+			staleNodes.incrementAndGet();
+		}
+	}
+
+	private void recordInvalidation(String tag, long stamp) {
+		AtomicLong last = invalidationsByTag.get(tag);
+		if (last == null) {
+			AtomicLong created = new AtomicLong();
+			last = invalidationsByTag.putIfAbsent(tag, created);
+			if (last == null) {
+				last = created;
+			}
+		}
+		long current;
+		while ((current = last.get()) < stamp && !last.compareAndSet(current, stamp)) {
+			// invalidated concurrently, keep the later stamp
+		}
+	}
+
+	private boolean isInvalidatedSince(String[] tags, long stamp) {
+		for (String tag : tags) {
+			AtomicLong last = invalidationsByTag.get(tag);
+			if (last != null && last.get() > stamp) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private void indexTags(Entry entry) {
+		for (String tag : entry.tags) {
+			Set<Entry> tagged = entriesByTag.get(tag);
+			if (tagged == null) {
+				// tag sets are never removed, there is one per tag in use
+				Set<Entry> created = Collections.newSetFromMap(new ConcurrentHashMap<Entry, Boolean>());
+				tagged = entriesByTag.putIfAbsent(tag, created);
+				if (tagged == null) {
+					tagged = created;
+				}
+			}
+			tagged.add(entry);
+		}
+	}
+
+	private void unindexTags(Entry entry) {
+		for (String tag : entry.tags) {
+			Set<Entry> tagged = entriesByTag.get(tag);
+			if (tagged != null) {
+				tagged.remove(entry);
+			}
+		}
+	}
+
+	/*
+	 * Drop the nodes of removed entries from the eviction queue, which would
+	 * otherwise grow while the cache is not full.
+	 */
+	private void purgeStaleNodes() {
+		if (!evictionLock.tryLock()) {
+			return;
+		}
+		try {
+			staleNodes.set(0);
+			for (Iterator<Node> it = evictionQueue.iterator(); it.hasNext();) {
+				Node node = it.next();
+				Entry entry = data.get(node.key);
+				if (entry == null || entry.node != node) {
+					it.remove();
+				}
+			}
+		} finally {
+			evictionLock.unlock();
+		}
+	}
+
+	private boolean isOverCapacity() {
+		return data.size() > maxEntries || weight.get() > maxWeight;
+	}
+
+	private void evict(long now) {
+		evictionLock.lock();
+		try {
+			Node node;
+			while (isOverCapacity() && (node = evictionQueue.poll()) != null) {
+				Entry entry = data.get(node.key);
+				if (entry == null || entry.node != node) {
+					continue;
+				}
+				if (entry.staleUntil > now && node.frequency > 0) {
+					// hit since the last visit, give it another chance
+					node.frequency >>= 1;
+					evictionQueue.add(node);
+				} else if (data.remove(node.key, entry)) {
+					weight.addAndGet(-entry.weight);
+					unindexTags(entry);
+					releaseEncodings(entry);
+					evictions.incrementAndGet();
+				} else {
+					// replaced meanwhile, still cached
+					evictionQueue.add(node);
+				}
+			}
+		} finally {
+			evictionLock.unlock();
+		}
+	}
+
+	private static final class Node {
+		final String key;
+		volatile int frequency;
+
+		Node(String key) {
+			this.key = key;
+		}
+	}
+
+	private static final class Entry {
+		final ResponseSnapshot snapshot;
+		final long expires;
+		final long staleUntil;
+		final int weight;
+		final String[] tags;
+		final Node node;
+		final AtomicBoolean revalidating = new AtomicBoolean();
+		// bodies as sent in a content coding, keyed by coding and Accept header
+		final ConcurrentMap<String, EncodedBody> encodings = new ConcurrentHashMap<String, EncodedBody>();
+		final AtomicLong encodedLength = new AtomicLong();
+		volatile boolean invalidated;
+
+		Entry(ResponseSnapshot snapshot, long expires, long staleUntil, int weight, String[] tags, Node node) {
+			this.snapshot = snapshot;
+			this.expires = expires;
+			this.staleUntil = staleUntil;
+			this.weight = weight;
+			this.tags = tags;
+			this.node = node;
+		}
+	}
+
+	private static final class EncodedBody {
+		final String contentType;
+		final byte[] body;
+
+		EncodedBody(String contentType, byte[] body) {
+			this.contentType = contentType;
+			this.body = body;
+		}
+	}
+
+	/*
+	 * The status, headers and entity of a response, copied so that they are
+	 * not affected by any later change of the builder.
+	 */
+	private static final class ResponseSnapshot {
+		final int status;
+		final Map<String, List<Object>> headers;
+		final Object entity;
+
+		ResponseSnapshot(Response response) {
+			this.status = response.getStatus();
+			this.entity = response.getEntity();
+			Map<String, List<Object>> copy = new LinkedHashMap<String, List<Object>>();
+			if (response.getMetadata() != null) {
+				for (Map.Entry<String, List<Object>> header : response.getMetadata().entrySet()) {
+					copy.put(header.getKey(), Collections.unmodifiableList(new ArrayList<Object>(header.getValue())));
+				}
+			}
+			this.headers = Collections.unmodifiableMap(copy);
+		}
+
+		Response.ResponseBuilder toResponseBuilder() {
+			Response.ResponseBuilder builder = Response.status(status);
+			for (Map.Entry<String, List<Object>> header : headers.entrySet()) {
+				for (Object value : header.getValue()) {
+					builder.header(header.getKey(), value);
+				}
+			}
+			return builder.entity(entity);
+		}
+	}
+}
@@ -0,0 +1,53 @@
+package com.temenos.interaction.core.cache;
+
+/*
+ * #%L
+ * interaction-core
+ * %%
+ * Copyright (C) 2012 - 2017 Temenos Holdings N.V.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+import javax.ws.rs.core.Response;
+
+/**
+ * A response cache that can also keep the body of its entries in the
+ * content codings they have been sent with, e.g. gzip, so that a response
+ * is not compressed again on every hit.
+ */
+public interface EncodedResponseCache extends Cache {
+
+	/**
+	 * Retrieve the body of a valid entry in this content coding.
+	 * @param key declared as Object since it can be Uri, etc. toString() is used internally as key
+	 * @param contentCoding e.g. gzip
+	 * @param accept the Accept header the body was written for
+	 * @return the response with its encoded body, or null if there is none
+	 */
+	public Response.ResponseBuilder getEncoded(Object key, String contentCoding, String accept);
+
+	/**
+	 * Keep the encoded body of an entry, provided the entry still holds this
+	 * entity; the body goes when the entry does.
+	 * @param key declared as Object since it can be Uri, etc. toString() is used internally as key
+	 * @param entity the entity of the cached response the body was written from
+	 * @param contentCoding e.g. gzip
+	 * @param accept the Accept header the body was written for
+	 * @param contentType the Content-Type the body was written with
+	 * @param body the encoded body
+	 */
+	public void putEncoded(Object key, Object entity, String contentCoding, String accept, String contentType, byte[] body);
+}
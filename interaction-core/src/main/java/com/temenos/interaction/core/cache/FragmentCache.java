@@ -0,0 +1,310 @@
+package com.temenos.interaction.core.cache;
+
+/*
+ * #%L
+ * interaction-core
+ * %%
+ * Copyright (C) 2012 - 2017 Temenos Holdings N.V.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * <p>Cache of the rendered representations of single entities, e.g. the
+ * items of a collection, so that a media type provider can copy an entity it
+ * has rendered before into the response instead of rendering it again.</p>
+ *
+ * <p>A fragment is keyed by the name of the entity, its id, its entity tag,
+ * the media type it was rendered as and whatever else it was rendered from,
+ * e.g. its links. Only entities with an id and an entity tag can be cached,
+ * and an entity whose properties change must change its entity tag. Nothing
+ * expires: a fragment that is no longer used is evicted once the cache is
+ * full.</p>
+ *
+ * <p>The cache is bounded by the total length of the fragments and of their
+ * keys. Lookups do
+ * not lock; when the cache is full the fragments are visited in insertion
+ * order and those used since the last visit are kept while the others are
+ * evicted.</p>
+ */
+public class FragmentCache {
+
+	public static final long DEFAULT_MAX_LENGTH = 16 * 1024 * 1024;
+
+	private final ConcurrentMap<Key, Entry> data = new ConcurrentHashMap<Key, Entry>();
+	private final ConcurrentLinkedQueue<Entry> evictionQueue = new ConcurrentLinkedQueue<Entry>();
+	private final ReentrantLock evictionLock = new ReentrantLock();
+	private final AtomicLong length = new AtomicLong();
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong evictions = new AtomicLong();
+	private final long maxLength;
+
+	public FragmentCache() {
+		this(DEFAULT_MAX_LENGTH);
+	}
+
+	/**
+	 * @param maxLength the maximum total number of characters of the cached fragments
+	 */
+	public FragmentCache(long maxLength) {
+		if (maxLength < 1) {
+			throw new IllegalArgumentException("Maximum length must be at least 1");
+		}
+		this.maxLength = maxLength;
+	}
+
+	/**
+	 * Create the key of a fragment.
+	 *
+	 * @param entityName the name of the entity
+	 * @param entityId identifies the entity among those of its name, e.g. its
+	 * 			key or the href of its self link; if null the fragment cannot be cached
+	 * @param entityTag the entity tag of the entity, if null the fragment cannot be cached
+	 * @param mediaType the media type the fragment is rendered as
+	 * @param variant anything else the fragment is rendered from, e.g. the
+	 * 			hrefs of its links; the list must not be modified afterwards
+	 * @return the key, or null if there is no id or no entity tag
+	 */
+	public static Key key(String entityName, String entityId, String entityTag, String mediaType, List<String> variant) {
+		if (entityId == null || entityTag == null) {
+			return null;
+		}
+		return new Key(entityName, entityId, entityTag, mediaType,
+				variant != null ? variant : Collections.<String>emptyList());
+	}
+
+	/**
+	 * Return the fragment rendered for this key, or null if there is none.
+	 */
+	public String get(Key key) {
+		if (key == null) {
+			return null;
+		}
+		Entry entry = data.get(key);
+		if (entry == null) {
+			misses.incrementAndGet();
+			return null;
+		}
+		hits.incrementAndGet();
+		entry.used = true;
+		return entry.fragment;
+	}
+
+	/**
+	 * Keep the fragment rendered for this key, unless together they are
+	 * longer than the whole cache.
+	 */
+	public void put(Key key, String fragment) {
+		if (key == null || fragment == null || (long) fragment.length() + key.length > maxLength) {
+			return;
+		}
+		Entry entry = new Entry(key, fragment);
+		// an existing fragment for the key is the same, leave it
+		if (data.putIfAbsent(key, entry) == null) {
+			length.addAndGet(entry.length);
+			evictionQueue.add(entry);
+			if (length.get() > maxLength) {
+				evict();
+			}
+		}
+	}
+
+	/*
+	 * Visit the fragments in insertion order, sparing those used since the
+	 * last visit, until the cache fits its bound again.
+	 */
+	private void evict() {
+		if (!evictionLock.tryLock()) {
+			// another thread is evicting
+			return;
+		}
+		try {
+			Entry entry;
+			while (length.get() > maxLength && (entry = evictionQueue.poll()) != null) {
+				if (data.get(entry.key) != entry) {
+					// removed by clear
+					continue;
+				}
+				if (entry.used) {
+					entry.used = false;
+					evictionQueue.add(entry);
+				} else if (data.remove(entry.key, entry)) {
+					length.addAndGet(-entry.length);
+					evictions.incrementAndGet();
+				}
+			}
+		} finally {
+			evictionLock.unlock();
+		}
+	}
+
+	/**
+	 * Remove all the cached fragments.
+	 */
+	public void clear() {
+		evictionLock.lock();
+		try {
+			evictionQueue.clear();
+			data.clear();
+			length.set(0);
+		} finally {
+			evictionLock.unlock();
+		}
+	}
+
+	/**
+	 * Number of lookups that found a fragment.
+	 */
+	public long getHits() {
+		return hits.get();
+	}
+
+	/**
+	 * Number of lookups that found no fragment.
+	 */
+	public long getMisses() {
+		return misses.get();
+	}
+
+	/**
+	 * Proportion of the lookups that found a fragment, 0 before any lookup.
+	 */
+	public double getHitRate() {
+		long h = hits.get();
+		long total = h + misses.get();
+		return total == 0 ? 0 : (double) h / total;
+	}
+
+	/**
+	 * Number of fragments removed to keep the cache within its bound.
+	 */
+	public long getEvictions() {
+		return evictions.get();
+	}
+
+	/**
+	 * Number of fragments in the cache.
+	 */
+	public int size() {
+		return data.size();
+	}
+
+	/**
+	 * Total number of characters of the fragments in the cache and of their keys.
+	 */
+	public long getLength() {
+		return length.get();
+	}
+
+	public long getMaxLength() {
+		return maxLength;
+	}
+
+	@Override
+	public String toString() {
+		return "FragmentCache[size=" + data.size() + ", length=" + length + ", hits=" + hits
+				+ ", misses=" + misses + ", evictions=" + evictions + "]";
+	}
+
+	/**
+	 * Identifies a rendered fragment, see {@link FragmentCache#key(String, String, String, String, List)}.
+	 */
+	public static final class Key {
+		private final String entityName;
+		private final String entityId;
+		private final String entityTag;
+		private final String mediaType;
+		private final List<String> variant;
+		private final int hashCode;
+		// the number of characters of the key, counted in the length of the cache
+		final long length;
+
+		private Key(String entityName, String entityId, String entityTag, String mediaType, List<String> variant) {
+			this.entityName = entityName;
+			this.entityId = entityId;
+			this.entityTag = entityTag;
+			this.mediaType = mediaType;
+			this.variant = variant;
+			int h = entityTag.hashCode();
+			h = 31 * h + entityId.hashCode();
+			h = 31 * h + (entityName != null ? entityName.hashCode() : 0);
+			h = 31 * h + (mediaType != null ? mediaType.hashCode() : 0);
+			this.hashCode = 31 * h + variant.hashCode();
+			long l = length(entityName) + entityId.length() + entityTag.length() + length(mediaType);
+			for (String part : variant) {
+				l += length(part);
+			}
+			this.length = l;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj) {
+				return true;
+			}
+			if (!(obj instanceof Key)) {
+				return false;
+			}
+			Key other = (Key) obj;
+			return hashCode == other.hashCode
+					&& entityTag.equals(other.entityTag)
+					&& entityId.equals(other.entityId)
+					&& equal(entityName, other.entityName)
+					&& equal(mediaType, other.mediaType)
+					&& variant.equals(other.variant);
+		}
+
+		@Override
+		public int hashCode() {
+			return hashCode;
+		}
+
+		@Override
+		public String toString() {
+			return entityName + "(" + entityId + ")[" + entityTag + "] as " + mediaType + " " + variant;
+		}
+
+		private static int length(String s) {
+			return s != null ? s.length() : 0;
+		}
+
+		private static boolean equal(String s1, String s2) {
+			return s1 != null ? s1.equals(s2) : s2 == null;
+		}
+	}
+
+	private static final class Entry {
+		final Key key;
+		final String fragment;
+		final long length;
+		volatile boolean used;
+
+		Entry(Key key, String fragment) {
+			this.key = key;
+			this.fragment = fragment;
+			this.length = fragment.length() + key.length;
+		}
+	}
+}
@@ -35,8 +35,9 @@ import org.slf4j.LoggerFactory;
  * Doesn't even use a ConcurrentHashMap because get makes two accesses so needs to be locked anyway
  *
  * @author amcguinness
- *
+ * @deprecated unbounded, use {@link BoundedResponseCache}
  */
+@Deprecated
 public class HashMapCache implements Cache {
 	public HashMapCache() {
 		logger.debug( "HashMap Cache initialized" );
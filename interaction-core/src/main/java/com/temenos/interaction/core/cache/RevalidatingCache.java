@@ -0,0 +1,73 @@
+package com.temenos.interaction.core.cache;
+
+/*
+ * #%L
+ * interaction-core
+ * %%
+ * Copyright (C) 2012 - 2017 Temenos Holdings N.V.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+import java.util.Collection;
+
+import javax.ws.rs.core.Response;
+
+/**
+ * A response cache that can keep serving an entry for a while after it has
+ * expired, refreshing it in the background meanwhile (stale-while-revalidate).
+ */
+public interface RevalidatingCache extends TaggedCache {
+
+	/** Insert into cache
+	 * @param key declared as Object since it can be Uri, etc. toString() is used internally as key
+	 * @param data
+	 * @param maxAge in seconds
+	 * @param staleWhileRevalidate seconds after maxAge during which the entry is served while it is refreshed
+	 * @param tags the entry is removed when any of these tags is invalidated
+	 */
+	public void put(Object key, Response.ResponseBuilder data, int maxAge, int staleWhileRevalidate, Collection<String> tags);
+
+	/** Insert into cache, unless any of the tags has been invalidated since
+	 * the stamp was taken, as the data may then be stale
+	 * @param key declared as Object since it can be Uri, etc. toString() is used internally as key
+	 * @param data
+	 * @param maxAge in seconds
+	 * @param staleWhileRevalidate seconds after maxAge during which the entry is served while it is refreshed
+	 * @param tags the entry is removed when any of these tags is invalidated
+	 * @param invalidationStamp from {@link #getInvalidationStamp()}, taken before the data was read
+	 */
+	public void putIfNotInvalidated(Object key, Response.ResponseBuilder data, int maxAge, int staleWhileRevalidate,
+			Collection<String> tags, long invalidationStamp);
+
+	/**
+	 * Retrieve a value from the cache, including an expired one still within
+	 * its stale-while-revalidate window. When such a stale value is returned
+	 * the revalidation is created and scheduled, unless it already has been
+	 * for this entry; it is expected to put a fresh value for the key.
+	 * @param key
+	 * @param revalidation creates what refreshes the entry, may be null
+	 * @return the value if present and valid or stale within its window
+	 */
+	public Response.ResponseBuilder get(Object key, RevalidationFactory revalidation);
+
+	/**
+	 * Creates the revalidation of a stale entry, in the thread that looked it
+	 * up, only once it is to be scheduled; fresh lookups create nothing.
+	 */
+	public interface RevalidationFactory {
+		public Runnable createRevalidation();
+	}
+}
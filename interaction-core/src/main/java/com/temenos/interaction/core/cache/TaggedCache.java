@@ -0,0 +1,64 @@
+package com.temenos.interaction.core.cache;
+
+/*
+ * #%L
+ * interaction-core
+ * %%
+ * Copyright (C) 2012 - 2017 Temenos Holdings N.V.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+import java.util.Collection;
+
+import javax.ws.rs.core.Response;
+
+/**
+ * A response cache whose entries can be tagged, e.g. with the name of the
+ * resource state of the response, and removed by tag when the resources
+ * they represent are modified.
+ */
+public interface TaggedCache extends Cache {
+
+	/** Insert into cache
+	 * @param key declared as Object since it can be Uri, etc. toString() is used internally as key
+	 * @param data
+	 * @param maxAge in seconds
+	 * @param tags the entry is removed when any of these tags is invalidated
+	 */
+	public void put(Object key, Response.ResponseBuilder data, int maxAge, Collection<String> tags);
+
+	/** Insert into cache, unless any of the tags has been invalidated since
+	 * the stamp was taken, as the data may then be stale
+	 * @param key declared as Object since it can be Uri, etc. toString() is used internally as key
+	 * @param data
+	 * @param maxAge in seconds
+	 * @param tags the entry is removed when any of these tags is invalidated
+	 * @param invalidationStamp from {@link #getInvalidationStamp()}, taken before the data was read
+	 */
+	public void putIfNotInvalidated(Object key, Response.ResponseBuilder data, int maxAge, Collection<String> tags,
+			long invalidationStamp);
+
+	/**
+	 * Remove the entries put with any of these tags.
+	 */
+	public void invalidate(Collection<String> tags);
+
+	/**
+	 * The stamp of the last invalidation, to be taken before reading the data
+	 * of a response that is put with {@link #putIfNotInvalidated}.
+	 */
+	public long getInvalidationStamp();
+}
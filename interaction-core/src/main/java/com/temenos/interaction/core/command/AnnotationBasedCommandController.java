@@ -44,16 +44,17 @@ import com.temenos.interaction.core.command.annotation.InteractionCommandImpl;
  * @author hmanchala
  * @author trojanbug
  */
-public class AnnotationBasedCommandController implements CommandController {
+public class AnnotationBasedCommandController implements ListableCommandController {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(AnnotationBasedCommandController.class);
 
-    protected Map<String, InteractionCommand> cache = new HashMap<String, InteractionCommand>();
+    protected volatile Map<String, InteractionCommand> cache = new HashMap<String, InteractionCommand>();
     private ClassLoader classloader = null;
     private Collection<String> packagesToScan = null;
     private Collection<URL> jarsToScan = null;
     private Reflections reflectionsHelper = null;
-    private boolean initialized = false;
+    private volatile boolean initialized = false;
+    private final CommandControllerVersions.Version version = new CommandControllerVersions.Version();
 
     public AnnotationBasedCommandController() {
         this(Thread.currentThread().getContextClassLoader());
@@ -76,11 +77,34 @@ public class AnnotationBasedCommandController implements CommandController {
     @Override
     public InteractionCommand fetchCommand(String name) {
         LOGGER.trace("AnnotationBasedCommandController requested finding command for name: {}", name);
+        return getCache().get(name);
+    }
+
+    @Override
+    public Map<String, InteractionCommand> getCommands() {
+        return new HashMap<String, InteractionCommand>(getCache());
+    }
+
+    @Override
+    public long getVersion() {
+        return version.get();
+    }
+
+    @Override
+    public boolean publishesVersions() {
+        return true;
+    }
+
+    private Map<String, InteractionCommand> getCache() {
         if (!initialized) {
-            LOGGER.debug("AnnotationBasedCommandController store not yet initialized (or reintiialized) - requesting initialisation");
-            reinitialize();
+            synchronized (this) {
+                if (!initialized) {
+                    LOGGER.debug("AnnotationBasedCommandController store not yet initialized (or reintiialized) - requesting initialisation");
+                    reinitialize();
+                }
+            }
         }
-        return cache.get(name);
+        return cache;
     }
 
     protected synchronized void reinitialize() {
@@ -99,18 +123,22 @@ public class AnnotationBasedCommandController implements CommandController {
 
         Set<Class<?>> annotatedClasses = reflectionsHelper.getTypesAnnotatedWith(InteractionCommandImpl.class);
 
+        Map<String, InteractionCommand> commands = new HashMap<String, InteractionCommand>();
         for (Class<?> annotatedClass : annotatedClasses) {
             String nameFound = annotatedClass.getAnnotation(InteractionCommandImpl.class).name();
             Object newCommandAsObject = BeanUtils.instantiate(annotatedClass);
             if (newCommandAsObject instanceof InteractionCommand) {
                 InteractionCommand newCommand = (InteractionCommand) newCommandAsObject;
                 LOGGER.debug("AnnotationBasedCommandController adding {} class to cache uinder the name {}.", newCommand.getClass().getCanonicalName(), nameFound);
-                cache.put(nameFound, newCommand);
+                commands.put(nameFound, newCommand);
             } else {
                 LOGGER.warn("A class annotated with @InteractionCommandImpl is not an InteractionCommand - ignoring!");
             }
         }
+        // published whole so that readers never see a scan in progress
+        cache = commands;
         initialized = true;
+        version.changed();
     }
 
     @Override
@@ -122,17 +150,18 @@ public class AnnotationBasedCommandController implements CommandController {
         return classloader;
     }
 
-    public final void setClassloader(ClassLoader classloader) {
+    public final synchronized void setClassloader(ClassLoader classloader) {
         LOGGER.trace("AnnotationBasedCommandController {} setting classloader: {}", this, classloader);
         this.classloader = classloader;
         initialized = false;
+        version.changed();
     }
 
     public Collection<String> getPackagesToScan() {
         return packagesToScan;
     }
 
-    public void setPackagesToScan(Collection<String> packagesToScan) {
+    public synchronized void setPackagesToScan(Collection<String> packagesToScan) {
         if (LOGGER.isTraceEnabled()) {
             LOGGER.trace("AnnotationBasedCommandController {} setting packages to scan: {}",
                     this,
@@ -140,13 +169,14 @@ public class AnnotationBasedCommandController implements CommandController {
         }
         this.packagesToScan = packagesToScan;
         initialized = false;
+        version.changed();
     }
 
     public Collection<URL> getJarsToScan() {
         return jarsToScan;
     }
 
-    public void setJarsToScan(Collection<URL> jarsToScan) {
+    public synchronized void setJarsToScan(Collection<URL> jarsToScan) {
         if (LOGGER.isTraceEnabled()) {
             LOGGER.trace("AnnotationBasedCommandController {} setting JARs' URLs to scan: {}",
                     this,
@@ -154,5 +184,6 @@ public class AnnotationBasedCommandController implements CommandController {
         }
         this.jarsToScan = jarsToScan;
         initialized = false;
+        version.changed();
     }
 }
@@ -0,0 +1,80 @@
+package com.temenos.interaction.core.command;
+
+/*
+ * #%L
+ * interaction-core
+ * %%
+ * Copyright (C) 2012 - 2017 Temenos Holdings N.V.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import javax.ws.rs.core.MultivaluedMap;
+
+import com.temenos.interaction.core.MultivaluedMapImpl;
+
+/**
+ * Resolves the entity tag of a resource only once the request has been
+ * authorized, so that a 304 Not Modified response does not reveal that the
+ * resource exists, or its entity tag, to a client not allowed to read it.
+ *
+ * The authorization command, e.g. the one the state's commands start with,
+ * is executed on a copy of the request's context. If it does not succeed
+ * no entity tag is resolved and the request is processed as usual, so the
+ * client gets the same response as without an <code>If-None-Match</code>
+ * header.
+ */
+public class AuthorizingEntityTagResolver implements EntityTagResolver {
+
+	private final InteractionCommand authorization;
+	private final EntityTagResolver resolver;
+
+	/**
+	 * @param authorization executed before the entity tag is resolved
+	 * @param resolver resolves the entity tag of an authorized request
+	 */
+	public AuthorizingEntityTagResolver(InteractionCommand authorization, EntityTagResolver resolver) {
+		if (authorization == null || resolver == null) {
+			throw new IllegalArgumentException("Authorization command and entity tag resolver must not be null");
+		}
+		this.authorization = authorization;
+		this.resolver = resolver;
+	}
+
+	@Override
+	public String getEntityTag(InteractionContext ctx) throws InteractionException {
+		// the authorization may add to the parameters, which are used again if the tag does not match
+		InteractionContext authorizedCtx = new InteractionContext(ctx, null,
+				copy(ctx.getPathParameters()), copy(ctx.getQueryParameters()), null);
+		if (authorization.execute(authorizedCtx) != InteractionCommand.Result.SUCCESS) {
+			return null;
+		}
+		return resolver.getEntityTag(authorizedCtx);
+	}
+
+	private static MultivaluedMap<String, String> copy(MultivaluedMap<String, String> parameters) {
+		MultivaluedMap<String, String> copy = new MultivaluedMapImpl<String>();
+		if (parameters != null) {
+			for (Map.Entry<String, List<String>> entry : parameters.entrySet()) {
+				copy.put(entry.getKey(), new ArrayList<String>(entry.getValue()));
+			}
+		}
+		return copy;
+	}
+}
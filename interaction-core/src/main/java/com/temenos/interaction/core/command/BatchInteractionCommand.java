@@ -0,0 +1,50 @@
+package com.temenos.interaction.core.command;
+
+/*
+ * #%L
+ * interaction-core
+ * %%
+ * Copyright (C) 2012 - 2017 Temenos Holdings N.V.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+import java.util.List;
+
+/**
+ * A GET command that can also be executed for many resources in a single
+ * call, e.g. to find out which of a number of ids exist.
+ *
+ * When the links of a collection are guarded by <code>OK(state)</code> or
+ * <code>NOT_FOUND(state)</code> conditions, the command of the target state
+ * is executed once for all the entities of the collection if it implements
+ * this interface, and once per entity otherwise.
+ * @see com.temenos.interaction.core.hypermedia.expression.ResourceGETExpression
+ */
+public interface BatchInteractionCommand extends InteractionCommand {
+
+	/**
+	 * Execute this command for each of the supplied contexts.
+	 * @precondition a non empty list of valid, non null {@link InteractionContext}s
+	 * @postcondition a list of non null results in the order of the contexts;
+	 * 			{@link InteractionCommand.Result#SUCCESS} if the resource exists and
+	 * 			{@link InteractionCommand.Result#FAILURE} if it does not
+	 * @param contexts
+	 * @throws interaction command exception
+	 * @return results
+	 */
+	public List<Result> executeAll(List<InteractionContext> contexts) throws InteractionException;
+
+}
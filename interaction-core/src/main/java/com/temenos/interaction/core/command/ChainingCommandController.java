@@ -21,7 +21,11 @@ package com.temenos.interaction.core.command;
  * #L%
  */
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -31,51 +35,198 @@ import org.slf4j.LoggerFactory;
  * CommandController to return non-null from fetchCommand "wins". If not found
  * on any, return null
  *
+ * The commands of the {@link ListableCommandController}s at the head of the
+ * chain, up to the first one with a negative version, are merged into a
+ * single index, built when the chain is set and rebuilt whenever one of them
+ * changes, so that most commands are resolved with a single lookup. Only the names missing from the index are resolved
+ * by asking the remaining controllers in turn. The controllers are only asked
+ * for their versions once any versioned controller has changed. The commands
+ * of the chain are only shared, e.g. by assembled workflows, if all of its
+ * controllers are versioned.
+ *
  * @author trojanbug
  */
-public class ChainingCommandController implements CommandController {
+public class ChainingCommandController implements VersionedCommandController {
 
     private static final Logger logger = LoggerFactory.getLogger(ChainingCommandController.class);
 
-    private List<? extends CommandController> commandControllers = new ArrayList<CommandController>();
+    private volatile List<? extends CommandController> commandControllers = new ArrayList<CommandController>();
+    private volatile long version = CommandControllerVersions.next();
+    private volatile CommandIndex index = new CommandIndex(Collections.<String, InteractionCommand>emptyMap(), 0, version,
+            true, CommandControllerVersions.getPublished());
 
     @Override
     public InteractionCommand fetchCommand(String name) {
-        logger.trace("Chaining CommandController requested InteractionCommand for name {}", name);
-
-        for (CommandController commandController : commandControllers) {
-            logger.trace("ChainingCommandController delegating to {} to retrieve command for name {}", commandController, name);
-            InteractionCommand command = commandController.fetchCommand(name);
+        CommandIndex current = currentIndex();
+        InteractionCommand command = current.commands.get(name);
+        if (command != null || current.indexed == current.controllers.size()) {
+            return command;
+        }
+        for (int i = current.indexed; i < current.controllers.size(); i++) {
+            command = current.controllers.get(i).fetchCommand(name);
             if (command != null) {
-                logger.trace("ChainingCommandController returning command for name {} found by delegating to {}", name, commandController);
                 return command;
             }
         }
-
         logger.trace("ChainingCommandController could not find command for name {} by delegation to any configured CommandControllers", name);
         return null;
     }
 
     @Override
     public boolean isValidCommand(String name) {
-        logger.trace("ChainingCommandController requested to check existence of command for name {}", name);
-        for (CommandController commandController : commandControllers) {
-            if (commandController.isValidCommand(name)) {
-                logger.trace("ChainingCommandController found command for name {} found by delegating to {}", name, commandController);
+        CommandIndex current = currentIndex();
+        if (current.commands.containsKey(name)) {
+            return true;
+        }
+        for (int i = current.indexed; i < current.controllers.size(); i++) {
+            if (current.controllers.get(i).isValidCommand(name)) {
                 return true;
             }
         }
         logger.trace("ChainingCommandController could not find command for name {} by delegation to any configured CommandControllers", name);
- 
         return false;
     }
 
     public List<? extends CommandController> getCommandControllers() {
-        return commandControllers;
+        return Collections.unmodifiableList(commandControllers);
     }
 
     public void setCommandControllers(List<? extends CommandController> commandControllers) {
-        this.commandControllers = new ArrayList<CommandController>(commandControllers);
+        synchronized (this) {
+            this.commandControllers = new ArrayList<CommandController>(commandControllers);
+            version = CommandControllerVersions.next();
+            rebuildIndex();
+        }
+        CommandControllerVersions.published();
+    }
+
+    /**
+     * The greatest of the versions of this chain and of the versioned
+     * controllers in it, the others are assumed not to change. It is negative
+     * if any controller in it is not versioned or its version is negative, as
+     * the commands of such a controller, e.g. Spring prototype beans, must not
+     * be shared.
+     */
+    @Override
+    public long getVersion() {
+        CommandIndex current = index;
+        if (current.publishing && current.checked == CommandControllerVersions.getPublished()) {
+            return current.version;
+        }
+        return aggregateVersion();
+    }
+
+    /**
+     * A chain publishes its versions if all the versioned controllers in it do.
+     */
+    @Override
+    public boolean publishesVersions() {
+        return index.publishing;
+    }
+
+    private long aggregateVersion() {
+        long result = version;
+        boolean shared = true;
+        for (CommandController commandController : commandControllers) {
+            if (commandController instanceof VersionedCommandController) {
+                long controllerVersion = ((VersionedCommandController) commandController).getVersion();
+                shared &= controllerVersion >= 0;
+                result = Math.max(result, Math.abs(controllerVersion));
+            } else {
+                shared = false;
+            }
+        }
+        return shared ? result : -result;
+    }
+
+    /*
+     * Return the index, rebuilding it first if this chain or any controller
+     * in it has changed since it was built.
+     */
+    private CommandIndex currentIndex() {
+        CommandIndex current = index;
+        long published = CommandControllerVersions.getPublished();
+        if (current.publishing && current.checked == published) {
+            // no controller has changed since the index was last checked
+            return current;
+        }
+        if (current.version == aggregateVersion()) {
+            current.checked = published;
+            return current;
+        }
+        synchronized (this) {
+            if (index.version != aggregateVersion()) {
+                rebuildIndex();
+            }
+            return index;
+        }
+    }
+
+    /*
+     * Merge the commands of the listable controllers up to the first one that
+     * is not merged, which is where the resolution by delegation has to resume.
+     */
+    private void rebuildIndex() {
+        List<? extends CommandController> controllers = commandControllers;
+        long published;
+        long indexVersion;
+        Map<String, InteractionCommand> commands;
+        int indexed;
+        // again if listing the commands changed them, e.g. by scanning for them on first use
+        do {
+            published = CommandControllerVersions.getPublished();
+            indexVersion = aggregateVersion();
+            commands = new HashMap<String, InteractionCommand>();
+            indexed = 0;
+            while (indexed < controllers.size() && isMerged(controllers.get(indexed))) {
+                for (Map.Entry<String, InteractionCommand> entry : ((ListableCommandController) controllers.get(indexed)).getCommands().entrySet()) {
+                    if (!commands.containsKey(entry.getKey())) {
+                        commands.put(entry.getKey(), entry.getValue());
+                    }
+                }
+                indexed++;
+            }
+        } while (indexVersion != aggregateVersion());
+        boolean publishing = true;
+        for (CommandController controller : controllers) {
+            publishing &= !(controller instanceof VersionedCommandController)
+                    || ((VersionedCommandController) controller).publishesVersions();
+        }
+        logger.debug("ChainingCommandController indexed {} commands of {} of its {} CommandControllers", commands.size(), indexed, controllers.size());
+        index = new CommandIndex(commands, indexed, indexVersion, publishing, published);
+    }
+
+    /*
+     * Whether the commands the controller returns are all listed, and can be
+     * taken from the index instead.
+     */
+    private static boolean isMerged(CommandController controller) {
+        return controller instanceof ListableCommandController
+                && ((ListableCommandController) controller).getVersion() >= 0;
+    }
+
+    /*
+     * The merged commands of the first controllers of the chain, the chain
+     * they were taken from, and the count of published versions when the
+     * index was last found to be current, if all the controllers publish
+     * their versions.
+     */
+    private final class CommandIndex {
+        final Map<String, InteractionCommand> commands;
+        final List<? extends CommandController> controllers;
+        final int indexed;
+        final long version;
+        final boolean publishing;
+        volatile long checked;
+
+        CommandIndex(Map<String, InteractionCommand> commands, int indexed, long version, boolean publishing, long checked) {
+            this.commands = commands;
+            this.controllers = commandControllers;
+            this.indexed = indexed;
+            this.version = version;
+            this.publishing = publishing;
+            this.checked = checked;
+        }
     }
 
 }
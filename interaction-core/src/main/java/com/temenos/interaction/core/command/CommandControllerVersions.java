@@ -0,0 +1,77 @@
+package com.temenos.interaction.core.command;
+
+/*
+ * #%L
+ * interaction-core
+ * %%
+ * Copyright (C) 2012 - 2017 Temenos Holdings N.V.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Source of the versions of the {@link VersionedCommandController}s, unique
+ * across all of them so that a controller composed of others can use the
+ * greatest of its own and theirs.
+ *
+ * A controller whose commands change calls {@link #published()} once it
+ * returns its new version, so that a controller composed of others only has
+ * to ask them for their versions when the count of published versions has
+ * changed since it last did. Such a controller tells so through
+ * {@link VersionedCommandController#publishesVersions()}.
+ */
+public final class CommandControllerVersions {
+	private static final AtomicLong LAST = new AtomicLong();
+	private static final AtomicLong PUBLISHED = new AtomicLong();
+
+	private CommandControllerVersions() {}
+
+	public static long next() {
+		return LAST.incrementAndGet();
+	}
+
+	public static void published() {
+		PUBLISHED.incrementAndGet();
+	}
+
+	/*
+	 * Read before the versions of the controllers, a controller that has
+	 * published a new version since then changes the count.
+	 */
+	static long getPublished() {
+		return PUBLISHED.get();
+	}
+
+	/**
+	 * The version of a controller that publishes its new versions.
+	 */
+	public static final class Version {
+		private volatile long value = next();
+
+		public long get() {
+			return value;
+		}
+
+		/**
+		 * Take a new version once the commands have changed.
+		 */
+		public void changed() {
+			value = next();
+			published();
+		}
+	}
+}
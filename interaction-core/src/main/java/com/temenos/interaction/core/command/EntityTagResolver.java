@@ -0,0 +1,52 @@
+package com.temenos.interaction.core.command;
+
+/*
+ * #%L
+ * interaction-core
+ * %%
+ * Copyright (C) 2012 - 2017 Temenos Holdings N.V.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+/**
+ * Determines the current entity tag of a resource without executing the
+ * commands of its state, e.g. from a version number or last modified column.
+ *
+ * When a {@link com.temenos.interaction.core.hypermedia.ResourceState} has an
+ * EntityTagResolver, a GET with an <code>If-None-Match</code> header matching
+ * the resolved entity tag is answered with 304 Not Modified before the
+ * commands are executed and the links and embedded resources are built. The
+ * entity tag must therefore be the same as the one the commands would set on
+ * the resource.
+ *
+ * None of the state's commands are executed for such a request, including
+ * any authorization commands, so the 304 response tells a client that the
+ * resource exists and what its entity tag is even if the client would not
+ * be allowed to read it. Only set a resolver on states whose resources every
+ * client may read, or have it authorize the request first, e.g. with an
+ * {@link AuthorizingEntityTagResolver}.
+ */
+public interface EntityTagResolver {
+
+	/**
+	 * @param ctx the context of the request, with its path and query parameters
+	 * @return the current entity tag of the resource, or null if it cannot be
+	 * 			determined, in which case the request is processed as usual
+	 * @throws InteractionException
+	 */
+	public String getEntityTag(InteractionContext ctx) throws InteractionException;
+
+}
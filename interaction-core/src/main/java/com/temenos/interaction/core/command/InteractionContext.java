@@ -28,6 +28,7 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MultivaluedMap;
@@ -42,6 +43,7 @@ import com.temenos.interaction.core.entity.EntityMetadata;
 import com.temenos.interaction.core.entity.Metadata;
 import com.temenos.interaction.core.hypermedia.Link;
 import com.temenos.interaction.core.hypermedia.ResourceState;
+import com.temenos.interaction.core.hypermedia.expression.ExpressionEvaluationCache;
 import com.temenos.interaction.core.resource.RESTResource;
 import com.temenos.interaction.core.rim.AcceptLanguageHeaderParser;
 import com.temenos.interaction.core.rim.HTTPHypermediaRIM;
@@ -73,10 +75,13 @@ public class InteractionContext {
 
 	/* Command context */
 	private RESTResource resource;
-	private Map<String, Object> attributes = new HashMap<String, Object>();
+	/* shared by every context of the same request, possibly across threads */
+	private final Map<String, Object> attributes;
 	private String preconditionIfMatch = null;
 	private List<String> preferredLanguages = new ArrayList<String>();
 	private final Map<String, String> responseHeaders = new HashMap<String, String>();
+	/* shared by every context of the same request */
+	private final ExpressionEvaluationCache expressionEvaluationCache;
 
 
 	/**
@@ -97,6 +102,8 @@ public class InteractionContext {
 		this.inQueryParameters = queryParameters;		
 		this.currentState = currentState;
 		this.metadata = metadata;
+		this.attributes = new ConcurrentHashMap<String, Object>();
+		this.expressionEvaluationCache = new ExpressionEvaluationCache();
 		assert pathParameters != null;
 		assert queryParameters != null;
 		assert metadata != null;
@@ -112,6 +119,10 @@ public class InteractionContext {
 	 * @param currentState new current state or null to not override
 	 */
 	public InteractionContext(InteractionContext ctx, final HttpHeaders headers, final MultivaluedMap<String, String> pathParameters, final MultivaluedMap<String, String> queryParameters, final ResourceState currentState) {
+		this(ctx, headers, pathParameters, queryParameters, currentState, ctx.attributes);
+	}
+
+	private InteractionContext(InteractionContext ctx, final HttpHeaders headers, final MultivaluedMap<String, String> pathParameters, final MultivaluedMap<String, String> queryParameters, final ResourceState currentState, final Map<String, Object> attributes) {
 		this.uriInfo = null;
 		this.headers = headers != null ? headers : ctx.getHeaders();
 		this.pathParameters = pathParameters != null ? pathParameters : ctx.pathParameters;
@@ -124,7 +135,19 @@ public class InteractionContext {
 		this.targetState = ctx.targetState;
 		this.linkUsed = ctx.linkUsed;
 		this.exception = ctx.exception;
-		this.attributes = ctx.attributes;
+		this.attributes = attributes;
+		this.expressionEvaluationCache = ctx.expressionEvaluationCache;
+	}
+
+	/**
+	 * Shallow copy of this context, like the copy constructor, but with
+	 * attributes of its own, initially those of this context. The attributes
+	 * set by work that may still be running once the request has completed
+	 * are kept apart from the request's this way.
+	 * @return the copy
+	 */
+	public InteractionContext copyWithOwnAttributes() {
+		return new InteractionContext(this, null, null, null, null, new ConcurrentHashMap<String, Object>(attributes));
 	}
 
 	/**
@@ -270,10 +293,14 @@ public class InteractionContext {
     /**
      * Store an attribute in this interaction context.
      * @param name
-     * @param value
+     * @param value the value, or null to remove the attribute
      */
     public void setAttribute(String name, Object value) {
-    	attributes.put(name, value);
+    	if (value != null) {
+    		attributes.put(name, value);
+    	} else {
+    		attributes.remove(name);
+    	}
     }
     
     /**
@@ -295,6 +322,14 @@ public class InteractionContext {
 		return attributesCopy;
 	}
 
+	/**
+	 * The cache of conditional link evaluations for this request.
+	 * @return expression evaluation cache
+	 */
+	public ExpressionEvaluationCache getExpressionEvaluationCache() {
+		return expressionEvaluationCache;
+	}
+
 	/**
      * Returns the metadata from this interaction context
      * @return metadata
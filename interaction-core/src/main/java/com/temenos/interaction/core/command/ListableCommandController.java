@@ -0,0 +1,40 @@
+package com.temenos.interaction.core.command;
+
+/*
+ * #%L
+ * interaction-core
+ * %%
+ * Copyright (C) 2012 - 2017 Temenos Holdings N.V.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+import java.util.Map;
+
+/**
+ * A {@link VersionedCommandController} that can list all of its commands, so
+ * that a {@link ChainingCommandController} can merge them into a single index
+ * instead of asking each of its controllers in turn.
+ */
+public interface ListableCommandController extends VersionedCommandController {
+
+	/**
+	 * Return the commands of this controller keyed by name, a snapshot that is
+	 * not affected by later changes to the controller. While its version is
+	 * negative it may also return commands it does not list, e.g. a new
+	 * instance for each fetch, and it is not merged.
+	 */
+	public Map<String, InteractionCommand> getCommands();
+}
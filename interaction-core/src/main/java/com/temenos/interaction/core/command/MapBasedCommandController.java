@@ -21,6 +21,8 @@ package com.temenos.interaction.core.command;
  * #L%
  */
 
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import org.slf4j.Logger;
@@ -30,14 +32,17 @@ import org.slf4j.LoggerFactory;
  * The default implementation of CommandController interface, bootstrapped by proving a map of InteractionCommands 
  * (keyed with names of the commands to be assigned). Replaces NewCommandController.
  * The class instances are thread safe, and individual commands can be added to the map returned by getCommandMap().
+ * Changes through the map's own methods change the version of this controller.
  * 
  * @author trojanbug
  */
-public class MapBasedCommandController implements CommandController {
+public class MapBasedCommandController implements ListableCommandController {
 
     private static final Logger logger = LoggerFactory.getLogger(MapBasedCommandController.class);
 
-    private Map<String, InteractionCommand> commandMap = new ConcurrentHashMap<String, InteractionCommand>();
+    // before the command map, whose changes take new versions
+    private final CommandControllerVersions.Version version = new CommandControllerVersions.Version();
+    private volatile Map<String, InteractionCommand> commandMap = new CommandMap(Collections.<String, InteractionCommand>emptyMap());
 
     public MapBasedCommandController() {
         logger.trace("Empty MapBasedCommandController created: " + this);
@@ -71,7 +76,107 @@ public class MapBasedCommandController implements CommandController {
      */
     public final void setCommandMap(Map<String, InteractionCommand> commandMap) {
         logger.trace("New command map set on MapBasedCommandController {}",this);
-        this.commandMap = new ConcurrentHashMap(commandMap);
+        this.commandMap = new CommandMap(commandMap);
+        version.changed();
+    }
+
+    @Override
+    public Map<String, InteractionCommand> getCommands() {
+        return new HashMap<String, InteractionCommand>(commandMap);
+    }
+
+    @Override
+    public long getVersion() {
+        return version.get();
+    }
+
+    @Override
+    public boolean publishesVersions() {
+        return true;
+    }
+
+    /*
+     * Changes the version of the controller whenever a command is put or
+     * removed.
+     */
+    private class CommandMap extends ConcurrentHashMap<String, InteractionCommand> {
+        private static final long serialVersionUID = 1L;
+
+        CommandMap(Map<String, InteractionCommand> commands) {
+            super(commands);
+        }
+
+        @Override
+        public InteractionCommand put(String key, InteractionCommand value) {
+            try {
+                return super.put(key, value);
+            } finally {
+                version.changed();
+            }
+        }
+
+        @Override
+        public InteractionCommand putIfAbsent(String key, InteractionCommand value) {
+            try {
+                return super.putIfAbsent(key, value);
+            } finally {
+                version.changed();
+            }
+        }
+
+        @Override
+        public void putAll(Map<? extends String, ? extends InteractionCommand> m) {
+            try {
+                super.putAll(m);
+            } finally {
+                version.changed();
+            }
+        }
+
+        @Override
+        public InteractionCommand remove(Object key) {
+            try {
+                return super.remove(key);
+            } finally {
+                version.changed();
+            }
+        }
+
+        @Override
+        public boolean remove(Object key, Object value) {
+            try {
+                return super.remove(key, value);
+            } finally {
+                version.changed();
+            }
+        }
+
+        @Override
+        public InteractionCommand replace(String key, InteractionCommand value) {
+            try {
+                return super.replace(key, value);
+            } finally {
+                version.changed();
+            }
+        }
+
+        @Override
+        public boolean replace(String key, InteractionCommand oldValue, InteractionCommand newValue) {
+            try {
+                return super.replace(key, oldValue, newValue);
+            } finally {
+                version.changed();
+            }
+        }
+
+        @Override
+        public void clear() {
+            try {
+                super.clear();
+            } finally {
+                version.changed();
+            }
+        }
     }
 
 }
@@ -34,10 +34,11 @@ import org.slf4j.LoggerFactory;
  * @deprecated as of introduction of {@link MapBasedCommandController}, for compatibility with configuration generator referring to NewCommandController explicitly.
  */
 @Deprecated
-public class NewCommandController implements CommandController {
+public class NewCommandController implements ListableCommandController {
 	private final Logger logger = LoggerFactory.getLogger(NewCommandController.class);
 
 	protected Map<String, InteractionCommand> commands = new HashMap<String, InteractionCommand>();
+	private final CommandControllerVersions.Version version = new CommandControllerVersions.Version();
 
 	/**
 	 * Create an empty command controller.
@@ -68,6 +69,7 @@ public class NewCommandController implements CommandController {
 		assert(name != null);
 		assert(c != null);
 		commands.put(name, c);
+		version.changed();
 	}
 
 	/*
@@ -92,5 +94,21 @@ public class NewCommandController implements CommandController {
 
     public void removeCommand(String name) {
         commands.remove(name);
+        version.changed();
     }
+
+	@Override
+	public Map<String, InteractionCommand> getCommands() {
+		return new HashMap<String, InteractionCommand>(commands);
+	}
+
+	@Override
+	public long getVersion() {
+		return version.get();
+	}
+
+	@Override
+	public boolean publishesVersions() {
+		return true;
+	}
 }
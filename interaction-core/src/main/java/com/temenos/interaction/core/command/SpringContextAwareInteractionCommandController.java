@@ -25,17 +25,29 @@ package com.temenos.interaction.core.command;
 import org.springframework.beans.BeansException;
 import org.springframework.context.ApplicationContext;
 import org.springframework.context.ApplicationContextAware;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.event.ContextRefreshedEvent;
 
 /**
- * A Spring {@link ApplicationContextAware} version of {@link SpringContextBasedInteractionCommandController}, allowing for automatic injection of the ApplicationContext
+ * A Spring {@link ApplicationContextAware} version of {@link SpringContextBasedInteractionCommandController}, allowing for automatic injection of the ApplicationContext.
+ * The commands of the context are only listed once it has been refreshed.
  * @author trojanbug
  */
 public class SpringContextAwareInteractionCommandController 
 extends SpringContextBasedInteractionCommandController 
-implements ApplicationContextAware {
+implements ApplicationContextAware, ApplicationListener<ContextRefreshedEvent> {
 	
 	@Override
 	public void setApplicationContext(ApplicationContext applicationContext) throws BeansException {            
+		setRefreshed(false);
 		super.setApplicationContext(applicationContext);
 	}
+
+	@Override
+	public void onApplicationEvent(ContextRefreshedEvent event) {
+		// also published by the child contexts
+		if (event.getApplicationContext() == getApplicationContext()) {
+			setRefreshed(true);
+		}
+	}
 }
\ No newline at end of file
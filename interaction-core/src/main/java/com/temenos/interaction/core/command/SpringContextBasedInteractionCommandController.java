@@ -20,9 +20,14 @@ package com.temenos.interaction.core.command;
  * along with this program.  If not, see <http://www.gnu.org/licenses/>.
  * #L%
  */
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.BeanFactoryUtils;
 import org.springframework.context.ApplicationContext;
 
 /**
@@ -31,14 +36,26 @@ import org.springframework.context.ApplicationContext;
  * or name attributes of the beans in the context matching name passed
  * literally.
  *
+ * Its commands are the singleton beans of the context, listed when they are
+ * first asked for. If the context also has beans of other scopes, e.g.
+ * prototypes, or has not been refreshed yet, its version is negative, as such
+ * beans must not be shared. A context that is refreshed again has to be set
+ * again.
+ *
  * @author trojanbug
  */
 public class SpringContextBasedInteractionCommandController
-        implements CommandController {
+        implements ListableCommandController {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(SpringContextBasedInteractionCommandController.class);
 
-    private ApplicationContext applicationContext = null;
+    private static final ContextCommands NOT_REFRESHED = new ContextCommands();
+
+    private volatile ApplicationContext applicationContext = null;
+    private volatile boolean refreshed = true;
+    private final CommandControllerVersions.Version version = new CommandControllerVersions.Version();
+    // listed on first use once the context is refreshed
+    private volatile ContextCommands contextCommands = new ContextCommands(null);
 
     /**
      * @param name
@@ -65,6 +82,7 @@ public class SpringContextBasedInteractionCommandController
 
     public void setApplicationContext(ApplicationContext applicationContext) throws BeansException {
         this.applicationContext = applicationContext;
+        version.changed();
     }
 
     public ApplicationContext getApplicationContext() {
@@ -86,4 +104,79 @@ public class SpringContextBasedInteractionCommandController
         }
     }
 
+    @Override
+    public Map<String, InteractionCommand> getCommands() {
+        return new HashMap<String, InteractionCommand>(listCommands().commands);
+    }
+
+    @Override
+    public long getVersion() {
+        return listCommands().shared ? version.get() : -version.get();
+    }
+
+    @Override
+    public boolean publishesVersions() {
+        return true;
+    }
+
+    /**
+     * Set whether the context has been refreshed. Its beans are not listed
+     * before, e.g. while the context is still being created.
+     */
+    protected void setRefreshed(boolean refreshed) {
+        this.refreshed = refreshed;
+        version.changed();
+    }
+
+    private ContextCommands listCommands() {
+        if (!refreshed) {
+            return NOT_REFRESHED;
+        }
+        ApplicationContext context = applicationContext;
+        ContextCommands current = contextCommands;
+        if (current.context != context) {
+            current = new ContextCommands(context);
+            contextCommands = current;
+        }
+        return current;
+    }
+
+    /*
+     * The singleton commands of a context keyed by their names and aliases,
+     * and whether they are all of its commands.
+     */
+    private static final class ContextCommands {
+        final ApplicationContext context;
+        final Map<String, InteractionCommand> commands;
+        final boolean shared;
+
+        ContextCommands() {
+            this.context = null;
+            this.commands = Collections.emptyMap();
+            this.shared = false;
+        }
+
+        ContextCommands(ApplicationContext context) {
+            this.context = context;
+            Map<String, InteractionCommand> commands = new HashMap<String, InteractionCommand>();
+            boolean shared = true;
+            if (context != null) {
+                Map<String, InteractionCommand> singletons = BeanFactoryUtils.beansOfTypeIncludingAncestors(context, InteractionCommand.class, false, true);
+                for (Map.Entry<String, InteractionCommand> entry : singletons.entrySet()) {
+                    commands.put(entry.getKey(), entry.getValue());
+                    for (String alias : context.getAliases(entry.getKey())) {
+                        commands.put(alias, entry.getValue());
+                    }
+                }
+                for (String name : BeanFactoryUtils.beanNamesForTypeIncludingAncestors(context, InteractionCommand.class, true, false)) {
+                    if (!singletons.containsKey(name)) {
+                        LOGGER.debug("Commands of {} not shared, bean {} is not a singleton", context, name);
+                        shared = false;
+                    }
+                }
+            }
+            this.commands = Collections.unmodifiableMap(commands);
+            this.shared = shared;
+        }
+    }
 }
@@ -0,0 +1,47 @@
+package com.temenos.interaction.core.command;
+
+/*
+ * #%L
+ * interaction-core
+ * %%
+ * Copyright (C) 2012 - 2017 Temenos Holdings N.V.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+/**
+ * A {@link CommandController} whose commands can change once it is in use,
+ * e.g. when new jars are loaded. Its version changes whenever its commands
+ * do, so that workflows assembled from its commands can be reused until then.
+ *
+ * The commands it returns are shared by the requests using such workflows.
+ */
+public interface VersionedCommandController extends CommandController {
+
+	/**
+	 * Return a number that changes whenever any command of this controller
+	 * could have changed, negative if the commands it returns must not be
+	 * shared, e.g. because it may return a new command each time.
+	 */
+	public long getVersion();
+
+	/**
+	 * Return whether this controller calls
+	 * {@link CommandControllerVersions#published()} whenever its version
+	 * changes, so that a controller composed of others need not ask it for its
+	 * version until some version is published.
+	 */
+	public boolean publishesVersions();
+}
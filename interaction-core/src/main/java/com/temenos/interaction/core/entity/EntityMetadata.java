@@ -24,6 +24,7 @@ package com.temenos.interaction.core.entity;
 
 import java.text.DateFormat;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
 import java.util.Enumeration;
 import java.util.HashMap;
@@ -32,6 +33,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.Stack;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.joda.time.LocalDateTime;
 import org.joda.time.LocalTime;
@@ -56,6 +58,9 @@ import com.temenos.interaction.core.entity.vocabulary.terms.TermValueType;
 public class EntityMetadata  {
 	private final static Logger logger = LoggerFactory.getLogger(EntityMetadata.class);
 
+	// Property vocabularies set on any entity, see getChanges()
+	private static final AtomicLong CHANGES = new AtomicLong();
+
 	private TermFactory termFactory = new TermFactory();
 	private String entityName;					//Entity name
 	private Vocabulary vocabulary = null;		//Entity Vocabulary
@@ -66,6 +71,9 @@ public class EntityMetadata  {
 	// Map of fully qualified property name to simple property name
 	private Map<String, String> propertyNames = new HashMap<String, String>();
 
+	// Descriptors and schema of the properties, compiled when first asked for
+	private volatile EntityPropertyDescriptors descriptors;
+
 	public EntityMetadata(String entityName) {
 		this.entityName = entityName;
 	}
@@ -167,8 +175,60 @@ public class EntityMetadata  {
 		
 		propertyVocabularies.put(fullyQualifiedPropertyName, vocabulary);
 		propertyNames.put(fullyQualifiedPropertyName, propertyName);
+		CHANGES.incrementAndGet();
+	}
+
+	/**
+	 * Returns a number that changes whenever a property vocabulary is set on
+	 * any entity or a term is set in any vocabulary, so that anything derived
+	 * from the vocabularies can tell it has to be derived again.
+	 * @return The count of changes
+	 */
+	public static long getChanges() {
+		return CHANGES.get() + Vocabulary.getChanges();
+	}
+
+	/**
+	 * Gets the schema of the top level properties, shared by the
+	 * {@link EntityProperties} of the entities of this type.
+	 * @return The schema
+	 */
+	public EntitySchema getSchema() {
+		return getPropertyDescriptors().schema;
 	}
 	
+	/**
+	 * Gets the descriptor of the specified property, compiled from its
+	 * vocabulary once for all the properties of this entity.
+	 * Properties without a vocabulary are described by
+	 * {@link EntityPropertyDescriptor#UNDEFINED}, with the default terms.
+	 * @param fullyQualifiedPropertyName Property name
+	 * @return The property descriptor
+	 */
+	public EntityPropertyDescriptor getPropertyDescriptor(String fullyQualifiedPropertyName) {
+		EntityPropertyDescriptor descriptor = getPropertyDescriptors().byName.get(fullyQualifiedPropertyName);
+		return descriptor != null ? descriptor : EntityPropertyDescriptor.UNDEFINED;
+	}
+
+	/**
+	 * Gets the descriptors of the id fields, in the order of {@link #getIdFields()}.
+	 * @return The id field descriptors
+	 */
+	public List<EntityPropertyDescriptor> getIdFieldDescriptors() {
+		return getPropertyDescriptors().idFields;
+	}
+
+	private EntityPropertyDescriptors getPropertyDescriptors() {
+		EntityPropertyDescriptors result = descriptors;
+		// read before compiling, a change made meanwhile compiles them again
+		long changes = getChanges();
+		if (result == null || result.changes != changes) {
+			result = new EntityPropertyDescriptors(this, changes);
+			descriptors = result;
+		}
+		return result;
+	}
+
 	/**
 	 * Checks whether a property is a complex type or not
 	 * @param propertyName The name of the property to check
@@ -508,4 +568,30 @@ public class EntityMetadata  {
 				.equals(Restriction.FILTEREONLY.getValue()); 
 	}
 	
+	/*
+	 * The descriptors of all the properties and the schema of the top level
+	 * ones, replaced whenever a vocabulary changes.
+	 */
+	private static final class EntityPropertyDescriptors {
+		final Map<String, EntityPropertyDescriptor> byName;
+		final List<EntityPropertyDescriptor> idFields;
+		final EntitySchema schema;
+		final long changes;
+
+		EntityPropertyDescriptors(EntityMetadata entityMetadata, long changes) {
+			List<String> idFieldNames = entityMetadata.getIdFields();
+			Map<String, EntityPropertyDescriptor> byName = new HashMap<String, EntityPropertyDescriptor>();
+			for (String propertyName : entityMetadata.getPropertyVocabularyKeySet()) {
+				byName.put(propertyName, new EntityPropertyDescriptor(entityMetadata, propertyName, idFieldNames.contains(propertyName)));
+			}
+			List<EntityPropertyDescriptor> idFields = new ArrayList<EntityPropertyDescriptor>();
+			for (String idField : idFieldNames) {
+				idFields.add(byName.get(idField));
+			}
+			this.byName = Collections.unmodifiableMap(byName);
+			this.idFields = Collections.unmodifiableList(idFields);
+			this.schema = EntitySchema.of(entityMetadata.getTopLevelProperties());
+			this.changes = changes;
+		}
+	}
 }
@@ -22,16 +22,55 @@ package com.temenos.interaction.core.entity;
  */
 
 
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
 
 /**
  * This class represents an unordered map of entity properties 
+ *
+ * Created with an {@link EntitySchema}, the values of the properties of the
+ * schema are held in an array shared by nothing else, the {@link EntityProperty}
+ * returned for them being created when first asked for and kept in place of
+ * the value. Other properties, and those whose value is itself a tree of
+ * properties, are held as they are set.
  */
 public class EntityProperties implements EntityTreeNode {
 	
+	// the value of a slot whose property has not been set
+	private static final Object ABSENT = new Object();
+
 	private EntityTreeNode parent;
-	private Map<String, EntityProperty> properties = new HashMap<String, EntityProperty>();
+	private final EntitySchema schema;
+	private Object[] values;
+	private int slotCount;
+	private Map<String, EntityProperty> properties;
+	private Map<String, EntityProperty> propertyMap;
+
+	public EntityProperties() {
+		this(null);
+	}
+
+	/**
+	 * Creates entity properties holding the properties of the schema in
+	 * slots rather than in a map.
+	 * @param schema Properties of the entity type, null for a map of properties
+	 */
+	public EntityProperties(EntitySchema schema) {
+		this.schema = schema;
+		if (schema != null) {
+			values = new Object[schema.size()];
+			Arrays.fill(values, ABSENT);
+		} else {
+			properties = new HashMap<String, EntityProperty>();
+		}
+	}
 
 	/**
 	 * Gets the specified entity property.
@@ -39,7 +78,13 @@ public class EntityProperties implements EntityTreeNode {
 	 * @return Entity property
 	 */
 	public EntityProperty getProperty(String name) {
-		return properties.get(name);
+		if (schema != null) {
+			int slot = schema.getSlot(name);
+			if (slot >= 0 && values[slot] != ABSENT) {
+				return getProperty(slot);
+			}
+		}
+		return properties != null ? properties.get(name) : null;
 	}
 	
 	/**
@@ -47,7 +92,13 @@ public class EntityProperties implements EntityTreeNode {
 	 * @return
 	 */
 	public Map<String, EntityProperty> getProperties() {
-		return properties;
+		if (schema == null) {
+			return properties;
+		}
+		if (propertyMap == null) {
+			propertyMap = new PropertyMap();
+		}
+		return propertyMap;
 	}
 	
 	/**
@@ -56,7 +107,22 @@ public class EntityProperties implements EntityTreeNode {
 	 */
 	public void setProperty(EntityProperty property) {
 		property.setParent(this);
-		properties.put(property.getName(), property);
+		putProperty(property.getName(), property);
+	}
+
+	/**
+	 * Puts an entity property with the specified name and value, without
+	 * creating an {@link EntityProperty} when the value can be held in a slot.
+	 * @param name Entity property name
+	 * @param value Entity property value
+	 */
+	public void setPropertyValue(String name, Object value) {
+		int slot = schema != null ? schema.getSlot(name) : -1;
+		if (slot >= 0 && isSimple(value)) {
+			putSlot(slot, name, value);
+		} else {
+			setProperty(new EntityProperty(name, value));
+		}
 	}
 	
 	/**
@@ -64,11 +130,11 @@ public class EntityProperties implements EntityTreeNode {
 	 */
 	public String toString() {
 		StringBuilder str = new StringBuilder();
-		for(String prop : properties.keySet()) {
+		for(Map.Entry<String, EntityProperty> prop : getProperties().entrySet()) {
 			if(str.length() > 0) {
 				str.append(", ");
 			}
-			str.append(prop + " = " + properties.get(prop));
+			str.append(prop.getKey() + " = " + prop.getValue());
 		}
 		return str.toString();
 	}
@@ -85,4 +151,231 @@ public class EntityProperties implements EntityTreeNode {
 	public void setParent(EntityTreeNode parent) {
 		this.parent = parent;
 	}
+
+	/*
+	 * Values that are not trees of properties, which do not need the
+	 * EntityProperty they were set with as their parent.
+	 */
+	private static boolean isSimple(Object value) {
+		return !(value instanceof EntityTreeNode) && !(value instanceof Collection);
+	}
+
+	private EntityProperty getProperty(int slot) {
+		Object value = values[slot];
+		if (value instanceof EntityProperty) {
+			return (EntityProperty) value;
+		}
+		EntityProperty property = new EntityProperty(schema.getName(slot), value);
+		property.setParent(this);
+		values[slot] = property;
+		return property;
+	}
+
+	private EntityProperty putProperty(String name, EntityProperty property) {
+		int slot = schema != null ? schema.getSlot(name) : -1;
+		if (slot < 0 || property == null) {
+			EntityProperty previous = slot >= 0 ? removeSlot(slot) : null;
+			if (properties == null) {
+				properties = new HashMap<String, EntityProperty>();
+			}
+			EntityProperty replaced = properties.put(name, property);
+			return previous != null ? previous : replaced;
+		}
+		// keep the property itself when a view of it would not be the same
+		if (property.getClass() == EntityProperty.class && name.equals(property.getName()) && isSimple(property.getValue())) {
+			return putSlot(slot, name, property.getValue());
+		}
+		return putSlot(slot, name, property);
+	}
+
+	private EntityProperty putSlot(int slot, String name, Object value) {
+		EntityProperty previous = values[slot] != ABSENT ? getProperty(slot) : null;
+		if (values[slot] == ABSENT) {
+			slotCount++;
+		}
+		values[slot] = value;
+		if (previous == null && properties != null && properties.containsKey(name)) {
+			previous = properties.remove(name);
+		}
+		return previous;
+	}
+
+	private EntityProperty removeSlot(int slot) {
+		if (values[slot] == ABSENT) {
+			return null;
+		}
+		EntityProperty previous = getProperty(slot);
+		values[slot] = ABSENT;
+		slotCount--;
+		return previous;
+	}
+
+	private EntityProperty removeProperty(Object name) {
+		int slot = schema.getSlot(name);
+		if (slot >= 0 && values[slot] != ABSENT) {
+			return removeSlot(slot);
+		}
+		return properties != null ? properties.remove(name) : null;
+	}
+
+	/*
+	 * The properties held in slots and in the map as a single map.
+	 */
+	private class PropertyMap extends AbstractMap<String, EntityProperty> {
+		private Set<Map.Entry<String, EntityProperty>> entrySet;
+
+		@Override
+		public EntityProperty get(Object key) {
+			return key instanceof String ? getProperty((String) key) : null;
+		}
+
+		@Override
+		public boolean containsKey(Object key) {
+			int slot = schema.getSlot(key);
+			if (slot >= 0 && values[slot] != ABSENT) {
+				return true;
+			}
+			return properties != null && properties.containsKey(key);
+		}
+
+		@Override
+		public EntityProperty put(String key, EntityProperty value) {
+			return putProperty(key, value);
+		}
+
+		@Override
+		public EntityProperty remove(Object key) {
+			return removeProperty(key);
+		}
+
+		@Override
+		public void clear() {
+			Arrays.fill(values, ABSENT);
+			slotCount = 0;
+			if (properties != null) {
+				properties.clear();
+			}
+		}
+
+		@Override
+		public int size() {
+			return slotCount + (properties != null ? properties.size() : 0);
+		}
+
+		@Override
+		public Set<Map.Entry<String, EntityProperty>> entrySet() {
+			if (entrySet == null) {
+				entrySet = new AbstractSet<Map.Entry<String, EntityProperty>>() {
+					@Override
+					public Iterator<Map.Entry<String, EntityProperty>> iterator() {
+						return new PropertyIterator();
+					}
+
+					@Override
+					public int size() {
+						return PropertyMap.this.size();
+					}
+				};
+			}
+			return entrySet;
+		}
+	}
+
+	/*
+	 * Iterates the properties held in slots, then those held in the map.
+	 */
+	private class PropertyIterator implements Iterator<Map.Entry<String, EntityProperty>> {
+		private int next = nextSlot(0);
+		private int last = -1;
+		private Iterator<Map.Entry<String, EntityProperty>> mapIterator;
+
+		private int nextSlot(int from) {
+			int slot = from;
+			while (slot < values.length && values[slot] == ABSENT) {
+				slot++;
+			}
+			return slot;
+		}
+
+		private Iterator<Map.Entry<String, EntityProperty>> mapIterator() {
+			if (mapIterator == null) {
+				mapIterator = properties != null ? properties.entrySet().iterator()
+						: new HashMap<String, EntityProperty>().entrySet().iterator();
+			}
+			return mapIterator;
+		}
+
+		@Override
+		public boolean hasNext() {
+			return next < values.length || mapIterator().hasNext();
+		}
+
+		@Override
+		public Map.Entry<String, EntityProperty> next() {
+			if (next < values.length) {
+				last = next;
+				next = nextSlot(next + 1);
+				return new SlotEntry(last);
+			}
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			Map.Entry<String, EntityProperty> entry = mapIterator().next();
+			last = -1;
+			return entry;
+		}
+
+		@Override
+		public void remove() {
+			if (last >= 0) {
+				if (values[last] == ABSENT) {
+					throw new IllegalStateException();
+				}
+				removeSlot(last);
+			} else if (mapIterator != null) {
+				mapIterator.remove();
+			} else {
+				throw new IllegalStateException();
+			}
+		}
+	}
+
+	private class SlotEntry implements Map.Entry<String, EntityProperty> {
+		private final int slot;
+		private final EntityProperty property;
+
+		SlotEntry(int slot) {
+			this.slot = slot;
+			this.property = getProperty(slot);
+		}
+
+		@Override
+		public String getKey() {
+			return schema.getName(slot);
+		}
+
+		@Override
+		public EntityProperty getValue() {
+			return property;
+		}
+
+		@Override
+		public EntityProperty setValue(EntityProperty value) {
+			return putProperty(getKey(), value);
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof Map.Entry)) {
+				return false;
+			}
+			Map.Entry<?, ?> other = (Map.Entry<?, ?>) obj;
+			return getKey().equals(other.getKey()) && property.equals(other.getValue());
+		}
+
+		@Override
+		public int hashCode() {
+			return getKey().hashCode() ^ property.hashCode();
+		}
+	}
 }
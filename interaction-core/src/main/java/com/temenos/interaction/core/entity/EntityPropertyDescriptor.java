@@ -0,0 +1,281 @@
+package com.temenos.interaction.core.entity;
+
+/*
+ * #%L
+ * interaction-core
+ * %%
+ * Copyright (C) 2012 - 2017 Temenos Holdings N.V.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+import java.text.DateFormat;
+import java.util.Date;
+
+import org.joda.time.LocalDateTime;
+import org.joda.time.LocalTime;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.temenos.interaction.core.entity.vocabulary.terms.TermMandatory;
+import com.temenos.interaction.core.entity.vocabulary.terms.TermValueType;
+
+/**
+ * What the vocabulary of an {@link EntityMetadata} says about one of its
+ * properties, looked up once so that serialising each entity does not have
+ * to look up the terms of each of its properties.
+ * @see EntityMetadata#getPropertyDescriptor(String)
+ */
+public final class EntityPropertyDescriptor {
+	private final static Logger logger = LoggerFactory.getLogger(EntityPropertyDescriptor.class);
+
+	/**
+	 * Describes any property the metadata do not have, with the default terms.
+	 */
+	public static final EntityPropertyDescriptor UNDEFINED = new EntityPropertyDescriptor(new EntityMetadata(null), null, false);
+
+	/**
+	 * The value types of {@link TermValueType}.
+	 */
+	public enum ValueType {
+		TEXT, NUMBER, INTEGER_NUMBER, TIMESTAMP, DATE, TIME, BOOLEAN, RECURRENCE, ENCRYPTED_TEXT, IMAGE, ENUMERATION,
+		/** a value type this enumeration does not know */
+		OTHER;
+
+		static ValueType of(String termValueType) {
+			for (ValueType type : values()) {
+				if (type != OTHER && type.name().equals(termValueType)) {
+					return type;
+				}
+			}
+			return OTHER;
+		}
+	}
+
+	private final String name;
+	private final boolean defined;
+	private final String simpleName;
+	private final String termValueType;
+	private final ValueType valueType;
+	private final boolean text;
+	private final boolean complex;
+	private final String complexGroup;
+	private final boolean list;
+	private final boolean mandatory;
+	private final boolean nullable;
+	private final boolean displayOnly;
+	private final boolean filterOnly;
+	private final boolean idField;
+	private final Formatter formatter;
+
+	EntityPropertyDescriptor(EntityMetadata entityMetadata, String fullyQualifiedPropertyName, boolean idField) {
+		this.name = fullyQualifiedPropertyName;
+		this.defined = entityMetadata.getPropertyVocabulary(fullyQualifiedPropertyName) != null;
+		this.simpleName = entityMetadata.getSimplePropertyName(fullyQualifiedPropertyName);
+		this.termValueType = entityMetadata.getTermValue(fullyQualifiedPropertyName, TermValueType.TERM_NAME);
+		this.valueType = ValueType.of(termValueType);
+		this.text = entityMetadata.isPropertyText(fullyQualifiedPropertyName);
+		this.complex = entityMetadata.isPropertyComplex(fullyQualifiedPropertyName);
+		this.complexGroup = entityMetadata.getPropertyComplexGroup(fullyQualifiedPropertyName);
+		this.list = entityMetadata.isPropertyList(fullyQualifiedPropertyName);
+		this.mandatory = "true".equals(entityMetadata.getTermValue(fullyQualifiedPropertyName, TermMandatory.TERM_NAME));
+		this.nullable = entityMetadata.isPropertyNullable(fullyQualifiedPropertyName);
+		this.displayOnly = entityMetadata.isPropertyDisplayOnly(fullyQualifiedPropertyName);
+		this.filterOnly = entityMetadata.isPropertyFilterOnly(fullyQualifiedPropertyName);
+		this.idField = idField;
+		this.formatter = Formatter.of(valueType);
+	}
+
+	/**
+	 * Returns the fully qualified name of the property, null for
+	 * {@link #UNDEFINED}.
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * Returns whether the metadata have a vocabulary for the property.
+	 */
+	public boolean isDefined() {
+		return defined;
+	}
+
+	/**
+	 * Returns the simple name of the property, or null if the metadata do not
+	 * have such a property.
+	 */
+	public String getSimpleName() {
+		return simpleName;
+	}
+
+	public ValueType getValueType() {
+		return valueType;
+	}
+
+	/**
+	 * Returns the value of the {@link TermValueType} term of the property.
+	 */
+	public String getTermValueType() {
+		return termValueType;
+	}
+
+	public boolean isText() {
+		return text;
+	}
+
+	public boolean isNumber() {
+		return valueType == ValueType.NUMBER || valueType == ValueType.INTEGER_NUMBER;
+	}
+
+	public boolean isDate() {
+		return valueType == ValueType.DATE;
+	}
+
+	public boolean isTimestamp() {
+		return valueType == ValueType.TIMESTAMP;
+	}
+
+	public boolean isTime() {
+		return valueType == ValueType.TIME;
+	}
+
+	public boolean isBoolean() {
+		return valueType == ValueType.BOOLEAN;
+	}
+
+	public boolean isComplex() {
+		return complex;
+	}
+
+	/**
+	 * Returns the complex type group of the property, empty if it has none.
+	 */
+	public String getComplexGroup() {
+		return complexGroup;
+	}
+
+	public boolean isList() {
+		return list;
+	}
+
+	public boolean isMandatory() {
+		return mandatory;
+	}
+
+	public boolean isNullable() {
+		return nullable;
+	}
+
+	public boolean isDisplayOnly() {
+		return displayOnly;
+	}
+
+	public boolean isFilterOnly() {
+		return filterOnly;
+	}
+
+	public boolean isIdField() {
+		return idField;
+	}
+
+	/**
+	 * Converts a value of this property in to a string, as
+	 * {@link EntityMetadata#getPropertyValueAsString(String, Object)} does.
+	 * @param propertyValue Property value
+	 * @return The property value as a string
+	 */
+	public String formatValue(Object propertyValue) {
+		if (propertyValue == null) {
+			return "";
+		} else if (propertyValue instanceof String) {
+			return propertyValue.toString();
+		}
+		return formatter.format(this, propertyValue);
+	}
+
+	@Override
+	public String toString() {
+		return name + " (" + termValueType + ")";
+	}
+
+	/*
+	 * Converts the values of a value type in to strings.
+	 */
+	private enum Formatter {
+		PLAIN {
+			@Override
+			String format(EntityPropertyDescriptor descriptor, Object propertyValue) {
+				return String.valueOf(propertyValue);
+			}
+		},
+		DATE {
+			@Override
+			String format(EntityPropertyDescriptor descriptor, Object propertyValue) {
+				if (propertyValue instanceof LocalDateTime) {
+					return DateFormat.getDateTimeInstance().format(((LocalDateTime) propertyValue).toDateTime().toDate());
+				} else if (propertyValue instanceof LocalTime) {
+					return ((LocalTime) propertyValue).toString();
+				}
+				return DateFormat.getDateTimeInstance().format((Date) propertyValue);
+			}
+		},
+		ENUMERATION {
+			@Override
+			String format(EntityPropertyDescriptor descriptor, Object propertyValue) {
+				if (propertyValue instanceof String[]) {
+					StringBuilder value = new StringBuilder();
+					for (String item : (String[]) propertyValue) {
+						if (value.length() > 0) {
+							value.append(',');
+						}
+						value.append(item);
+					}
+					return value.toString();
+				}
+				return String.valueOf(propertyValue);
+			}
+		},
+		NONE {
+			@Override
+			String format(EntityPropertyDescriptor descriptor, Object propertyValue) {
+				logger.warn("Unable to return a text representation for field " + descriptor.name + " of type " + descriptor.termValueType);
+				return "";
+			}
+		};
+
+		abstract String format(EntityPropertyDescriptor descriptor, Object propertyValue);
+
+		static Formatter of(ValueType valueType) {
+			switch (valueType) {
+			case TEXT:
+			case RECURRENCE:
+			case ENCRYPTED_TEXT:
+			case INTEGER_NUMBER:
+			case NUMBER:
+			case BOOLEAN:
+				return PLAIN;
+			case TIMESTAMP:
+			case DATE:
+			case TIME:
+				return DATE;
+			case ENUMERATION:
+				return ENUMERATION;
+			default:
+				return NONE;
+			}
+		}
+	}
+}
@@ -0,0 +1,92 @@
+package com.temenos.interaction.core.entity;
+
+/*
+ * #%L
+ * interaction-core
+ * %%
+ * Copyright (C) 2012 - 2017 Temenos Holdings N.V.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+
+/**
+ * The names of the properties of an entity type, each given a slot so that
+ * the {@link EntityProperties} of all the entities of the type can hold their
+ * values in an array rather than in a map of their own.
+ *
+ * A schema is immutable and shared by all the entities created with it,
+ * e.g. all the rows of a query.
+ */
+public final class EntitySchema {
+
+	private final String[] names;
+	private final Map<String, Integer> slots;
+
+	private EntitySchema(Collection<String> names) {
+		this.names = new LinkedHashSet<String>(names).toArray(new String[0]);
+		this.slots = new HashMap<String, Integer>(this.names.length * 2);
+		for (int i = 0; i < this.names.length; i++) {
+			slots.put(this.names[i], i);
+		}
+	}
+
+	/**
+	 * Create a schema of these property names, duplicates are ignored.
+	 */
+	public static EntitySchema of(Collection<String> names) {
+		return new EntitySchema(names);
+	}
+
+	/**
+	 * Create a schema of these property names, duplicates are ignored.
+	 */
+	public static EntitySchema of(String... names) {
+		return new EntitySchema(Arrays.asList(names));
+	}
+
+	/**
+	 * Returns the number of slots of this schema.
+	 */
+	public int size() {
+		return names.length;
+	}
+
+	/**
+	 * Returns the name of the property held in the specified slot.
+	 */
+	public String getName(int slot) {
+		return names[slot];
+	}
+
+	/**
+	 * Returns the slot of the specified property, or -1 if this schema does
+	 * not have such a property.
+	 */
+	public int getSlot(Object name) {
+		Integer slot = slots.get(name);
+		return slot != null ? slot : -1;
+	}
+
+	@Override
+	public String toString() {
+		return Arrays.toString(names);
+	}
+}
@@ -24,6 +24,7 @@ package com.temenos.interaction.core.entity;
 
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 import com.temenos.interaction.core.resource.ResourceMetadataManager;
 
@@ -36,6 +37,7 @@ public class Metadata  {
 	//Map of <Entity name, Entity metadata>
 	private Map<String, EntityMetadata> entitiesMetadata = new ConcurrentHashMap<String, EntityMetadata>();
 	private String modelName;
+	private final AtomicLong version = new AtomicLong();
 
 	private ResourceMetadataManager resourceMetadataManager;
 	
@@ -85,6 +87,7 @@ public class Metadata  {
 	 */
 	public void setEntityMetadata(EntityMetadata entityMetadata) {
 		entitiesMetadata.put(entityMetadata.getEntityName(), entityMetadata);
+		version.incrementAndGet();
 	}
 	
 	/**
@@ -117,6 +120,18 @@ public class Metadata  {
 	
 	public void unload( String entityName) {
 		entitiesMetadata.remove(entityName);
+		version.incrementAndGet();
+	}
+
+	/**
+	 * Returns a number that changes whenever the metadata of an entity is
+	 * set or unloaded, or a vocabulary changes, so that anything derived from
+	 * this metadata can tell it has to be derived again.
+	 * @return metadata version
+	 * @see EntityMetadata#getChanges()
+	 */
+	public long getVersion() {
+		return version.get() + EntityMetadata.getChanges();
 	}
 
 	/*
@@ -25,11 +25,15 @@ package com.temenos.interaction.core.entity.vocabulary;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * A Vocabulary contains a set of Terms used to describe resources.
  */
 public class Vocabulary {
+	// Terms set in any vocabulary, see getChanges()
+	private static final AtomicLong CHANGES = new AtomicLong();
+
 	//Map of <Term name, Term>
 	private Map<String, Term> terms = new HashMap<String, Term>();
 	
@@ -48,6 +52,17 @@ public class Vocabulary {
 	 */
 	public void setTerm(Term term) {
 		terms.put(term.getName(), term);
+		CHANGES.incrementAndGet();
+	}
+
+	/**
+	 * Returns a number that changes whenever a term is set in any vocabulary,
+	 * so that what has been looked up in the vocabularies can be looked up
+	 * again.
+	 * @return count of changes
+	 */
+	public static long getChanges() {
+		return CHANGES.get();
 	}
 
 	/**
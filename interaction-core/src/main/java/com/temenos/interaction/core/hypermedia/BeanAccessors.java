@@ -0,0 +1,142 @@
+package com.temenos.interaction.core.hypermedia;
+
+/*
+ * #%L
+ * interaction-core
+ * %%
+ * Copyright (C) 2012 - 2017 Temenos Holdings N.V.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+import java.beans.IntrospectionException;
+import java.beans.Introspector;
+import java.beans.PropertyDescriptor;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The readable properties of a bean class, introspected once per class and
+ * read with method handles instead of reflective calls.
+ *
+ * Held by a {@link ClassValue} so that the classes of unloaded class loaders
+ * are not kept alive by the cache.
+ */
+final class BeanAccessors {
+	private static final Logger LOGGER = LoggerFactory.getLogger(BeanAccessors.class);
+
+	private static final MethodType GETTER_TYPE = MethodType.methodType(Object.class, Object.class);
+
+	private static final ClassValue<BeanAccessors> ACCESSORS = new ClassValue<BeanAccessors>() {
+		@Override
+		protected BeanAccessors computeValue(Class<?> type) {
+			return new BeanAccessors(type);
+		}
+	};
+
+	private final String[] names;
+	private final MethodHandle[] getters;
+	private final Map<String, Integer> indexes;
+
+	private BeanAccessors(Class<?> type) {
+		List<String> names = new ArrayList<String>();
+		List<MethodHandle> getters = new ArrayList<MethodHandle>();
+		try {
+			for (PropertyDescriptor propertyDesc : Introspector.getBeanInfo(type).getPropertyDescriptors()) {
+				String propertyName = propertyDesc.getName();
+				Method readMethod = propertyDesc.getReadMethod();
+				if (readMethod != null && !BeanTransformer.ReservedProperty.contains(propertyName)) {
+					MethodHandle getter = unreflect(readMethod);
+					if (getter != null) {
+						names.add(propertyName);
+						getters.add(getter.asType(GETTER_TYPE));
+					}
+				}
+			}
+		} catch (IntrospectionException e) {
+			LOGGER.error("Error accessing bean property", e);
+		}
+		this.names = names.toArray(new String[names.size()]);
+		this.getters = getters.toArray(new MethodHandle[getters.size()]);
+		this.indexes = new HashMap<String, Integer>(this.names.length * 2);
+		for (int i = 0; i < this.names.length; i++) {
+			indexes.put(this.names[i], i);
+		}
+	}
+
+	private static MethodHandle unreflect(Method readMethod) {
+		try {
+			return MethodHandles.publicLookup().unreflect(readMethod);
+		} catch (IllegalAccessException e) {
+			// a public getter of a class that is not public, as read by reflection before
+			LOGGER.debug("Bean property getter {} not public, making it accessible", readMethod);
+		}
+		try {
+			readMethod.setAccessible(true);
+			return MethodHandles.lookup().unreflect(readMethod);
+		} catch (IllegalAccessException | RuntimeException e) {
+			LOGGER.error("Error accessing bean property", e);
+			return null;
+		}
+	}
+
+	/**
+	 * Return the accessors of the properties of this class.
+	 */
+	static BeanAccessors forClass(Class<?> type) {
+		return ACCESSORS.get(type);
+	}
+
+	int size() {
+		return names.length;
+	}
+
+	String getName(int index) {
+		return names[index];
+	}
+
+	/**
+	 * Return the position of the property with this name, or -1 if the bean
+	 * has no such readable property.
+	 */
+	int indexOf(Object name) {
+		Integer index = indexes.get(name);
+		return index != null ? index : -1;
+	}
+
+	/**
+	 * Read the property at this position of the bean, or return null if its
+	 * getter fails.
+	 */
+	Object get(Object bean, int index) {
+		try {
+			return (Object) getters[index].invokeExact(bean);
+		} catch (Error e) {
+			throw e;
+		} catch (Throwable e) {
+			LOGGER.error("Error accessing bean property", e);
+			return null;
+		}
+	}
+}
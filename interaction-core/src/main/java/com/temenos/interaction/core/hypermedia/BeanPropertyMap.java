@@ -0,0 +1,211 @@
+package com.temenos.interaction.core.hypermedia;
+
+/*
+ * #%L
+ * interaction-core
+ * %%
+ * Copyright (C) 2012 - 2017 Temenos Holdings N.V.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * The properties of a bean as a map, reading each property from the bean the
+ * first time it is asked for rather than all of them up front.
+ *
+ * The map can be modified, directly or through its views and their
+ * iterators and entries; the first modification copies the properties read
+ * so far and the remaining ones into a {@link HashMap} used from then on.
+ * Like a HashMap, it is not thread safe.
+ */
+final class BeanPropertyMap extends AbstractMap<String, Object> {
+	private static final Object NOT_READ = new Object();
+
+	private final Object bean;
+	private final BeanAccessors accessors;
+	private Object[] values;
+	private Map<String, Object> copy;
+	private Set<Map.Entry<String, Object>> entrySet;
+
+	BeanPropertyMap(Object bean, BeanAccessors accessors) {
+		this.bean = bean;
+		this.accessors = accessors;
+	}
+
+	private Object value(int index) {
+		if (values == null) {
+			values = new Object[accessors.size()];
+			Arrays.fill(values, NOT_READ);
+		}
+		Object value = values[index];
+		if (value == NOT_READ) {
+			value = accessors.get(bean, index);
+			values[index] = value;
+		}
+		return value;
+	}
+
+	private Map<String, Object> modifiable() {
+		if (copy == null) {
+			Map<String, Object> properties = new HashMap<String, Object>(accessors.size() * 2);
+			for (int i = 0; i < accessors.size(); i++) {
+				properties.put(accessors.getName(i), value(i));
+			}
+			copy = properties;
+		}
+		return copy;
+	}
+
+	@Override
+	public Object get(Object key) {
+		if (copy != null) {
+			return copy.get(key);
+		}
+		int index = accessors.indexOf(key);
+		return index >= 0 ? value(index) : null;
+	}
+
+	@Override
+	public boolean containsKey(Object key) {
+		if (copy != null) {
+			return copy.containsKey(key);
+		}
+		return accessors.indexOf(key) >= 0;
+	}
+
+	@Override
+	public int size() {
+		return copy != null ? copy.size() : accessors.size();
+	}
+
+	@Override
+	public Object put(String key, Object value) {
+		return modifiable().put(key, value);
+	}
+
+	@Override
+	public Object remove(Object key) {
+		return modifiable().remove(key);
+	}
+
+	@Override
+	public void clear() {
+		modifiable().clear();
+	}
+
+	@Override
+	public Set<Map.Entry<String, Object>> entrySet() {
+		if (entrySet == null) {
+			entrySet = new AbstractSet<Map.Entry<String, Object>>() {
+				@Override
+				public Iterator<Map.Entry<String, Object>> iterator() {
+					return copy != null ? copy.entrySet().iterator() : new PropertyIterator();
+				}
+
+				@Override
+				public int size() {
+					return BeanPropertyMap.this.size();
+				}
+			};
+		}
+		return entrySet;
+	}
+
+	/*
+	 * Iterates over the properties of the bean, including once the map has
+	 * been copied by a modification through the iterator or its entries.
+	 */
+	private class PropertyIterator implements Iterator<Map.Entry<String, Object>> {
+		private int next;
+		private int last = -1;
+
+		@Override
+		public boolean hasNext() {
+			return next < accessors.size();
+		}
+
+		@Override
+		public Map.Entry<String, Object> next() {
+			if (next >= accessors.size()) {
+				throw new NoSuchElementException();
+			}
+			last = next++;
+			return new PropertyEntry(last);
+		}
+
+		@Override
+		public void remove() {
+			if (last < 0) {
+				throw new IllegalStateException();
+			}
+			modifiable().remove(accessors.getName(last));
+			last = -1;
+		}
+	}
+
+	private class PropertyEntry implements Map.Entry<String, Object> {
+		private final int index;
+
+		PropertyEntry(int index) {
+			this.index = index;
+		}
+
+		@Override
+		public String getKey() {
+			return accessors.getName(index);
+		}
+
+		@Override
+		public Object getValue() {
+			return copy != null ? copy.get(getKey()) : value(index);
+		}
+
+		@Override
+		public Object setValue(Object value) {
+			return modifiable().put(getKey(), value);
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof Map.Entry)) {
+				return false;
+			}
+			Map.Entry<?, ?> other = (Map.Entry<?, ?>) obj;
+			Object value = getValue();
+			return getKey().equals(other.getKey())
+					&& (value != null ? value.equals(other.getValue()) : other.getValue() == null);
+		}
+
+		@Override
+		public int hashCode() {
+			Object value = getValue();
+			return getKey().hashCode() ^ (value != null ? value.hashCode() : 0);
+		}
+
+		@Override
+		public String toString() {
+			return getKey() + "=" + getValue();
+		}
+	}
+}
@@ -22,26 +22,14 @@ package com.temenos.interaction.core.hypermedia;
  */
 
 
-import java.beans.BeanInfo;
-import java.beans.IntrospectionException;
-import java.beans.Introspector;
-import java.beans.PropertyDescriptor;
-import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
-import java.util.HashMap;
 import java.util.Map;
 
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
-
 /**
  * Implements transformations from regular Java beans (POJOs)
  * @see {@link Transformer}
  * @author aphethean
  */
 public class BeanTransformer implements Transformer {
-	private final Logger logger = LoggerFactory.getLogger(BeanTransformer.class);
-	
 	static class ReservedProperty {
 		private static final String[] ALL_RESERVED_PROPERTIES = {"CLASS"};
 		
@@ -57,35 +45,15 @@ public class BeanTransformer implements Transformer {
 	}
 	
 	/**
+	 * Return the readable properties of the entity, read with accessors
+	 * introspected once per class. The properties are read when first asked
+	 * for, a copy is made when the returned map is first modified.
 	 * @precondition entity not null
 	 */
 	@Override
 	public Map<String, Object> transform(Object entity) {
 		assert(entity != null);
-		Map<String, Object> map = new HashMap<String, Object>();
-		
-		try {
-			BeanInfo beanInfo = Introspector.getBeanInfo(entity.getClass());
-			for (PropertyDescriptor propertyDesc : beanInfo.getPropertyDescriptors()) {
-			    String propertyName = propertyDesc.getName();
-			    if (!ReservedProperty.contains(propertyName)) {
-			    	Method readMethod = propertyDesc.getReadMethod();
-			    	if (readMethod != null) {
-			    		Object value = readMethod.invoke(entity);
-			    		map.put(propertyName, value);
-			    	}
-			    }
-			}
-		} catch (IllegalArgumentException e) {
-			logger.error("Error accessing bean property", e);
-		} catch (IntrospectionException e) {
-			logger.error("Error accessing bean property", e);
-		} catch (IllegalAccessException e) {
-			logger.error("Error accessing bean property", e);
-		} catch (InvocationTargetException e) {
-			logger.error("Error accessing bean property", e);
-		}
-		return map;
+		return new BeanPropertyMap(entity, BeanAccessors.forClass(entity.getClass()));
 	}
 
 	/**
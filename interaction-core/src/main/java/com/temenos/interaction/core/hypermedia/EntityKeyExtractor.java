@@ -0,0 +1,113 @@
+package com.temenos.interaction.core.hypermedia;
+
+/*
+ * #%L
+ * interaction-core
+ * %%
+ * Copyright (C) 2012 - 2017 Temenos Holdings N.V.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+import java.beans.Introspector;
+import java.util.List;
+
+import org.odata4j.core.OEntity;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.temenos.interaction.core.entity.Entity;
+import com.temenos.interaction.core.entity.EntityMetadata;
+import com.temenos.interaction.core.entity.EntityProperty;
+
+/**
+ * Extracts the key of the entities of one entity type, used as the id of the
+ * resources embedded for each entity of a collection.
+ *
+ * The id field is looked up in the {@link EntityMetadata} once, and the
+ * accessor of a bean entity once per class, so that extracting the key of
+ * each entity of a large collection is a plain property read.
+ */
+final class EntityKeyExtractor {
+	private static final Logger LOGGER = LoggerFactory.getLogger(EntityKeyExtractor.class);
+
+	private final EntityMetadata entityMetadata;
+	private final String idField;
+	private volatile BeanKey beanKey;
+
+	EntityKeyExtractor(EntityMetadata entityMetadata) {
+		this.entityMetadata = entityMetadata;
+		List<String> idFields = entityMetadata != null ? entityMetadata.getIdFields() : null;
+		this.idField = idFields != null && !idFields.isEmpty() ? idFields.get(0) : null;
+	}
+
+	/**
+	 * Return true if this extractor was derived from these metadata.
+	 */
+	boolean isFor(EntityMetadata entityMetadata) {
+		return this.entityMetadata == entityMetadata;
+	}
+
+	/**
+	 * Return the key of the entity, or null if it has none.
+	 */
+	String extractKey(Object entity) {
+		if (entity instanceof OEntity) {
+			String key = ((OEntity) entity).getEntityKey().toKeyStringWithoutParentheses();
+			return key.indexOf('\'') >= 0 ? key.replace("'", "") : key;
+		}
+		if (entity == null || idField == null) {
+			return null;
+		}
+		Object value;
+		if (entity instanceof Entity) {
+			EntityProperty property = ((Entity) entity).getProperties().getProperty(idField);
+			value = property != null ? property.getValue() : null;
+		} else {
+			BeanKey key = beanKey;
+			if (key == null || key.type != entity.getClass()) {
+				key = new BeanKey(entity.getClass(), idField);
+				beanKey = key;
+			}
+			if (key.index < 0) {
+				LOGGER.warn("Failed to add record id while trying to embed current collection resource, {} has no property {}", key.type.getName(), idField);
+				return null;
+			}
+			value = key.accessors.get(entity, key.index);
+		}
+		return value != null ? value.toString() : null;
+	}
+
+	/*
+	 * The accessor of the id field of one bean class, read by its getter
+	 * get<IdField> as the id field may be capitalized, e.g. Id or Code.
+	 */
+	private static final class BeanKey {
+		final Class<?> type;
+		final BeanAccessors accessors;
+		final int index;
+
+		BeanKey(Class<?> type, String idField) {
+			this.type = type;
+			this.accessors = BeanAccessors.forClass(type);
+			int i = accessors.indexOf(idField);
+			if (i < 0 && !idField.isEmpty()) {
+				// the name Introspector gives the property of the getter
+				i = accessors.indexOf(Introspector.decapitalize(Character.toUpperCase(idField.charAt(0)) + idField.substring(1)));
+			}
+			this.index = i;
+		}
+	}
+}
@@ -22,7 +22,6 @@ package com.temenos.interaction.core.hypermedia;
  */
 
 
-import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
@@ -76,12 +75,8 @@ public class HypermediaTemplateHelper {
 	 * a URI template. 
 	 */
 	public static String[] getPathTemplateParameters(String pathTemplate) {
-		List<String> params = new ArrayList<String>();
-		Matcher m = TEMPLATE_PATTERN.matcher(pathTemplate);
-		while(m.find()) {
-			params.add(m.group(1));
-		}
-		return params.toArray(new String[0]);
+		List<String> params = UriTemplate.compile(pathTemplate).getParameterNames();
+		return params.toArray(new String[params.size()]);
 	}
 
 	/**
@@ -92,26 +87,38 @@ public class HypermediaTemplateHelper {
 	 * @return
 	 */
 	public static String templateReplace(String template, Map<String, Object> properties) {
-		String result = template;
-		Map<String, Object> normalizedProperties = null;
+		if (template == null) {
+			return null;
+		}
+		return templateReplace(UriTemplate.compile(template), properties);
+	}
+
+	/**
+	 * As {@link #templateReplace(String, Map)}, for a template compiled
+	 * beforehand. The properties are only normalised when a token cannot be
+	 * replaced by a property as it is.
+	 * @param template
+	 * @param properties
+	 * @return
+	 */
+	public static String templateReplace(UriTemplate template, Map<String, Object> properties) {
+		if (!template.hasParameters()) {
+			return template.getTemplate();
+		}
 		try {
-			if (template != null) {
-				Matcher m = TEMPLATE_PATTERN.matcher(template);
-				while(m.find()) {
-					String param = m.group(1);
-					if(null == normalizedProperties) {
-						normalizedProperties = HypermediaTemplateHelper.normalizeProperties(properties);
-					}
-					if (normalizedProperties.containsKey(param)) {
-						// replace template tokens
-						result = result.replaceAll(Pattern.quote("{"+param+"}"), Matcher.quoteReplacement(normalizedProperties.get(param).toString()));
-					}
+			Map<String, Object> values = properties;
+			for (String param : template.getParameterNames()) {
+				Object value = properties.get(param);
+				if (value == null || value instanceof OCollection) {
+					values = normalizeProperties(properties);
+					break;
 				}
 			}
+			return template.expand(values);
 		} catch (Exception e) {
 			LOGGER.error("An error occurred while replacing tokens in ["+template+"]", e);
+			return template.getTemplate();
 		}
-		return result;
 	}
 
 	/**
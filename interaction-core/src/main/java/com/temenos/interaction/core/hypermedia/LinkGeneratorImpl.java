@@ -100,12 +100,12 @@ public class LinkGeneratorImpl implements LinkGenerator {
                 return null;
             }
 
-            UriBuilder linkTemplate = UriBuilder.fromUri(RequestContext.getRequestContext().getBasePath());
+            String basePath = RequestContext.getRequestContext().getBasePath();
 
             if (targetState instanceof DynamicResourceState) {
-                return createLinkForDynamicResource(linkTemplate, linkProperties, targetState, entity);
+                return createLinkForDynamicResource(UriBuilder.fromUri(basePath), linkProperties, targetState, entity);
             } else {
-                return createLinkForResource(linkTemplate, linkProperties, targetState, queryParameters, entity);
+                return createLinkForResource(basePath, linkProperties, targetState, queryParameters, entity);
             }
         } catch (IllegalArgumentException e) {
             logger.warn("Dead link [" + transition + "]", e);
@@ -119,9 +119,16 @@ public class LinkGeneratorImpl implements LinkGenerator {
     }
 
     private void configureLink(UriBuilder linkTemplate, Map<String, Object> transitionProperties, String targetResourcePath) {
+        UriTemplate targetPathTemplate = targetResourcePath != null ? UriTemplate.compile(targetResourcePath) : null;
+        for (ParameterAndValue param : getQueryParameters(transitionProperties, targetPathTemplate)) {
+            linkTemplate.queryParam(param.getParameter(), param.getValue());
+        }
+    }
+
+    private List<ParameterAndValue> getQueryParameters(Map<String, Object> transitionProperties, UriTemplate targetPathTemplate) {
         // Pass uri parameters as query parameters if they are not
         // replaceable in the path, and replace any token.
-        Map<String, String> uriParameters = transition.getCommand().getUriParameters();
+        Map<String, UriTemplate> uriParameters = transition.getCommand().getUriParameterTemplates();
         MultivaluedMap<String, String> outQueryParams = new MultivaluedMapImpl<String, String>();
         if (interactionContext != null) {
             MultivaluedMap<String, String> outQueryParamsTemp = interactionContext.getOutQueryParameters();
@@ -137,22 +144,24 @@ public class LinkGeneratorImpl implements LinkGenerator {
         }
         
         if (uriParameters != null) {
-            for (String key : uriParameters.keySet()) {
-                String value = uriParameters.get(key);
-                if (!targetResourcePath.contains("{" + key + "}")) {
-                    String paramValue = HypermediaTemplateHelper.templateReplace(value, transitionProperties);
+            for (Map.Entry<String, UriTemplate> uriParameter : uriParameters.entrySet()) {
+                String key = uriParameter.getKey();
+                if (targetPathTemplate == null || !targetPathTemplate.hasParameter(key)) {
+                    String paramValue = HypermediaTemplateHelper.templateReplace(uriParameter.getValue(), transitionProperties);
                     if (paramValue != null) {
                         outQueryParams.putSingle(key, paramValue);
                     }
                 }
             }
         }
-        
+
+        List<ParameterAndValue> queryParams = new ArrayList<ParameterAndValue>();
         for (Map.Entry<String, List<String>> param : outQueryParams.entrySet()) {
             for(String paramValue: param.getValue()) {
-                linkTemplate.queryParam(param.getKey(), paramValue);
+                queryParams.add(new ParameterAndValue(param.getKey(), paramValue));
             }
         }
+        return queryParams;
     }
 
     private String getTargetRelValue(ResourceState targetState) {
@@ -174,11 +183,11 @@ public class LinkGeneratorImpl implements LinkGenerator {
         return transition.getLabel() != null && !transition.getLabel().equals("") ? transition.getLabel() : transition.getTarget().getName();
     }
 
-    private void addQueryParams(MultivaluedMap<String, String> queryParameters, boolean allQueryParameters, UriBuilder linkTemplate, String targetResourcePath, Map<String, String> uriParameters) {
+    private void addQueryParams(MultivaluedMap<String, String> queryParameters, boolean allQueryParameters, List<ParameterAndValue> queryParams, UriTemplate targetPathTemplate, Map<String, String> uriParameters) {
         if (queryParameters != null && allQueryParameters) {
             for (String param : queryParameters.keySet()) {
-                if (!targetResourcePath.contains("{" + param + "}") && (uriParameters == null || !uriParameters.containsKey(param))) {
-                    linkTemplate.queryParam(param, queryParameters.getFirst(param));
+                if (!targetPathTemplate.hasParameter(param) && (uriParameters == null || !uriParameters.containsKey(param))) {
+                    queryParams.add(new ParameterAndValue(param, queryParameters.getFirst(param)));
                 }
             }
         }
@@ -234,10 +243,10 @@ public class LinkGeneratorImpl implements LinkGenerator {
         URI href = linkTemplate.buildFromEncodedMap(linkPropertiesMap);
 
         Transition resolvedTransition = rebuildTransitionWithResolvedTarget(targetState);
-        return buildLink(resolvedTransition, linkProperties, entity, rel, href, method);
+        return buildLink(resolvedTransition, linkProperties, entity, rel, href.toASCIIString(), method);
     }
 
-    private Link createLinkForResource(UriBuilder linkTemplate, LinkProperties linkProperties, ResourceState targetState, MultivaluedMap<String, String> queryParameters, Object entity) {
+    private Link createLinkForResource(String basePath, LinkProperties linkProperties, ResourceState targetState, MultivaluedMap<String, String> queryParameters, Object entity) {
         Map<String, Object> encodedLinkPropertiesMap = new HashMap<String, Object>();
         for (String key : linkProperties.getTransitionProperties().keySet()) {
         	Object value = linkProperties.getTransitionProperties().get(key);
@@ -252,32 +261,118 @@ public class LinkGeneratorImpl implements LinkGenerator {
         }
 
         String targetPath = targetState.getPath();
-        linkTemplate.path(targetPath);
-        configureLink(linkTemplate, encodedLinkPropertiesMap, targetPath);
+        UriTemplate targetPathTemplate = transition.getTargetPathTemplate();
+        if (targetPathTemplate == null) {
+            throw new IllegalArgumentException("No path for target state [" + targetState.getName() + "]");
+        }
+        List<ParameterAndValue> queryParams = getQueryParameters(encodedLinkPropertiesMap, targetPathTemplate);
         String rel = getTargetRelValue(targetState);
 
         // Pass any query parameters
-        addQueryParams(queryParameters, allQueryParameters, linkTemplate, targetState.getPath(), transition.getCommand().getUriParameters());
+        addQueryParams(queryParameters, allQueryParameters, queryParams, targetPathTemplate, transition.getCommand().getUriParameters());
 
         // Build href from template
-        URI href;
+        String href;
         if (entity != null && resourceStateMachine.getTransformer() == null) {
-            logger.debug("Building link with entity (No Transformer) [" + entity + "] [" + transition + "]");
-            href = linkTemplate.build(entity);
+            logger.debug("Building link with entity (No Transformer) [{}] [{}]", entity, transition);
+            href = createUriBuilder(basePath, targetPath, queryParams).build(entity).toASCIIString();
         } else {
             // Links in the transition properties are already encoded so
             // build the href using encoded map.
-            href = linkTemplate.buildFromEncodedMap(encodedLinkPropertiesMap);
+            href = buildEncodedHref(basePath, targetPathTemplate, encodedLinkPropertiesMap, queryParams);
+            if (href == null) {
+                href = createUriBuilder(basePath, targetPath, queryParams).buildFromEncodedMap(encodedLinkPropertiesMap).toASCIIString();
+            }
         }
 
         return buildLink(transition, linkProperties, entity, rel, href, transition.getCommand().getMethod());
     }
 
-    private Link buildLink(Transition resolvedTransition, LinkProperties linkProperties, Object entity, String rel, URI href, String method) {
+    private UriBuilder createUriBuilder(String basePath, String targetPath, List<ParameterAndValue> queryParams) {
+        UriBuilder linkTemplate = UriBuilder.fromUri(basePath);
+        linkTemplate.path(targetPath);
+        for (ParameterAndValue param : queryParams) {
+            linkTemplate.queryParam(param.getParameter(), param.getValue());
+        }
+        return linkTemplate;
+    }
+
+    /*
+     * Build the href directly from the compiled path template when the
+     * UriBuilder would produce the same result, i.e. the path is simply
+     * appended to the base path, every path parameter has a value and there
+     * is nothing to encode. Return null otherwise.
+     */
+    static String buildEncodedHref(String basePath, UriTemplate pathTemplate, Map<String, Object> encodedValues, List<ParameterAndValue> queryParams) {
+        if (basePath == null || basePath.endsWith("/") || !pathTemplate.getTemplate().startsWith("/")) {
+            return null;
+        }
+        StringBuilder href = new StringBuilder(basePath.length() + pathTemplate.estimateLength() + queryParams.size() * 32);
+        if (!appendIfAllowed(href, basePath, false)) {
+            return null;
+        }
+        int parameterCount = pathTemplate.getLiteralCount() - 1;
+        for (int i = 0; i < parameterCount; i++) {
+            Object value = encodedValues.get(pathTemplate.getParameter(i));
+            if (value == null || !appendIfAllowed(href, pathTemplate.getLiteral(i), false)
+                    || !appendIfAllowed(href, value.toString(), false)) {
+                return null;
+            }
+        }
+        if (!appendIfAllowed(href, pathTemplate.getLiteral(parameterCount), false)) {
+            return null;
+        }
+        for (int i = 0; i < queryParams.size(); i++) {
+            ParameterAndValue param = queryParams.get(i);
+            href.append(i == 0 ? '?' : '&');
+            if (param.getValue() == null || !appendIfAllowed(href, param.getParameter(), true)) {
+                return null;
+            }
+            href.append('=');
+            if (!appendIfAllowed(href, param.getValue(), true)) {
+                return null;
+            }
+        }
+        return href.toString();
+    }
+
+    /*
+     * Append the value if none of its characters would be encoded by the
+     * UriBuilder: unreserved characters, and for a path also sub-delims,
+     * ':', '@', '/' and percent encoded octets.
+     */
+    private static boolean appendIfAllowed(StringBuilder href, String value, boolean query) {
+        int length = value.length();
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9')
+                    || c == '-' || c == '.' || c == '_' || c == '~' || c == '$') {
+                continue;
+            }
+            if (query) {
+                return false;
+            }
+            if (c == '%') {
+                if (i + 2 >= length || !isHexDigit(value.charAt(i + 1)) || !isHexDigit(value.charAt(i + 2))) {
+                    return false;
+                }
+            } else if ("!&'()*+,;=:@/".indexOf(c) < 0) {
+                return false;
+            }
+        }
+        href.append(value);
+        return true;
+    }
+
+    private static boolean isHexDigit(char c) {
+        return (c >= '0' && c <= '9') || (c >= 'a' && c <= 'f') || (c >= 'A' && c <= 'F');
+    }
+
+    private Link buildLink(Transition resolvedTransition, LinkProperties linkProperties, Object entity, String rel, String href, String method) {
         Link link;
         if (linkProperties.getTransitionProperties().containsKey("profileOEntity") && "self".equals(rel) && entity instanceof OEntity) {
             // Create link adding profile to href to be resolved later on AtomXMLProvider
-            link = new Link(resolvedTransition, rel, href.toASCIIString() + "#@" + createLinkForProfile(resolvedTransition), method);
+            link = new Link(resolvedTransition, rel, href + "#@" + createLinkForProfile(resolvedTransition), method);
         } else {
             // Create link as normal behaviour
             String fieldLabel = linkProperties.getTargetFieldFullyQualifiedName();
@@ -285,10 +380,12 @@ public class LinkGeneratorImpl implements LinkGenerator {
             if (fieldLabel != null && fieldLabel.contains(".")) {
                 linkFieldLabel = resolvedTransition.getSource().getEntityName() + "_" + fieldLabel;
             }
-            link = new Link(resolvedTransition, rel, href.toASCIIString(), method, linkFieldLabel);
+            link = new Link(resolvedTransition, rel, href, method, linkFieldLabel);
         }
 
-        logger.debug("Created link for transition [" + resolvedTransition + "] [title=" + resolvedTransition.getId() + ", rel=" + rel + ", method=" + method + ", href=" + href.toString() + "(ASCII=" + href.toASCIIString() + ")]");
+        if (logger.isDebugEnabled()) {
+            logger.debug("Created link for transition [" + resolvedTransition + "] [title=" + resolvedTransition.getId() + ", rel=" + rel + ", method=" + method + ", href=" + href + "]");
+        }
 
         return link;
     }
@@ -0,0 +1,142 @@
+package com.temenos.interaction.core.hypermedia;
+
+/*
+ * #%L
+ * interaction-core
+ * %%
+ * Copyright (C) 2012 - 2017 Temenos Holdings N.V.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.temenos.interaction.core.hypermedia.expression.BatchExpression;
+import com.temenos.interaction.core.hypermedia.expression.Expression;
+
+/**
+ * The links of a resource state worked out ahead of any request: its self
+ * transition and, in order, the transitions seen by user agents with their
+ * flags and conditions. Built by {@link ResourceState#getLinkPlan()} when the
+ * state is registered, and again whenever its transitions change.
+ */
+public final class LinkPlan {
+
+	private final Transition selfTransition;
+	private final Step[] steps;
+
+	private LinkPlan(Transition selfTransition, Step[] steps) {
+		this.selfTransition = selfTransition;
+		this.steps = steps;
+	}
+
+	/**
+	 * Compile the links of the given state.
+	 *
+	 * @param state
+	 *            the state, not null
+	 */
+	public static LinkPlan compile(ResourceState state) {
+		if (state == null) {
+			throw new IllegalArgumentException("State must not be null");
+		}
+		List<Step> steps = new ArrayList<Step>();
+		for (Transition transition : state.getTransitions()) {
+			TransitionCommandSpec cs = transition.getCommand();
+			if (cs.isAutoTransition()) {
+				// auto transitions should not be seen by user agents
+				continue;
+			}
+			// compile the target path now rather than on the first request
+			transition.getTargetPathTemplate();
+			steps.add(new Step(transition));
+		}
+		return new LinkPlan(state.getSelfTransition(), steps.toArray(new Step[steps.size()]));
+	}
+
+	/**
+	 * The transition to GET the state itself.
+	 */
+	public Transition getSelfTransition() {
+		return selfTransition;
+	}
+
+	/**
+	 * The transitions seen by user agents, in the order of the state's
+	 * transitions; the array must not be modified.
+	 */
+	public Step[] getSteps() {
+		return steps;
+	}
+
+	@Override
+	public String toString() {
+		return "LinkPlan[self=" + selfTransition + ", steps=" + steps.length + "]";
+	}
+
+	/**
+	 * A transition together with what injecting its links depends on.
+	 */
+	public static final class Step {
+		private final Transition transition;
+		private final boolean forEach;
+		private final boolean embeddedForEach;
+		private final Expression evaluation;
+		private final BatchExpression batchEvaluation;
+
+		Step(Transition transition) {
+			TransitionCommandSpec cs = transition.getCommand();
+			this.transition = transition;
+			this.embeddedForEach = cs.isEmbeddedForEach();
+			this.forEach = cs.isForEach() || embeddedForEach;
+			this.evaluation = cs.getEvaluation();
+			this.batchEvaluation = evaluation instanceof BatchExpression ? (BatchExpression) evaluation : null;
+		}
+
+		public Transition getTransition() {
+			return transition;
+		}
+
+		/**
+		 * Is a link created for each item of a collection?
+		 */
+		public boolean isForEach() {
+			return forEach;
+		}
+
+		/**
+		 * Is the target embedded for each item of a collection?
+		 */
+		public boolean isEmbeddedForEach() {
+			return embeddedForEach;
+		}
+
+		/**
+		 * The condition of the link, or null if it is unconditional.
+		 */
+		public Expression getEvaluation() {
+			return evaluation;
+		}
+
+		/**
+		 * The condition of the link if it can be prepared for a whole
+		 * collection, otherwise null.
+		 */
+		public BatchExpression getBatchEvaluation() {
+			return batchEvaluation;
+		}
+	}
+}
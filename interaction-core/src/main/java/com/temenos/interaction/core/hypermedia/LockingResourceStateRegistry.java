@@ -0,0 +1,94 @@
+package com.temenos.interaction.core.hypermedia;
+
+/*
+ * #%L
+ * interaction-core
+ * %%
+ * Copyright (C) 2012 - 2017 Temenos Holdings N.V.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+import java.util.Map;
+import java.util.Set;
+
+import com.temenos.interaction.core.MapWithReadWriteLock;
+
+/**
+ * A {@link ResourceStateRegistry} that keeps each map behind its own
+ * read/write lock and modifies it in place; the path router is replaced once a
+ * modification is complete. This is the default registry of a
+ * {@link ResourceStateMachine}.
+ */
+public class LockingResourceStateRegistry extends ResourceStateRegistry implements ResourceStateRegistry.Tables {
+
+	private final Map<String, Transition> transitionsById = new MapWithReadWriteLock<String, Transition>();
+	private final Map<String, Transition> transitionsByRel = new MapWithReadWriteLock<String, Transition>();
+	private final Map<String, Set<String>> interactionsByPath = new MapWithReadWriteLock<String, Set<String>>();
+	private final Map<String, Set<String>> interactionsByState = new MapWithReadWriteLock<String, Set<String>>();
+	private final Map<String, Set<String>> resourceStateNamesByPath = new MapWithReadWriteLock<String, Set<String>>();
+	private final Map<String, ResourceState> resourceStatesByName = new MapWithReadWriteLock<String, ResourceState>();
+	private volatile ResourcePathRouter pathRouter = ResourcePathRouter.EMPTY;
+
+	@Override
+	public Tables read() {
+		return this;
+	}
+
+	@Override
+	Editor edit() {
+		return new Editor(this, false) {
+			@Override
+			void publish() {
+				pathRouter = pathRouter();
+			}
+		};
+	}
+
+	@Override
+	public Map<String, Transition> getTransitionsById() {
+		return transitionsById;
+	}
+
+	@Override
+	public Map<String, Transition> getTransitionsByRel() {
+		return transitionsByRel;
+	}
+
+	@Override
+	public Map<String, Set<String>> getInteractionsByPath() {
+		return interactionsByPath;
+	}
+
+	@Override
+	public Map<String, Set<String>> getInteractionsByState() {
+		return interactionsByState;
+	}
+
+	@Override
+	public Map<String, Set<String>> getResourceStateNamesByPath() {
+		return resourceStateNamesByPath;
+	}
+
+	@Override
+	public Map<String, ResourceState> getResourceStatesByName() {
+		return resourceStatesByName;
+	}
+
+	@Override
+	public ResourcePathRouter getPathRouter() {
+		return pathRouter;
+	}
+}
@@ -0,0 +1,415 @@
+package com.temenos.interaction.core.hypermedia;
+
+/*
+ * #%L
+ * interaction-core
+ * %%
+ * Copyright (C) 2012 - 2017 Temenos Holdings N.V.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * An immutable segment trie of resource path templates that resolves a
+ * request path, e.g. <code>/Customers('100')/Accounts</code>, to the
+ * templates matching it, e.g. <code>/Customers('{id}')/Accounts</code>.
+ *
+ * Each path segment is split into its name and, for the OData key syntax
+ * <code>entity('{id}')</code>, its key; names and keys are either literals,
+ * variables (<code>{id}</code>) or patterns (<code>Customer_{id}</code>).
+ * Literals take precedence over patterns, and patterns over variables.
+ *
+ * Matching takes time proportional to the length of the path and does not
+ * allocate. Adding or removing a template copies only the nodes on its path,
+ * so a router can be shared freely between threads.
+ */
+public final class ResourcePathRouter {
+
+	public static final ResourcePathRouter EMPTY = new ResourcePathRouter(Node.EMPTY);
+
+	private static final int LITERAL = 0;
+	private static final int VARIABLE = 1;
+	private static final int PATTERN = 2;
+	private static final int KEY_VARIABLE = 3;
+
+	private final Node root;
+
+	private ResourcePathRouter(Node root) {
+		this.root = root;
+	}
+
+	/**
+	 * Return the path templates matching the given request path, or an empty
+	 * list if no template matches. Several templates are only returned when
+	 * they differ in the names of their variables.
+	 *
+	 * @param path
+	 *            the request path, without query
+	 */
+	public List<String> match(String path) {
+		if (path == null) {
+			return Collections.emptyList();
+		}
+		Node node = match(root, path, 0);
+		return node != null ? node.templates : Collections.<String>emptyList();
+	}
+
+	/**
+	 * Return true if no template has been added to this router.
+	 */
+	public boolean isEmpty() {
+		return root.isEmpty();
+	}
+
+	/**
+	 * Return a router that also matches the given path template.
+	 */
+	ResourcePathRouter with(String template) {
+		Node newRoot = with(root, parse(template), 0, template);
+		return newRoot == root ? this : new ResourcePathRouter(newRoot);
+	}
+
+	/**
+	 * Return a router that no longer matches the given path template.
+	 */
+	ResourcePathRouter without(String template) {
+		Node newRoot = without(root, parse(template), 0, template);
+		if (newRoot == root) {
+			return this;
+		}
+		return newRoot.isEmpty() ? EMPTY : new ResourcePathRouter(newRoot);
+	}
+
+	/*
+	 * Match the path from the segment starting at 'from', backtracking to less
+	 * specific edges when a more specific one does not lead to a template.
+	 */
+	private static Node match(Node node, String path, int from) {
+		int length = path.length();
+		int start = from;
+		while (start < length && path.charAt(start) == '/') {
+			start++;
+		}
+		if (start == length) {
+			return node.templates.isEmpty() ? null : node;
+		}
+		int end = path.indexOf('/', start);
+		if (end < 0) {
+			end = length;
+		}
+		int key = keyStart(path, start, end);
+		int nameEnd = key >= 0 ? key : end;
+		if (nameEnd == start) {
+			return matchKey(node, path, key, end);
+		}
+
+		Node result;
+		Node literal = node.literal(path, start, nameEnd);
+		if (literal != null && (result = matchKey(literal, path, key, end)) != null) {
+			return result;
+		}
+		for (int i = 0; i < node.patternNodes.length; i++) {
+			if (matchesPattern(node.prefixes[i], node.suffixes[i], path, start, nameEnd)
+					&& (result = matchKey(node.patternNodes[i], path, key, end)) != null) {
+				return result;
+			}
+		}
+		if (node.variable != null) {
+			if ((result = matchKey(node.variable, path, key, end)) != null) {
+				return result;
+			}
+			// a variable may also take the whole segment, key included
+			if (key >= 0 && (result = match(node.variable, path, end)) != null) {
+				return result;
+			}
+		}
+		return null;
+	}
+
+	private static Node matchKey(Node node, String path, int key, int end) {
+		if (key < 0) {
+			return match(node, path, end);
+		}
+		Node result;
+		Node literal = node.literal(path, key, end);
+		if (literal != null && (result = match(literal, path, end)) != null) {
+			return result;
+		}
+		if (node.keyVariable != null && end - key > 2) {
+			return match(node.keyVariable, path, end);
+		}
+		return null;
+	}
+
+	/*
+	 * Return the index of the '(' opening the key of a segment, or -1 if the
+	 * segment has no key.
+	 */
+	private static int keyStart(String path, int start, int end) {
+		if (path.charAt(end - 1) != ')') {
+			return -1;
+		}
+		for (int i = start; i < end; i++) {
+			if (path.charAt(i) == '(') {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	private static boolean matchesPattern(String prefix, String suffix, String path, int start, int end) {
+		return end - start >= prefix.length() + suffix.length()
+				&& path.regionMatches(start, prefix, 0, prefix.length())
+				&& path.regionMatches(end - suffix.length(), suffix, 0, suffix.length());
+	}
+
+	/*
+	 * Compare a literal with a region of the path, consistently with
+	 * String#compareTo.
+	 */
+	private static int compare(String literal, String path, int start, int end) {
+		int length = end - start;
+		int limit = Math.min(literal.length(), length);
+		for (int i = 0; i < limit; i++) {
+			char c1 = literal.charAt(i);
+			char c2 = path.charAt(start + i);
+			if (c1 != c2) {
+				return c1 - c2;
+			}
+		}
+		return literal.length() - length;
+	}
+
+	private static Node with(Node node, Edge[] edges, int index, String template) {
+		if (index == edges.length) {
+			if (node.templates.contains(template)) {
+				return node;
+			}
+			List<String> templates = new ArrayList<String>(node.templates);
+			templates.add(template);
+			return node.withTemplates(templates);
+		}
+		Edge edge = edges[index];
+		Node child = node.child(edge);
+		Node newChild = with(child != null ? child : Node.EMPTY, edges, index + 1, template);
+		return newChild == child ? node : node.withChild(edge, newChild);
+	}
+
+	private static Node without(Node node, Edge[] edges, int index, String template) {
+		if (index == edges.length) {
+			if (!node.templates.contains(template)) {
+				return node;
+			}
+			List<String> templates = new ArrayList<String>(node.templates);
+			templates.remove(template);
+			return node.withTemplates(templates);
+		}
+		Edge edge = edges[index];
+		Node child = node.child(edge);
+		if (child == null) {
+			return node;
+		}
+		Node newChild = without(child, edges, index + 1, template);
+		if (newChild == child) {
+			return node;
+		}
+		return node.withChild(edge, newChild.isEmpty() ? null : newChild);
+	}
+
+	/*
+	 * Split a template into the edges leading to its node, following the same
+	 * segment and key boundaries as the matching.
+	 */
+	private static Edge[] parse(String template) {
+		List<Edge> edges = new ArrayList<Edge>();
+		for (String segment : template.split("/")) {
+			if (segment.isEmpty()) {
+				continue;
+			}
+			int key = keyStart(segment, 0, segment.length());
+			String name = key >= 0 ? segment.substring(0, key) : segment;
+			if (!name.isEmpty()) {
+				int open = name.indexOf('{');
+				int close = name.lastIndexOf('}');
+				if (open == 0 && close == name.length() - 1 && name.indexOf('{', 1) < 0) {
+					edges.add(new Edge(VARIABLE, null, null));
+				} else if (open >= 0 && close > open) {
+					edges.add(new Edge(PATTERN, name.substring(0, open), name.substring(close + 1)));
+				} else {
+					edges.add(new Edge(LITERAL, name, null));
+				}
+			}
+			if (key >= 0) {
+				String keyPart = segment.substring(key);
+				if (keyPart.indexOf('{') >= 0) {
+					edges.add(new Edge(KEY_VARIABLE, null, null));
+				} else {
+					edges.add(new Edge(LITERAL, keyPart, null));
+				}
+			}
+		}
+		return edges.toArray(new Edge[edges.size()]);
+	}
+
+	private static final class Edge {
+		final int type;
+		final String text;
+		final String suffix;
+
+		Edge(int type, String text, String suffix) {
+			this.type = type;
+			this.text = text;
+			this.suffix = suffix;
+		}
+	}
+
+	private static final class Node {
+		static final Node EMPTY = new Node(new String[0], new Node[0], new String[0], new String[0], new Node[0],
+				null, null, Collections.<String>emptyList());
+
+		// sorted literals, including keys such as "()" or "('100')"
+		final String[] literals;
+		final Node[] literalNodes;
+		// patterns, most specific first
+		final String[] prefixes;
+		final String[] suffixes;
+		final Node[] patternNodes;
+		final Node variable;
+		final Node keyVariable;
+		final List<String> templates;
+
+		Node(String[] literals, Node[] literalNodes, String[] prefixes, String[] suffixes, Node[] patternNodes,
+				Node variable, Node keyVariable, List<String> templates) {
+			this.literals = literals;
+			this.literalNodes = literalNodes;
+			this.prefixes = prefixes;
+			this.suffixes = suffixes;
+			this.patternNodes = patternNodes;
+			this.variable = variable;
+			this.keyVariable = keyVariable;
+			this.templates = templates;
+		}
+
+		boolean isEmpty() {
+			return templates.isEmpty() && literals.length == 0 && patternNodes.length == 0 && variable == null
+					&& keyVariable == null;
+		}
+
+		Node literal(String path, int start, int end) {
+			int low = 0;
+			int high = literals.length - 1;
+			while (low <= high) {
+				int mid = (low + high) >>> 1;
+				int cmp = compare(literals[mid], path, start, end);
+				if (cmp < 0) {
+					low = mid + 1;
+				} else if (cmp > 0) {
+					high = mid - 1;
+				} else {
+					return literalNodes[mid];
+				}
+			}
+			return null;
+		}
+
+		Node child(Edge edge) {
+			switch (edge.type) {
+			case LITERAL:
+				int index = Arrays.binarySearch(literals, edge.text);
+				return index >= 0 ? literalNodes[index] : null;
+			case PATTERN:
+				index = patternIndex(edge);
+				return index >= 0 ? patternNodes[index] : null;
+			case VARIABLE:
+				return variable;
+			default:
+				return keyVariable;
+			}
+		}
+
+		Node withTemplates(List<String> templates) {
+			return new Node(literals, literalNodes, prefixes, suffixes, patternNodes, variable, keyVariable,
+					templates.isEmpty() ? Collections.<String>emptyList() : Collections.unmodifiableList(templates));
+		}
+
+		/*
+		 * Return a copy of this node with the child for the edge replaced, or
+		 * removed if the child is null.
+		 */
+		Node withChild(Edge edge, Node child) {
+			switch (edge.type) {
+			case LITERAL:
+				int index = Arrays.binarySearch(literals, edge.text);
+				List<String> newLiterals = new ArrayList<String>(Arrays.asList(literals));
+				List<Node> newLiteralNodes = new ArrayList<Node>(Arrays.asList(literalNodes));
+				if (index >= 0 && child != null) {
+					newLiteralNodes.set(index, child);
+				} else if (index >= 0) {
+					newLiterals.remove(index);
+					newLiteralNodes.remove(index);
+				} else if (child != null) {
+					newLiterals.add(-index - 1, edge.text);
+					newLiteralNodes.add(-index - 1, child);
+				}
+				return new Node(newLiterals.toArray(new String[newLiterals.size()]),
+						newLiteralNodes.toArray(new Node[newLiteralNodes.size()]), prefixes, suffixes, patternNodes,
+						variable, keyVariable, templates);
+			case PATTERN:
+				index = patternIndex(edge);
+				List<String> newPrefixes = new ArrayList<String>(Arrays.asList(prefixes));
+				List<String> newSuffixes = new ArrayList<String>(Arrays.asList(suffixes));
+				List<Node> newPatternNodes = new ArrayList<Node>(Arrays.asList(patternNodes));
+				if (index >= 0 && child != null) {
+					newPatternNodes.set(index, child);
+				} else if (index >= 0) {
+					newPrefixes.remove(index);
+					newSuffixes.remove(index);
+					newPatternNodes.remove(index);
+				} else if (child != null) {
+					int position = 0;
+					int specificity = edge.text.length() + edge.suffix.length();
+					while (position < newPrefixes.size()
+							&& newPrefixes.get(position).length() + newSuffixes.get(position).length() >= specificity) {
+						position++;
+					}
+					newPrefixes.add(position, edge.text);
+					newSuffixes.add(position, edge.suffix);
+					newPatternNodes.add(position, child);
+				}
+				return new Node(literals, literalNodes, newPrefixes.toArray(new String[newPrefixes.size()]),
+						newSuffixes.toArray(new String[newSuffixes.size()]),
+						newPatternNodes.toArray(new Node[newPatternNodes.size()]), variable, keyVariable, templates);
+			case VARIABLE:
+				return new Node(literals, literalNodes, prefixes, suffixes, patternNodes, child, keyVariable, templates);
+			default:
+				return new Node(literals, literalNodes, prefixes, suffixes, patternNodes, variable, child, templates);
+			}
+		}
+
+		private int patternIndex(Edge edge) {
+			for (int i = 0; i < prefixes.length; i++) {
+				if (prefixes[i].equals(edge.text) && suffixes[i].equals(edge.suffix)) {
+					return i;
+				}
+			}
+			return -1;
+		}
+	}
+}
@@ -24,6 +24,7 @@ package com.temenos.interaction.core.hypermedia;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -33,6 +34,8 @@ import java.util.regex.Matcher;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.temenos.interaction.core.command.EntityTagResolver;
+
 public class ResourceState implements Comparable<ResourceState> {
     
     public static final String REL_SEPARATOR = " ";
@@ -66,8 +69,20 @@ public class ResourceState implements Comparable<ResourceState> {
 	private final UriSpecification uriSpecification;
 	/* The max-age to impose on fetched entities */
 	private int maxAge;
+	/* How long after max-age a cached representation may still be served while it is refreshed */
+	private int staleWhileRevalidate;
+	/* the request headers the cached representations of this state vary by */
+	private List<String> varyHeaders = Collections.emptyList();
+	/* cached representations of this state vary by the authenticated user */
+	private boolean varyByPrincipal;
+	/* determines the entity tag of this state's resource without executing its actions */
+	private EntityTagResolver entityTagResolver;
 	
-	private List<Transition> transitions = new ArrayList<Transition>();
+	private final List<Transition> transitions = new ArrayList<Transition>();
+	/* the transitions as returned, only added to through addTransition so that the link plan is discarded */
+	private final List<Transition> readOnlyTransitions = Collections.unmodifiableList(transitions);
+	/* the links of this state, compiled when first needed and discarded when a transition is added */
+	private volatile LinkPlan linkPlan;
 
 	/* error state */
 	private ResourceState errorState;
@@ -242,6 +257,57 @@ public class ResourceState implements Comparable<ResourceState> {
 	public int getMaxAge() {
 		return maxAge;
 	}
+
+	/**
+	 * Set the number of seconds after its max-age during which a cached
+	 * response is still served, while it is refreshed in the background.
+	 */
+	public void setStaleWhileRevalidate(int seconds) {
+		staleWhileRevalidate = seconds;
+	}
+
+	public int getStaleWhileRevalidate() {
+		return staleWhileRevalidate;
+	}
+
+	/**
+	 * Set the request headers, e.g. Accept or Accept-Language, whose values
+	 * select the representation of this state. Responses are cached per
+	 * value of these headers, which are listed in the Vary header.
+	 */
+	public void setVaryHeaders(List<String> headers) {
+		varyHeaders = headers != null ? Collections.unmodifiableList(new ArrayList<String>(headers)) : Collections.<String>emptyList();
+	}
+
+	public List<String> getVaryHeaders() {
+		return varyHeaders;
+	}
+
+	/**
+	 * Set whether the representation of this state depends on the
+	 * authenticated user, in which case responses are cached per user.
+	 */
+	public void setVaryByPrincipal(boolean flag) {
+		varyByPrincipal = flag;
+	}
+
+	public boolean isVaryByPrincipal() {
+		return varyByPrincipal;
+	}
+
+	/**
+	 * Set a cheap way to find out the entity tag of this state's resource,
+	 * used to answer conditional GETs without executing the actions. The
+	 * actions are not executed to authorize such a request either, see
+	 * {@link EntityTagResolver}.
+	 */
+	public void setEntityTagResolver(EntityTagResolver resolver) {
+		entityTagResolver = resolver;
+	}
+
+	public EntityTagResolver getEntityTagResolver() {
+		return entityTagResolver;
+	}
 	
 	public ResourceState getErrorState() {
 		return errorState;
@@ -329,6 +395,7 @@ public class ResourceState implements Comparable<ResourceState> {
 		//Add the transition
 		logger.debug("Putting transition: " + transition.getCommand() + " [" + transition + "]");
 		transitions.add(transition);
+		linkPlan = null;
 	}
 	
 	protected void intialiseTransition(Transition transition) {
@@ -416,10 +483,23 @@ public class ResourceState implements Comparable<ResourceState> {
 
 	/**
 	 * Return all transitions {@link Transition}} from this state.
-	 * @return
+	 * @return the transitions, read only, see {@link #addTransition(Transition)}
 	 */
 	public List<Transition> getTransitions() {
-		return transitions;
+		return readOnlyTransitions;
+	}
+
+	/**
+	 * Return the links of this state compiled from its transitions.
+	 * @return
+	 */
+	public LinkPlan getLinkPlan() {
+		LinkPlan plan = linkPlan;
+		if (plan == null) {
+			plan = LinkPlan.compile(this);
+			linkPlan = plan;
+		}
+		return plan;
 	}
 
 	/**
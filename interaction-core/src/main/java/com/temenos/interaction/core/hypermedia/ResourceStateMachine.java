@@ -21,7 +21,6 @@ package com.temenos.interaction.core.hypermedia;
  * #L%
  */
 
-import java.lang.reflect.Method;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
@@ -32,6 +31,9 @@ import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -46,12 +48,9 @@ import com.temenos.interaction.core.hypermedia.transition.TransitionPropertiesBu
 import com.temenos.interaction.core.workflow.*;
 import com.temenos.interaction.core.workflow.WorkflowCommandBuilderProvider.WorkflowType;
 
-import org.odata4j.core.OEntity;
-import org.odata4j.core.OEntityKey;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.temenos.interaction.core.MapWithReadWriteLock;
 import com.temenos.interaction.core.MultivaluedMapImpl;
 import com.temenos.interaction.core.cache.Cache;
 import com.temenos.interaction.core.command.CommandController;
@@ -59,19 +58,19 @@ import com.temenos.interaction.core.command.CommonAttributes;
 import com.temenos.interaction.core.command.InteractionCommand;
 import com.temenos.interaction.core.command.InteractionContext;
 import com.temenos.interaction.core.command.InteractionException;
-import com.temenos.interaction.core.entity.Entity;
+import com.temenos.interaction.core.command.VersionedCommandController;
 import com.temenos.interaction.core.entity.EntityMetadata;
-import com.temenos.interaction.core.entity.EntityProperty;
 import com.temenos.interaction.core.entity.Metadata;
 import com.temenos.interaction.core.resource.CollectionResource;
 import com.temenos.interaction.core.resource.EntityResource;
 import com.temenos.interaction.core.resource.MetaDataResource;
 import com.temenos.interaction.core.resource.RESTResource;
+import com.temenos.interaction.core.rim.EntityFilterResourceRequestHandler;
 import com.temenos.interaction.core.rim.HTTPHypermediaRIM;
 import com.temenos.interaction.core.rim.ResourceRequestConfig;
+import com.temenos.interaction.core.rim.RequestCoalescer;
 import com.temenos.interaction.core.rim.ResourceRequestHandler;
 import com.temenos.interaction.core.rim.ResourceRequestResult;
-import com.temenos.interaction.core.rim.SequentialResourceRequestHandler;
 
 
 /**
@@ -83,6 +82,7 @@ import com.temenos.interaction.core.rim.SequentialResourceRequestHandler;
  */
 public class ResourceStateMachine {
 	private static final Logger LOGGER = LoggerFactory.getLogger(ResourceStateMachine.class);
+	private static final String REGEX_METACHARACTERS = "\\^$.|?*+()[]{}";
 
 	// members
 	ResourceState initial;
@@ -90,18 +90,23 @@ public class ResourceStateMachine {
 	Transformer transformer;
 	CommandController commandController;
 	Cache responseCache;
+	ResourceRequestHandler resourceRequestHandler;
+	RequestCoalescer requestCoalescer;
 	ResourceStateProvider resourceStateProvider;
 	ResourceLocatorProvider resourceLocatorProvider;
 	ResourceParameterResolverProvider parameterResolverProvider;
 	WorkflowCommandBuilderProvider workflowCommandBuilderProvider;
 
 	// optimised access
-	private Map<String, Transition> transitionsById = new MapWithReadWriteLock<String, Transition>();
-	private Map<String, Transition> transitionsByRel = new MapWithReadWriteLock<String, Transition>();
-	private Map<String, Set<String>> interactionsByPath = new MapWithReadWriteLock<String, Set<String>>();
-	private Map<String, Set<String>> interactionsByState = new MapWithReadWriteLock<String, Set<String>>();
-    private Map<String, Set<String>> resourceStateNamesByPath = new MapWithReadWriteLock<String, Set<String>>();
-	private Map<String, ResourceState> resourceStatesByName = new MapWithReadWriteLock<String, ResourceState>();
+	private ResourceStateRegistry registry = new LockingResourceStateRegistry();
+	// states whose resources change with those of a state, cleared when states are registered
+	private final ConcurrentMap<String, Set<String>> affectedStateNames = new ConcurrentHashMap<String, Set<String>>();
+	// workflows assembled from the actions of states, cleared when states are registered
+	private final ConcurrentMap<String, CompiledWorkflow> workflows = new ConcurrentHashMap<String, CompiledWorkflow>();
+	// incremented as the workflows are cleared, a workflow assembled before is not used
+	private final AtomicLong workflowsGeneration = new AtomicLong();
+	// key extractors of the entities embedding resources for each entity, replaced with their metadata
+	private final ConcurrentMap<String, EntityKeyExtractor> keyExtractors = new ConcurrentHashMap<String, EntityKeyExtractor>();
 
 	public ResourceStateMachine(ResourceState initialState) {
 		this(initialState, null, null, null);
@@ -126,6 +131,7 @@ public class ResourceStateMachine {
 
 	public void setCommandController(CommandController commandController) {
 		this.commandController = commandController;
+		clearWorkflows();
 	}
 
 	public Cache getCache() {
@@ -136,19 +142,106 @@ public class ResourceStateMachine {
 		responseCache = cache;
 	}
 
+	/**
+	 * The handler used to get embedded resources, or null for the
+	 * {@link com.temenos.interaction.core.rim.SequentialResourceRequestHandler}.
+	 */
+	public ResourceRequestHandler getResourceRequestHandler() {
+		return resourceRequestHandler;
+	}
+
+	public void setResourceRequestHandler(ResourceRequestHandler resourceRequestHandler) {
+		this.resourceRequestHandler = resourceRequestHandler;
+	}
+
+	/**
+	 * The coalescer of identical concurrent safe requests, or null if each
+	 * request is processed on its own. Only requests of states with a maxAge
+	 * are coalesced, and only when there is a response cache.
+	 */
+	public RequestCoalescer getRequestCoalescer() {
+		return requestCoalescer;
+	}
+
+	public void setRequestCoalescer(RequestCoalescer requestCoalescer) {
+		this.requestCoalescer = requestCoalescer;
+	}
+
 	// TODO support Event
 	public InteractionCommand determineAction(Event event, String resourcePath) {
+		long generation = workflowsGeneration.get();
+		long version = getCommandsVersion();
+		String key = event.getMethod() + " " + resourcePath;
+		CompiledWorkflow workflow = workflows.get(key);
+		if (workflow != null && workflow.isValid(generation, version, null)) {
+			return workflow.command;
+		}
 		List<Action> actions = new ArrayList<Action>();
-		Set<ResourceState> resourceStates = getResourceStatesByPath().get(resourcePath);
+		Set<ResourceState> resourceStates = resourceStatesForPath(registry.read(), resourcePath);
 		for (ResourceState s : resourceStates) {
 			actions.addAll(determineActions(event, s));
 		}
-		return buildWorkflow(event, actions);
+		InteractionCommand command = buildWorkflow(event, actions);
+		if (version >= 0) {
+			workflows.put(key, new CompiledWorkflow(command, generation, version, null));
+		}
+		return command;
+	}
+
+	/**
+	 * Return the workflow of all the actions of the state, as executed to
+	 * get an embedded resource or the target of an auto transition. The
+	 * workflow is assembled once and reused until the state is registered
+	 * again or the commands of a {@link VersionedCommandController} change.
+	 * 
+	 * @param event
+	 * @param state
+	 * @return the workflow, or null if the state has no actions
+	 */
+	public InteractionCommand buildWorkflow(Event event, ResourceState state) {
+		long generation = workflowsGeneration.get();
+		long version = getCommandsVersion();
+		String key = "state " + state.getName();
+		List<Action> actions = state.getActions();
+		CompiledWorkflow workflow = workflows.get(key);
+		if (workflow != null && workflow.isValid(generation, version, actions)) {
+			return workflow.command;
+		}
+		InteractionCommand command = buildWorkflow(event, actions);
+		if (version >= 0) {
+			workflows.put(key, new CompiledWorkflow(command, generation, version, actions));
+		}
+		return command;
+	}
+
+	/*
+	 * Discard the assembled workflows. A workflow being assembled meanwhile
+	 * may still be put afterwards, it is from an older generation and is
+	 * assembled again when it is next used.
+	 */
+	private void clearWorkflows() {
+		workflowsGeneration.incrementAndGet();
+		workflows.clear();
+	}
+
+	/*
+	 * The version of the commands, negative if they are not known to stay the
+	 * same or must not be shared, so that workflows have to be assembled for
+	 * every request. The workflow
+	 * builders are expected to use the command controller of this state
+	 * machine.
+	 */
+	private long getCommandsVersion() {
+		CommandController controller = commandController;
+		if (controller instanceof VersionedCommandController) {
+			return ((VersionedCommandController) controller).getVersion();
+		}
+		return -1;
 	}
 
 	public List<Action> determineActions(Event event, ResourceState state) {
 		List<Action> actions = new ArrayList<Action>();
-		Set<String> interactions = getInteractionByState().get(state.getName());
+		Set<String> interactions = registry.read().getInteractionsByState().get(state.getName());
 		// TODO turn interactions into Events
 		if (interactions.contains(event.getMethod())) {
 			for (Action a : state.getActions()) {
@@ -181,10 +274,16 @@ public class ResourceStateMachine {
 
 	public ResourceState determineState(Event event, String resourcePath) {
 		ResourceState state = null;
-		Set<ResourceState> resourceStates = getResourceStatesByPath().get(resourcePath);
+		ResourceStateRegistry.Tables tables = registry.read();
+		// the resource path of a RIM is a registered template, any other path
+		// is routed to the templates it matches
+		Set<ResourceState> resourceStates = resourceStatesForPath(tables, resourcePath);
+		if (resourceStates == null) {
+			resourceStates = resolveResourceStates(tables, resourcePath, event.getMethod());
+		}
 		if (resourceStates != null) {
 			for (ResourceState s : resourceStates) {
-				Set<String> interactions = getInteractionByState().get(s.getName());
+				Set<String> interactions = tables.getInteractionsByState().get(s.getName());
 				if (interactions.contains(event.getMethod())) {
 					if (state == null || interactions.size() == 1 || !event.getMethod().equals("GET")) { // Avoid
 																											// overriding
@@ -256,6 +355,7 @@ public class ResourceStateMachine {
 
 	public void setWorkflowCommandBuilderProvider(WorkflowCommandBuilderProvider workflowCommandBuilderProvider) {
 		this.workflowCommandBuilderProvider = workflowCommandBuilderProvider;
+		clearWorkflows();
 	}
 
 	/**
@@ -287,20 +387,30 @@ public class ResourceStateMachine {
      *            method
      */
     public synchronized void registerAllStartingFromState(ResourceState state, String method) {
+        ResourceStateRegistry.Editor editor = registry.edit();
+        registerAllStartingFromState(editor, state, method);
+        editor.publish();
+        affectedStateNames.clear();
+        clearWorkflows();
+    }
+
+    private void registerAllStartingFromState(ResourceStateRegistry.Editor editor, ResourceState state, String method) {
 
 		checkAndResolve(state);
         if (state == null) return;
-        populateAccessMaps(state, method);
+        populateAccessMaps(editor, state, method);
 
 		// don't register any further if the current state was already processed
-		if(resourceStatesByName.containsKey(state.getName())) return;
+		if(editor.getResourceState(state.getName()) != null) return;
 
-		resourceStatesByName.put(state.getName(), state);
+		editor.putResourceState(state.getName(), state);
+		// compile the links ahead of the first request
+		state.getLinkPlan();
 
         // Register all target resources from this resource
         for (Transition tmpTransition : state.getTransitions()) {
             if(tmpTransition.getTarget() != null) {
-               	registerAllStartingFromState(tmpTransition.getTarget(), tmpTransition.getCommand().getMethod());
+               	registerAllStartingFromState(editor, tmpTransition.getTarget(), tmpTransition.getCommand().getMethod());
             }
         }
     }
@@ -324,21 +434,59 @@ public class ResourceStateMachine {
      *            as multiple states can share the same path
 	 */
 	public synchronized void register(ResourceState state, String method) {
+		ResourceStateRegistry.Editor editor = registry.edit();
+		register(editor, state, method);
+		editor.publish();
+		affectedStateNames.clear();
+		clearWorkflows();
+	}
+
+	/**
+	 * Registers the given state with each of the given methods, as
+	 * {@link #register(ResourceState, String)} does, unregistering it from
+	 * each method first if asked to, e.g. because the state has been loaded
+	 * again. The registrations are published together, as a single snapshot
+	 * by a {@link SnapshotResourceStateRegistry}.
+	 * 
+	 * @param state
+	 *            The resource state to register
+	 * @param methods
+	 *            The HTTP methods associated with the state
+	 * @param reregister
+	 *            Whether to unregister the state from each method first
+	 */
+	public synchronized void register(ResourceState state, Collection<String> methods, boolean reregister) {
+		if (state == null) return;
+		ResourceStateRegistry.Editor editor = registry.edit();
+		for (String method : methods) {
+			if (reregister) {
+				unregister(editor, state, method);
+			}
+			register(editor, state, method);
+		}
+		editor.publish();
+		affectedStateNames.clear();
+		clearWorkflows();
+	}
+
+	private void register(ResourceStateRegistry.Editor editor, ResourceState state, String method) {
 
 		checkAndResolve(state);
         if (state == null) return;
-		populateAccessMaps(state, method);
+		populateAccessMaps(editor, state, method);
 
 		// don't register any further if the current state was already processed
-		if(resourceStatesByName.containsKey(state.getName())) return;
+		if(editor.getResourceState(state.getName()) != null) return;
 
-		resourceStatesByName.put(state.getName(), state);
+		editor.putResourceState(state.getName(), state);
+		// compile the links ahead of the first request
+		state.getLinkPlan();
 
 		// Register any embedded / foreach resources linked to this resource
         for (Transition tmpTransition : state.getTransitions()) {
             if(tmpTransition.getTarget() != null) {
                 if (tmpTransition.isAnyOfTypes(Transition.EMBEDDED, Transition.FOR_EACH, Transition.FOR_EACH_EMBEDDED)) {
-                    register(tmpTransition.getTarget(), tmpTransition.getCommand().getMethod());
+                    register(editor, tmpTransition.getTarget(), tmpTransition.getCommand().getMethod());
                 }
             }
         }
@@ -348,49 +496,41 @@ public class ResourceStateMachine {
 	 * Maps should be populated for a state / method pair, even if the state was already
 	 * processed, since we can reach a state by different methods.
 	 */
-	private void populateAccessMaps(ResourceState state, String method) {
-        collectTransitionsByIdForState(state);
-        collectTransitionsByRelForState(state);
-        collectInteractionsByPathForState(state, method);
-        collectInteractionsByStateForState(state, method);
-        collectResourceStatesByPathForState(state);
+	private void populateAccessMaps(ResourceStateRegistry.Editor editor, ResourceState state, String method) {
+        collectTransitionsByIdForState(editor, state);
+        collectTransitionsByRelForState(editor, state);
+        collectInteractionsByPathForState(editor, state, method);
+        collectInteractionsByStateForState(editor, state, method);
+        collectResourceStatesByPathForState(editor, state);
 	}
 
 	/**
+	 * @param editor
 	 * @param state
 	 */
-	private void collectResourceStatesByPathForState(ResourceState state) {
-		Set<String> resourceStateNames = resourceStateNamesByPath.get(state.getResourcePath());
-		if (resourceStateNames == null) {
-		    resourceStateNames = new HashSet<String>();
-		    resourceStateNamesByPath.put(state.getResourcePath(), resourceStateNames);
-		}
-
-		resourceStateNames.add(state.getName());
+	private void collectResourceStatesByPathForState(ResourceStateRegistry.Editor editor, ResourceState state) {
+		editor.addResourceStateNameByPath(state.getResourcePath(), state.getName());
 	}
 
 	/**
+	 * @param editor
 	 * @param state
 	 * @param method
 	 */
-	private void collectInteractionsByStateForState(ResourceState state, String method) {
-		Set<String> stateInteractions = interactionsByState.get(state.getName());
-		if (stateInteractions == null) {
-			stateInteractions = new HashSet<String>();
-			interactionsByState.put(state.getName(), stateInteractions);
-		}
+	private void collectInteractionsByStateForState(ResourceStateRegistry.Editor editor, ResourceState state, String method) {
+		editor.addInteractionByState(state.getName(), null);
 
 		if (!state.isPseudoState()) {
 			if (method != null) {
-				stateInteractions.add(method);
+				editor.addInteractionByState(state.getName(), method);
 			} else {
-				stateInteractions.add(HttpMethod.GET);
+				editor.addInteractionByState(state.getName(), HttpMethod.GET);
 			}
 		}
 		if (state.getActions() != null) {
 			for (Action action : state.getActions()) {
 				if (action.getMethod() != null) {
-					stateInteractions.add(action.getMethod());
+					editor.addInteractionByState(state.getName(), action.getMethod());
 				}
 			}
 		}
@@ -400,41 +540,32 @@ public class ResourceStateMachine {
 			for (Transition t : transitions) {
 				TransitionCommandSpec command = t.getCommand();
 
-				Set<String> tmpStateInteractions = interactionsByState.get(next.getName());
-
-				if (tmpStateInteractions == null) {
-					tmpStateInteractions = new HashSet<String>();
-                    interactionsByState.put(next.getName(), tmpStateInteractions);
-				}
+				editor.addInteractionByState(next.getName(), null);
 
 				if (command.getMethod() != null && !command.isAutoTransition())
-                    tmpStateInteractions.add(command.getMethod());
+                    editor.addInteractionByState(next.getName(), command.getMethod());
 			}
 		}
 	}
 
 	/**
+	 * @param editor
 	 * @param state
 	 * @param method
 	 */
-	private void collectInteractionsByPathForState(ResourceState state, String method) {
-		Set<String> pathInteractions = interactionsByPath.get(state.getPath());
-		if (pathInteractions == null) {
-			pathInteractions = new HashSet<String>();
-			interactionsByPath.put(state.getPath(), pathInteractions);
-		}
-
+	private void collectInteractionsByPathForState(ResourceStateRegistry.Editor editor, ResourceState state, String method) {
 		if (method != null) {
-			pathInteractions.add(method);
+			editor.addInteractionByPath(state.getPath(), method);
 		} else {
-			pathInteractions.add(HttpMethod.GET);
+			editor.addInteractionByPath(state.getPath(), HttpMethod.GET);
 		}
 	}
 
 	/**
+	 * @param editor
 	 * @param state
 	 */
-	private void collectTransitionsByRelForState(ResourceState state) {
+	private void collectTransitionsByRelForState(ResourceStateRegistry.Editor editor, ResourceState state) {
 		for (Transition transition : state.getTransitions()) {
 			if (transition == null) {
 				LOGGER.debug("collectTransitionsByRel : null transition detected");
@@ -443,17 +574,18 @@ public class ResourceStateMachine {
 			} else if (transition.getTarget().getRel() == null) {
 				LOGGER.debug("collectTransitionsByRel : null relation detected");
 			} else {
-				transitionsByRel.put(transition.getTarget().getRel(), transition);
+				editor.putTransitionByRel(transition.getTarget().getRel(), transition);
 			}
 		}
 	}
 
 	/**
+	 * @param editor
 	 * @param state
 	 */
-	private void collectTransitionsByIdForState(ResourceState state) {
+	private void collectTransitionsByIdForState(ResourceStateRegistry.Editor editor, ResourceState state) {
 		for (Transition transition : state.getTransitions()) {
-			transitionsById.put(transition.getId(), transition);
+			editor.putTransitionById(transition.getId(), transition);
 		}
 	}
 
@@ -476,41 +608,45 @@ public class ResourceStateMachine {
 
 	     if(state == null) return;
 
+		ResourceStateRegistry.Editor editor = registry.edit();
+		unregister(editor, state, method);
+		editor.publish();
+
+		affectedStateNames.clear();
+		clearWorkflows();
+	}
+
+	private void unregister(ResourceStateRegistry.Editor editor, ResourceState state, String method) {
+
 		// don't do anything if the state is not registered
-		if(!resourceStatesByName.containsKey(state.getName())) return;
+		if(editor.getResourceState(state.getName()) == null) return;
 
         for (Transition transition : state.getTransitions()) {
 
 			// remove transitions originating in state for this method only
             if(transition.getCommand().getMethod() == method)
-                transitionsById.remove(transition.getId());
+                editor.removeTransitionById(transition.getId());
 
 	        // remove transitions originating in state for this method only
             if (transition.getTarget() != null) {
                 if(transition.getCommand().getMethod() == method)
-                    transitionsByRel.remove(transition.getTarget().getRel());
+                    editor.removeTransitionByRel(transition.getTarget().getRel());
             }
         }
 
         // Process interactions by path
-        final Set<String> pathInteractions = interactionsByPath.get(state.getPath());
-        if (pathInteractions != null)
-            pathInteractions.remove(method);
+        editor.removeInteractionByPath(state.getPath(), method);
 
 		// Process interactions by state
-        final Set<String> stateInteractions = interactionsByState.get(state.getName());
-        if (stateInteractions != null)
-            stateInteractions.remove(method);
+        editor.removeInteractionByState(state.getName(), method);
+        final Set<String> stateInteractions = editor.getInteractionsByState(state.getName());
 
 		// only remove resources by path and by name if there are no methods associated with it
 		if(stateInteractions != null)
 			if(stateInteractions.isEmpty()) {
 		        // Process resource states by path
-		        final Set<String> pathStateNames = resourceStateNamesByPath.get(state.getResourcePath());
-		        if (pathStateNames != null) {
-		            pathStateNames.remove(state.getName());
-		        }
-		        resourceStatesByName.remove(state.getName());
+		        editor.removeResourceStateNameByPath(state.getResourcePath(), state.getName());
+		        editor.removeResourceState(state.getName());
             }
 	}
 
@@ -530,28 +666,38 @@ public class ResourceStateMachine {
 		return transformer;
 	}
 
-    public synchronized Collection<ResourceState> getStates() {
-		return Collections.unmodifiableCollection(resourceStatesByName.values());
+    public Collection<ResourceState> getStates() {
+		return Collections.unmodifiableCollection(registry.read().getResourceStatesByName().values());
 	}
 
 	/**
 	 * Return a map of all the paths, and interactions with those states mapped
 	 * to that path
 	 * 
+	 * The map is read only, the states are changed through
+	 * {@link #register(ResourceState, String)} and
+	 * {@link #unregister(ResourceState, String)}; with a
+	 * {@link SnapshotResourceStateRegistry} it is an unmodifiable snapshot.
+	 * 
 	 * @return
 	 */
 	public Map<String, Set<String>> getInteractionByPath() {
-		return interactionsByPath;
+		return registry.read().getInteractionsByPath();
 	}
 
 	/**
 	 * Return a map of all the ResourceState's, and interactions with those
 	 * states.
 	 * 
+	 * The map is read only, the states are changed through
+	 * {@link #register(ResourceState, String)} and
+	 * {@link #unregister(ResourceState, String)}; with a
+	 * {@link SnapshotResourceStateRegistry} it is an unmodifiable snapshot.
+	 * 
 	 * @return
 	 */
 	public Map<String, Set<String>> getInteractionByState() {
-		return interactionsByState;
+		return registry.read().getInteractionsByState();
 	}
 
 	/**
@@ -580,7 +726,59 @@ public class ResourceStateMachine {
 		if (path == null) {
 			path = initial.getPath();
 		}
-		return getResourceStatesByPath().get(path);
+		return resourceStatesForPath(registry.read(), path);
+	}
+
+	/*
+	 * Resolve the resource states of a single path from one consistent view of
+	 * the registry, or return null if the path is not registered.
+	 */
+	private Set<ResourceState> resourceStatesForPath(ResourceStateRegistry.Tables tables, String path) {
+		Set<String> resourceStateNames = tables.getResourceStateNamesByPath().get(path);
+		if (resourceStateNames == null) {
+			return null;
+		}
+		Map<String, ResourceState> statesByName = tables.getResourceStatesByName();
+		Set<ResourceState> resourceStateSet = new LinkedHashSet<ResourceState>();
+		for (String resourceStateName : resourceStateNames) {
+			ResourceState state = statesByName.get(resourceStateName);
+			if (state != null) resourceStateSet.add(state);
+		}
+		return resourceStateSet;
+	}
+
+	/**
+	 * For a given request path, e.g. /Customers('100')/Accounts, return the
+	 * resource states registered for the path template it matches and that
+	 * accept the given method. The path is routed through the
+	 * {@link ResourcePathRouter} rather than by scanning all paths.
+	 * 
+	 * @param requestPath
+	 *            the request path, without query
+	 * @param method
+	 *            the HTTP method, or null to return the states regardless of
+	 *            their interactions
+	 * @return the matching states, never null
+	 */
+	public Set<ResourceState> resolveResourceStates(String requestPath, String method) {
+		return resolveResourceStates(registry.read(), requestPath, method);
+	}
+
+	private Set<ResourceState> resolveResourceStates(ResourceStateRegistry.Tables tables, String requestPath, String method) {
+		Set<ResourceState> resourceStates = new LinkedHashSet<ResourceState>();
+		for (String path : tables.getPathRouter().match(requestPath)) {
+			Set<ResourceState> pathStates = resourceStatesForPath(tables, path);
+			if (pathStates == null) {
+				continue;
+			}
+			for (ResourceState state : pathStates) {
+				Set<String> interactions = tables.getInteractionsByState().get(state.getName());
+				if (method == null || (interactions != null && interactions.contains(method))) {
+					resourceStates.add(state);
+				}
+			}
+		}
+		return resourceStates;
 	}
 
 	/**
@@ -605,15 +803,37 @@ public class ResourceStateMachine {
 	 */
 	public Set<ResourceState> getResourceStatesForPathRegex(Pattern pattern) {
 		Set<ResourceState> matchingStates = new HashSet<ResourceState>();
-		for (String path : resourceStateNamesByPath.keySet()) {
+		ResourceStateRegistry.Tables tables = registry.read();
+		if (isLiteralPattern(pattern)) {
+			// no need to scan all paths for an expression matching a single path
+			Set<ResourceState> pathStates = resourceStatesForPath(tables, pattern.pattern());
+			if (pathStates != null) {
+				matchingStates.addAll(pathStates);
+			}
+			return matchingStates;
+		}
+		for (String path : tables.getResourceStateNamesByPath().keySet()) {
             Matcher m = pattern.matcher(path);
             if (m.matches()) {
-                matchingStates.addAll(getResourceStatesForPath(path));
+                matchingStates.addAll(resourceStatesForPath(tables, path));
             }
         }
 		return matchingStates;
 	}
 
+	private static boolean isLiteralPattern(Pattern pattern) {
+		if (pattern.flags() != 0) {
+			return pattern.flags() == Pattern.LITERAL;
+		}
+		String regex = pattern.pattern();
+		for (int i = 0; i < regex.length(); i++) {
+			if (REGEX_METACHARACTERS.indexOf(regex.charAt(i)) >= 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
 	/**
 	 * Return a map of all the paths to the various resources, without
 	 * ensuring consistency between the returned map and the state
@@ -622,11 +842,13 @@ public class ResourceStateMachine {
 	 * @invariant initial state not null
 	 */
 	public Map<String, Set<ResourceState>> getResourceStatesByPath() {
+        ResourceStateRegistry.Tables tables = registry.read();
+        Map<String, ResourceState> statesByName = tables.getResourceStatesByName();
         Map<String, Set<ResourceState>> stateMap = new HashMap<String, Set<ResourceState>>();
-        for (Entry<String, Set<String>> entry : resourceStateNamesByPath.entrySet()) {
+        for (Entry<String, Set<String>> entry : tables.getResourceStateNamesByPath().entrySet()) {
             Set<ResourceState> resourceStateSet = new LinkedHashSet<ResourceState>();
             for(String resourceStateName : entry.getValue()) {
-                ResourceState state = resourceStatesByName.get(resourceStateName);
+                ResourceState state = statesByName.get(resourceStateName);
                 if(state != null) resourceStateSet.add(state);
             }
             stateMap.put(entry.getKey(), resourceStateSet);
@@ -644,16 +866,22 @@ public class ResourceStateMachine {
 	public Map<String, Set<ResourceState>> getResourceStatesByPath(ResourceState begin) {
 		assert (begin != null);
 		
-		collectResourceStatesByPath(resourceStateNamesByPath, begin);
+		synchronized (this) {
+			ResourceStateRegistry.Editor editor = registry.edit();
+			collectResourceStatesByPath(editor, begin);
+			editor.publish();
+			affectedStateNames.clear();
+			clearWorkflows();
+		}
 		return getResourceStatesByPath();
 	}
 
-	private void collectResourceStatesByPath(Map<String, Set<String>> result, ResourceState begin) {
+	private void collectResourceStatesByPath(ResourceStateRegistry.Editor editor, ResourceState begin) {
 		List<ResourceState> states = new ArrayList<ResourceState>();
-		collectResourceStatesByPath(result, states, begin);
+		collectResourceStatesByPath(editor, states, begin);
 	}
 
-	private void collectResourceStatesByPath(Map<String, Set<String>> result, Collection<ResourceState> states,
+	private void collectResourceStatesByPath(ResourceStateRegistry.Editor editor, Collection<ResourceState> states,
 			ResourceState currentState) {
 
 		if (currentState == null) {
@@ -667,27 +895,13 @@ public class ResourceStateMachine {
 
 		states.add(currentState);
 		// add current state to results
-		Set<String> thisStateSet = result.get(currentState.getResourcePath());
-		if (thisStateSet == null)
-			thisStateSet = new HashSet<String>();
-		thisStateSet.add(currentState.getName());
-		result.put(currentState.getResourcePath(), thisStateSet);
+		editor.addResourceStateNameByPath(currentState.getResourcePath(), currentState.getName());
 		for (ResourceState next : currentState.getAllTargets()) {
 			if (next != null && next != currentState) {
-				String path = next.getResourcePath();
-				if (result.get(path) != null) {
-					if (!result.get(path).contains(next.getName())) {
-						LOGGER.debug("Adding to existing ResourceState[{}] set ({}): {}", path, result.get(path), next);
-						result.get(path).add(next.getName());
-					}
-				} else {
-					LOGGER.debug("Putting a ResourceState[{}]: {}", path, next);
-					Set<String> set = new HashSet<String>();
-					set.add(next.getName());
-					result.put(path, set);
-				}
+				LOGGER.debug("Adding a ResourceState[{}]: {}", next.getResourcePath(), next);
+				editor.addResourceStateNameByPath(next.getResourcePath(), next.getName());
 			}
-			collectResourceStatesByPath(result, states, next);
+			collectResourceStatesByPath(editor, states, next);
 		}
 	}
 
@@ -706,11 +920,16 @@ public class ResourceStateMachine {
 	/**
 	 * Return a map of all the state names to ResourceState
 	 * 
+	 * The map is read only, the states are changed through
+	 * {@link #register(ResourceState, String)} and
+	 * {@link #unregister(ResourceState, String)}; with a
+	 * {@link SnapshotResourceStateRegistry} it is an unmodifiable snapshot.
+	 * 
 	 * @invariant initial state not null
 	 * @return
 	 */
 	public Map<String, ResourceState> getResourceStateByName() {
-		return resourceStatesByName;
+		return registry.read().getResourceStatesByName();
 	}
 
 	/**
@@ -818,77 +1037,61 @@ public class ResourceStateMachine {
 			throw new RuntimeException("Unable to get links, an error occurred");
 		}
 
+		// the transitions, flags and conditions do not depend on the request
+		LinkPlan linkPlan = state.getLinkPlan();
+
 		// add link to GET 'self'
 		if (selfTransition == null)
-			selfTransition = state.getSelfTransition();
+			selfTransition = linkPlan.getSelfTransition();
 		LinkGenerator selfLinkGenerator = new LinkGeneratorImpl(this, selfTransition, ctx);
 		links.addAll(selfLinkGenerator.createLink(resourceProperties, ctx.getQueryParameters(), entity));
 
 		/*
 		 * Add links to other application states (resources)
 		 */
-		List<Transition> transitions = state.getTransitions();
-		for (Transition transition : transitions) {
+		for (LinkPlan.Step step : linkPlan.getSteps()) {
+			Transition transition = step.getTransition();
             if (transition.getTarget() == null) {
                 LOGGER.warn("Skipping invalid transition: {}", transition);
                 
 				continue;
 			}
 
-			TransitionCommandSpec cs = transition.getCommand();
-
-            if (cs.isAutoTransition()) {
-                // Au revoir - Auto transitions should not be seen by user
-                // agents
-				continue;
-			}
-
 			/*
 			 * build link and add to list of links
 			 */
-			if (cs.isForEach() || cs.isEmbeddedForEach()) {
+			if (step.isForEach()) {
 				if (collectionResource != null) {
+					if (step.getBatchEvaluation() != null) {
+						// evaluate the link condition for all the entities at once where possible
+						step.getBatchEvaluation().prepare(rimHander, ctx, collectionResource.getEntities());
+					}
+					LinkGenerator linkGenerator = new LinkGeneratorImpl(this, transition, ctx);
+					EntityKeyExtractor keyExtractor = null;
 					for (EntityResource<?> er : collectionResource.getEntities()) {
 						Collection<Link> eLinks = er.getLinks();
 						if (eLinks == null) {
 							eLinks = new ArrayList<Link>();
 						}
-						LinkGenerator linkGenerator = new LinkGeneratorImpl(this, transition, ctx);
-						Collection<Link> generatedLinks = linkGenerator.createLink(resourceProperties, ctx.getQueryParameters(), er.getEntity());
 
-						if (addLink(transition, ctx, er, rimHander)) {
-						    eLinks.addAll(generatedLinks);
+						if (addLink(step.getEvaluation(), ctx, er, rimHander)) {
+						    eLinks.addAll(linkGenerator.createLink(resourceProperties, ctx.getQueryParameters(), er.getEntity()));
 						}
 
 						er.setLinks(eLinks);
 
-                        if (cs.isEmbeddedForEach()) {
+                        if (step.isEmbeddedForEach()) {
                             // Embedded resource
 				            MultivaluedMap<String, String> newPathParameters = new MultivaluedMapImpl<String>();
 				            newPathParameters.putAll(ctx.getPathParameters());
 
-                            EntityMetadata entityMetadata = metadata.getEntityMetadata(collectionResource
-                                    .getEntityName());
 				            List<String> ids = new ArrayList<String>();
-
-				            Object tmpObj = er.getEntity();
-
-                            if (tmpObj instanceof Entity) {
-                                EntityProperty prop = ((Entity) tmpObj).getProperties().getProperty(ids.get(0));
-				                ids.add(prop.getValue().toString());
-                            } else if (tmpObj instanceof OEntity) {
-                                OEntityKey entityKey = ((OEntity) tmpObj).getEntityKey();
-				                ids.add(entityKey.toKeyStringWithoutParentheses().replaceAll("'", ""));
-                            } else {
-                                try {
-    				                String fieldName = entityMetadata.getIdFields().get(0);
-                                    String methodName = "get" + fieldName.substring(0, 1).toUpperCase()
-                                            + fieldName.substring(1);
-                                    Method method = tmpObj.getClass().getMethod(methodName);
-                                    ids.add(method.invoke(tmpObj).toString());
-                                } catch (Exception e) {
-                                    LOGGER.warn("Failed to add record id while trying to embed current collection resource", e);
-                                }
+				            if (keyExtractor == null) {
+				                keyExtractor = getKeyExtractor(metadata, collectionResource.getEntityName());
+				            }
+				            String id = keyExtractor.extractKey(er.getEntity());
+				            if (id != null) {
+				                ids.add(id);
 				            }
 
                             newPathParameters.put("id", ids);
@@ -904,7 +1107,7 @@ public class ResourceStateMachine {
 				if (ctx.getResource() instanceof EntityResource<?>) {
 					entityResource = ((EntityResource<?>) ctx.getResource());
 				}
-				if (addLink(transition, ctx, entityResource, rimHander)) {
+				if (addLink(step.getEvaluation(), ctx, entityResource, rimHander)) {
                     LinkGenerator linkGenerator = new LinkGeneratorImpl(this, transition, ctx);
                     links.addAll(linkGenerator.createLink(resourceProperties, ctx.getQueryParameters(), entity));
 			}
@@ -914,6 +1117,23 @@ public class ResourceStateMachine {
 		return links;
 	}
 
+	/*
+	 * Return the key extractor of the entity type, reused for as long as the
+	 * metadata of the entity type are.
+	 */
+	private EntityKeyExtractor getKeyExtractor(Metadata metadata, String entityName) {
+		EntityMetadata entityMetadata = metadata.getEntityMetadata(entityName);
+		if (entityName == null) {
+			return new EntityKeyExtractor(entityMetadata);
+		}
+		EntityKeyExtractor extractor = keyExtractors.get(entityName);
+		if (extractor == null || !extractor.isFor(entityMetadata)) {
+			extractor = new EntityKeyExtractor(entityMetadata);
+			keyExtractors.put(entityName, extractor);
+		}
+		return extractor;
+	}
+
 	/**
 	 * Execute and return all the valid embedded links (target states) from the
 	 * supplied resource. Should be identical to
@@ -961,7 +1181,7 @@ public class ResourceStateMachine {
 			Map<Transition, ResourceRequestResult> results = null;
 
             if (resource instanceof EntityResource<?>
-                    && resourceRequestHandler instanceof SequentialResourceRequestHandler) {
+                    && resourceRequestHandler instanceof EntityFilterResourceRequestHandler) {
                 /*
                  * Handle cases where we may be embedding a resource that has
                  * filter criteria whose values are contained in the current
@@ -969,7 +1189,7 @@ public class ResourceStateMachine {
 				 */
                 Object tmpEntity = ((EntityResource) resource).getEntity();
 
-                results = ((SequentialResourceRequestHandler) resourceRequestHandler).getResources(rimHandler, headers,
+                results = ((EntityFilterResourceRequestHandler) resourceRequestHandler).getResources(rimHandler, headers,
                         ctx, null, tmpEntity, config);
 
 			} else {
@@ -1033,12 +1253,84 @@ public class ResourceStateMachine {
 		return target;
 	}
 
+	/**
+	 * Return a map of the registered transitions by id.
+	 * 
+	 * The map is read only, the states are changed through
+	 * {@link #register(ResourceState, String)} and
+	 * {@link #unregister(ResourceState, String)}; with a
+	 * {@link SnapshotResourceStateRegistry} it is an unmodifiable snapshot.
+	 */
 	public Map<String, Transition> getTransitionsById() {
-		return transitionsById;
+		return registry.read().getTransitionsById();
 	}
 
+	/**
+	 * Return a map of the registered transitions by the rel of their target.
+	 * 
+	 * The map is read only, the states are changed through
+	 * {@link #register(ResourceState, String)} and
+	 * {@link #unregister(ResourceState, String)}; with a
+	 * {@link SnapshotResourceStateRegistry} it is an unmodifiable snapshot.
+	 */
 	public Map<String, Transition> getTransitionsByRel() {
-		return transitionsByRel;
+		return registry.read().getTransitionsByRel();
+	}
+
+	/**
+	 * Return the names of the registered states whose representations may
+	 * change when the resource of the given state is modified: the states of
+	 * the same entity, e.g. the item and its collection, and the states
+	 * embedding any of those, directly or not.
+	 * 
+	 * @param state
+	 *            the state an unsafe interaction succeeded on
+	 * @return the names of the affected states, including the given state
+	 */
+	public Set<String> getAffectedStateNames(ResourceState state) {
+		assert (state != null);
+		Set<String> names = affectedStateNames.get(state.getName());
+		if (names == null) {
+			names = Collections.unmodifiableSet(collectAffectedStateNames(state));
+			affectedStateNames.put(state.getName(), names);
+		}
+		return names;
+	}
+
+	private Set<String> collectAffectedStateNames(ResourceState state) {
+		Collection<ResourceState> states = getStates();
+		Set<String> names = new HashSet<String>();
+		names.add(state.getName());
+		for (ResourceState other : states) {
+			if (state.getEntityName() != null && state.getEntityName().equals(other.getEntityName())) {
+				names.add(other.getName());
+			}
+		}
+		boolean added = true;
+		while (added) {
+			added = false;
+			for (ResourceState other : states) {
+				if (names.contains(other.getName())) {
+					continue;
+				}
+				for (Transition transition : other.getTransitions()) {
+					if (transition.getTarget() != null && transition.isAnyOfTypes(Transition.EMBEDDED, Transition.FOR_EACH_EMBEDDED)
+							&& names.contains(transition.getTarget().getName())) {
+						names.add(other.getName());
+						added = true;
+						break;
+					}
+				}
+			}
+		}
+		return names;
+	}
+
+	/**
+	 * Return the registry holding this state machine's optimised access maps.
+	 */
+	public ResourceStateRegistry getRegistry() {
+		return registry;
 	}
 
 	/**
@@ -1161,6 +1453,9 @@ public class ResourceStateMachine {
 		private ResourceParameterResolverProvider parameterResolverProvider;
 		private WorkflowCommandBuilderProvider workflowCommandBuilderProvider;
 		private Cache responseCache;
+		private ResourceRequestHandler resourceRequestHandler;
+		private RequestCoalescer requestCoalescer;
+		private ResourceStateRegistry registry;
 
 		public Builder initial(ResourceState initial) {
 			this.initial = initial;
@@ -1207,6 +1502,27 @@ public class ResourceStateMachine {
 			return this;
 		}
 
+		public Builder resourceRequestHandler(ResourceRequestHandler resourceRequestHandler) {
+			this.resourceRequestHandler = resourceRequestHandler;
+			return this;
+		}
+
+		public Builder requestCoalescer(RequestCoalescer requestCoalescer) {
+			this.requestCoalescer = requestCoalescer;
+			return this;
+		}
+
+		/**
+		 * The registry holding the optimised access maps, defaults to a
+		 * {@link LockingResourceStateRegistry}. Use a
+		 * {@link SnapshotResourceStateRegistry} where lookups greatly
+		 * outnumber registrations.
+		 */
+		public Builder registry(ResourceStateRegistry registry) {
+			this.registry = registry;
+			return this;
+		}
+
 		public ResourceStateMachine build() {
 			return new ResourceStateMachine(this);
 		}
@@ -1222,14 +1538,18 @@ public class ResourceStateMachine {
 		this.parameterResolverProvider = builder.parameterResolverProvider;
 		this.workflowCommandBuilderProvider = builder.workflowCommandBuilderProvider;
 		this.responseCache = builder.responseCache;
+		this.resourceRequestHandler = builder.resourceRequestHandler;
+		this.requestCoalescer = builder.requestCoalescer;
+		if (builder.registry != null) {
+			this.registry = builder.registry;
+		}
 		build();
 	}
 
-	private boolean addLink(Transition transition, InteractionContext ctx, EntityResource<?> er,
+	private boolean addLink(Expression conditionalExp, InteractionContext ctx, EntityResource<?> er,
 			HTTPHypermediaRIM rimHander) {
 		boolean addLink = true;
 		// evaluate the conditional expression
-		Expression conditionalExp = transition.getCommand().getEvaluation();
 		if (conditionalExp != null) {
 			try {
 				addLink = conditionalExp.evaluate(rimHander, ctx, (er != null) ? er.clone() : null);
@@ -1241,4 +1561,25 @@ public class ResourceStateMachine {
 	}
 
 
+	/*
+	 * A workflow with what it was assembled from.
+	 */
+	private static final class CompiledWorkflow {
+		final InteractionCommand command;
+		final long generation;
+		final long version;
+		final List<Action> actions;
+
+		CompiledWorkflow(InteractionCommand command, long generation, long version, List<Action> actions) {
+			this.command = command;
+			this.generation = generation;
+			this.version = version;
+			this.actions = actions;
+		}
+
+		boolean isValid(long currentGeneration, long currentVersion, List<Action> currentActions) {
+			return generation == currentGeneration && version == currentVersion && actions == currentActions;
+		}
+	}
+
 }
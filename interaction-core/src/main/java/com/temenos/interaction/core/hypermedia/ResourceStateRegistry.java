@@ -0,0 +1,348 @@
+package com.temenos.interaction.core.hypermedia;
+
+/*
+ * #%L
+ * interaction-core
+ * %%
+ * Copyright (C) 2012 - 2017 Temenos Holdings N.V.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Holds the optimised access maps (transitions by id and rel, interactions by
+ * path and state, resource states by path and name) that a
+ * {@link ResourceStateMachine} uses to route requests.
+ *
+ * Readers obtain the maps through {@link #read()}. The state machine modifies
+ * them through an {@link Editor}, always while holding its own monitor; a
+ * registry must therefore not be shared between state machines.
+ *
+ * @see LockingResourceStateRegistry
+ * @see SnapshotResourceStateRegistry
+ */
+public abstract class ResourceStateRegistry {
+
+	/**
+	 * Return the maps as currently visible to readers.
+	 */
+	public abstract Tables read();
+
+	/**
+	 * Begin a modification of the maps. The modification is visible to
+	 * readers once {@link Editor#publish()} has been called.
+	 */
+	abstract Editor edit();
+
+	/**
+	 * The optimised access maps of a {@link ResourceStateMachine}, read only:
+	 * they are modified through an {@link Editor}, and may be unmodifiable.
+	 */
+	public interface Tables {
+
+		public Map<String, Transition> getTransitionsById();
+
+		public Map<String, Transition> getTransitionsByRel();
+
+		public Map<String, Set<String>> getInteractionsByPath();
+
+		public Map<String, Set<String>> getInteractionsByState();
+
+		public Map<String, Set<String>> getResourceStateNamesByPath();
+
+		public Map<String, ResourceState> getResourceStatesByName();
+
+		/**
+		 * The router resolving request paths to the paths that have resource
+		 * states registered.
+		 */
+		public ResourcePathRouter getPathRouter();
+	}
+
+	/**
+	 * Applies modifications to the maps of a registry, either directly to the
+	 * maps seen by readers or to private copies of them.
+	 */
+	static class Editor {
+		private final MapTable<Transition> transitionsById;
+		private final MapTable<Transition> transitionsByRel;
+		private final SetTable interactionsByPath;
+		private final SetTable interactionsByState;
+		private final SetTable resourceStateNamesByPath;
+		private final MapTable<ResourceState> resourceStatesByName;
+		private final ResourcePathRouter originalPathRouter;
+		private ResourcePathRouter pathRouter;
+
+		Editor(Tables tables, boolean copyOnWrite) {
+			transitionsById = new MapTable<Transition>(tables.getTransitionsById(), copyOnWrite);
+			transitionsByRel = new MapTable<Transition>(tables.getTransitionsByRel(), copyOnWrite);
+			interactionsByPath = new SetTable(tables.getInteractionsByPath(), copyOnWrite);
+			interactionsByState = new SetTable(tables.getInteractionsByState(), copyOnWrite);
+			resourceStateNamesByPath = new SetTable(tables.getResourceStateNamesByPath(), copyOnWrite);
+			resourceStatesByName = new MapTable<ResourceState>(tables.getResourceStatesByName(), copyOnWrite);
+			originalPathRouter = tables.getPathRouter();
+			pathRouter = originalPathRouter;
+		}
+
+		ResourceState getResourceState(String name) {
+			return resourceStatesByName.get(name);
+		}
+
+		void putResourceState(String name, ResourceState state) {
+			resourceStatesByName.put(name, state);
+		}
+
+		void removeResourceState(String name) {
+			resourceStatesByName.remove(name);
+		}
+
+		void putTransitionById(String id, Transition transition) {
+			transitionsById.put(id, transition);
+		}
+
+		void removeTransitionById(String id) {
+			transitionsById.remove(id);
+		}
+
+		void putTransitionByRel(String rel, Transition transition) {
+			transitionsByRel.put(rel, transition);
+		}
+
+		void removeTransitionByRel(String rel) {
+			transitionsByRel.remove(rel);
+		}
+
+		Set<String> getInteractionsByState(String stateName) {
+			return interactionsByState.get(stateName);
+		}
+
+		/**
+		 * Add an interaction to a state, a null method only ensures the state
+		 * has an (possibly empty) set of interactions.
+		 */
+		void addInteractionByState(String stateName, String method) {
+			interactionsByState.add(stateName, method);
+		}
+
+		void removeInteractionByState(String stateName, String method) {
+			interactionsByState.remove(stateName, method);
+		}
+
+		void addInteractionByPath(String path, String method) {
+			interactionsByPath.add(path, method);
+		}
+
+		void removeInteractionByPath(String path, String method) {
+			interactionsByPath.remove(path, method);
+		}
+
+		void addResourceStateNameByPath(String path, String stateName) {
+			Set<String> stateNames = resourceStateNamesByPath.get(path);
+			boolean routed = stateNames != null && !stateNames.isEmpty();
+			resourceStateNamesByPath.add(path, stateName);
+			if (!routed && path != null && stateName != null) {
+				pathRouter = pathRouter.with(path);
+			}
+		}
+
+		void removeResourceStateNameByPath(String path, String stateName) {
+			resourceStateNamesByPath.remove(path, stateName);
+			Set<String> stateNames = resourceStateNamesByPath.get(path);
+			if (path != null && stateNames != null && stateNames.isEmpty()) {
+				pathRouter = pathRouter.without(path);
+			}
+		}
+
+		/**
+		 * Make the modifications visible to readers.
+		 */
+		void publish() {
+			// modifications are applied directly unless copying on write
+		}
+
+		boolean isModified() {
+			return transitionsById.isModified() || transitionsByRel.isModified()
+					|| interactionsByPath.isModified() || interactionsByState.isModified()
+					|| resourceStateNamesByPath.isModified() || resourceStatesByName.isModified()
+					|| pathRouter != originalPathRouter;
+		}
+
+		Map<String, Transition> transitionsById() {
+			return transitionsById.result();
+		}
+
+		Map<String, Transition> transitionsByRel() {
+			return transitionsByRel.result();
+		}
+
+		Map<String, Set<String>> interactionsByPath() {
+			return interactionsByPath.result();
+		}
+
+		Map<String, Set<String>> interactionsByState() {
+			return interactionsByState.result();
+		}
+
+		Map<String, Set<String>> resourceStateNamesByPath() {
+			return resourceStateNamesByPath.result();
+		}
+
+		Map<String, ResourceState> resourceStatesByName() {
+			return resourceStatesByName.result();
+		}
+
+		ResourcePathRouter pathRouter() {
+			return pathRouter;
+		}
+	}
+
+	/*
+	 * A map that is either modified in place, or copied on the first
+	 * modification.
+	 */
+	static final class MapTable<V> {
+		private final Map<String, V> source;
+		private final boolean copyOnWrite;
+		private Map<String, V> copy;
+
+		MapTable(Map<String, V> source, boolean copyOnWrite) {
+			this.source = source;
+			this.copyOnWrite = copyOnWrite;
+		}
+
+		V get(String key) {
+			return current().get(key);
+		}
+
+		void put(String key, V value) {
+			if (value != null && value == current().get(key)) {
+				return;
+			}
+			writable().put(key, value);
+		}
+
+		void remove(String key) {
+			if (current().containsKey(key)) {
+				writable().remove(key);
+			}
+		}
+
+		boolean isModified() {
+			return copy != null;
+		}
+
+		Map<String, V> result() {
+			return copy != null ? Collections.unmodifiableMap(copy) : source;
+		}
+
+		private Map<String, V> current() {
+			return copy != null ? copy : source;
+		}
+
+		private Map<String, V> writable() {
+			if (!copyOnWrite) {
+				return source;
+			}
+			if (copy == null) {
+				copy = new HashMap<String, V>(source);
+			}
+			return copy;
+		}
+	}
+
+	/*
+	 * A map of sets that is either modified in place, or copied on the first
+	 * modification; only the sets that are modified are copied.
+	 */
+	static final class SetTable {
+		private final Map<String, Set<String>> source;
+		private final boolean copyOnWrite;
+		private Map<String, Set<String>> copy;
+		private Set<String> copiedKeys;
+
+		SetTable(Map<String, Set<String>> source, boolean copyOnWrite) {
+			this.source = source;
+			this.copyOnWrite = copyOnWrite;
+		}
+
+		Set<String> get(String key) {
+			return current().get(key);
+		}
+
+		void add(String key, String value) {
+			Set<String> set = current().get(key);
+			if (set != null && (value == null || set.contains(value))) {
+				return;
+			}
+			set = writable(key);
+			if (value != null) {
+				set.add(value);
+			}
+		}
+
+		void remove(String key, String value) {
+			Set<String> set = current().get(key);
+			if (set != null && set.contains(value)) {
+				writable(key).remove(value);
+			}
+		}
+
+		boolean isModified() {
+			return copy != null;
+		}
+
+		Map<String, Set<String>> result() {
+			if (copy == null) {
+				return source;
+			}
+			for (String key : copiedKeys) {
+				copy.put(key, Collections.unmodifiableSet(copy.get(key)));
+			}
+			return Collections.unmodifiableMap(copy);
+		}
+
+		private Map<String, Set<String>> current() {
+			return copy != null ? copy : source;
+		}
+
+		private Set<String> writable(String key) {
+			if (!copyOnWrite) {
+				Set<String> set = source.get(key);
+				if (set == null) {
+					set = new HashSet<String>();
+					source.put(key, set);
+				}
+				return set;
+			}
+			if (copy == null) {
+				copy = new HashMap<String, Set<String>>(source);
+				copiedKeys = new HashSet<String>();
+			}
+			if (copiedKeys.add(key)) {
+				Set<String> existing = copy.get(key);
+				Set<String> set = existing != null ? new HashSet<String>(existing) : new HashSet<String>();
+				copy.put(key, set);
+				return set;
+			}
+			return copy.get(key);
+		}
+	}
+}
@@ -0,0 +1,125 @@
+package com.temenos.interaction.core.hypermedia;
+
+/*
+ * #%L
+ * interaction-core
+ * %%
+ * Copyright (C) 2012 - 2017 Temenos Holdings N.V.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A {@link ResourceStateRegistry} that publishes all of its maps as one
+ * immutable snapshot through a single volatile reference.
+ *
+ * Readers never block and always see a consistent set of maps. Each
+ * modification copies the maps it changes (and, for maps of sets, only the
+ * sets it changes) and publishes a new snapshot, so registration is more
+ * expensive than with the {@link LockingResourceStateRegistry}. Registering a
+ * state with several methods through
+ * {@link ResourceStateMachine#register(ResourceState, java.util.Collection, boolean)}
+ * copies and publishes once for all of them.
+ *
+ * The maps of a snapshot are unmodifiable, as are the maps returned by the
+ * getters of the {@link ResourceStateMachine} that uses this registry.
+ */
+public class SnapshotResourceStateRegistry extends ResourceStateRegistry {
+
+	private volatile Snapshot current = new Snapshot(Collections.<String, Transition>emptyMap(),
+			Collections.<String, Transition>emptyMap(), Collections.<String, Set<String>>emptyMap(),
+			Collections.<String, Set<String>>emptyMap(), Collections.<String, Set<String>>emptyMap(),
+			Collections.<String, ResourceState>emptyMap(), ResourcePathRouter.EMPTY);
+
+	@Override
+	public Tables read() {
+		return current;
+	}
+
+	@Override
+	Editor edit() {
+		return new Editor(current, true) {
+			@Override
+			void publish() {
+				if (isModified()) {
+					current = new Snapshot(transitionsById(), transitionsByRel(), interactionsByPath(),
+							interactionsByState(), resourceStateNamesByPath(), resourceStatesByName(), pathRouter());
+				}
+			}
+		};
+	}
+
+	private static final class Snapshot implements Tables {
+		private final Map<String, Transition> transitionsById;
+		private final Map<String, Transition> transitionsByRel;
+		private final Map<String, Set<String>> interactionsByPath;
+		private final Map<String, Set<String>> interactionsByState;
+		private final Map<String, Set<String>> resourceStateNamesByPath;
+		private final Map<String, ResourceState> resourceStatesByName;
+		private final ResourcePathRouter pathRouter;
+
+		Snapshot(Map<String, Transition> transitionsById, Map<String, Transition> transitionsByRel,
+				Map<String, Set<String>> interactionsByPath, Map<String, Set<String>> interactionsByState,
+				Map<String, Set<String>> resourceStateNamesByPath, Map<String, ResourceState> resourceStatesByName,
+				ResourcePathRouter pathRouter) {
+			this.transitionsById = transitionsById;
+			this.transitionsByRel = transitionsByRel;
+			this.interactionsByPath = interactionsByPath;
+			this.interactionsByState = interactionsByState;
+			this.resourceStateNamesByPath = resourceStateNamesByPath;
+			this.resourceStatesByName = resourceStatesByName;
+			this.pathRouter = pathRouter;
+		}
+
+		@Override
+		public Map<String, Transition> getTransitionsById() {
+			return transitionsById;
+		}
+
+		@Override
+		public Map<String, Transition> getTransitionsByRel() {
+			return transitionsByRel;
+		}
+
+		@Override
+		public Map<String, Set<String>> getInteractionsByPath() {
+			return interactionsByPath;
+		}
+
+		@Override
+		public Map<String, Set<String>> getInteractionsByState() {
+			return interactionsByState;
+		}
+
+		@Override
+		public Map<String, Set<String>> getResourceStateNamesByPath() {
+			return resourceStateNamesByPath;
+		}
+
+		@Override
+		public Map<String, ResourceState> getResourceStatesByName() {
+			return resourceStatesByName;
+		}
+
+		@Override
+		public ResourcePathRouter getPathRouter() {
+			return pathRouter;
+		}
+	}
+}
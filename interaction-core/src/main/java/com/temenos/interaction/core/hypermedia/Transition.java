@@ -79,6 +79,9 @@ public class Transition {
 	
 	// optional field which causes this transition
 	private String sourceField;
+
+	// the target's path compiled once, recompiled should the target change
+	private volatile UriTemplate targetPathTemplate;
 	
 	public String getLinkId() {
 		return linkId;
@@ -108,6 +111,23 @@ public class Transition {
 		return command;
 	}
 
+	/**
+	 * Return the path of the target state compiled as a template, or null if
+	 * there is no target or it has no path.
+	 */
+	public UriTemplate getTargetPathTemplate() {
+		String path = target != null ? target.getPath() : null;
+		if (path == null) {
+			return null;
+		}
+		UriTemplate template = targetPathTemplate;
+		if (template == null || !path.equals(template.getTemplate())) {
+			template = UriTemplate.compile(path);
+			targetPathTemplate = template;
+		}
+		return template;
+	}
+
 	public String getLabel() {
 		return label;
 	}
@@ -22,7 +22,9 @@ package com.temenos.interaction.core.hypermedia;
  */
 
 
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
 
 import com.temenos.interaction.core.hypermedia.expression.Expression;
@@ -38,6 +40,8 @@ public class TransitionCommandSpec {
 	// conditional link evaluation expression 
 	private final Expression evaluation;
 	private final Map<String, String> uriParameters;
+	// uriParameters values compiled once
+	private final Map<String, UriTemplate> uriParameterTemplates;
 	private final String linkId;
 	
 	protected TransitionCommandSpec(String method) {
@@ -57,6 +61,7 @@ public class TransitionCommandSpec {
 		this.flags = flags;
 		this.evaluation = evaluation;
 		this.uriParameters = uriParameters != null ? new HashMap<String, String>(uriParameters) : null;
+		this.uriParameterTemplates = compile(this.uriParameters);
 		this.linkId = linkId;
 	}
 	
@@ -75,6 +80,27 @@ public class TransitionCommandSpec {
 	public Map<String, String> getUriParameters() {
 		return uriParameters;
 	}
+
+	/**
+	 * Return the uri parameters with their values compiled as templates, or
+	 * null if there are no uri parameters.
+	 */
+	public Map<String, UriTemplate> getUriParameterTemplates() {
+		return uriParameterTemplates;
+	}
+
+	private static Map<String, UriTemplate> compile(Map<String, String> uriParameters) {
+		if (uriParameters == null) {
+			return null;
+		}
+		Map<String, UriTemplate> templates = new LinkedHashMap<String, UriTemplate>();
+		for (Map.Entry<String, String> uriParameter : uriParameters.entrySet()) {
+			if (uriParameter.getValue() != null) {
+				templates.put(uriParameter.getKey(), UriTemplate.compile(uriParameter.getValue()));
+			}
+		}
+		return Collections.unmodifiableMap(templates);
+	}
 	
 	public String getLinkId() {
 		return linkId;
@@ -31,13 +31,16 @@ public class UriSpecification {
 
 	private String name;
 	private String template;
+	private UriTemplate uriTemplate;
 	public UriSpecification(String name, String template) {
 		this.name = name;
 		this.template = template;
+		this.uriTemplate = template != null ? UriTemplate.compile(template) : null;
 	}
 
 	public String getName() { return name; };
 	public String getTemplate() { return template; };
+	public UriTemplate getUriTemplate() { return uriTemplate; };
 	
 	
 }
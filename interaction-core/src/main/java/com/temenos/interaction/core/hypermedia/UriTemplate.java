@@ -0,0 +1,212 @@
+package com.temenos.interaction.core.hypermedia;
+
+/*
+ * #%L
+ * interaction-core
+ * %%
+ * Copyright (C) 2012 - 2017 Temenos Holdings N.V.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A template such as <code>/Customers('{id}')</code> or
+ * <code>{personName} email {Contact.Email}</code>, compiled once into its
+ * literal chunks and parameter slots so that it can be expanded repeatedly
+ * without regular expressions.
+ *
+ * Parameters are recognised as {@link HypermediaTemplateHelper} always has:
+ * from a '{' to the next '}' on the same line.
+ */
+public final class UriTemplate {
+
+	private static final int ESTIMATED_VALUE_LENGTH = 16;
+
+	private final String template;
+	// literals[i] precedes parameters[i], the last literal follows the last parameter
+	private final String[] literals;
+	private final String[] parameters;
+	private final String[] tokens;
+	private final int literalLength;
+	private final List<String> parameterNames;
+
+	private UriTemplate(String template, String[] literals, String[] parameters, String[] tokens) {
+		this.template = template;
+		this.literals = literals;
+		this.parameters = parameters;
+		this.tokens = tokens;
+		int length = 0;
+		for (String literal : literals) {
+			length += literal.length();
+		}
+		this.literalLength = length;
+		this.parameterNames = Collections.unmodifiableList(Arrays.asList(parameters));
+	}
+
+	/**
+	 * Compile the given template.
+	 *
+	 * @param template
+	 *            the template, not null
+	 */
+	public static UriTemplate compile(String template) {
+		if (template == null) {
+			throw new IllegalArgumentException("Template must not be null");
+		}
+		List<String> literals = new ArrayList<String>();
+		List<String> parameters = new ArrayList<String>();
+		List<String> tokens = new ArrayList<String>();
+		int literalStart = 0;
+		int open = template.indexOf('{');
+		while (open >= 0) {
+			int close = parameterEnd(template, open);
+			if (close < 0) {
+				open = template.indexOf('{', open + 1);
+				continue;
+			}
+			literals.add(template.substring(literalStart, open));
+			parameters.add(template.substring(open + 1, close));
+			tokens.add(template.substring(open, close + 1));
+			literalStart = close + 1;
+			open = template.indexOf('{', literalStart);
+		}
+		literals.add(template.substring(literalStart));
+		return new UriTemplate(template, literals.toArray(new String[literals.size()]),
+				parameters.toArray(new String[parameters.size()]), tokens.toArray(new String[tokens.size()]));
+	}
+
+	/*
+	 * Return the index of the '}' closing the parameter opened at 'open', or -1
+	 * if there is none on the same line.
+	 */
+	private static int parameterEnd(String template, int open) {
+		for (int i = open + 1; i < template.length(); i++) {
+			char c = template.charAt(i);
+			if (c == '}') {
+				return i;
+			}
+			if (c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029') {
+				return -1;
+			}
+		}
+		return -1;
+	}
+
+	public String getTemplate() {
+		return template;
+	}
+
+	/**
+	 * Return the names of the parameters in the order they appear, including
+	 * duplicates.
+	 */
+	public List<String> getParameterNames() {
+		return parameterNames;
+	}
+
+	public boolean hasParameters() {
+		return parameters.length > 0;
+	}
+
+	public boolean hasParameter(String name) {
+		for (String parameter : parameters) {
+			if (parameter.equals(name)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Return the length of the template once expanded, assuming values of an
+	 * average length.
+	 */
+	public int estimateLength() {
+		return literalLength + parameters.length * ESTIMATED_VALUE_LENGTH;
+	}
+
+	/**
+	 * Replace the parameters with the given values; parameters without a
+	 * (non null) value are left as they are.
+	 */
+	public String expand(Map<String, ?> values) {
+		if (parameters.length == 0) {
+			return template;
+		}
+		StringBuilder sb = new StringBuilder(estimateLength());
+		expand(values, sb);
+		return sb.toString();
+	}
+
+	/**
+	 * Append the template to the builder, replacing the parameters with the
+	 * given values; parameters without a (non null) value are appended as they
+	 * are.
+	 *
+	 * @return true if every parameter had a value
+	 */
+	public boolean expand(Map<String, ?> values, StringBuilder sb) {
+		boolean complete = true;
+		for (int i = 0; i < parameters.length; i++) {
+			sb.append(literals[i]);
+			Object value = values.get(parameters[i]);
+			if (value != null) {
+				sb.append(value.toString());
+			} else {
+				sb.append(tokens[i]);
+				complete = false;
+			}
+		}
+		sb.append(literals[parameters.length]);
+		return complete;
+	}
+
+	/**
+	 * Return the number of literal chunks, always one more than the number
+	 * of parameters.
+	 */
+	int getLiteralCount() {
+		return literals.length;
+	}
+
+	String getLiteral(int index) {
+		return literals[index];
+	}
+
+	String getParameter(int index) {
+		return parameters[index];
+	}
+
+	@Override
+	public boolean equals(Object other) {
+		return other instanceof UriTemplate && template.equals(((UriTemplate) other).template);
+	}
+
+	@Override
+	public int hashCode() {
+		return template.hashCode();
+	}
+
+	@Override
+	public String toString() {
+		return template;
+	}
+}
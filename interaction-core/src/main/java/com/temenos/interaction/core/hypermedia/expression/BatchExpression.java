@@ -0,0 +1,45 @@
+package com.temenos.interaction.core.hypermedia.expression;
+
+/*
+ * #%L
+ * interaction-core
+ * %%
+ * Copyright (C) 2012 - 2017 Temenos Holdings N.V.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+import java.util.Collection;
+
+import com.temenos.interaction.core.command.InteractionContext;
+import com.temenos.interaction.core.resource.EntityResource;
+import com.temenos.interaction.core.rim.HTTPHypermediaRIM;
+
+/**
+ * An Expression that can prepare its evaluation for all the entities of a
+ * collection at once.
+ */
+public interface BatchExpression extends Expression {
+
+	/**
+	 * Evaluate ahead whatever can be evaluated for all the resources in one go,
+	 * storing the outcome in the {@link ExpressionEvaluationCache} of the
+	 * request so that {@link #evaluate(HTTPHypermediaRIM, InteractionContext, EntityResource)}
+	 * of each resource does not have to. Anything not prepared is left to
+	 * <code>evaluate</code>.
+	 */
+	public void prepare(HTTPHypermediaRIM rimHandler, InteractionContext ctx, Collection<? extends EntityResource<?>> resources);
+
+}
@@ -0,0 +1,135 @@
+package com.temenos.interaction.core.hypermedia.expression;
+
+/*
+ * #%L
+ * interaction-core
+ * %%
+ * Copyright (C) 2012 - 2017 Temenos Holdings N.V.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.ws.rs.core.MultivaluedMap;
+
+/**
+ * Request scoped cache of the statuses obtained by {@link ResourceGETExpression}s,
+ * so that an <code>OK(state)</code> or <code>NOT_FOUND(state)</code> condition
+ * used by several links executes the GET on its target at most once per request.
+ *
+ * Entries are keyed by the name of the target state and the path parameters
+ * used to access it. The cache is held by the
+ * {@link com.temenos.interaction.core.command.InteractionContext} of the
+ * request and shared by the contexts copied from it.
+ */
+public class ExpressionEvaluationCache {
+
+	private final ConcurrentMap<Key, Integer> statuses = new ConcurrentHashMap<Key, Integer>();
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+
+	/**
+	 * Return the status of a previous GET of the target state with these
+	 * path parameters, or null if there has been none.
+	 */
+	public Integer getStatus(String stateName, MultivaluedMap<String, String> pathParameters) {
+		Integer status = statuses.get(new Key(stateName, pathParameters));
+		if (status != null) {
+			hits.incrementAndGet();
+		} else {
+			misses.incrementAndGet();
+		}
+		return status;
+	}
+
+	/**
+	 * Check for a previous GET of the target state with these path
+	 * parameters without counting a hit or miss.
+	 */
+	public boolean containsStatus(String stateName, MultivaluedMap<String, String> pathParameters) {
+		return statuses.containsKey(new Key(stateName, pathParameters));
+	}
+
+	public void putStatus(String stateName, MultivaluedMap<String, String> pathParameters, int status) {
+		statuses.put(new Key(stateName, pathParameters), status);
+	}
+
+	/**
+	 * Number of evaluations answered from this cache.
+	 */
+	public long getHits() {
+		return hits.get();
+	}
+
+	/**
+	 * Number of evaluations that had to GET the target resource.
+	 */
+	public long getMisses() {
+		return misses.get();
+	}
+
+	public int size() {
+		return statuses.size();
+	}
+
+	public void clear() {
+		statuses.clear();
+	}
+
+	@Override
+	public String toString() {
+		return "ExpressionEvaluationCache[hits=" + hits + ", misses=" + misses + ", size=" + statuses.size() + "]";
+	}
+
+	private static final class Key {
+		private final String stateName;
+		private final Map<String, List<String>> pathParameters;
+		private final int hashCode;
+
+		Key(String stateName, MultivaluedMap<String, String> pathParameters) {
+			this.stateName = stateName;
+			// copied as MultivaluedMap implementations do not all define equals
+			this.pathParameters = pathParameters != null
+					? new HashMap<String, List<String>>(pathParameters)
+					: new HashMap<String, List<String>>();
+			this.hashCode = 31 * (stateName != null ? stateName.hashCode() : 0) + this.pathParameters.hashCode();
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj) {
+				return true;
+			}
+			if (!(obj instanceof Key)) {
+				return false;
+			}
+			Key other = (Key) obj;
+			return hashCode == other.hashCode
+					&& (stateName != null ? stateName.equals(other.stateName) : other.stateName == null)
+					&& pathParameters.equals(other.pathParameters);
+		}
+
+		@Override
+		public int hashCode() {
+			return hashCode;
+		}
+	}
+}
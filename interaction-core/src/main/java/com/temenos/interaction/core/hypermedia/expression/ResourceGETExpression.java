@@ -22,16 +22,28 @@ package com.temenos.interaction.core.hypermedia.expression;
  */
 
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
 import javax.ws.rs.core.MultivaluedMap;
 import javax.ws.rs.core.Response.Status;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.temenos.interaction.core.MultivaluedMapImpl;
+import com.temenos.interaction.core.command.BatchInteractionCommand;
+import com.temenos.interaction.core.command.CommandController;
 import com.temenos.interaction.core.command.CommandHelper;
+import com.temenos.interaction.core.command.InteractionCommand;
+import com.temenos.interaction.core.command.InteractionCommand.Result;
 import com.temenos.interaction.core.command.InteractionContext;
+import com.temenos.interaction.core.command.InteractionException;
 import com.temenos.interaction.core.hypermedia.HypermediaTemplateHelper;
 import com.temenos.interaction.core.hypermedia.LazyResourceState;
 import com.temenos.interaction.core.hypermedia.ResourceState;
@@ -44,7 +56,9 @@ import com.temenos.interaction.core.rim.ResourceRequestConfig;
 import com.temenos.interaction.core.rim.ResourceRequestResult;
 import com.temenos.interaction.core.rim.SequentialResourceRequestHandler;
 
-public class ResourceGETExpression implements Expression {
+public class ResourceGETExpression implements BatchExpression {
+	private static final Logger LOGGER = LoggerFactory.getLogger(ResourceGETExpression.class);
+
 
 	public enum Function {
 		OK,
@@ -86,6 +100,101 @@ public class ResourceGETExpression implements Expression {
 	@Override
 	public boolean evaluate(HTTPHypermediaRIM rimHandler, InteractionContext ctx, EntityResource<?> resource) {
 		ResourceStateMachine hypermediaEngine = rimHandler.getHypermediaEngine();
+		Transition ourTransition = resolveTransition(hypermediaEngine, ctx);
+		ResourceState target = ourTransition.getTarget();
+        //Create a new interaction context for this state
+        MultivaluedMap<String, String> pathParameters = getPathParametersForTargetState(hypermediaEngine, ctx, ourTransition);
+		EntityResource<?> entityResource = resolveEntityResource(resource, ctx.getResource());
+
+		// the same target may already have been requested for another link of this request
+		ExpressionEvaluationCache cache = ctx.getExpressionEvaluationCache();
+		MultivaluedMap<String, String> requestPathParameters = null;
+		Integer status = null;
+		if (cache != null) {
+			requestPathParameters = getRequestPathParameters(hypermediaEngine, ctx, ourTransition, pathParameters, entityResource);
+			status = cache.getStatus(target.getName(), requestPathParameters);
+		}
+		if (status == null) {
+			status = getStatus(rimHandler, ctx, entityResource, target, ourTransition, pathParameters);
+			if (cache != null) {
+				cache.putStatus(target.getName(), requestPathParameters, status);
+			}
+		}
+
+		//Ignore the resource and its links, just interested in the result status
+		if (Status.OK.getStatusCode() == status 
+				&& getFunction().equals(Function.OK)) {
+			return true;
+		}
+		if (Status.OK.getStatusCode() != status 
+				&& getFunction().equals(Function.NOT_FOUND)) {
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Execute the command of the target state once for all the resources if
+	 * it is a {@link BatchInteractionCommand}, leaving the statuses in the
+	 * request's {@link ExpressionEvaluationCache}. Nothing is done for
+	 * other commands, they are executed resource by resource on evaluation.
+	 */
+	@Override
+	public void prepare(HTTPHypermediaRIM rimHandler, InteractionContext ctx, Collection<? extends EntityResource<?>> resources) {
+		ExpressionEvaluationCache cache = ctx.getExpressionEvaluationCache();
+		if (cache == null || resources == null || resources.isEmpty()) {
+			return;
+		}
+		ResourceStateMachine hypermediaEngine = rimHandler.getHypermediaEngine();
+		Transition ourTransition = resolveTransition(hypermediaEngine, ctx);
+		ResourceState target = ourTransition.getTarget();
+		BatchInteractionCommand command = getBatchCommand(hypermediaEngine, target);
+		if (command == null) {
+			return;
+		}
+		MultivaluedMap<String, String> pathParameters = getPathParametersForTargetState(hypermediaEngine, ctx, ourTransition);
+		List<MultivaluedMap<String, String>> keys = new ArrayList<MultivaluedMap<String, String>>();
+		Set<MultivaluedMap<String, String>> distinctKeys = new HashSet<MultivaluedMap<String, String>>();
+		List<InteractionContext> contexts = new ArrayList<InteractionContext>();
+		for (EntityResource<?> resource : resources) {
+			MultivaluedMap<String, String> requestPathParameters = getRequestPathParameters(hypermediaEngine, ctx, ourTransition, pathParameters, resource);
+			if (cache.containsStatus(target.getName(), requestPathParameters) || !distinctKeys.add(requestPathParameters)) {
+				continue;
+			}
+			// the same context the command would get from the request handler
+			MultivaluedMap<String, String> queryParameters = new MultivaluedMapImpl<String>();
+			queryParameters.putAll(ctx.getQueryParameters());
+			InteractionContext newCtx = new InteractionContext(ctx, null, requestPathParameters, queryParameters, target);
+			newCtx.setResource(CommandHelper.createEntityResource(resource));
+			newCtx.setTargetState(target);
+			keys.add(requestPathParameters);
+			contexts.add(newCtx);
+		}
+		if (contexts.isEmpty()) {
+			return;
+		}
+
+		List<Result> results;
+		try {
+			results = command.executeAll(contexts);
+		} catch (InteractionException ie) {
+			LOGGER.warn("Batch evaluation of [{}] failed, evaluating each resource instead", this, ie);
+			return;
+		}
+		if (results == null || results.size() != contexts.size()) {
+			LOGGER.warn("Batch evaluation of [{}] did not return a result for each resource, evaluating each resource instead", this);
+			return;
+		}
+		for (int i = 0; i < results.size(); i++) {
+			if (results.get(i) == Result.SUCCESS) {
+				cache.putStatus(target.getName(), keys.get(i), Status.OK.getStatusCode());
+			} else if (results.get(i) == Result.FAILURE) {
+				cache.putStatus(target.getName(), keys.get(i), Status.NOT_FOUND.getStatusCode());
+			}
+		}
+	}
+
+	private Transition resolveTransition(ResourceStateMachine hypermediaEngine, InteractionContext ctx) {
 		ResourceState target = null;
 		Transition ourTransition = transition;
 		if (ourTransition == null) {
@@ -104,10 +213,31 @@ public class ResourceGETExpression implements Expression {
 		if(ourTransition.getTarget() instanceof LazyResourceState) {
 		    ourTransition.setTarget(target);
 		}
-        //Create a new interaction context for this state
-        MultivaluedMap<String, String> pathParameters = getPathParametersForTargetState(hypermediaEngine, ctx, ourTransition);
+		return ourTransition;
+	}
+
+	/*
+	 * The command of the target state if it can be executed as a batch and
+	 * its results map directly to OK / NOT_FOUND, i.e. there is a single
+	 * action and no auto or redirect transition that could change the status.
+	 */
+	private BatchInteractionCommand getBatchCommand(ResourceStateMachine hypermediaEngine, ResourceState target) {
+		CommandController commandController = hypermediaEngine.getCommandController();
+		if (commandController == null || target.getActions() == null || target.getActions().size() != 1) {
+			return null;
+		}
+		for (Transition t : target.getTransitions()) {
+			if (t.getCommand().isAutoTransition() || t.getCommand().isRedirectTransition()) {
+				return null;
+			}
+		}
+		InteractionCommand command = commandController.fetchCommand(target.getActions().get(0).getName());
+		return command instanceof BatchInteractionCommand ? (BatchInteractionCommand) command : null;
+	}
+
+	private int getStatus(HTTPHypermediaRIM rimHandler, InteractionContext ctx, EntityResource<?> resource, ResourceState target, Transition ourTransition, MultivaluedMap<String, String> pathParameters) {
     	InteractionContext newCtx = new InteractionContext(ctx, null, pathParameters, null, target);
-		EntityResource<?> entityResourceCopy = CommandHelper.createEntityResource(resolveEntityResource(resource, ctx.getResource()));
+		EntityResource<?> entityResourceCopy = CommandHelper.createEntityResource(resource);
 		newCtx.setResource(entityResourceCopy);
 
     	//Get the target resource
@@ -119,17 +249,7 @@ public class ResourceGETExpression implements Expression {
 		Map<Transition, ResourceRequestResult> results = new SequentialResourceRequestHandler().getResources(rimHandler, null, newCtx, entityResourceCopy, config);
 		assert(results.values() != null && results.values().size() == 1);
 		ResourceRequestResult result = results.values().iterator().next();
-		
-		//Ignore the resource and its links, just interested in the result status
-		if (Status.OK.getStatusCode() == result.getStatus() 
-				&& getFunction().equals(Function.OK)) {
-			return true;
-		}
-		if (Status.OK.getStatusCode() != result.getStatus() 
-				&& getFunction().equals(Function.NOT_FOUND)) {
-			return true;
-		}
-		return false;
+		return result.getStatus();
 	}
 
 	@Override
@@ -177,4 +297,21 @@ public class ResourceGETExpression implements Expression {
     	//apply transition properties to path parameters 
     	return HypermediaTemplateHelper.getPathParametersForTargetState(transition, transitionProperties);
 	}
+
+	/*
+	 * The path parameters the command of the target state is executed with,
+	 * as built by the SequentialResourceRequestHandler.
+	 */
+	private MultivaluedMap<String, String> getRequestPathParameters(ResourceStateMachine hypermediaEngine, InteractionContext ctx, Transition transition, MultivaluedMap<String, String> pathParameters, EntityResource<?> resource) {
+		MultivaluedMap<String, String> requestPathParameters = new MultivaluedMapImpl<String>();
+		requestPathParameters.putAll(pathParameters);
+		Object entity = resource != null ? resource.getEntity() : null;
+		Map<String, Object> transitionProperties = hypermediaEngine.getTransitionProperties(transition, entity, pathParameters, ctx.getQueryParameters());
+		for (Map.Entry<String, Object> property : transitionProperties.entrySet()) {
+			if (property.getValue() != null) {
+				requestPathParameters.add(property.getKey(), property.getValue().toString());
+			}
+		}
+		return requestPathParameters;
+	}
 }
@@ -22,6 +22,7 @@ package com.temenos.interaction.core.hypermedia.expression;
  */
 
 
+import java.util.Collection;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
@@ -36,7 +37,7 @@ import com.temenos.interaction.core.rim.HTTPHypermediaRIM;
  * evaluation (short-circuiting logical expressions with just the logical AND operator)
  * @author aphethean
  */
-public class SimpleLogicalExpressionEvaluator implements Expression {
+public class SimpleLogicalExpressionEvaluator implements BatchExpression {
 
 	private final List<Expression> expressions;
 	private final Set<Transition> transitions = new HashSet<Transition>();
@@ -57,6 +58,19 @@ public class SimpleLogicalExpressionEvaluator implements Expression {
 		}
 		return true;
 	}
+
+	/**
+	 * Prepare each of the expressions that can be prepared, the short-circuit
+	 * only applies on evaluation.
+	 */
+	@Override
+	public void prepare(HTTPHypermediaRIM rimHandler, InteractionContext ctx, Collection<? extends EntityResource<?>> resources) {
+		for (Expression e : expressions) {
+			if (e instanceof BatchExpression) {
+				((BatchExpression) e).prepare(rimHandler, ctx, resources);
+			}
+		}
+	}
 	
 	@Override
 	public Set<Transition> getTransitions() {
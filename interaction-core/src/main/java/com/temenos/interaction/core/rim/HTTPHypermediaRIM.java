@@ -25,6 +25,7 @@ import java.io.UnsupportedEncodingException;
 import java.net.URLDecoder;
 import java.util.*;
 import java.util.Map.Entry;
+import java.util.concurrent.Callable;
 
 import javax.ws.rs.HttpMethod;
 import javax.ws.rs.PathParam;
@@ -51,6 +52,9 @@ import org.slf4j.LoggerFactory;
 
 import com.temenos.interaction.core.MultivaluedMapImpl;
 import com.temenos.interaction.core.cache.Cache;
+import com.temenos.interaction.core.cache.EncodedResponseCache;
+import com.temenos.interaction.core.cache.RevalidatingCache;
+import com.temenos.interaction.core.cache.TaggedCache;
 import com.temenos.interaction.core.command.CommandController;
 import com.temenos.interaction.core.command.HttpStatusTypes;
 import com.temenos.interaction.core.command.InteractionCommand;
@@ -67,6 +71,8 @@ import com.temenos.interaction.core.hypermedia.validation.HypermediaValidator;
 import com.temenos.interaction.core.hypermedia.validation.LogicalConfigurationListener;
 import com.temenos.interaction.core.resource.EntityResource;
 import com.temenos.interaction.core.resource.RESTResource;
+import com.temenos.interaction.core.web.RequestContext;
+import com.temenos.interaction.core.web.ResponseCompression;
 
 /**
  * <P>
@@ -93,7 +99,6 @@ public class HTTPHypermediaRIM implements HTTPResourceInteractionModel, Expressi
     private final ResourceRequestHandler resourceRequestHandler;
     private final Metadata metadata;
     private final String resourcePath;
-    private AutoTransitioner autoTransitioner;
 
     /**
      * <p>
@@ -153,7 +158,8 @@ public class HTTPHypermediaRIM implements HTTPResourceInteractionModel, Expressi
     public HTTPHypermediaRIM(HTTPHypermediaRIM parent, CommandController commandController,
             ResourceStateMachine hypermediaEngine, Metadata metadata, String currentPath, boolean printGraph) {
         this.parent = parent;
-        this.resourceRequestHandler = new SequentialResourceRequestHandler();
+        this.resourceRequestHandler = hypermediaEngine.getResourceRequestHandler() != null
+                ? hypermediaEngine.getResourceRequestHandler() : new SequentialResourceRequestHandler();
         this.commandController = commandController;
         this.hypermediaEngine = hypermediaEngine;
         this.metadata = metadata;
@@ -283,28 +289,68 @@ public class HTTPHypermediaRIM implements HTTPResourceInteractionModel, Expressi
         return handleRequest(headers, uriInfo, event, null);
     }    
 
-    private Response handleRequest(@Context HttpHeaders headers, @Context UriInfo uriInfo, Event event,
-            RESTResource resource) {
+    private Response handleRequest(@Context final HttpHeaders headers, @Context UriInfo uriInfo, final Event event,
+            final RESTResource resource) {
         long begin = System.nanoTime();
         // determine action
-        InteractionCommand action = hypermediaEngine.determineAction(event, getFQResourcePath());
+        final InteractionCommand action = hypermediaEngine.determineAction(event, getFQResourcePath());
 
         // create the interaction context
-        InteractionContext ctx = buildInteractionContext(headers, uriInfo, event);
+        final InteractionContext ctx = buildInteractionContext(headers, uriInfo, event);
 
         // look for cached response
         Cache cache = hypermediaEngine.getCache();
+        RequestCoalescer coalescer = hypermediaEngine.getRequestCoalescer();
+        final String cacheKey = createCacheKey(headers, ctx, event);
         Response.ResponseBuilder cached = null;
-        if (cache != null && event.isSafe()) {
-            cached = cache.get(ctx.getUriInfo().getRequestUri().toString());
+        // the response body may have been kept compressed as the client accepts it
+        ResponseCompression compression = null;
+        String accept = null;
+        if (cache instanceof EncodedResponseCache && cacheKey != null) {
+            compression = ResponseCompression.getResponseCompression();
+            if (compression != null && compression.getContentCoding() != null) {
+                accept = HeaderHelper.getFirstHeader(headers, HttpHeaders.ACCEPT);
+                cached = ((EncodedResponseCache) cache).getEncoded(cacheKey, compression.getContentCoding(), accept);
+            } else {
+                compression = null;
+            }
+        }
+        if (cached != null) {
+            compression = null;
+        } else if (cache != null && event.isSafe()) {
+            ResourceState currentState = ctx.getCurrentState();
+            if (cache instanceof RevalidatingCache && currentState != null && currentState.getStaleWhileRevalidate() > 0) {
+                // a stale response is served while it is refreshed in the background
+                cached = ((RevalidatingCache) cache).get(cacheKey, revalidation(headers, ctx, event, action, resource, cacheKey));
+            } else {
+                cached = cache.get(cacheKey);
+            }
         } else {
             LOGGER.debug("Cannot cache {}", uriInfo.getRequestUri());
         }
         Response response = null;
         if (cached != null) {
             response = cached.build();
+        } else if (coalescer != null && cache != null && cacheKey != null && ctx.getCurrentState() != null
+                && ctx.getCurrentState().getMaxAge() > 0) {
+            // identical concurrent requests wait for the first one to cache its response
+            final Cache responseCache = cache;
+            String coalescingKey = ResponseCacheKey.createCoalescingKey(ctx.getRequestUri(), headers, ctx.getCurrentState());
+            response = coalescer.execute(event.getMethod() + " " + coalescingKey, new Callable<Response>() {
+                @Override
+                public Response call() {
+                    Response.ResponseBuilder cachedMeanwhile = responseCache.get(cacheKey);
+                    if (cachedMeanwhile != null) {
+                        return cachedMeanwhile.build();
+                    }
+                    return handleRequest(headers, ctx, event, action, resource, null, cacheKey);
+                }
+            });
         } else {
-            response = handleRequest(headers, ctx, event, action, resource, null);
+            response = handleRequest(headers, ctx, event, action, resource, null, cacheKey);
+        }
+        if (compression != null && response.getStatus() == Status.OK.getStatusCode()) {
+            keepEncoded((EncodedResponseCache) cache, cacheKey, response.getEntity(), compression, accept);
         }
         
         long end = System.nanoTime();
@@ -318,8 +364,70 @@ public class HTTPHypermediaRIM implements HTTPResourceInteractionModel, Expressi
         return response;
     }
 
+    /*
+     * Keep the compressed body of a cached response once it has been written,
+     * for the next requests accepting the same coding.
+     */
+    private void keepEncoded(final EncodedResponseCache cache, final String cacheKey, final Object entity,
+            final ResponseCompression compression, final String accept) {
+        compression.setListener(new ResponseCompression.Listener() {
+            @Override
+            public void compressed(String contentType, byte[] body) {
+                cache.putEncoded(cacheKey, entity, compression.getContentCoding(), accept, contentType, body);
+            }
+        });
+    }
+
+    /*
+     * Handle the request again in the background, the response put in the
+     * cache replacing the stale one. The request is copied beforehand as the
+     * runtime reuses its headers, uri info and parameters once it completes,
+     * but only once the cache schedules the revalidation.
+     */
+    private RevalidatingCache.RevalidationFactory revalidation(final HttpHeaders headers, final InteractionContext ctx,
+            final Event event, final InteractionCommand action, final RESTResource resource, final String cacheKey) {
+        return new RevalidatingCache.RevalidationFactory() {
+            @Override
+            public Runnable createRevalidation() {
+                final RequestSnapshot snapshot = new RequestSnapshot(headers, ctx, metadata, RequestContext.getRequestContext());
+                return new Runnable() {
+                    @Override
+                    public void run() {
+                        RequestContext previous = RequestContext.getRequestContext();
+                        RequestContext.setRequestContext(snapshot.getRequestContext());
+                        try {
+                            handleRequest(snapshot.getHeaders(), snapshot.createInteractionContext(), event, action,
+                                    resource, null, cacheKey);
+                        } finally {
+                            RequestContext.setRequestContext(previous);
+                        }
+                    }
+                };
+            }
+        };
+    }
+
     protected Response handleRequest(@Context HttpHeaders headers, InteractionContext initialCtx, Event event,
             InteractionCommand action, RESTResource resource, ResourceRequestConfig config) {
+        return handleRequest(headers, initialCtx, event, action, resource, config,
+                createCacheKey(headers, initialCtx, event));
+    }
+
+    /*
+     * The key of the cached response to a request, null if it is not cached.
+     * It is computed from the state requested, before the request is handled
+     * and perhaps auto transitioned to another state.
+     */
+    private String createCacheKey(HttpHeaders headers, InteractionContext ctx, Event event) {
+        if (!event.isSafe() || hypermediaEngine.getCache() == null) {
+            return null;
+        }
+        return ResponseCacheKey.create(ctx.getRequestUri(), headers, ctx.getCurrentState());
+    }
+
+    // param cacheKey the key the response is looked up with, from createCacheKey
+    private Response handleRequest(HttpHeaders headers, InteractionContext initialCtx, Event event,
+            InteractionCommand action, RESTResource resource, ResourceRequestConfig config, String cacheKey) {
         assert (event != null);
         InteractionContext ctx = initialCtx;
         StatusType status = Status.NOT_FOUND;
@@ -330,13 +438,26 @@ public class HTTPHypermediaRIM implements HTTPResourceInteractionModel, Expressi
             }
 
             return buildResponse(headers, ctx.getPathParameters(), status, null, getInteractions(), null,
-                    event.isSafe());
+                    null, null, 0, false);
         }
 
+        // the response is cached under the state requested, even if it is auto transitioned to another
+        ResourceState cacheState = event.isSafe() ? initialCtx.getCurrentState() : null;
+        // taken before the resource is read, not to cache it if it is modified meanwhile
+        long invalidationStamp = getInvalidationStamp();
+
         // determine current state, target state, and link used
         initialiseInteractionContext(headers, event, ctx, resource);
+        // answer a conditional GET without executing the action if we can
+        if (config == null) {
+            Response notModified = checkNotModified(headers, event, ctx);
+            if (notModified != null) {
+                return notModified;
+            }
+        }
         // execute action
         InteractionCommand.Result result = null;
+        boolean autoTransitioned = false;
         try {
             long begin = System.nanoTime();
             result = action.execute(ctx);
@@ -350,8 +471,8 @@ public class HTTPHypermediaRIM implements HTTPResourceInteractionModel, Expressi
             
             assert (result != null) : "InteractionCommand must return a result";
             status = determineStatus(headers, event, ctx, result);
-            if (status.getFamily() == Response.Status.Family.SUCCESSFUL && autoTransitioner == null) {
-                autoTransitioner = new AutoTransitioner(
+            if (status.getFamily() == Response.Status.Family.SUCCESSFUL) {
+                AutoTransitioner autoTransitioner = new AutoTransitioner(
                         ctx,
                         getHypermediaEngine().getTransformer(),
                         commandController,
@@ -361,6 +482,7 @@ public class HTTPHypermediaRIM implements HTTPResourceInteractionModel, Expressi
                         .setWorkflowCommandBuilder(getHypermediaEngine().getWorkflowCommandBuilder(WorkflowType.TRANSITION))
                         .setExpressionEvaluator(this);
                 if(autoTransitioner.transition().isSuccessful()) {
+                    autoTransitioned = true;
                     ctx = autoTransitioner.getOutcome().getInteractionContext();
                     status = determineStatus(headers, event, ctx, result);
                 }
@@ -410,8 +532,64 @@ public class HTTPHypermediaRIM implements HTTPResourceInteractionModel, Expressi
 
         }
 
+        // evict the cached responses this interaction may have changed
+        if (event.isUnSafe() && status.getFamily() == Status.Family.SUCCESSFUL) {
+            invalidateCache(initialCtx.getCurrentState());
+        }
+
         // build response
-        return buildResponse(headers, ctx.getPathParameters(), status, ctx.getResource(), null, ctx, event.isSafe());
+        return buildResponse(headers, ctx.getPathParameters(), status, ctx.getResource(), null, ctx, cacheState,
+                cacheKey, invalidationStamp, autoTransitioned);
+    }
+
+    private long getInvalidationStamp() {
+        Cache cache = hypermediaEngine.getCache();
+        return cache instanceof TaggedCache ? ((TaggedCache) cache).getInvalidationStamp() : 0;
+    }
+
+    private void invalidateCache(ResourceState state) {
+        Cache cache = hypermediaEngine.getCache();
+        if (cache instanceof TaggedCache && state != null) {
+            Set<String> affectedStates = hypermediaEngine.getAffectedStateNames(state);
+            LOGGER.debug("Invalidating cached responses of states {}", affectedStates);
+            ((TaggedCache) cache).invalidate(affectedStates);
+        }
+    }
+
+    /*
+     * Resolve the entity tag of the current state without executing its
+     * action and return a 304 Not Modified response if it matches the
+     * If-None-Match header, or null if the request must be processed.
+     * Authorizing the request is left to the state's EntityTagResolver.
+     */
+    private Response checkNotModified(HttpHeaders headers, Event event, InteractionContext ctx) {
+        ResourceState currentState = ctx.getCurrentState();
+        if (currentState == null || currentState.getEntityTagResolver() == null
+                || !HttpMethod.GET.equals(event.getMethod())) {
+            return null;
+        }
+        String ifNoneMatch = HeaderHelper.getFirstHeader(headers, HttpHeaders.IF_NONE_MATCH);
+        if (ifNoneMatch == null) {
+            return null;
+        }
+        String etag = null;
+        try {
+            etag = currentState.getEntityTagResolver().getEntityTag(ctx);
+        } catch (InteractionException ie) {
+            LOGGER.warn("Failed to resolve entity tag of state [{}], executing the request", currentState.getName(), ie);
+            return null;
+        }
+        if (!HeaderHelper.matchesEntityTag(ifNoneMatch, etag)) {
+            return null;
+        }
+        LOGGER.info("Entity tag {} of state {} not modified", etag, currentState.getName());
+        ResponseBuilder responseBuilder = Response.status(Status.NOT_MODIFIED);
+        responseBuilder = HeaderHelper.etagHeader(responseBuilder, etag);
+        if (currentState.getMaxAge() > 0) {
+            responseBuilder = HeaderHelper.maxAgeHeader(responseBuilder, currentState.getMaxAge(), currentState.getStaleWhileRevalidate());
+            responseBuilder = HeaderHelper.varyHeader(responseBuilder, ResponseCacheKey.getVary(currentState));
+        }
+        return responseBuilder.build();
     }
 
     private ResourceState initialiseInteractionContext(HttpHeaders headers, Event event, InteractionContext ctx,
@@ -614,17 +792,21 @@ public class HTTPHypermediaRIM implements HTTPResourceInteractionModel, Expressi
         return ctx;
     }
 
-    // param cacheable true if this response is to an in-principle cacheable
-    // request (i.e. a GET). This method will
-    // determine itself whether the particular resource returned can be
-    // considered for caching
+    // param cacheState the state requested if this response is to an
+    // in-principle cacheable request (i.e. a GET), null otherwise. This
+    // method will determine itself whether the particular resource returned
+    // can be considered for caching
+    // param cacheKey the key the response is cached under, computed from the
+    // cacheState when the request was received
+    // param invalidationStamp the stamp of the last invalidation of the
+    // cache when the request was received
+    // param autoTransitioned true if the request was auto transitioned to
+    // the resource, whose location is then returned
     private Response buildResponse(HttpHeaders headers, MultivaluedMap<String, String> pathParameters,
             StatusType status, RESTResource resource, Set<String> interactions, InteractionContext ctx,
-            boolean cacheable) {
+            ResourceState cacheState, String cacheKey, long invalidationStamp, boolean autoTransitioned) {
         assert (status != null); // not a valid get command
 
-        // The key that this should be cached under, if any
-        Object cacheKey = null;
         int cacheMaxAge = 0;
 
         // Build the Response (representation will be created by the jax-rs
@@ -672,7 +854,7 @@ public class HTTPHypermediaRIM implements HTTPResourceInteractionModel, Expressi
             responseBuilder = HeaderHelper.allowHeader(responseBuilder, interactions);
         } else if (status.getFamily() == Response.Status.Family.SUCCESSFUL) {
             if (resource != null) {
-                if (resource.getLinks() != null && !resource.getLinks().isEmpty() && autoTransitioner != null && autoTransitioner.transition().isSuccessful()) {
+                if (resource.getLinks() != null && !resource.getLinks().isEmpty() && autoTransitioned) {
                     responseBuilder = setLocationHeader(responseBuilder, resource.getLinks().iterator().next().getHref(), ctx.getQueryParameters());
                 }
 
@@ -697,13 +879,12 @@ public class HTTPHypermediaRIM implements HTTPResourceInteractionModel, Expressi
             responseBuilder = HeaderHelper.allowHeader(responseBuilder, interactions);
 
             // If this was for a safe event, and there is a maxAge, apply it.
-            ResourceState currentState = ctx.getCurrentState();
-            cacheMaxAge = currentState.getMaxAge();
-            if (cacheMaxAge > 0 && cacheable) {
-                cacheKey = ctx.getRequestUri();
-                LOGGER.info("Setting maxAge header {} for {} in state {}", currentState.getMaxAge(), cacheKey, currentState.getName());
+            if (cacheState != null && cacheState.getMaxAge() > 0) {
+                cacheMaxAge = cacheState.getMaxAge();
+                LOGGER.info("Setting maxAge header {} for {} in state {}", cacheMaxAge, cacheKey, cacheState.getName());
                 
-                responseBuilder = HeaderHelper.maxAgeHeader(responseBuilder, cacheMaxAge);
+                responseBuilder = HeaderHelper.maxAgeHeader(responseBuilder, cacheMaxAge, cacheState.getStaleWhileRevalidate());
+                responseBuilder = HeaderHelper.varyHeader(responseBuilder, ResponseCacheKey.getVary(cacheState));
             }
 
         } else if ((status.getFamily() == Response.Status.Family.CLIENT_ERROR || status.getFamily() == Response.Status.Family.SERVER_ERROR)
@@ -746,7 +927,17 @@ public class HTTPHypermediaRIM implements HTTPResourceInteractionModel, Expressi
         if (cache != null && cacheKey != null && cacheMaxAge > 0) {
             LOGGER.info("Cache {}", cacheKey);
             
-            cache.put(cacheKey, responseBuilder, cacheMaxAge);
+            int staleWhileRevalidate = cacheState.getStaleWhileRevalidate();
+            if (cache instanceof RevalidatingCache && staleWhileRevalidate > 0) {
+                ((RevalidatingCache) cache).putIfNotInvalidated(cacheKey, responseBuilder, cacheMaxAge,
+                        staleWhileRevalidate, Collections.singleton(cacheState.getName()), invalidationStamp);
+            } else if (cache instanceof TaggedCache) {
+                // tagged with the state to invalidate it on unsafe interactions
+                ((TaggedCache) cache).putIfNotInvalidated(cacheKey, responseBuilder, cacheMaxAge,
+                        Collections.singleton(cacheState.getName()), invalidationStamp);
+            } else {
+                cache.put(cacheKey, responseBuilder, cacheMaxAge);
+            }
         }
 
         LOGGER.info("Building response {} {}", status.getStatusCode(), status.getReasonPhrase());
@@ -819,7 +1010,7 @@ public class HTTPHypermediaRIM implements HTTPResourceInteractionModel, Expressi
         try {
             ResourceRequestConfig config = new ResourceRequestConfig.Builder().transition(resourceTransition).build();
             Event event = new Event("", "GET");
-            InteractionCommand action = hypermediaEngine.buildWorkflow(event, targetState.getActions());
+            InteractionCommand action = hypermediaEngine.buildWorkflow(event, targetState);
 
             InteractionContext newCtx = new InteractionContext(ctx, headers, newPathParameters, newQueryParameters, targetState);
             Response response = handleRequest(headers, newCtx, event, action,  ctx.getResource(), config);
@@ -1054,7 +1245,8 @@ public class HTTPHypermediaRIM implements HTTPResourceInteractionModel, Expressi
 
         // TODO add support for OPTIONS /resource/* which will provide
         // information about valid interactions for any entity
-        return buildResponse(headers, ctx.getPathParameters(), Status.NO_CONTENT, null, getInteractions(), ctx, false);
+        return buildResponse(headers, ctx.getPathParameters(), Status.NO_CONTENT, null, getInteractions(), ctx, null,
+                null, 0, false);
     }
 
     /**
@@ -112,6 +112,122 @@ public class HeaderHelper {
     public static ResponseBuilder maxAgeHeader(ResponseBuilder rb, int maxAge) {
     	return rb.header(HttpHeaders.CACHE_CONTROL, "max-age=" + maxAge );
     }
+
+    /**
+     * Add a Cache-Control header with a max-age and, if positive, a
+     * stale-while-revalidate window (RFC 5861)
+     * @param rb response builder
+     * @param maxAge in seconds
+     * @param staleWhileRevalidate in seconds
+     * @return response builder
+     */
+    public static ResponseBuilder maxAgeHeader(ResponseBuilder rb, int maxAge, int staleWhileRevalidate) {
+    	if (staleWhileRevalidate > 0) {
+    		return rb.header(HttpHeaders.CACHE_CONTROL, "max-age=" + maxAge + ", stale-while-revalidate=" + staleWhileRevalidate);
+    	}
+    	return maxAgeHeader(rb, maxAge);
+    }
+
+    /**
+     * Check an entity tag against an If-None-Match header, using the weak
+     * comparison that applies to this header.
+     * @param ifNoneMatch the If-None-Match header, a list of entity tags or *
+     * @param entityTag the entity tag of the resource
+     * @return true if the header matches the entity tag
+     */
+    public static boolean matchesEntityTag(String ifNoneMatch, String entityTag) {
+        if (ifNoneMatch == null || entityTag == null) {
+            return false;
+        }
+        String opaqueTag = opaqueTag(entityTag);
+        for (String tag : ifNoneMatch.split(",")) {
+            tag = tag.trim();
+            if ("*".equals(tag) || opaqueTag.equals(opaqueTag(tag))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String opaqueTag(String entityTag) {
+        String tag = entityTag.trim();
+        if (tag.startsWith("W/")) {
+            tag = tag.substring(2);
+        }
+        if (tag.length() > 1 && tag.startsWith("\"") && tag.endsWith("\"")) {
+            tag = tag.substring(1, tag.length() - 1);
+        }
+        return tag;
+    }
+
+    /**
+     * Choose a content coding from an Accept-Encoding header (RFC 7231)
+     * @param acceptEncoding the Accept-Encoding header, may be null
+     * @param codings the codings available, in order of preference
+     * @return the acceptable coding with the highest quality, the first in
+     * the order of preference among equals, or null for the identity coding
+     */
+    public static String negotiateContentEncoding(String acceptEncoding, String... codings) {
+        if (acceptEncoding == null || codings == null) {
+            return null;
+        }
+        Map<String, Float> qualities = new HashMap<String, Float>();
+        for (String element : acceptEncoding.split(",")) {
+            String[] parts = element.split(";");
+            String coding = parts[0].trim().toLowerCase(Locale.ENGLISH);
+            if (coding.isEmpty()) {
+                continue;
+            }
+            if ("x-gzip".equals(coding)) {
+                coding = "gzip";
+            }
+            float quality = 1f;
+            for (int i = 1; i < parts.length; i++) {
+                String param = parts[i].trim();
+                if (param.startsWith("q=") || param.startsWith("Q=")) {
+                    try {
+                        quality = Float.parseFloat(param.substring(2).trim());
+                    } catch (NumberFormatException e) {
+                        quality = 0f;
+                    }
+                }
+            }
+            qualities.put(coding, quality);
+        }
+        String chosen = null;
+        float chosenQuality = 0f;
+        for (String coding : codings) {
+            Float quality = qualities.get(coding);
+            if (quality == null) {
+                quality = qualities.get("*");
+            }
+            if (quality != null && quality > chosenQuality) {
+                chosen = coding;
+                chosenQuality = quality;
+            }
+        }
+        return chosen;
+    }
+
+    /**
+     * Add a Vary header
+     * @param rb response builder
+     * @param headers names of the request headers the response varies by
+     * @return response builder
+     */
+    public static ResponseBuilder varyHeader(ResponseBuilder rb, Collection<String> headers) {
+        if (headers != null && !headers.isEmpty()) {
+            StringBuilder vary = new StringBuilder();
+            for (String header : headers) {
+                if (vary.length() > 0) {
+                    vary.append(", ");
+                }
+                vary.append(header);
+            }
+            return rb.header(HttpHeaders.VARY, vary.toString());
+        }
+        return rb;
+    }
     
     /**
      * Returns the first HTTP header entry for the specified header
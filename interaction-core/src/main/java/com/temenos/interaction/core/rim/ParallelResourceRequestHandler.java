@@ -0,0 +1,288 @@
+package com.temenos.interaction.core.rim;
+
+/*
+ * #%L
+ * interaction-core
+ * %%
+ * Copyright (C) 2012 - 2017 Temenos Holdings N.V.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.Response.Status;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.temenos.interaction.core.command.InteractionContext;
+import com.temenos.interaction.core.hypermedia.Transition;
+import com.temenos.interaction.core.resource.EntityResource;
+import com.temenos.interaction.core.web.RequestContext;
+
+/**
+ * <p>Get the transitions concurrently, so that a resource with several
+ * embedded resources waits for the slowest of them rather than for all of
+ * them one after another.</p>
+ *
+ * <p>Each request uses at most <code>maxFanOut</code> threads, its own
+ * included, and waits for at most <code>timeoutMillis</code>; transitions not
+ * completed by then get a {@link Status#SERVICE_UNAVAILABLE} result. The
+ * request thread gets transitions too, and completes the one it has started
+ * even after the deadline. The results are returned in the order of the
+ * transitions of the {@link ResourceRequestConfig}.</p>
+ *
+ * <p>The commands of the embedded resources are executed on the executor's
+ * threads, concurrently with each other, and must not rely on running in
+ * the request thread. Each is given a copy of the request's
+ * {@link InteractionContext} with attributes of its own; the attributes it
+ * sets are added to the request's once it completes, unless it is still
+ * running at the deadline. The resources embedded by an embedded resource
+ * are got one after another in the thread of the latter, so that the threads
+ * of the executor never wait for each other.</p>
+ */
+public class ParallelResourceRequestHandler implements EntityFilterResourceRequestHandler {
+	private static final Logger LOGGER = LoggerFactory.getLogger(ParallelResourceRequestHandler.class);
+
+	public static final int DEFAULT_THREADS = 16;
+	public static final int DEFAULT_MAX_FAN_OUT = 4;
+	public static final long DEFAULT_TIMEOUT_MILLIS = 30000;
+
+	// set while a thread gets transitions, their embedded resources are got in the same thread
+	private static final ThreadLocal<Boolean> gettingTransitions = new ThreadLocal<Boolean>();
+
+	private final SequentialResourceRequestHandler sequentialHandler = new SequentialResourceRequestHandler();
+	private final ExecutorService executor;
+	private final boolean ownExecutor;
+	private final int maxFanOut;
+	private final long timeoutMillis;
+
+	public ParallelResourceRequestHandler() {
+		this(DEFAULT_THREADS, DEFAULT_MAX_FAN_OUT, DEFAULT_TIMEOUT_MILLIS);
+	}
+
+	/**
+	 * @param threads the size of the thread pool shared by all requests
+	 * @param maxFanOut the maximum number of threads used by a request
+	 * @param timeoutMillis how long a request waits for its transitions
+	 */
+	public ParallelResourceRequestHandler(int threads, int maxFanOut, long timeoutMillis) {
+		this(createExecutor(threads), true, maxFanOut, timeoutMillis);
+	}
+
+	/**
+	 * @param executor runs the transitions, not shut down by this handler
+	 * @param maxFanOut the maximum number of threads used by a request
+	 * @param timeoutMillis how long a request waits for its transitions
+	 */
+	public ParallelResourceRequestHandler(ExecutorService executor, int maxFanOut, long timeoutMillis) {
+		this(executor, false, maxFanOut, timeoutMillis);
+	}
+
+	private ParallelResourceRequestHandler(ExecutorService executor, boolean ownExecutor, int maxFanOut, long timeoutMillis) {
+		if (executor == null) {
+			throw new IllegalArgumentException("Executor must not be null");
+		}
+		if (maxFanOut < 1) {
+			throw new IllegalArgumentException("Fan out must be at least 1");
+		}
+		if (timeoutMillis <= 0) {
+			throw new IllegalArgumentException("Timeout must be positive");
+		}
+		this.executor = executor;
+		this.ownExecutor = ownExecutor;
+		this.maxFanOut = maxFanOut;
+		this.timeoutMillis = timeoutMillis;
+	}
+
+	private static ExecutorService createExecutor(int threads) {
+		ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+				new ArrayBlockingQueue<Runnable>(threads * 4), new ThreadFactory() {
+					private final AtomicInteger count = new AtomicInteger();
+
+					@Override
+					public Thread newThread(Runnable r) {
+						Thread thread = new Thread(r, "iris-resource-request-" + count.incrementAndGet());
+						thread.setDaemon(true);
+						return thread;
+					}
+				});
+		pool.allowCoreThreadTimeOut(true);
+		return pool;
+	}
+
+	public int getMaxFanOut() {
+		return maxFanOut;
+	}
+
+	public long getTimeoutMillis() {
+		return timeoutMillis;
+	}
+
+	/**
+	 * Stop the threads created by this handler, an executor supplied to it is
+	 * left alone.
+	 */
+	public void shutdown() {
+		if (ownExecutor) {
+			executor.shutdownNow();
+		}
+	}
+
+	@Override
+	public Map<Transition, ResourceRequestResult> getResources(HTTPHypermediaRIM rimHandler, HttpHeaders headers, InteractionContext ctx, EntityResource<?> resource, ResourceRequestConfig config) {
+		return getResources(rimHandler, headers, ctx, resource, null, config);
+	}
+
+	@Override
+	public Map<Transition, ResourceRequestResult> getResources(final HTTPHypermediaRIM rimHandler, final HttpHeaders headers, final InteractionContext ctx, final EntityResource<?> resource, final Object entity, final ResourceRequestConfig config) {
+		assert(config != null);
+		assert(config.getTransitions() != null);
+		final List<Transition> transitions = new ArrayList<Transition>(new LinkedHashSet<Transition>(config.getTransitions()));
+		Map<Transition, ResourceRequestResult> resources = new LinkedHashMap<Transition, ResourceRequestResult>();
+		if (transitions.size() < 2 || maxFanOut == 1 || gettingTransitions.get() != null) {
+			for (Transition t : transitions) {
+				resources.put(t, sequentialHandler.getResource(rimHandler, headers, ctx, resource, entity, config, t));
+			}
+			return resources;
+		}
+
+		final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+		final AtomicReferenceArray<ResourceRequestResult> results = new AtomicReferenceArray<ResourceRequestResult>(transitions.size());
+		final InteractionContext[] contexts = new InteractionContext[transitions.size()];
+		for (int i = 0; i < contexts.length; i++) {
+			contexts[i] = ctx.copyWithOwnAttributes();
+		}
+		final AtomicInteger next = new AtomicInteger();
+		final RequestContext requestContext = RequestContext.getRequestContext();
+		Runnable worker = new Runnable() {
+			@Override
+			public void run() {
+				RequestContext previous = RequestContext.getRequestContext();
+				RequestContext.setRequestContext(requestContext);
+				Boolean previouslyGetting = gettingTransitions.get();
+				gettingTransitions.set(Boolean.TRUE);
+				try {
+					int i;
+					while ((i = next.getAndIncrement()) < transitions.size() && System.nanoTime() - deadline < 0) {
+						results.set(i, sequentialHandler.getResource(rimHandler, headers, contexts[i], resource, entity, config, transitions.get(i)));
+					}
+				} finally {
+					if (previouslyGetting == null) {
+						gettingTransitions.remove();
+					}
+					RequestContext.setRequestContext(previous);
+				}
+			}
+		};
+
+		int workers = Math.min(transitions.size(), maxFanOut);
+		Map<String, Object> attributes = ctx.getAttributes();
+		List<Future<?>> futures = new ArrayList<Future<?>>(workers);
+		try {
+			// the request thread is one of the workers
+			for (int w = 1; w < workers; w++) {
+				try {
+					futures.add(executor.submit(worker));
+				} catch (RejectedExecutionException ree) {
+					// pool saturated, leave the rest to the request thread
+					LOGGER.debug("Resource request executor saturated, getting resources in the request thread");
+					break;
+				}
+			}
+			worker.run();
+			for (Future<?> future : futures) {
+				await(future, deadline);
+			}
+		} finally {
+			for (Future<?> future : futures) {
+				future.cancel(true);
+			}
+		}
+
+		for (int i = 0; i < transitions.size(); i++) {
+			ResourceRequestResult result = results.get(i);
+			if (result == null) {
+				LOGGER.error("Timed out after {}ms getting resource for transition [{}]", timeoutMillis, transitions.get(i).getId());
+				result = new ResourceRequestResult(Status.SERVICE_UNAVAILABLE.getStatusCode(), null);
+			} else {
+				updateAttributes(ctx, attributes, contexts[i]);
+			}
+			resources.put(transitions.get(i), result);
+		}
+		return resources;
+	}
+
+	/*
+	 * Set the attributes of the request that the transition changed.
+	 */
+	private static void updateAttributes(InteractionContext ctx, Map<String, Object> attributes, InteractionContext transitionCtx) {
+		Map<String, Object> changed = transitionCtx.getAttributes();
+		for (Map.Entry<String, Object> attribute : changed.entrySet()) {
+			if (attribute.getValue() != attributes.get(attribute.getKey())) {
+				ctx.setAttribute(attribute.getKey(), attribute.getValue());
+			}
+		}
+		for (String name : attributes.keySet()) {
+			if (!changed.containsKey(name)) {
+				ctx.setAttribute(name, null);
+			}
+		}
+	}
+
+	/*
+	 * Wait for the future until the deadline, rethrowing anything thrown getting
+	 * the resources.
+	 */
+	private void await(Future<?> future, long deadline) {
+		try {
+			future.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+		} catch (TimeoutException te) {
+			// the missing results are reported as unavailable
+		} catch (CancellationException ce) {
+			// as above
+		} catch (InterruptedException ie) {
+			Thread.currentThread().interrupt();
+		} catch (ExecutionException ee) {
+			Throwable cause = ee.getCause();
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw new RuntimeException(cause);
+		}
+	}
+
+}
@@ -0,0 +1,185 @@
+package com.temenos.interaction.core.rim;
+
+/*
+ * #%L
+ * interaction-core
+ * %%
+ * Copyright (C) 2012 - 2017 Temenos Holdings N.V.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.ws.rs.core.Response;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <p>Coalesces identical concurrent requests so that only the first of them is
+ * processed while the others wait for it to complete. Used by
+ * {@link HTTPHypermediaRIM} for safe requests of cacheable states when set
+ * with
+ * {@link com.temenos.interaction.core.hypermedia.ResourceStateMachine.Builder#requestCoalescer(RequestCoalescer)}.</p>
+ *
+ * <p>The response of the first request is not handed to the others: once it
+ * has completed one of them is processed next while the rest wait for it in
+ * turn, and each is expected to find the response in the response cache
+ * where the first one has put it. If the response was not cached, e.g. an
+ * error, the waiting requests are still processed one at a time rather than
+ * all at once. A request is therefore never answered with a response, or an
+ * entity, built for another one, e.g. an error or a representation shaped for
+ * another user. A request that has waited longer than the timeout in all is
+ * processed without waiting any further.</p>
+ */
+public class RequestCoalescer {
+	private static final Logger LOGGER = LoggerFactory.getLogger(RequestCoalescer.class);
+
+	public static final long DEFAULT_TIMEOUT_MILLIS = 10000;
+
+	private final ConcurrentMap<String, FutureTask<Response>> inFlight = new ConcurrentHashMap<String, FutureTask<Response>>();
+	private final AtomicLong executed = new AtomicLong();
+	private final AtomicLong coalesced = new AtomicLong();
+	private final AtomicLong timeouts = new AtomicLong();
+	private final long timeoutMillis;
+
+	public RequestCoalescer() {
+		this(DEFAULT_TIMEOUT_MILLIS);
+	}
+
+	/**
+	 * @param timeoutMillis how long a request waits for an identical one
+	 */
+	public RequestCoalescer(long timeoutMillis) {
+		if (timeoutMillis <= 0) {
+			throw new IllegalArgumentException("Timeout must be positive");
+		}
+		this.timeoutMillis = timeoutMillis;
+	}
+
+	/**
+	 * Process the request, first waiting for the identical ones already being
+	 * processed, one after the other.
+	 * @param key identifies identical requests
+	 * @param request processes the request, looking up the response cache first
+	 * @return the response
+	 */
+	public Response execute(String key, Callable<Response> request) {
+		if (key == null) {
+			return call(request);
+		}
+		FutureTask<Response> task = new FutureTask<Response>(request);
+		long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+		boolean waited = false;
+		while (true) {
+			FutureTask<Response> leader = inFlight.putIfAbsent(key, task);
+			if (leader == null) {
+				if (!waited) {
+					executed.incrementAndGet();
+				}
+				try {
+					task.run();
+				} finally {
+					inFlight.remove(key, task);
+				}
+				return getResult(task);
+			}
+			if (!waited) {
+				coalesced.incrementAndGet();
+				waited = true;
+			}
+			try {
+				leader.get(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+			} catch (TimeoutException te) {
+				timeouts.incrementAndGet();
+				LOGGER.warn("Timed out after {}ms waiting for identical request [{}]", timeoutMillis, key);
+				return call(request);
+			} catch (ExecutionException ee) {
+				LOGGER.debug("Identical request [{}] failed", key);
+			} catch (InterruptedException ie) {
+				Thread.currentThread().interrupt();
+				return call(request);
+			}
+			// the next identical request in turn, which finds the response in the cache if it was put there
+		}
+	}
+
+	public long getTimeoutMillis() {
+		return timeoutMillis;
+	}
+
+	/**
+	 * Number of requests processed without waiting for an identical one.
+	 */
+	public long getExecuted() {
+		return executed.get();
+	}
+
+	/**
+	 * Number of requests that waited for an identical one.
+	 */
+	public long getCoalesced() {
+		return coalesced.get();
+	}
+
+	/**
+	 * Number of requests that waited for an identical one in vain.
+	 */
+	public long getTimeouts() {
+		return timeouts.get();
+	}
+
+	@Override
+	public String toString() {
+		return "RequestCoalescer[executed=" + executed + ", coalesced=" + coalesced + ", timeouts=" + timeouts + "]";
+	}
+
+	private Response getResult(FutureTask<Response> task) {
+		try {
+			return task.get();
+		} catch (InterruptedException ie) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException(ie);
+		} catch (ExecutionException ee) {
+			throw propagate(ee.getCause());
+		}
+	}
+
+	private Response call(Callable<Response> request) {
+		try {
+			return request.call();
+		} catch (Exception e) {
+			throw propagate(e);
+		}
+	}
+
+	private RuntimeException propagate(Throwable t) {
+		if (t instanceof RuntimeException) {
+			return (RuntimeException) t;
+		}
+		if (t instanceof Error) {
+			throw (Error) t;
+		}
+		return new RuntimeException(t);
+	}
+}
@@ -0,0 +1,325 @@
+package com.temenos.interaction.core.rim;
+
+/*
+ * #%L
+ * interaction-core
+ * %%
+ * Copyright (C) 2012 - 2017 Temenos Holdings N.V.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import javax.ws.rs.core.Cookie;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.core.PathSegment;
+import javax.ws.rs.core.UriBuilder;
+import javax.ws.rs.core.UriInfo;
+
+import com.temenos.interaction.core.MultivaluedMapImpl;
+import com.temenos.interaction.core.command.InteractionContext;
+import com.temenos.interaction.core.entity.Metadata;
+import com.temenos.interaction.core.hypermedia.ResourceState;
+import com.temenos.interaction.core.web.RequestContext;
+
+/**
+ * A copy of what a request is handled with, taken while the request is in
+ * progress, so that it can be handled again once it has completed, e.g. to
+ * revalidate its cached response in the background. The runtime recycles the
+ * headers, uri info and parameters of a request once it has completed.
+ */
+final class RequestSnapshot {
+
+	private final HttpHeaders headers;
+	private final UriInfo uriInfo;
+	private final MultivaluedMap<String, String> pathParameters;
+	private final MultivaluedMap<String, String> queryParameters;
+	private final ResourceState currentState;
+	private final Metadata metadata;
+	private final RequestContext requestContext;
+
+	RequestSnapshot(HttpHeaders headers, InteractionContext ctx, Metadata metadata, RequestContext requestContext) {
+		this.headers = headers != null ? new HeadersSnapshot(headers) : null;
+		this.uriInfo = ctx.getUriInfo() != null ? new UriInfoSnapshot(ctx.getUriInfo()) : null;
+		this.pathParameters = copy(ctx.getPathParameters());
+		this.queryParameters = copy(ctx.getQueryParameters());
+		this.currentState = ctx.getCurrentState();
+		this.metadata = metadata;
+		this.requestContext = requestContext != null ? copy(requestContext) : null;
+	}
+
+	HttpHeaders getHeaders() {
+		return headers;
+	}
+
+	RequestContext getRequestContext() {
+		return requestContext;
+	}
+
+	/**
+	 * @return a new context of the request, with parameters of its own
+	 */
+	InteractionContext createInteractionContext() {
+		return new InteractionContext(uriInfo, headers, copy(pathParameters), copy(queryParameters), currentState, metadata);
+	}
+
+	private static MultivaluedMap<String, String> copy(Map<String, List<String>> map) {
+		MultivaluedMap<String, String> copy = new MultivaluedMapImpl<String>();
+		if (map != null) {
+			for (Map.Entry<String, List<String>> entry : map.entrySet()) {
+				copy.put(entry.getKey(), entry.getValue() != null ? new ArrayList<String>(entry.getValue()) : new ArrayList<String>());
+			}
+		}
+		return copy;
+	}
+
+	private static <T> List<T> copyList(List<T> list) {
+		return list != null ? Collections.unmodifiableList(new ArrayList<T>(list)) : null;
+	}
+
+	private static RequestContext copy(RequestContext requestContext) {
+		Map<String, List<String>> headers = new HashMap<String, List<String>>();
+		for (Map.Entry<String, List<String>> entry : requestContext.getAllHeaders().entrySet()) {
+			headers.put(entry.getKey(), copyList(entry.getValue()));
+		}
+		return new RequestContext.Builder()
+				.setBasePath(requestContext.getBasePath())
+				.setRequestUri(requestContext.getRequestUri())
+				.setVerbosityHeader(requestContext.getVerbosityHeader())
+				.setUserPrincipal(requestContext.getUserPrincipal())
+				.setHeaders(headers)
+				.setRequestTime(requestContext.getRequestTime())
+				.build();
+	}
+
+	private static final class HeadersSnapshot implements HttpHeaders {
+		private final MultivaluedMap<String, String> requestHeaders;
+		private final List<MediaType> acceptableMediaTypes;
+		private final List<Locale> acceptableLanguages;
+		private final MediaType mediaType;
+		private final Locale language;
+		private final Map<String, Cookie> cookies;
+
+		HeadersSnapshot(HttpHeaders headers) {
+			this.requestHeaders = copy(headers.getRequestHeaders());
+			this.acceptableMediaTypes = copyList(headers.getAcceptableMediaTypes());
+			this.acceptableLanguages = copyList(headers.getAcceptableLanguages());
+			this.mediaType = headers.getMediaType();
+			this.language = headers.getLanguage();
+			this.cookies = headers.getCookies() != null
+					? Collections.unmodifiableMap(new HashMap<String, Cookie>(headers.getCookies())) : null;
+		}
+
+		@Override
+		public List<String> getRequestHeader(String name) {
+			// header names are case insensitive
+			for (Map.Entry<String, List<String>> entry : requestHeaders.entrySet()) {
+				if (entry.getKey().equalsIgnoreCase(name)) {
+					return Collections.unmodifiableList(entry.getValue());
+				}
+			}
+			return null;
+		}
+
+		@Override
+		public MultivaluedMap<String, String> getRequestHeaders() {
+			return copy(requestHeaders);
+		}
+
+		@Override
+		public List<MediaType> getAcceptableMediaTypes() {
+			return acceptableMediaTypes;
+		}
+
+		@Override
+		public List<Locale> getAcceptableLanguages() {
+			return acceptableLanguages;
+		}
+
+		@Override
+		public MediaType getMediaType() {
+			return mediaType;
+		}
+
+		@Override
+		public Locale getLanguage() {
+			return language;
+		}
+
+		@Override
+		public Map<String, Cookie> getCookies() {
+			return cookies;
+		}
+	}
+
+	private static final class UriInfoSnapshot implements UriInfo {
+		private final String path;
+		private final String encodedPath;
+		private final List<PathSegment> pathSegments;
+		private final List<PathSegment> encodedPathSegments;
+		private final URI requestUri;
+		private final URI absolutePath;
+		private final URI baseUri;
+		private final MultivaluedMap<String, String> pathParameters;
+		private final MultivaluedMap<String, String> encodedPathParameters;
+		private final MultivaluedMap<String, String> queryParameters;
+		private final MultivaluedMap<String, String> encodedQueryParameters;
+		private final List<String> matchedURIs;
+		private final List<String> encodedMatchedURIs;
+		private final List<Object> matchedResources;
+
+		UriInfoSnapshot(UriInfo uriInfo) {
+			this.path = uriInfo.getPath(true);
+			this.encodedPath = uriInfo.getPath(false);
+			this.pathSegments = copySegments(uriInfo.getPathSegments(true));
+			this.encodedPathSegments = copySegments(uriInfo.getPathSegments(false));
+			this.requestUri = uriInfo.getRequestUri();
+			this.absolutePath = uriInfo.getAbsolutePath();
+			this.baseUri = uriInfo.getBaseUri();
+			this.pathParameters = copy(uriInfo.getPathParameters(true));
+			this.encodedPathParameters = copy(uriInfo.getPathParameters(false));
+			this.queryParameters = copy(uriInfo.getQueryParameters(true));
+			this.encodedQueryParameters = copy(uriInfo.getQueryParameters(false));
+			this.matchedURIs = copyList(uriInfo.getMatchedURIs(true));
+			this.encodedMatchedURIs = copyList(uriInfo.getMatchedURIs(false));
+			this.matchedResources = copyList(uriInfo.getMatchedResources());
+		}
+
+		private static List<PathSegment> copySegments(List<PathSegment> segments) {
+			if (segments == null) {
+				return null;
+			}
+			List<PathSegment> copy = new ArrayList<PathSegment>();
+			for (PathSegment segment : segments) {
+				copy.add(new PathSegmentSnapshot(segment));
+			}
+			return Collections.unmodifiableList(copy);
+		}
+
+		@Override
+		public String getPath() {
+			return path;
+		}
+
+		@Override
+		public String getPath(boolean decode) {
+			return decode ? path : encodedPath;
+		}
+
+		@Override
+		public List<PathSegment> getPathSegments() {
+			return pathSegments;
+		}
+
+		@Override
+		public List<PathSegment> getPathSegments(boolean decode) {
+			return decode ? pathSegments : encodedPathSegments;
+		}
+
+		@Override
+		public URI getRequestUri() {
+			return requestUri;
+		}
+
+		@Override
+		public UriBuilder getRequestUriBuilder() {
+			return UriBuilder.fromUri(requestUri);
+		}
+
+		@Override
+		public URI getAbsolutePath() {
+			return absolutePath;
+		}
+
+		@Override
+		public UriBuilder getAbsolutePathBuilder() {
+			return UriBuilder.fromUri(absolutePath);
+		}
+
+		@Override
+		public URI getBaseUri() {
+			return baseUri;
+		}
+
+		@Override
+		public UriBuilder getBaseUriBuilder() {
+			return UriBuilder.fromUri(baseUri);
+		}
+
+		@Override
+		public MultivaluedMap<String, String> getPathParameters() {
+			return copy(pathParameters);
+		}
+
+		@Override
+		public MultivaluedMap<String, String> getPathParameters(boolean decode) {
+			return copy(decode ? pathParameters : encodedPathParameters);
+		}
+
+		@Override
+		public MultivaluedMap<String, String> getQueryParameters() {
+			return copy(queryParameters);
+		}
+
+		@Override
+		public MultivaluedMap<String, String> getQueryParameters(boolean decode) {
+			return copy(decode ? queryParameters : encodedQueryParameters);
+		}
+
+		@Override
+		public List<String> getMatchedURIs() {
+			return matchedURIs;
+		}
+
+		@Override
+		public List<String> getMatchedURIs(boolean decode) {
+			return decode ? matchedURIs : encodedMatchedURIs;
+		}
+
+		@Override
+		public List<Object> getMatchedResources() {
+			return matchedResources;
+		}
+	}
+
+	private static final class PathSegmentSnapshot implements PathSegment {
+		private final String path;
+		private final MultivaluedMap<String, String> matrixParameters;
+
+		PathSegmentSnapshot(PathSegment segment) {
+			this.path = segment.getPath();
+			this.matrixParameters = copy(segment.getMatrixParameters());
+		}
+
+		@Override
+		public String getPath() {
+			return path;
+		}
+
+		@Override
+		public MultivaluedMap<String, String> getMatrixParameters() {
+			return copy(matrixParameters);
+		}
+	}
+}
@@ -0,0 +1,125 @@
+package com.temenos.interaction.core.rim;
+
+/*
+ * #%L
+ * interaction-core
+ * %%
+ * Copyright (C) 2012 - 2017 Temenos Holdings N.V.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+import java.security.Principal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import javax.ws.rs.core.HttpHeaders;
+
+import com.temenos.interaction.core.hypermedia.ResourceState;
+import com.temenos.interaction.core.web.RequestContext;
+
+/**
+ * Builds the keys of the response cache from the request URI and the values
+ * of the request headers, and the authenticated user, that the representation
+ * of the requested state varies by.
+ *
+ * @see ResourceState#getVaryHeaders()
+ * @see ResourceState#isVaryByPrincipal()
+ */
+public final class ResponseCacheKey {
+
+	private ResponseCacheKey() {}
+
+	/**
+	 * @param requestUri the URI of the request
+	 * @param headers the request headers, may be null
+	 * @param state the requested state
+	 * @return the key to cache the response under
+	 */
+	public static String create(Object requestUri, HttpHeaders headers, ResourceState state) {
+		if (requestUri == null) {
+			return null;
+		}
+		String uri = requestUri.toString();
+		if (state == null || (state.getVaryHeaders().isEmpty() && !state.isVaryByPrincipal())) {
+			return uri;
+		}
+		// header values cannot contain line breaks
+		StringBuilder key = new StringBuilder(uri);
+		for (String name : state.getVaryHeaders()) {
+			key.append('\n').append(name.toLowerCase(Locale.ENGLISH)).append(':');
+			List<String> values = headers != null ? headers.getRequestHeader(name) : null;
+			if (values != null) {
+				for (int i = 0; i < values.size(); i++) {
+					if (i > 0) {
+						key.append(',');
+					}
+					key.append(values.get(i).trim());
+				}
+			}
+		}
+		if (state.isVaryByPrincipal()) {
+			Principal principal = getPrincipal();
+			key.append("\nprincipal:");
+			if (principal != null) {
+				key.append(principal.getName());
+			}
+		}
+		return key.toString();
+	}
+
+	/**
+	 * Key of the requests that may wait for each other, which unlike the
+	 * cache key always distinguishes the authenticated users.
+	 * @param requestUri the URI of the request
+	 * @param headers the request headers, may be null
+	 * @param state the requested state
+	 * @return the key to coalesce the request with identical ones
+	 */
+	public static String createCoalescingKey(Object requestUri, HttpHeaders headers, ResourceState state) {
+		String key = create(requestUri, headers, state);
+		if (key == null || (state != null && state.isVaryByPrincipal())) {
+			return key;
+		}
+		Principal principal = getPrincipal();
+		return principal != null ? key + "\nprincipal:" + principal.getName() : key;
+	}
+
+	private static Principal getPrincipal() {
+		RequestContext requestContext = RequestContext.getRequestContext();
+		return requestContext != null ? requestContext.getUserPrincipal() : null;
+	}
+
+	/**
+	 * @return the names to list in the Vary header of a response of this state
+	 */
+	public static List<String> getVary(ResourceState state) {
+		List<String> vary = new ArrayList<String>(state.getVaryHeaders());
+		if (state.isVaryByPrincipal() && !containsIgnoreCase(vary, HttpHeaders.AUTHORIZATION)) {
+			vary.add(HttpHeaders.AUTHORIZATION);
+		}
+		return vary;
+	}
+
+	private static boolean containsIgnoreCase(List<String> names, String name) {
+		for (String n : names) {
+			if (n.equalsIgnoreCase(name)) {
+				return true;
+			}
+		}
+		return false;
+	}
+}
@@ -46,84 +46,92 @@ import com.temenos.interaction.core.resource.RESTResource;
  * <p>Simply iterate through the transitions and get each one in turn.</p>
  * @author aphethean
  */
-public class SequentialResourceRequestHandler implements ResourceRequestHandler {
+public class SequentialResourceRequestHandler implements EntityFilterResourceRequestHandler {
 
 	@Override
 	public Map<Transition, ResourceRequestResult> getResources(HTTPHypermediaRIM rimHandler, HttpHeaders headers, InteractionContext ctx, EntityResource<?> resource, ResourceRequestConfig config) {
 		return getResources(rimHandler, headers, ctx, resource, null, config);
 	}
 
+	@Override
 	public Map<Transition, ResourceRequestResult> getResources(HTTPHypermediaRIM rimHandler, HttpHeaders headers, InteractionContext ctx, EntityResource<?> resource, Object entity, ResourceRequestConfig config) {	
 		assert(config != null);
 		assert(config.getTransitions() != null);
-		ResourceStateMachine hypermediaEngine = rimHandler.getHypermediaEngine();
 		Map<Transition, ResourceRequestResult> resources = new HashMap<Transition, ResourceRequestResult>(); 
 		for (Transition t : config.getTransitions()) {
-			String method = t.getCommand().getMethod();
-			if ((t.getCommand().getFlags() & Transition.AUTO) == Transition.AUTO) {
-				method = t.getCommand().getMethod();
-			}
-	    	Event event = new Event("", method);
-			// determine action
-	    	ResourceState targetState = t.getTarget();
-			if (targetState instanceof LazyResourceState || targetState instanceof LazyCollectionResourceState) {
-				targetState = rimHandler.getHypermediaEngine().getResourceStateProvider().getResourceState(targetState.getName());
-				t.setTarget(targetState);
-			}
-	    	
-	    	InteractionCommand action = hypermediaEngine.buildWorkflow(event, targetState.getActions());
-	    	
-			MultivaluedMap<String, String> newPathParameters = new MultivaluedMapImpl<String>();
-			newPathParameters.putAll(ctx.getPathParameters());
-			
-            Object resEntity = entity;
-            if (resource != null) {
-                resEntity = ((EntityResource<?>) resource).getEntity();
-            }
+			resources.put(t, getResource(rimHandler, headers, ctx, resource, entity, config, t));
+		}
+		return resources;
+	}
 
-            Map<String, Object> transitionProperties = hypermediaEngine.getTransitionProperties(t, resEntity,
-                    ctx.getPathParameters(), ctx.getQueryParameters());
+	/*
+	 * Get the target of a single transition.
+	 */
+	ResourceRequestResult getResource(HTTPHypermediaRIM rimHandler, HttpHeaders headers, InteractionContext ctx, EntityResource<?> resource, Object entity, ResourceRequestConfig config, Transition t) {
+		ResourceStateMachine hypermediaEngine = rimHandler.getHypermediaEngine();
+		String method = t.getCommand().getMethod();
+		if ((t.getCommand().getFlags() & Transition.AUTO) == Transition.AUTO) {
+			method = t.getCommand().getMethod();
+		}
+    	Event event = new Event("", method);
+		// determine action
+    	ResourceState targetState = t.getTarget();
+		if (targetState instanceof LazyResourceState || targetState instanceof LazyCollectionResourceState) {
+			targetState = rimHandler.getHypermediaEngine().getResourceStateProvider().getResourceState(targetState.getName());
+			t.setTarget(targetState);
+		}
+    	
+    	InteractionCommand action = hypermediaEngine.buildWorkflow(event, targetState);
+    	
+		MultivaluedMap<String, String> newPathParameters = new MultivaluedMapImpl<String>();
+		newPathParameters.putAll(ctx.getPathParameters());
+		
+        Object resEntity = entity;
+        if (resource != null) {
+            resEntity = ((EntityResource<?>) resource).getEntity();
+        }
 
-            for (String key : transitionProperties.keySet()) {
-                if (transitionProperties.get(key) != null) {
-                    newPathParameters.add(key, transitionProperties.get(key).toString());
-                }
-            }			
-			
+        Map<String, Object> transitionProperties = hypermediaEngine.getTransitionProperties(t, resEntity,
+                ctx.getPathParameters(), ctx.getQueryParameters());
 
-			MultivaluedMap<String, String> newQueryParameters = new MultivaluedMapImpl<String>();
-			newQueryParameters.putAll(ctx.getQueryParameters());
-						
-			if (entity != null) {
-				/* Handle cases where we may be embedding a resource that has filter criteria whose values are contained in the current resource's 
-				 * entity properties.				
-				 */				
-                Map<String, Object> transitionPropertiesFilter = hypermediaEngine.getTransitionProperties(t, entity,
-                        ctx.getPathParameters(), ctx.getQueryParameters());
-				
-                for (String key : transitionPropertiesFilter.keySet()) {
-                    if (transitionPropertiesFilter.get(key) != null) {
-                        newQueryParameters.add(key, transitionPropertiesFilter.get(key).toString());
-                    }
-				}
-			}
-			
+        for (String key : transitionProperties.keySet()) {
+            if (transitionProperties.get(key) != null) {
+                newPathParameters.add(key, transitionProperties.get(key).toString());
+            }
+        }			
+		
+
+		MultivaluedMap<String, String> newQueryParameters = new MultivaluedMapImpl<String>();
+		newQueryParameters.putAll(ctx.getQueryParameters());
+					
+		if (entity != null) {
+			/* Handle cases where we may be embedding a resource that has filter criteria whose values are contained in the current resource's 
+			 * entity properties.				
+			 */				
+            Map<String, Object> transitionPropertiesFilter = hypermediaEngine.getTransitionProperties(t, entity,
+                    ctx.getPathParameters(), ctx.getQueryParameters());
 			
-	    	InteractionContext newCtx = new InteractionContext(ctx, null, newPathParameters, newQueryParameters, targetState);
-	    	newCtx.setResource(null);
-			Response response = rimHandler.handleRequest(headers, 
-					newCtx, 
-					event, 
-					action, 
-					resource, 
-					config);
-			RESTResource targetResource = null;
-			if (response.getEntity() != null) {
-				targetResource = (RESTResource) ((GenericEntity<?>) response.getEntity()).getEntity();
+            for (String key : transitionPropertiesFilter.keySet()) {
+                if (transitionPropertiesFilter.get(key) != null) {
+                    newQueryParameters.add(key, transitionPropertiesFilter.get(key).toString());
+                }
 			}
-			resources.put(t, new ResourceRequestResult(response.getStatus(), targetResource));
 		}
-		return resources;
+		
+		
+    	InteractionContext newCtx = new InteractionContext(ctx, null, newPathParameters, newQueryParameters, targetState);
+    	newCtx.setResource(null);
+		Response response = rimHandler.handleRequest(headers, 
+				newCtx, 
+				event, 
+				action, 
+				resource, 
+				config);
+		RESTResource targetResource = null;
+		if (response.getEntity() != null) {
+			targetResource = (RESTResource) ((GenericEntity<?>) response.getEntity()).getEntity();
+		}
+		return new ResourceRequestResult(response.getStatus(), targetResource);
 	}
 
 }
@@ -0,0 +1,392 @@
+package com.temenos.interaction.core.web;
+
+/*
+ * #%L
+ * interaction-core
+ * %%
+ * Copyright (C) 2012 - 2017 Temenos Holdings N.V.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Response that holds back the start of the body until it can tell whether
+ * to compress it, then compresses the rest as it is written.
+ */
+class CompressingResponse extends HttpServletResponseWrapper {
+    private static final Logger LOGGER = LoggerFactory.getLogger(CompressingResponse.class);
+
+    static final String CONTENT_ENCODING = "Content-Encoding";
+    static final String CONTENT_LENGTH = "Content-Length";
+    static final String VARY = "Vary";
+    static final String ACCEPT_ENCODING = "Accept-Encoding";
+    private static final int COMPRESSOR_BUFFER_SIZE = 8192;
+
+    private final HttpServletResponse response;
+    private final ResponseCompression compression;
+    private final CompressionFilter filter;
+    private CompressingOutputStream stream;
+    private PrintWriter writer;
+    // held back until it is known whether the body is compressed
+    private String contentLength;
+
+    CompressingResponse(HttpServletResponse response, ResponseCompression compression, CompressionFilter filter) {
+        super(response);
+        this.response = response;
+        this.compression = compression;
+        this.filter = filter;
+    }
+
+    @Override
+    public ServletOutputStream getOutputStream() throws IOException {
+        if (writer != null) {
+            throw new IllegalStateException("getWriter() has already been called for this response");
+        }
+        if (stream == null) {
+            stream = new CompressingOutputStream(filter.getMinSize());
+        }
+        return stream;
+    }
+
+    @Override
+    public PrintWriter getWriter() throws IOException {
+        if (writer == null) {
+            if (stream != null) {
+                throw new IllegalStateException("getOutputStream() has already been called for this response");
+            }
+            stream = new CompressingOutputStream(filter.getMinSize());
+            writer = new PrintWriter(new OutputStreamWriter(stream, getCharacterEncoding()));
+        }
+        return writer;
+    }
+
+    @Override
+    public void setContentLength(int len) {
+        setContentLength(String.valueOf(len));
+    }
+
+    @Override
+    public void setHeader(String name, String value) {
+        if (CONTENT_LENGTH.equalsIgnoreCase(name)) {
+            setContentLength(value);
+        } else {
+            super.setHeader(name, value);
+        }
+    }
+
+    @Override
+    public void addHeader(String name, String value) {
+        if (CONTENT_LENGTH.equalsIgnoreCase(name)) {
+            setContentLength(value);
+        } else {
+            super.addHeader(name, value);
+        }
+    }
+
+    @Override
+    public void setIntHeader(String name, int value) {
+        if (CONTENT_LENGTH.equalsIgnoreCase(name)) {
+            setContentLength(String.valueOf(value));
+        } else {
+            super.setIntHeader(name, value);
+        }
+    }
+
+    @Override
+    public void addIntHeader(String name, int value) {
+        if (CONTENT_LENGTH.equalsIgnoreCase(name)) {
+            setContentLength(String.valueOf(value));
+        } else {
+            super.addIntHeader(name, value);
+        }
+    }
+
+    private void setContentLength(String value) {
+        if (stream == null || !stream.isDecided()) {
+            contentLength = value;
+        } else if (!stream.isCompressed()) {
+            response.setHeader(CONTENT_LENGTH, value);
+        }
+        // the length of a compressed body is not known in advance
+    }
+
+    @Override
+    public void flushBuffer() throws IOException {
+        if (writer != null) {
+            writer.flush();
+        }
+        // committing the response before the coding is chosen would lose it
+        if (stream == null || stream.isDecided()) {
+            if (stream != null) {
+                stream.flush();
+            }
+            super.flushBuffer();
+        }
+    }
+
+    @Override
+    public void reset() {
+        if (stream != null) {
+            stream.resetBuffer();
+        }
+        super.reset();
+        contentLength = null;
+    }
+
+    @Override
+    public void resetBuffer() {
+        if (stream != null) {
+            stream.resetBuffer();
+        }
+        super.resetBuffer();
+    }
+
+    /**
+     * Write whatever has been held back and complete the compression.
+     */
+    void finish() throws IOException {
+        if (writer != null) {
+            writer.flush();
+        }
+        if (stream != null) {
+            stream.finish();
+        } else if (contentLength != null) {
+            response.setHeader(CONTENT_LENGTH, contentLength);
+        }
+    }
+
+    /*
+     * Choose the coding of the body, complete when the whole of it has been
+     * held back.
+     */
+    private boolean shouldCompress(int heldBack, boolean complete) {
+        if (!filter.isCompressible(getContentType()) || response.containsHeader(CONTENT_ENCODING)) {
+            return false;
+        }
+        // the response may be compressed for other clients
+        response.addHeader(VARY, ACCEPT_ENCODING);
+        if (compression.getContentCoding() == null) {
+            return false;
+        }
+        if (complete && (heldBack == 0 || heldBack < filter.getMinSize())) {
+            return false;
+        }
+        int status = response.getStatus();
+        return status != HttpServletResponse.SC_NO_CONTENT
+                && status != HttpServletResponse.SC_PARTIAL_CONTENT
+                && status != HttpServletResponse.SC_NOT_MODIFIED
+                && !response.containsHeader("Content-Range");
+    }
+
+    private final class CompressingOutputStream extends ServletOutputStream {
+        private final byte[] buffer;
+        private int count;
+        // null until the coding is chosen
+        private OutputStream out;
+        private BodyOutputStream body;
+        private DeflaterOutputStream compressor;
+        private boolean finished;
+
+        CompressingOutputStream(int minSize) {
+            this.buffer = new byte[minSize];
+        }
+
+        boolean isDecided() {
+            return out != null;
+        }
+
+        boolean isCompressed() {
+            return compressor != null;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if (finished) {
+                throw new IOException("Response already finished");
+            }
+            if (out == null && count < buffer.length) {
+                buffer[count++] = (byte) b;
+                return;
+            }
+            if (out == null) {
+                decide(false);
+            }
+            out.write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (finished) {
+                throw new IOException("Response already finished");
+            }
+            if (out == null) {
+                if (count + len <= buffer.length) {
+                    System.arraycopy(b, off, buffer, count, len);
+                    count += len;
+                    return;
+                }
+                decide(false);
+            }
+            out.write(b, off, len);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            // held back before the coding is chosen
+            if (out != null) {
+                out.flush();
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            finish();
+        }
+
+        void resetBuffer() {
+            if (out != null) {
+                // the coding of the body may have been sent already
+                throw new IllegalStateException("Response body already started");
+            }
+            count = 0;
+        }
+
+        void finish() throws IOException {
+            if (finished) {
+                return;
+            }
+            if (out == null) {
+                decide(true);
+            }
+            finished = true;
+            if (compressor != null) {
+                // ends the compressor, the body stream leaves the response open
+                compressor.close();
+                byte[] captured = body.getCaptured();
+                ResponseCompression.Listener listener = compression.getListener();
+                if (captured != null && listener != null) {
+                    try {
+                        listener.compressed(getContentType(), captured);
+                    } catch (RuntimeException e) {
+                        LOGGER.warn("Failed to pass on compressed response", e);
+                    }
+                }
+            } else {
+                out.flush();
+            }
+        }
+
+        private void decide(boolean complete) throws IOException {
+            if (shouldCompress(count, complete)) {
+                String coding = compression.getContentCoding();
+                response.setHeader(CONTENT_ENCODING, coding);
+                int maxCaptureSize = compression.getListener() != null ? filter.getMaxCaptureSize() : 0;
+                body = new BodyOutputStream(response.getOutputStream(), maxCaptureSize);
+                if (CompressionFilter.GZIP.equals(coding)) {
+                    compressor = new GZIPOutputStream(body, COMPRESSOR_BUFFER_SIZE, true);
+                } else {
+                    compressor = new DeflaterOutputStream(body, new Deflater(), COMPRESSOR_BUFFER_SIZE, true) {
+                        @Override
+                        public void close() throws IOException {
+                            super.close();
+                            def.end();
+                        }
+                    };
+                }
+                out = compressor;
+            } else {
+                if (contentLength != null) {
+                    response.setHeader(CONTENT_LENGTH, contentLength);
+                }
+                out = response.getOutputStream();
+            }
+            contentLength = null;
+            if (count > 0) {
+                out.write(buffer, 0, count);
+                count = 0;
+            }
+        }
+    }
+
+    /*
+     * Passes the compressed body on to the response, keeping a copy of it if
+     * it is small enough; closing it leaves the response open.
+     */
+    private static final class BodyOutputStream extends OutputStream {
+        private final OutputStream out;
+        private final int maxCaptureSize;
+        private ByteArrayOutputStream capture;
+
+        BodyOutputStream(OutputStream out, int maxCaptureSize) {
+            this.out = out;
+            this.maxCaptureSize = maxCaptureSize;
+            this.capture = maxCaptureSize > 0 ? new ByteArrayOutputStream() : null;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            if (capture != null) {
+                capture.write(b);
+                checkCapture();
+            }
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            if (capture != null) {
+                capture.write(b, off, len);
+                checkCapture();
+            }
+        }
+
+        private void checkCapture() {
+            if (capture.size() > maxCaptureSize) {
+                capture = null;
+            }
+        }
+
+        byte[] getCaptured() {
+            return capture != null ? capture.toByteArray() : null;
+        }
+
+        @Override
+        public void flush() throws IOException {
+            out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.flush();
+        }
+    }
+}
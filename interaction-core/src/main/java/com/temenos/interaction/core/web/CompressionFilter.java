@@ -0,0 +1,233 @@
+package com.temenos.interaction.core.web;
+
+/*
+ * #%L
+ * interaction-core
+ * %%
+ * Copyright (C) 2012 - 2017 Temenos Holdings N.V.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import com.temenos.interaction.core.rim.HeaderHelper;
+
+/**
+ * <p>Compress the responses with the content coding, gzip or deflate, that
+ * the client prefers in its Accept-Encoding header.</p>
+ *
+ * <p>The body is compressed as the providers write it. The first
+ * <code>minSize</code> bytes are held back so that smaller responses are sent
+ * as they are, and only the media types listed in <code>mediaTypes</code>
+ * are compressed. A response that already has a Content-Encoding, e.g. one
+ * compressed beforehand, is left alone.</p>
+ *
+ * <p>The negotiated coding is available to the resources through
+ * {@link ResponseCompression}, which can also hand them the compressed body
+ * so that a cached response need not be compressed again.</p>
+ *
+ * Init parameters, all optional:
+ * <ul>
+ * <li>contentCodings - comma separated, in order of preference (gzip, deflate)</li>
+ * <li>minSize - bytes below which a response is not compressed (1024)</li>
+ * <li>mediaTypes - comma separated, <code>type/*</code> for all subtypes (XML, JSON and text types)</li>
+ * <li>maxCaptureSize - largest compressed body handed to the resources (262144)</li>
+ * </ul>
+ */
+public class CompressionFilter implements Filter {
+
+    public static final String GZIP = "gzip";
+    public static final String DEFLATE = "deflate";
+    public static final int DEFAULT_MIN_SIZE = 1024;
+    public static final int DEFAULT_MAX_CAPTURE_SIZE = 256 * 1024;
+    public static final String DEFAULT_MEDIA_TYPES = "application/atom+xml, application/atomsvc+xml, application/xml, "
+            + "text/xml, application/json, application/hal+json, application/hal+xml, application/xhtml+xml, "
+            + "text/html, text/plain, text/csv";
+
+    private volatile String[] contentCodings = { GZIP, DEFLATE };
+    private volatile int minSize = DEFAULT_MIN_SIZE;
+    private volatile int maxCaptureSize = DEFAULT_MAX_CAPTURE_SIZE;
+    private volatile Set<String> mediaTypes = parseMediaTypes(DEFAULT_MEDIA_TYPES);
+
+    @Override
+    public void init(FilterConfig filterConfig) throws ServletException {
+        try {
+            String codings = filterConfig.getInitParameter("contentCodings");
+            if (codings != null) {
+                setContentCodings(split(codings).toArray(new String[0]));
+            }
+            String size = filterConfig.getInitParameter("minSize");
+            if (size != null) {
+                setMinSize(Integer.parseInt(size.trim()));
+            }
+            String types = filterConfig.getInitParameter("mediaTypes");
+            if (types != null) {
+                mediaTypes = parseMediaTypes(types);
+            }
+            String captureSize = filterConfig.getInitParameter("maxCaptureSize");
+            if (captureSize != null) {
+                setMaxCaptureSize(Integer.parseInt(captureSize.trim()));
+            }
+        } catch (IllegalArgumentException e) {
+            throw new ServletException("Invalid " + getClass().getSimpleName() + " configuration: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public void doFilter(ServletRequest request, ServletResponse response,
+                         FilterChain chain) throws IOException, ServletException {
+        if (!(request instanceof HttpServletRequest) || !(response instanceof HttpServletResponse)) {
+            chain.doFilter(request, response);
+            return;
+        }
+        HttpServletRequest servletRequest = (HttpServletRequest) request;
+        String contentCoding = null;
+        if (!"HEAD".equals(servletRequest.getMethod())) {
+            contentCoding = HeaderHelper.negotiateContentEncoding(servletRequest.getHeader("Accept-Encoding"), contentCodings);
+        }
+        ResponseCompression compression = new ResponseCompression(contentCoding);
+        CompressingResponse compressingResponse = new CompressingResponse((HttpServletResponse) response, compression, this);
+
+        ResponseCompression previous = ResponseCompression.getResponseCompression();
+        ResponseCompression.setResponseCompression(compression);
+        try {
+            chain.doFilter(request, compressingResponse);
+            compressingResponse.finish();
+        } finally {
+            if (previous != null) {
+                ResponseCompression.setResponseCompression(previous);
+            } else {
+                ResponseCompression.clearResponseCompression();
+            }
+        }
+    }
+
+    @Override
+    public void destroy() {
+
+    }
+
+    /**
+     * Check whether responses of this Content-Type are compressed.
+     */
+    public boolean isCompressible(String contentType) {
+        if (contentType == null) {
+            return false;
+        }
+        int parameters = contentType.indexOf(';');
+        String mediaType = (parameters >= 0 ? contentType.substring(0, parameters) : contentType).trim().toLowerCase(Locale.ENGLISH);
+        if (mediaTypes.contains(mediaType)) {
+            return true;
+        }
+        int slash = mediaType.indexOf('/');
+        return slash > 0 && mediaTypes.contains(mediaType.substring(0, slash) + "/*");
+    }
+
+    public String[] getContentCodings() {
+        return contentCodings.clone();
+    }
+
+    /**
+     * @param contentCodings gzip and/or deflate, in order of preference
+     */
+    public void setContentCodings(String... contentCodings) {
+        if (contentCodings == null || contentCodings.length == 0) {
+            throw new IllegalArgumentException("At least one content coding is required");
+        }
+        String[] codings = new String[contentCodings.length];
+        for (int i = 0; i < codings.length; i++) {
+            codings[i] = contentCodings[i].trim().toLowerCase(Locale.ENGLISH);
+            if (!GZIP.equals(codings[i]) && !DEFLATE.equals(codings[i])) {
+                throw new IllegalArgumentException("Unsupported content coding " + contentCodings[i]);
+            }
+        }
+        this.contentCodings = codings;
+    }
+
+    public int getMinSize() {
+        return minSize;
+    }
+
+    public void setMinSize(int minSize) {
+        if (minSize < 0) {
+            throw new IllegalArgumentException("Minimum size must not be negative");
+        }
+        this.minSize = minSize;
+    }
+
+    public int getMaxCaptureSize() {
+        return maxCaptureSize;
+    }
+
+    /**
+     * @param maxCaptureSize the largest compressed body handed to a
+     * {@link ResponseCompression.Listener}, 0 to hand none
+     */
+    public void setMaxCaptureSize(int maxCaptureSize) {
+        if (maxCaptureSize < 0) {
+            throw new IllegalArgumentException("Maximum capture size must not be negative");
+        }
+        this.maxCaptureSize = maxCaptureSize;
+    }
+
+    public Set<String> getMediaTypes() {
+        return mediaTypes;
+    }
+
+    /**
+     * @param mediaTypes the media types compressed, <code>type/*</code> for all its subtypes
+     */
+    public void setMediaTypes(String... mediaTypes) {
+        StringBuilder types = new StringBuilder();
+        for (String mediaType : mediaTypes) {
+            types.append(mediaType).append(',');
+        }
+        this.mediaTypes = parseMediaTypes(types.toString());
+    }
+
+    private static Set<String> parseMediaTypes(String mediaTypes) {
+        Set<String> types = new HashSet<String>();
+        for (String mediaType : split(mediaTypes)) {
+            types.add(mediaType.toLowerCase(Locale.ENGLISH));
+        }
+        return Collections.unmodifiableSet(types);
+    }
+
+    private static List<String> split(String list) {
+        List<String> values = new ArrayList<String>();
+        for (String value : list.split(",")) {
+            if (!value.trim().isEmpty()) {
+                values.add(value.trim());
+            }
+        }
+        return values;
+    }
+}
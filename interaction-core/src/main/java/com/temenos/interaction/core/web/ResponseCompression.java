@@ -0,0 +1,87 @@
+package com.temenos.interaction.core.web;
+
+/*
+ * #%L
+ * interaction-core
+ * %%
+ * Copyright (C) 2012 - 2017 Temenos Holdings N.V.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+/**
+ * The content coding the {@link CompressionFilter} negotiated for the
+ * response to the current request, so that the resources can serve a body
+ * compressed beforehand or keep the compressed body for later requests.
+ */
+public final class ResponseCompression {
+
+    /**
+     * Receives the compressed body of a response once it has been written.
+     */
+    public interface Listener {
+        /**
+         * @param contentType the Content-Type of the response
+         * @param body the body as sent, in the negotiated content coding
+         */
+        public void compressed(String contentType, byte[] body);
+    }
+
+    private final static ThreadLocal<ResponseCompression> currentCompression = new ThreadLocal<ResponseCompression>();
+
+    private final String contentCoding;
+    private volatile Listener listener;
+
+    ResponseCompression(String contentCoding) {
+        this.contentCoding = contentCoding;
+    }
+
+    static void setResponseCompression(ResponseCompression compression) {
+        currentCompression.set(compression);
+    }
+
+    /**
+     * @return the compression of the response to the current request, null
+     * if the request did not go through a {@link CompressionFilter}
+     */
+    public static ResponseCompression getResponseCompression() {
+        return currentCompression.get();
+    }
+
+    static void clearResponseCompression() {
+        currentCompression.remove();
+    }
+
+    /**
+     * @return the content coding accepted by the client, e.g. gzip, or null
+     * if the response is not to be compressed
+     */
+    public String getContentCoding() {
+        return contentCoding;
+    }
+
+    /**
+     * Receive the compressed body once the response is complete. It is only
+     * called if the filter compressed the whole body itself and it was no
+     * larger than the filter keeps.
+     */
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    Listener getListener() {
+        return listener;
+    }
+}
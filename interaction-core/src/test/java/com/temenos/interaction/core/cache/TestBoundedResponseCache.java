@@ -0,0 +1,449 @@
+package com.temenos.interaction.core.cache;
+
+/*
+ * #%L
+ * interaction-core
+ * %%
+ * Copyright (C) 2012 - 2017 Temenos Holdings N.V.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.ws.rs.core.Response;
+
+import org.junit.Test;
+
+public class TestBoundedResponseCache {
+
+    private static final long NOW = 1000000L;
+
+    @Test
+    public void testPutGet() {
+        BoundedResponseCache cache = new BoundedResponseCache(10);
+        cache.put("/customers", Response.ok("entity").header("ETag", "abc"), 10, NOW);
+
+        Response response = cache.get("/customers", NOW).build();
+        assertEquals(200, response.getStatus());
+        assertEquals("entity", response.getEntity());
+        assertEquals("abc", response.getMetadata().getFirst("ETag"));
+        assertEquals(1, cache.getHits());
+        assertEquals(0, cache.getMisses());
+    }
+
+    @Test
+    public void testMiss() {
+        BoundedResponseCache cache = new BoundedResponseCache(10);
+        assertNull(cache.get("/customers", NOW));
+        assertNull(cache.get(null, NOW));
+        assertEquals(1, cache.getMisses());
+    }
+
+    @Test
+    public void testExpiry() {
+        BoundedResponseCache cache = new BoundedResponseCache(10);
+        cache.put("/customers", Response.ok("entity"), 10, NOW);
+
+        assertNotNull(cache.get("/customers", NOW + 9999));
+        assertNull(cache.get("/customers", NOW + 10000));
+        assertEquals(0, cache.validStoredKeys(NOW + 10000).size());
+    }
+
+    @Test
+    public void testNotCachedWithoutMaxAge() {
+        BoundedResponseCache cache = new BoundedResponseCache(10);
+        cache.put("/customers", Response.ok("entity"), 0, NOW);
+        cache.put(null, Response.ok("entity"), 10, NOW);
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testSnapshotNotAffectedByBuilder() {
+        BoundedResponseCache cache = new BoundedResponseCache(10);
+        Response.ResponseBuilder builder = Response.ok("entity").header("ETag", "abc");
+        cache.put("/customers", builder, 10, NOW);
+        builder.status(404).entity("changed").header("ETag", "def");
+
+        Response.ResponseBuilder cached = cache.get("/customers", NOW);
+        cached.header("Vary", "Accept");
+        Response response = cached.build();
+        assertEquals(200, response.getStatus());
+        assertEquals("entity", response.getEntity());
+        assertEquals(1, response.getMetadata().get("ETag").size());
+
+        Response again = cache.get("/customers", NOW).build();
+        assertNull(again.getMetadata().get("Vary"));
+        assertNotSame(cached, cache.get("/customers", NOW));
+    }
+
+    @Test
+    public void testReplace() {
+        BoundedResponseCache cache = new BoundedResponseCache(10);
+        cache.put("/customers", Response.ok("one"), 10, NOW);
+        cache.put("/customers", Response.ok("two"), 10, NOW);
+        assertEquals(1, cache.size());
+        assertEquals("two", cache.get("/customers", NOW).build().getEntity());
+    }
+
+    @Test
+    public void testBoundedBySize() {
+        BoundedResponseCache cache = new BoundedResponseCache(100);
+        for (int i = 0; i < 1000; i++) {
+            cache.put("/customers(" + i + ")", Response.ok("entity"), 10, NOW);
+        }
+        assertEquals(100, cache.size());
+        assertEquals(900, cache.getEvictions());
+    }
+
+    @Test
+    public void testFrequentlyUsedEntriesKept() {
+        BoundedResponseCache cache = new BoundedResponseCache(10);
+        cache.put("/popular", Response.ok("entity"), 10, NOW);
+        for (int i = 0; i < 100; i++) {
+            assertNotNull(cache.get("/popular", NOW));
+            cache.put("/customers(" + i + ")", Response.ok("entity"), 10, NOW);
+        }
+        assertNotNull(cache.get("/popular", NOW));
+        assertNull(cache.get("/customers(0)", NOW));
+    }
+
+    @Test
+    public void testExpiredEntriesEvictedFirst() {
+        BoundedResponseCache cache = new BoundedResponseCache(2);
+        cache.put("/expiring", Response.ok("entity"), 1, NOW);
+        cache.put("/customers", Response.ok("entity"), 10, NOW);
+        cache.get("/expiring", NOW);
+        cache.put("/accounts", Response.ok("entity"), 10, NOW + 1000);
+        assertEquals(2, cache.size());
+        assertNotNull(cache.get("/customers", NOW + 1000));
+        assertNotNull(cache.get("/accounts", NOW + 1000));
+    }
+
+    @Test
+    public void testBoundedByWeight() {
+        BoundedResponseCache cache = new BoundedResponseCache(100, 10, new BoundedResponseCache.Weigher() {
+            @Override
+            public int weigh(String key, Response response) {
+                return ((String) response.getEntity()).length();
+            }
+        });
+        cache.put("/heavy", Response.ok("01234567890"), 10, NOW);
+        assertEquals(0, cache.size());
+        for (int i = 0; i < 10; i++) {
+            cache.put("/customers(" + i + ")", Response.ok("0123"), 10, NOW);
+        }
+        assertEquals(2, cache.size());
+        assertEquals(8, cache.getWeight());
+    }
+
+    @Test
+    public void testInvalidateByTag() {
+        BoundedResponseCache cache = new BoundedResponseCache(10);
+        cache.put("/Customers", Response.ok("customers"), 10, Collections.singleton("customers"), NOW);
+        cache.put("/Customers('1')", Response.ok("customer"), 10, Collections.singleton("customer"), NOW);
+        cache.put("/Accounts", Response.ok("accounts"), 10, Collections.singleton("accounts"), NOW);
+
+        cache.invalidate(Arrays.asList("customers", "customer"));
+        assertNull(cache.get("/Customers", NOW));
+        assertNull(cache.get("/Customers('1')", NOW));
+        assertNotNull(cache.get("/Accounts", NOW));
+        assertEquals(2, cache.getInvalidations());
+        assertEquals(1, cache.size());
+        assertEquals(1, cache.getWeight());
+    }
+
+    @Test
+    public void testInvalidateReplacedEntry() {
+        BoundedResponseCache cache = new BoundedResponseCache(10);
+        cache.put("/Customers", Response.ok("one"), 10, Collections.singleton("customers"), NOW);
+        cache.put("/Customers", Response.ok("two"), 10, Collections.singleton("other"), NOW);
+
+        cache.invalidate(Collections.singleton("customers"));
+        assertEquals("two", cache.get("/Customers", NOW).build().getEntity());
+        cache.invalidate(Collections.singleton("other"));
+        assertNull(cache.get("/Customers", NOW));
+    }
+
+    @Test
+    public void testNotPutIfInvalidatedWhileRead() {
+        BoundedResponseCache cache = new BoundedResponseCache(10);
+        // a GET reads the resource, then a PUT modifies it and invalidates its state before the GET caches it
+        long stamp = cache.getInvalidationStamp();
+        cache.invalidate(Collections.singleton("customers"));
+        cache.put("/Customers", Response.ok("stale"), 10, 0, Collections.singleton("customers"), stamp, NOW);
+        assertNull(cache.get("/Customers", NOW));
+        assertEquals(0, cache.size());
+
+        // read after the invalidation
+        cache.put("/Customers", Response.ok("fresh"), 10, 0, Collections.singleton("customers"),
+                cache.getInvalidationStamp(), NOW);
+        assertEquals("fresh", cache.get("/Customers", NOW).build().getEntity());
+    }
+
+    @Test
+    public void testPutIfOtherTagInvalidatedWhileRead() {
+        BoundedResponseCache cache = new BoundedResponseCache(10);
+        long stamp = cache.getInvalidationStamp();
+        cache.invalidate(Collections.singleton("accounts"));
+        cache.putIfNotInvalidated("/Customers", Response.ok("customers"), 10, Collections.singleton("customers"), stamp);
+        assertNotNull(cache.get("/Customers"));
+    }
+
+    @Test
+    public void testNotPutIfInvalidatedWhilePut() throws InterruptedException {
+        final BoundedResponseCache cache = new BoundedResponseCache(10);
+        for (int i = 0; i < 1000; i++) {
+            final long stamp = cache.getInvalidationStamp();
+            Thread writer = new Thread() {
+                @Override
+                public void run() {
+                    cache.invalidate(Collections.singleton("customers"));
+                }
+            };
+            writer.start();
+            cache.putIfNotInvalidated("/Customers", Response.ok("customers"), 10, 10,
+                    Collections.singleton("customers"), stamp);
+            writer.join();
+            // whichever came first, the response read before the invalidation is not left in the cache
+            assertNull(cache.get("/Customers"));
+        }
+    }
+
+    @Test
+    public void testInvalidatedEntriesReplaced() {
+        BoundedResponseCache cache = new BoundedResponseCache(5);
+        for (int i = 0; i < 100; i++) {
+            cache.put("/Customers", Response.ok("customers"), 10, Collections.singleton("customers"), NOW);
+            cache.invalidate(Collections.singleton("customers"));
+        }
+        cache.put("/Customers", Response.ok("customers"), 10, Collections.singleton("customers"), NOW);
+        assertEquals(1, cache.size());
+        assertEquals(0, cache.getEvictions());
+        assertNotNull(cache.get("/Customers", NOW));
+    }
+
+    @Test
+    public void testStaleWhileRevalidate() throws InterruptedException {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            final BoundedResponseCache cache = new BoundedResponseCache(10, Long.MAX_VALUE, new BoundedResponseCache.Weigher() {
+                @Override
+                public int weigh(String key, Response response) {
+                    return 1;
+                }
+            }, executor);
+            cache.put("/customers", Response.ok("stale"), 10, 5, Collections.<String>emptySet(), NOW);
+            final CountDownLatch release = new CountDownLatch(1);
+            final CountDownLatch revalidated = new CountDownLatch(1);
+            final AtomicInteger revalidations = new AtomicInteger();
+            final AtomicInteger created = new AtomicInteger();
+            RevalidatingCache.RevalidationFactory revalidation = new RevalidatingCache.RevalidationFactory() {
+                @Override
+                public Runnable createRevalidation() {
+                    created.incrementAndGet();
+                    return new Runnable() {
+                        @Override
+                        public void run() {
+                            revalidations.incrementAndGet();
+                            try {
+                                release.await();
+                            } catch (InterruptedException e) {
+                                Thread.currentThread().interrupt();
+                            }
+                            cache.put("/customers", Response.ok("fresh"), 10, 5, Collections.<String>emptySet(), NOW + 12000);
+                            revalidated.countDown();
+                        }
+                    };
+                }
+            };
+
+            // fresh, not revalidated and nothing created for it
+            assertEquals("stale", cache.get("/customers", revalidation, NOW + 9999).build().getEntity());
+            assertEquals(0, cache.getRevalidations());
+            assertEquals(0, created.get());
+            // stale, served while a single revalidation runs
+            assertEquals("stale", cache.get("/customers", revalidation, NOW + 11000).build().getEntity());
+            assertEquals("stale", cache.get("/customers", revalidation, NOW + 12000).build().getEntity());
+            assertEquals(1, created.get());
+            // the plain lookup does not serve stale responses
+            assertNull(cache.get("/customers", NOW + 12000));
+            release.countDown();
+            assertTrue(revalidated.await(5, TimeUnit.SECONDS));
+
+            assertEquals("fresh", cache.get("/customers", revalidation, NOW + 13000).build().getEntity());
+            assertEquals(1, created.get());
+            assertEquals(1, revalidations.get());
+            assertEquals(1, cache.getRevalidations());
+            assertEquals(2, cache.getStaleHits());
+            // beyond the window
+            assertNull(cache.get("/customers", revalidation, NOW + 27000));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testRejectedRevalidation() {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        executor.shutdown();
+        BoundedResponseCache cache = new BoundedResponseCache(10, Long.MAX_VALUE, new BoundedResponseCache.Weigher() {
+            @Override
+            public int weigh(String key, Response response) {
+                return 1;
+            }
+        }, executor);
+        cache.put("/customers", Response.ok("stale"), 10, 5, Collections.<String>emptySet(), NOW);
+        RevalidatingCache.RevalidationFactory revalidation = new RevalidatingCache.RevalidationFactory() {
+            @Override
+            public Runnable createRevalidation() {
+                return new Runnable() {
+                    @Override
+                    public void run() {
+                    }
+                };
+            }
+        };
+
+        // still served, and revalidation attempted again by the next lookup
+        assertNotNull(cache.get("/customers", revalidation, NOW + 11000));
+        assertNotNull(cache.get("/customers", revalidation, NOW + 12000));
+        assertEquals(0, cache.getRevalidations());
+        assertEquals(2, cache.getStaleHits());
+    }
+
+    @Test
+    public void testEncodedBody() {
+        BoundedResponseCache cache = new BoundedResponseCache(10);
+        String entity = "entity";
+        byte[] gzipped = new byte[] { 31, -117, 8 };
+        cache.put("/customers", Response.ok(entity).header("ETag", "abc"), 10, NOW);
+        assertNull(cache.getEncoded("/customers", "gzip", "application/json", NOW));
+
+        cache.putEncoded("/customers", entity, "gzip", "application/json", "application/json", gzipped);
+        Response response = cache.getEncoded("/customers", "gzip", "application/json", NOW).build();
+        assertSame(gzipped, response.getEntity());
+        assertEquals("abc", response.getMetadata().getFirst("ETag"));
+        assertEquals("gzip", response.getMetadata().getFirst("Content-Encoding"));
+        assertEquals("3", response.getMetadata().getFirst("Content-Length"));
+        assertNull(cache.getEncoded("/customers", "deflate", "application/json", NOW));
+        assertNull(cache.getEncoded("/customers", "gzip", "application/xml", NOW));
+        assertNull(cache.getEncoded("/customers", "gzip", "application/json", NOW + 10000));
+        assertEquals(1, cache.getEncodedHits());
+        assertEquals(3, cache.getEncodedLength());
+
+        // the plain response is still served
+        assertEquals(entity, cache.get("/customers", NOW).build().getEntity());
+    }
+
+    @Test
+    public void testEncodedBodyOfReplacedEntity() {
+        BoundedResponseCache cache = new BoundedResponseCache(10);
+        cache.put("/customers", Response.ok("old"), 10, NOW);
+        String entity = "new";
+        cache.put("/customers", Response.ok(entity), 10, NOW);
+
+        cache.putEncoded("/customers", "old", "gzip", null, "application/json", new byte[10]);
+        assertNull(cache.getEncoded("/customers", "gzip", null, NOW));
+        cache.putEncoded("/other", entity, "gzip", null, "application/json", new byte[10]);
+        assertEquals(0, cache.getEncodedLength());
+    }
+
+    @Test
+    public void testEncodedBodiesReleased() {
+        BoundedResponseCache cache = new BoundedResponseCache(10);
+        cache.setMaxEncodedLength(15);
+        String customers = "customers";
+        String accounts = "accounts";
+        cache.put("/customers", Response.ok(customers), 10, Collections.singleton("customers"), NOW);
+        cache.put("/accounts", Response.ok(accounts), 10, NOW);
+
+        cache.putEncoded("/customers", customers, "gzip", null, "application/json", new byte[10]);
+        // bounded by the total length
+        cache.putEncoded("/accounts", accounts, "gzip", null, "application/json", new byte[10]);
+        assertNull(cache.getEncoded("/accounts", "gzip", null, NOW));
+        assertEquals(10, cache.getEncodedLength());
+
+        cache.invalidate(Collections.singleton("customers"));
+        assertEquals(0, cache.getEncodedLength());
+        cache.putEncoded("/accounts", accounts, "gzip", null, "application/json", new byte[10]);
+        assertNotNull(cache.getEncoded("/accounts", "gzip", null, NOW));
+
+        // replaced entries go with their encoded bodies
+        cache.put("/accounts", Response.ok("changed"), 10, NOW);
+        assertNull(cache.getEncoded("/accounts", "gzip", null, NOW));
+        assertEquals(0, cache.getEncodedLength());
+    }
+
+    @Test
+    public void testClear() {
+        BoundedResponseCache cache = new BoundedResponseCache(10);
+        cache.put("/customers", Response.ok("entity"), 10, NOW);
+        cache.clear();
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.getWeight());
+        assertNull(cache.get("/customers", NOW));
+    }
+
+    @Test
+    public void testConcurrentAccessStaysBounded() throws InterruptedException {
+        final BoundedResponseCache cache = new BoundedResponseCache(50);
+        final CountDownLatch start = new CountDownLatch(1);
+        final AtomicInteger errors = new AtomicInteger();
+        Thread[] threads = new Thread[8];
+        for (int t = 0; t < threads.length; t++) {
+            final int offset = t;
+            threads[t] = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                        for (int i = 0; i < 5000; i++) {
+                            String key = "/customers(" + ((i * 7 + offset) % 200) + ")";
+                            cache.put(key, Response.ok(key), 10);
+                            Response.ResponseBuilder cached = cache.get(key);
+                            if (cached != null && !key.equals(cached.build().getEntity())) {
+                                errors.incrementAndGet();
+                            }
+                        }
+                    } catch (Throwable e) {
+                        errors.incrementAndGet();
+                    }
+                }
+            };
+            threads[t].start();
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(0, errors.get());
+        assertTrue(cache.size() <= 50);
+        assertEquals(cache.size(), cache.getWeight());
+    }
+}
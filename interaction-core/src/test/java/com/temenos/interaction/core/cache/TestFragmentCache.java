@@ -0,0 +1,132 @@
+package com.temenos.interaction.core.cache;
+
+/*
+ * #%L
+ * interaction-core
+ * %%
+ * Copyright (C) 2012 - 2017 Temenos Holdings N.V.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Test;
+
+public class TestFragmentCache {
+
+    @Test
+    public void testPutGet() {
+        FragmentCache cache = new FragmentCache();
+        FragmentCache.Key key = FragmentCache.key("Currency", "EUR", "\"1\"", "application/hal+json", Arrays.asList("self /Currency('EUR')"));
+        assertNull(cache.get(key));
+        cache.put(key, "{\"code\":\"EUR\"}");
+
+        FragmentCache.Key same = FragmentCache.key("Currency", "EUR", "\"1\"", "application/hal+json", Arrays.asList("self /Currency('EUR')"));
+        assertEquals("{\"code\":\"EUR\"}", cache.get(same));
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getMisses());
+        assertEquals(0.5, cache.getHitRate(), 0.0);
+        // the fragment and its key
+        assertEquals(14 + 8 + 3 + 3 + 20 + 21, cache.getLength());
+    }
+
+    @Test
+    public void testKeyParts() {
+        FragmentCache cache = new FragmentCache();
+        cache.put(FragmentCache.key("Currency", "EUR", "\"1\"", "application/hal+json", Collections.<String>emptyList()), "a");
+
+        assertNull(cache.get(FragmentCache.key("Currency", "EUR", "\"2\"", "application/hal+json", null)));
+        assertNull(cache.get(FragmentCache.key("Sector", "EUR", "\"1\"", "application/hal+json", null)));
+        assertNull(cache.get(FragmentCache.key("Currency", "EUR", "\"1\"", "application/atom+xml", null)));
+        assertNull(cache.get(FragmentCache.key("Currency", "EUR", "\"1\"", "application/hal+json", Arrays.asList("self /Currency('EUR')"))));
+        assertNull(cache.get(FragmentCache.key("Currency", "GBP", "\"1\"", "application/hal+json", null)));
+        assertEquals("a", cache.get(FragmentCache.key("Currency", "EUR", "\"1\"", "application/hal+json", null)));
+    }
+
+    @Test
+    public void testEntitiesWithSameEntityTag() {
+        FragmentCache cache = new FragmentCache();
+        cache.put(FragmentCache.key("Currency", "EUR", "\"1\"", "application/hal+json", null), "{\"code\":\"EUR\"}");
+        cache.put(FragmentCache.key("Currency", "GBP", "\"1\"", "application/hal+json", null), "{\"code\":\"GBP\"}");
+
+        assertEquals(2, cache.size());
+        assertEquals("{\"code\":\"EUR\"}", cache.get(FragmentCache.key("Currency", "EUR", "\"1\"", "application/hal+json", null)));
+        assertEquals("{\"code\":\"GBP\"}", cache.get(FragmentCache.key("Currency", "GBP", "\"1\"", "application/hal+json", null)));
+    }
+
+    @Test
+    public void testNoEntityTag() {
+        FragmentCache cache = new FragmentCache();
+        assertNull(FragmentCache.key("Currency", "EUR", null, "application/hal+json", null));
+        assertNull(FragmentCache.key("Currency", null, "\"1\"", "application/hal+json", null));
+        cache.put(null, "a");
+        assertNull(cache.get(null));
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.getMisses());
+    }
+
+    @Test
+    public void testBoundedByLength() {
+        // fragments of 4 characters with keys of 2
+        FragmentCache cache = new FragmentCache(15);
+        cache.put(key("1"), "aaaa");
+        cache.put(key("2"), "bbbb");
+        // used since put, spared
+        cache.get(key("1"));
+        cache.put(key("3"), "cccc");
+
+        assertEquals(1, cache.getEvictions());
+        assertEquals(12, cache.getLength());
+        assertEquals("aaaa", cache.get(key("1")));
+        assertNull(cache.get(key("2")));
+        assertEquals("cccc", cache.get(key("3")));
+
+        // longer than the whole cache
+        cache.put(key("4"), "dddddddddddddd");
+        assertNull(cache.get(key("4")));
+        assertTrue(cache.getLength() <= 15);
+    }
+
+    @Test
+    public void testKeyCounted() {
+        FragmentCache cache = new FragmentCache(10);
+        // the fragment fits but not with its key
+        cache.put(FragmentCache.key(null, "1", "1", null, Arrays.asList("self /1")), "aaaa");
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.getLength());
+    }
+
+    @Test
+    public void testClear() {
+        FragmentCache cache = new FragmentCache(10);
+        cache.put(key("1"), "aaaa");
+        cache.clear();
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.getLength());
+        cache.put(key("2"), "bbbbbbbb");
+        assertEquals("bbbbbbbb", cache.get(key("2")));
+    }
+
+    // a key of 2 characters
+    private FragmentCache.Key key(String entityId) {
+        return FragmentCache.key(null, entityId, "1", null, null);
+    }
+}
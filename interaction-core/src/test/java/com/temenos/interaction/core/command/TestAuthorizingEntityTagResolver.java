@@ -0,0 +1,92 @@
+package com.temenos.interaction.core.command;
+
+/*
+ * #%L
+ * interaction-core
+ * %%
+ * Copyright (C) 2012 - 2013 Temenos Holdings N.V.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+import java.util.ArrayList;
+
+import javax.ws.rs.core.Response.Status;
+
+import org.junit.Test;
+
+import com.temenos.interaction.core.MultivaluedMapImpl;
+import com.temenos.interaction.core.entity.Metadata;
+import com.temenos.interaction.core.hypermedia.Action;
+import com.temenos.interaction.core.hypermedia.ResourceState;
+
+public class TestAuthorizingEntityTagResolver {
+
+	private static final EntityTagResolver FILTER_RESOLVER = new EntityTagResolver() {
+		@Override
+		public String getEntityTag(InteractionContext ctx) throws InteractionException {
+			return "\"" + ctx.getQueryParameters().getFirst("$filter") + "\"";
+		}
+	};
+
+	@Test
+	public void testResolvedWhenAuthorized() throws InteractionException {
+		InteractionContext ctx = createContext();
+		EntityTagResolver resolver = new AuthorizingEntityTagResolver(new InteractionCommand() {
+			@Override
+			public Result execute(InteractionContext ctx) {
+				ctx.getQueryParameters().add("$filter", "owner eq 'me'");
+				return Result.SUCCESS;
+			}
+		}, FILTER_RESOLVER);
+
+		assertEquals("\"owner eq 'me'\"", resolver.getEntityTag(ctx));
+		// the request's own parameters are left for its commands
+		assertFalse(ctx.getQueryParameters().containsKey("$filter"));
+	}
+
+	@Test
+	public void testNotResolvedWhenNotAuthorized() throws InteractionException {
+		EntityTagResolver resolver = new AuthorizingEntityTagResolver(new InteractionCommand() {
+			@Override
+			public Result execute(InteractionContext ctx) {
+				return Result.FAILURE;
+			}
+		}, FILTER_RESOLVER);
+
+		assertNull(resolver.getEntityTag(createContext()));
+	}
+
+	@Test(expected = InteractionException.class)
+	public void testAuthorizationException() throws InteractionException {
+		EntityTagResolver resolver = new AuthorizingEntityTagResolver(new InteractionCommand() {
+			@Override
+			public Result execute(InteractionContext ctx) throws InteractionException {
+				throw new InteractionException(Status.UNAUTHORIZED);
+			}
+		}, FILTER_RESOLVER);
+
+		resolver.getEntityTag(createContext());
+	}
+
+	private static InteractionContext createContext() {
+		return new InteractionContext(null, null, new MultivaluedMapImpl<String>(), new MultivaluedMapImpl<String>(),
+				new ResourceState("entity", "initial_state", new ArrayList<Action>(), "/resource"), new Metadata("m"));
+	}
+}
@@ -29,6 +29,9 @@ import static org.hamcrest.CoreMatchers.nullValue;
 import static org.hamcrest.CoreMatchers.equalTo;
 
 import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.junit.After;
 import org.junit.Before;
@@ -85,5 +88,178 @@ public class TestChainingCommandController {
 	public void testIsValidCommandWithInvalidCommandName() {
 		assertThat(this.controller.isValidCommand("notAValidCommand"), equalTo(false));
 	}
-	
+
+	@Test
+	public void testVersionChangesWithCommands() {
+		MapBasedCommandController chained = new MapBasedCommandController();
+		this.controller.setCommandControllers(Arrays.asList(new CommandController[]{
+			chained, this.commandController
+		}));
+		long version = this.controller.getVersion();
+		assertEquals(version, this.controller.getVersion());
+
+		chained.getCommandMap().put("testCommand2", new TestCommand());
+		long changed = this.controller.getVersion();
+		assertTrue(changed != version);
+
+		this.controller.setCommandControllers(Arrays.asList(new CommandController[]{
+			this.commandController
+		}));
+		assertTrue(this.controller.getVersion() != changed);
+	}
+
+	@Test
+	public void testVersionNegativeWithControllerNotVersioned() {
+		MapBasedCommandController chained = new MapBasedCommandController();
+		this.controller.setCommandControllers(Arrays.asList(new CommandController[]{
+			chained
+		}));
+		assertTrue(this.controller.getVersion() >= 0);
+
+		// the commands of a controller that is not versioned may not be shared
+		this.controller.setCommandControllers(Arrays.asList(new CommandController[]{
+			chained, this.commandController
+		}));
+		long version = this.controller.getVersion();
+		assertTrue(version < 0);
+
+		chained.getCommandMap().put("testCommand2", new TestCommand());
+		long changed = this.controller.getVersion();
+		assertTrue(changed < 0);
+		assertTrue(changed != version);
+	}
+
+	@Test
+	public void testFetchCommandFirstControllerWins() {
+		InteractionCommand first = new TestCommand();
+		InteractionCommand second = new TestCommand();
+		Map<String, InteractionCommand> firstCommands = new HashMap<String, InteractionCommand>();
+		firstCommands.put("testCommand1", first);
+		Map<String, InteractionCommand> secondCommands = new HashMap<String, InteractionCommand>();
+		secondCommands.put("testCommand1", second);
+		secondCommands.put("other", second);
+		this.controller.setCommandControllers(Arrays.asList(new CommandController[]{
+			new MapBasedCommandController(firstCommands), new MapBasedCommandController(secondCommands), this.commandController
+		}));
+		assertSame(first, this.controller.fetchCommand("testCommand1"));
+		assertSame(second, this.controller.fetchCommand("other"));
+		assertThat(this.controller.fetchCommand("testCommand2"), notNullValue());
+		assertThat(this.controller.fetchCommand("notAValidCommand"), nullValue());
+		assertTrue(this.controller.isValidCommand("other"));
+	}
+
+	@Test
+	public void testFetchCommandAfterControllerNotListable() {
+		InteractionCommand command = new TestCommand();
+		Map<String, InteractionCommand> commands = new HashMap<String, InteractionCommand>();
+		commands.put("testCommand1", command);
+		commands.put("other", command);
+		this.controller.setCommandControllers(Arrays.asList(new CommandController[]{
+			this.commandController, new MapBasedCommandController(commands)
+		}));
+		assertNotSame(command, this.controller.fetchCommand("testCommand1"));
+		assertSame(command, this.controller.fetchCommand("other"));
+	}
+
+	@Test
+	public void testFetchCommandAfterControllerNotShared() {
+		InteractionCommand listed = new TestCommand();
+		final InteractionCommand notListed = new TestCommand();
+		Map<String, InteractionCommand> commands = new HashMap<String, InteractionCommand>();
+		commands.put("testCommand1", listed);
+		MapBasedCommandController notShared = new MapBasedCommandController(commands) {
+			@Override
+			public InteractionCommand fetchCommand(String name) {
+				return "other".equals(name) ? notListed : super.fetchCommand(name);
+			}
+
+			@Override
+			public long getVersion() {
+				return -super.getVersion();
+			}
+		};
+		Map<String, InteractionCommand> others = new HashMap<String, InteractionCommand>();
+		others.put("other", new TestCommand());
+		this.controller.setCommandControllers(Arrays.asList(new CommandController[]{
+			notShared, new MapBasedCommandController(others)
+		}));
+		// not merged, the commands it does not list are still found first
+		assertSame(notListed, this.controller.fetchCommand("other"));
+		assertSame(listed, this.controller.fetchCommand("testCommand1"));
+		assertTrue(this.controller.getVersion() < 0);
+	}
+
+	@Test
+	public void testVersionsAskedForWhenNotPublished() {
+		final AtomicInteger versionReads = new AtomicInteger();
+		MapBasedCommandController chained = new MapBasedCommandController() {
+			@Override
+			public long getVersion() {
+				versionReads.incrementAndGet();
+				return super.getVersion();
+			}
+
+			@Override
+			public boolean publishesVersions() {
+				return false;
+			}
+		};
+		this.controller.setCommandControllers(Arrays.asList(new CommandController[]{
+			chained
+		}));
+		assertFalse(this.controller.publishesVersions());
+
+		versionReads.set(0);
+		this.controller.fetchCommand("other");
+		this.controller.getVersion();
+		assertTrue(versionReads.get() > 0);
+	}
+
+	@Test
+	public void testFetchCommandAddedToChainedController() {
+		MapBasedCommandController chained = new MapBasedCommandController();
+		this.controller.setCommandControllers(Arrays.asList(new CommandController[]{
+			chained
+		}));
+		assertThat(this.controller.fetchCommand("other"), nullValue());
+
+		InteractionCommand command = new TestCommand();
+		chained.getCommandMap().put("other", command);
+		assertSame(command, this.controller.fetchCommand("other"));
+
+		chained.getCommandMap().remove("other");
+		assertThat(this.controller.fetchCommand("other"), nullValue());
+		assertFalse(this.controller.isValidCommand("other"));
+	}
+
+	@Test
+	public void testVersionsNotAskedForUntilChanged() {
+		final AtomicInteger versionReads = new AtomicInteger();
+		MapBasedCommandController chained = new MapBasedCommandController() {
+			@Override
+			public long getVersion() {
+				versionReads.incrementAndGet();
+				return super.getVersion();
+			}
+		};
+		chained.getCommandMap().put("other", new TestCommand());
+		this.controller.setCommandControllers(Arrays.asList(new CommandController[]{
+			chained
+		}));
+		this.controller.fetchCommand("other");
+		long version = this.controller.getVersion();
+
+		versionReads.set(0);
+		for (int i = 0; i < 10; i++) {
+			assertThat(this.controller.fetchCommand("other"), notNullValue());
+			assertEquals(version, this.controller.getVersion());
+		}
+		assertEquals(0, versionReads.get());
+
+		InteractionCommand command = new TestCommand();
+		chained.getCommandMap().put("other", command);
+		assertSame(command, this.controller.fetchCommand("other"));
+		assertTrue(this.controller.getVersion() > version);
+	}
+
 }
@@ -23,7 +23,9 @@ package com.temenos.interaction.core.command;
 
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.mockito.Mockito.mock;
 
 import java.util.ArrayList;
@@ -103,4 +105,30 @@ public class TestInteractionContext {
 		assertEquals(ctx.getAttribute("abc"), "test");
 		assertEquals(ctx.getAttribute("NextState"), "myNextState");		
 	}
+
+	@Test
+	public void testAttributesSharedWithCopy() {
+		InteractionContext ctx = new InteractionContext(mock(UriInfo.class), mock(HttpHeaders.class), new MultivaluedMapImpl<String>(), new MultivaluedMapImpl<String>(), new ResourceState("entity", "initial_state", new ArrayList<Action>(), "/resource"), mock(Metadata.class));
+		InteractionContext copy = new InteractionContext(ctx, null, null, null, null);
+		copy.setAttribute("abc", "test");
+		assertEquals("test", ctx.getAttribute("abc"));
+
+		copy.setAttribute("abc", null);
+		assertNull(ctx.getAttribute("abc"));
+		assertFalse(ctx.getAttributes().containsKey("abc"));
+	}
+
+	@Test
+	public void testCopyWithOwnAttributes() {
+		InteractionContext ctx = new InteractionContext(mock(UriInfo.class), mock(HttpHeaders.class), new MultivaluedMapImpl<String>(), new MultivaluedMapImpl<String>(), new ResourceState("entity", "initial_state", new ArrayList<Action>(), "/resource"), mock(Metadata.class));
+		ctx.setAttribute("abc", "test");
+		InteractionContext copy = ctx.copyWithOwnAttributes();
+		assertEquals("test", copy.getAttribute("abc"));
+
+		copy.setAttribute("abc", null);
+		copy.setAttribute("def", "test");
+		assertEquals("test", ctx.getAttribute("abc"));
+		assertNull(ctx.getAttribute("def"));
+		assertSame(ctx.getCurrentState(), copy.getCurrentState());
+	}
 }
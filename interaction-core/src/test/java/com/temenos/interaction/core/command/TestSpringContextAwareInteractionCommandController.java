@@ -20,6 +20,8 @@ package com.temenos.interaction.core.command;
  * along with this program.  If not, see <http://www.gnu.org/licenses/>.
  * #L%
  */
+import java.util.Map;
+
 import org.junit.Assert;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -63,4 +65,14 @@ public class TestSpringContextAwareInteractionCommandController {
 
             Assert.assertTrue(ic3_1 != ic3_2);
     }
+
+    @Test
+    public void testSingletonsListed() throws BeansException {
+        Map<String, InteractionCommand> commands = commandController.getCommands();
+        Assert.assertSame(commandController.fetchCommand("testCommand1"), commands.get("testCommand1"));
+        Assert.assertSame(commandController.fetchCommand("testCommand2"), commands.get("testCommand2"));
+        Assert.assertFalse(commands.containsKey("testCommand3"));
+        // testCommand3 is a prototype, the commands must not be shared
+        Assert.assertTrue(commandController.getVersion() < 0);
+    }
 }
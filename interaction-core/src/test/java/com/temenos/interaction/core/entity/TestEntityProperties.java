@@ -0,0 +1,120 @@
+package com.temenos.interaction.core.entity;
+
+/*
+ * #%L
+ * interaction-core
+ * %%
+ * Copyright (C) 2012 - 2017 Temenos Holdings N.V.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+import java.util.Iterator;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.temenos.interaction.core.entity.vocabulary.Vocabulary;
+import com.temenos.interaction.core.entity.vocabulary.terms.TermComplexGroup;
+
+public class TestEntityProperties {
+
+	private static final EntitySchema SCHEMA = EntitySchema.of("id", "name", "address");
+
+	@Test
+	public void testSchemaProperties() {
+		EntityProperties customerFields = new EntityProperties(SCHEMA);
+		customerFields.setProperty(new EntityProperty("id", "123"));
+		customerFields.setPropertyValue("name", "Fred");
+		customerFields.setPropertyValue("town", "London");
+
+		Assert.assertEquals("123", customerFields.getProperty("id").getValue());
+		Assert.assertEquals("Fred", customerFields.getProperty("name").getValue());
+		Assert.assertEquals("London", customerFields.getProperty("town").getValue());
+		Assert.assertNull(customerFields.getProperty("address"));
+		Assert.assertEquals(3, customerFields.getProperties().size());
+		Assert.assertTrue(customerFields.getProperties().containsKey("town"));
+		Assert.assertFalse(customerFields.getProperties().containsKey("address"));
+	}
+
+	@Test
+	public void testSlotPropertyKept() {
+		EntityProperties customerFields = new EntityProperties(SCHEMA);
+		customerFields.setPropertyValue("name", "Fred");
+
+		EntityProperty name = customerFields.getProperty("name");
+		Assert.assertSame(name, customerFields.getProperty("name"));
+		Assert.assertSame(name, customerFields.getProperties().entrySet().iterator().next().getValue());
+
+		customerFields.setPropertyValue("name", "Bob");
+		Assert.assertEquals("Bob", customerFields.getProperty("name").getValue());
+		Assert.assertEquals("Fred", name.getValue());
+	}
+
+	@Test
+	public void testComplexPropertyKept() {
+		EntityProperties addressFields = new EntityProperties(EntitySchema.of("postcode"));
+		addressFields.setPropertyValue("postcode", "WD8 1LK");
+		EntityProperty addressProperty = new EntityProperty("address", addressFields);
+
+		EntityProperties customerFields = new EntityProperties(SCHEMA);
+		customerFields.setProperty(addressProperty);
+
+		Assert.assertSame(addressProperty, customerFields.getProperty("address"));
+		Assert.assertEquals("address.postcode", addressFields.getProperty("postcode").getFullyQualifiedName());
+	}
+
+	@Test
+	public void testModifyProperties() {
+		EntityProperties customerFields = new EntityProperties(SCHEMA);
+		customerFields.setPropertyValue("id", "123");
+		customerFields.setPropertyValue("name", "Fred");
+		Map<String, EntityProperty> properties = customerFields.getProperties();
+
+		properties.put("town", new EntityProperty("town", "London"));
+		Assert.assertEquals("Fred", properties.remove("name").getValue());
+		Assert.assertNull(customerFields.getProperty("name"));
+		Assert.assertEquals(2, properties.size());
+
+		Iterator<Map.Entry<String, EntityProperty>> iterator = properties.entrySet().iterator();
+		Assert.assertEquals("id", iterator.next().getKey());
+		iterator.remove();
+		Assert.assertEquals("town", iterator.next().getKey());
+		Assert.assertFalse(iterator.hasNext());
+		Assert.assertEquals("town = " + properties.get("town"), customerFields.toString());
+
+		properties.clear();
+		Assert.assertTrue(properties.isEmpty());
+	}
+
+	@Test
+	public void testMetadataSchema() {
+		EntityMetadata vocs = new EntityMetadata("Customer");
+		vocs.setPropertyVocabulary("name", new Vocabulary());
+		EntitySchema schema = vocs.getSchema();
+		Assert.assertSame(schema, vocs.getSchema());
+		Assert.assertEquals(1, schema.size());
+
+		Vocabulary vocStreet = new Vocabulary();
+		vocStreet.setTerm(new TermComplexGroup("address"));
+		vocs.setPropertyVocabulary("street", vocStreet);
+		vocs.setPropertyVocabulary("id", new Vocabulary());
+		Assert.assertNotSame(schema, vocs.getSchema());
+		Assert.assertEquals(2, vocs.getSchema().size());
+		Assert.assertTrue(vocs.getSchema().getSlot("id") >= 0);
+		Assert.assertEquals(-1, vocs.getSchema().getSlot("street"));
+	}
+}
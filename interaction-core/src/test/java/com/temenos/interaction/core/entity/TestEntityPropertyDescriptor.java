@@ -0,0 +1,140 @@
+package com.temenos.interaction.core.entity;
+
+/*
+ * #%L
+ * interaction-core
+ * %%
+ * Copyright (C) 2012 - 2017 Temenos Holdings N.V.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.temenos.interaction.core.entity.vocabulary.Vocabulary;
+import com.temenos.interaction.core.entity.vocabulary.terms.TermComplexGroup;
+import com.temenos.interaction.core.entity.vocabulary.terms.TermComplexType;
+import com.temenos.interaction.core.entity.vocabulary.terms.TermIdField;
+import com.temenos.interaction.core.entity.vocabulary.terms.TermListType;
+import com.temenos.interaction.core.entity.vocabulary.terms.TermMandatory;
+import com.temenos.interaction.core.entity.vocabulary.terms.TermValueType;
+
+public class TestEntityPropertyDescriptor {
+
+	private EntityMetadata vocs;
+
+	@Before
+	public void setup() {
+		vocs = new EntityMetadata("Customer");
+		Vocabulary vocId = new Vocabulary();
+		vocId.setTerm(new TermValueType(TermValueType.INTEGER_NUMBER));
+		vocId.setTerm(new TermIdField(true));
+		vocs.setPropertyVocabulary("id", vocId);
+		Vocabulary vocName = new Vocabulary();
+		vocName.setTerm(new TermMandatory(true));
+		vocs.setPropertyVocabulary("name", vocName);
+		Vocabulary vocDob = new Vocabulary();
+		vocDob.setTerm(new TermValueType(TermValueType.DATE));
+		vocs.setPropertyVocabulary("dob", vocDob);
+		Vocabulary vocAddress = new Vocabulary();
+		vocAddress.setTerm(new TermComplexType(true));
+		vocAddress.setTerm(new TermListType(true));
+		vocs.setPropertyVocabulary("address", vocAddress);
+		Vocabulary vocStreet = new Vocabulary();
+		vocStreet.setTerm(new TermComplexGroup("address"));
+		vocs.setPropertyVocabulary("street", vocStreet, Collections.enumeration(Arrays.asList("address")));
+	}
+
+	@Test
+	public void testDescriptors() {
+		EntityPropertyDescriptor id = vocs.getPropertyDescriptor("id");
+		Assert.assertEquals(EntityPropertyDescriptor.ValueType.INTEGER_NUMBER, id.getValueType());
+		Assert.assertTrue(id.isNumber());
+		Assert.assertTrue(id.isIdField());
+		Assert.assertFalse(id.isNullable());
+		Assert.assertFalse(id.isText());
+
+		EntityPropertyDescriptor name = vocs.getPropertyDescriptor("name");
+		Assert.assertTrue(name.isText());
+		Assert.assertTrue(name.isMandatory());
+		Assert.assertFalse(name.isNullable());
+
+		EntityPropertyDescriptor address = vocs.getPropertyDescriptor("address");
+		Assert.assertTrue(address.isComplex());
+		Assert.assertTrue(address.isList());
+
+		EntityPropertyDescriptor street = vocs.getPropertyDescriptor("address.street");
+		Assert.assertEquals("street", street.getSimpleName());
+		Assert.assertEquals("address", street.getComplexGroup());
+		Assert.assertTrue(street.isNullable());
+
+		Assert.assertEquals(1, vocs.getIdFieldDescriptors().size());
+		Assert.assertSame(id, vocs.getIdFieldDescriptors().get(0));
+		Assert.assertSame(id, vocs.getPropertyDescriptor("id"));
+	}
+
+	@Test
+	public void testUndefinedProperty() {
+		EntityPropertyDescriptor descriptor = vocs.getPropertyDescriptor("missing");
+		Assert.assertFalse(descriptor.isDefined());
+		Assert.assertNull(descriptor.getSimpleName());
+		Assert.assertTrue(descriptor.isText());
+		Assert.assertEquals("123", descriptor.formatValue(123));
+		Assert.assertSame(descriptor, vocs.getPropertyDescriptor("other"));
+	}
+
+	@Test
+	public void testFormatValue() {
+		Date date = new Date();
+		for (String propertyName : new String[] {"id", "name", "dob"}) {
+			for (Object value : new Object[] {null, "abc", 123L, date}) {
+				if (value instanceof Date && !propertyName.equals("dob") || value instanceof Long && propertyName.equals("dob")) {
+					continue;
+				}
+				Assert.assertEquals(vocs.getPropertyValueAsString(propertyName, value),
+						vocs.getPropertyDescriptor(propertyName).formatValue(value));
+			}
+		}
+	}
+
+	@Test
+	public void testDescriptorsReplaced() {
+		EntityPropertyDescriptor name = vocs.getPropertyDescriptor("name");
+		Vocabulary vocName = new Vocabulary();
+		vocName.setTerm(new TermValueType(TermValueType.NUMBER));
+		vocs.setPropertyVocabulary("name", vocName);
+		Assert.assertNotSame(name, vocs.getPropertyDescriptor("name"));
+		Assert.assertTrue(vocs.getPropertyDescriptor("name").isNumber());
+		Assert.assertFalse(vocs.getPropertyDescriptor("name").isMandatory());
+	}
+
+	@Test
+	public void testDescriptorsFollowVocabulary() {
+		Metadata metadata = new Metadata("Model");
+		metadata.setEntityMetadata(vocs);
+		long version = metadata.getVersion();
+		Assert.assertFalse(vocs.getPropertyDescriptor("dob").isMandatory());
+
+		vocs.getPropertyVocabulary("dob").setTerm(new TermMandatory(true));
+		Assert.assertTrue(vocs.getPropertyDescriptor("dob").isMandatory());
+		Assert.assertTrue(version != metadata.getVersion());
+	}
+}
@@ -0,0 +1,123 @@
+package com.temenos.interaction.core.hypermedia;
+
+/*
+ * #%L
+ * interaction-core
+ * %%
+ * Copyright (C) 2012 - 2017 Temenos Holdings N.V.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+import java.beans.BeanInfo;
+import java.beans.Introspector;
+import java.beans.PropertyDescriptor;
+import java.lang.reflect.Method;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares transforming a bean with the introspection and reflective calls
+ * previously used by {@link BeanTransformer} against its cached accessors,
+ * reading all the properties and, as a link template does, only one of them.
+ *
+ * Not run as part of the unit tests, run with the JMH runner, e.g.
+ * <pre>
+ * java -cp target/test-classes:... org.openjdk.jmh.Main BeanTransformerBenchmark
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BeanTransformerBenchmark {
+
+	private BeanTransformer transformer;
+	private Customer customer;
+
+	@Setup
+	public void setup() {
+		transformer = new BeanTransformer();
+		customer = new Customer();
+	}
+
+	@Benchmark
+	public Map<String, Object> reflectiveTransform() throws Exception {
+		Map<String, Object> map = new HashMap<String, Object>();
+		BeanInfo beanInfo = Introspector.getBeanInfo(customer.getClass());
+		for (PropertyDescriptor propertyDesc : beanInfo.getPropertyDescriptors()) {
+			String propertyName = propertyDesc.getName();
+			if (!BeanTransformer.ReservedProperty.contains(propertyName)) {
+				Method readMethod = propertyDesc.getReadMethod();
+				if (readMethod != null) {
+					map.put(propertyName, readMethod.invoke(customer));
+				}
+			}
+		}
+		return map;
+	}
+
+	@Benchmark
+	public Map<String, Object> cachedTransformAll() {
+		return new HashMap<String, Object>(transformer.transform(customer));
+	}
+
+	@Benchmark
+	public Object reflectiveTransformOne() throws Exception {
+		return reflectiveTransform().get("id");
+	}
+
+	@Benchmark
+	public Object cachedTransformOne() {
+		return transformer.transform(customer).get("id");
+	}
+
+	/*
+	 * An entity with as many properties as a typical generated JPA entity.
+	 */
+	public static class Customer {
+		private String id = "100123";
+		private String companyId = "GB0010001";
+		private String name = "Smith";
+		private String street = "1 High Street";
+		private String town = "London";
+		private String postCode = "EC1A 1AA";
+		private int sector = 1001;
+		private long balance = 125000L;
+
+		public String getId() { return id; }
+		public String getCompanyId() { return companyId; }
+		public String getName() { return name; }
+		public String getStreet() { return street; }
+		public String getTown() { return town; }
+		public String getPostCode() { return postCode; }
+		public int getSector() { return sector; }
+		public long getBalance() { return balance; }
+	}
+}
@@ -0,0 +1,122 @@
+package com.temenos.interaction.core.hypermedia;
+
+/*
+ * #%L
+ * interaction-core
+ * %%
+ * Copyright (C) 2012 - 2017 Temenos Holdings N.V.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares request routing through the {@link LockingResourceStateRegistry}
+ * and the {@link SnapshotResourceStateRegistry} while another thread keeps
+ * registering and unregistering states.
+ *
+ * Not run as part of the unit tests, run with the JMH runner, e.g.
+ * <pre>
+ * java -cp target/test-classes:... org.openjdk.jmh.Main ResourceStateRegistryBenchmark
+ * </pre>
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ResourceStateRegistryBenchmark {
+
+	private static final int STATES = 200;
+
+	@Param({ "locking", "snapshot" })
+	public String registry;
+
+	private ResourceStateMachine stateMachine;
+	private ResourceState dynamicState;
+	private Event get;
+	private String[] paths;
+	private int next;
+	private boolean registered;
+
+	@Setup
+	public void setup() {
+		ResourceState initial = new ResourceState("ENTITY", "initial", new ArrayList<Action>(), "/");
+		paths = new String[STATES];
+		for (int i = 0; i < STATES; i++) {
+			paths[i] = "/entity" + i + "('{id}')";
+			ResourceState state = new ResourceState("ENTITY", "state" + i, new ArrayList<Action>(), paths[i]);
+			initial.addTransition(new Transition.Builder().method("GET").target(state).build());
+		}
+		dynamicState = new ResourceState("ENTITY", "dynamic", new ArrayList<Action>(), "/dynamic");
+		get = new Event("GET", "GET");
+		stateMachine = new ResourceStateMachine.Builder()
+				.initial(initial)
+				.registry("snapshot".equals(registry) ? new SnapshotResourceStateRegistry() : new LockingResourceStateRegistry())
+				.build();
+	}
+
+	@Benchmark
+	@Group("contended")
+	@GroupThreads(3)
+	public ResourceState determineState() {
+		// benign race on the index, any path will do
+		int i = next++ % STATES;
+		if (i < 0) {
+			i = -i;
+		}
+		return stateMachine.determineState(get, paths[i]);
+	}
+
+	@Benchmark
+	@Group("contended")
+	@GroupThreads(1)
+	public void registerAndUnregister() {
+		if (registered) {
+			stateMachine.unregister(dynamicState, "GET");
+		} else {
+			stateMachine.register(dynamicState, "GET");
+		}
+		registered = !registered;
+	}
+
+	@Benchmark
+	@Group("uncontended")
+	@GroupThreads(4)
+	public ResourceState determineStateWithoutWriter() {
+		int i = next++ % STATES;
+		if (i < 0) {
+			i = -i;
+		}
+		return stateMachine.determineState(get, paths[i]);
+	}
+}
@@ -23,7 +23,13 @@ package com.temenos.interaction.core.hypermedia;
 
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.Map;
 
 import org.junit.Test;
@@ -39,4 +45,98 @@ public class TestBeanTransformer {
 		assertEquals(1, map.get("intField"));
 	}
 
+	@Test
+	public void testPropertiesReadOnceWhenAskedFor() {
+		CountingBean bean = new CountingBean();
+		Map<String, Object> map = new BeanTransformer().transform(bean);
+		assertEquals(0, bean.reads);
+		assertTrue(map.containsKey("name"));
+		assertEquals(0, bean.reads);
+		assertEquals("A", map.get("name"));
+		assertEquals("A", map.get("name"));
+		assertEquals(1, bean.reads);
+		assertFalse(map.containsKey("class"));
+		assertNull(map.get("missing"));
+	}
+
+	@Test
+	public void testModifyTransformedMap() {
+		Map<String, Object> map = new BeanTransformer().transform(new TestBean("A", 1));
+		map.put("extra", "B");
+		map.remove("intField");
+		Map<String, Object> expected = new HashMap<String, Object>();
+		expected.put("stringField", "A");
+		expected.put("extra", "B");
+		assertEquals(expected, map);
+	}
+
+	@Test
+	public void testModifyTransformedMapThroughViews() {
+		Map<String, Object> map = new BeanTransformer().transform(new TestBean("A", 1));
+		assertTrue(map.keySet().remove("intField"));
+		assertEquals(Collections.singletonMap("stringField", "A"), map);
+
+		map = new BeanTransformer().transform(new TestBean("A", 1));
+		assertTrue(map.values().remove("A"));
+		assertEquals(Collections.singletonMap("intField", 1), map);
+
+		map = new BeanTransformer().transform(new TestBean("A", 1));
+		for (Iterator<Map.Entry<String, Object>> it = map.entrySet().iterator(); it.hasNext();) {
+			if (it.next().getKey().equals("stringField")) {
+				it.remove();
+			}
+		}
+		assertEquals(Collections.singletonMap("intField", 1), map);
+	}
+
+	@Test
+	public void testSetValueOfTransformedMapEntry() {
+		Map<String, Object> map = new BeanTransformer().transform(new TestBean("A", 1));
+		for (Map.Entry<String, Object> entry : map.entrySet()) {
+			if (entry.getKey().equals("stringField")) {
+				assertEquals("A", entry.setValue("B"));
+				assertEquals("B", entry.getValue());
+			}
+		}
+		Map<String, Object> expected = new HashMap<String, Object>();
+		expected.put("stringField", "B");
+		expected.put("intField", 1);
+		assertEquals(expected, map);
+	}
+
+	@Test
+	public void testFailingPropertyIsNull() {
+		Map<String, Object> map = new BeanTransformer().transform(new CountingBean());
+		assertEquals(2, map.size());
+		assertTrue(map.containsKey("failing"));
+		assertNull(map.get("failing"));
+		assertEquals("A", map.get("name"));
+	}
+
+	@Test
+	public void testPackagePrivateBean() {
+		Map<String, Object> map = new BeanTransformer().transform(new PackagePrivateBean());
+		assertEquals(1, map.size());
+		assertEquals("A", map.get("name"));
+	}
+
+	public static class CountingBean {
+		private int reads;
+
+		public String getName() {
+			reads++;
+			return "A";
+		}
+
+		public String getFailing() {
+			throw new IllegalStateException();
+		}
+	}
+
+	static class PackagePrivateBean {
+		public String getName() {
+			return "A";
+		}
+	}
+
 }
@@ -0,0 +1,102 @@
+package com.temenos.interaction.core.hypermedia;
+
+/*
+ * #%L
+ * interaction-core
+ * %%
+ * Copyright (C) 2012 - 2017 Temenos Holdings N.V.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.odata4j.core.OEntities;
+import org.odata4j.core.OEntityKey;
+import org.odata4j.core.OLink;
+import org.odata4j.core.OProperty;
+import org.odata4j.edm.EdmEntitySet;
+
+import com.temenos.interaction.core.entity.Entity;
+import com.temenos.interaction.core.entity.EntityMetadata;
+import com.temenos.interaction.core.entity.EntityProperties;
+import com.temenos.interaction.core.entity.EntityProperty;
+import com.temenos.interaction.core.entity.vocabulary.Vocabulary;
+import com.temenos.interaction.core.entity.vocabulary.terms.TermIdField;
+
+public class TestEntityKeyExtractor {
+
+	private EntityMetadata entityMetadata;
+
+	@Before
+	public void setup() {
+		entityMetadata = new EntityMetadata("Test");
+		Vocabulary vocId = new Vocabulary();
+		vocId.setTerm(new TermIdField(true));
+		entityMetadata.setPropertyVocabulary("stringField", vocId);
+		entityMetadata.setPropertyVocabulary("intField", new Vocabulary());
+	}
+
+	@Test
+	public void testExtractEntityKey() {
+		EntityProperties properties = new EntityProperties();
+		properties.setProperty(new EntityProperty("stringField", "A"));
+		properties.setProperty(new EntityProperty("intField", 1));
+		EntityKeyExtractor extractor = new EntityKeyExtractor(entityMetadata);
+		assertEquals("A", extractor.extractKey(new Entity("Test", properties)));
+		assertNull(extractor.extractKey(new Entity("Test", new EntityProperties())));
+	}
+
+	@Test
+	public void testExtractBeanKey() {
+		EntityKeyExtractor extractor = new EntityKeyExtractor(entityMetadata);
+		assertEquals("A", extractor.extractKey(new TestBean("A", 1)));
+		assertEquals("B", extractor.extractKey(new TestBean("B", 2)));
+		assertNull(extractor.extractKey(new Booking("C")));
+	}
+
+	@Test
+	public void testExtractBeanKeyOfCapitalizedIdField() {
+		EntityMetadata bookingMetadata = new EntityMetadata("Booking");
+		Vocabulary vocId = new Vocabulary();
+		vocId.setTerm(new TermIdField(true));
+		// the property of getBookingId is bookingId
+		bookingMetadata.setPropertyVocabulary("BookingId", vocId);
+		EntityKeyExtractor extractor = new EntityKeyExtractor(bookingMetadata);
+		assertEquals("C", extractor.extractKey(new Booking("C")));
+	}
+
+	@Test
+	public void testExtractOEntityKey() {
+		EntityKeyExtractor extractor = new EntityKeyExtractor(null);
+		assertEquals("A", extractor.extractKey(OEntities.create(EdmEntitySet.newBuilder().build(),
+				OEntityKey.create("A"), new ArrayList<OProperty<?>>(), new ArrayList<OLink>())));
+	}
+
+	@Test
+	public void testIsFor() {
+		EntityKeyExtractor extractor = new EntityKeyExtractor(entityMetadata);
+		assertTrue(extractor.isFor(entityMetadata));
+		assertFalse(extractor.isFor(new EntityMetadata("Test")));
+	}
+
+}
@@ -0,0 +1,110 @@
+package com.temenos.interaction.core.hypermedia;
+
+/*
+ * #%L
+ * interaction-core
+ * %%
+ * Copyright (C) 2012 - 2017 Temenos Holdings N.V.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+
+import org.junit.Test;
+
+import com.temenos.interaction.core.hypermedia.expression.ResourceGETExpression;
+import com.temenos.interaction.core.hypermedia.expression.ResourceGETExpression.Function;
+
+public class TestLinkPlan {
+
+    @Test
+    public void testCompile() {
+        ResourceState customers = new ResourceState("Customer", "customers", new ArrayList<Action>(), "/Customers");
+        ResourceState customer = new ResourceState("Customer", "customer", new ArrayList<Action>(), "/Customers({id})");
+        ResourceState deleted = new ResourceState("Customer", "deleted", new ArrayList<Action>(), "/Customers({id})/deleted");
+        ResourceState accounts = new ResourceState("Account", "accounts", new ArrayList<Action>(), "/Accounts");
+        ResourceState loaded = new ResourceState("Customer", "loaded", new ArrayList<Action>(), "/Customers/loaded");
+        ResourceGETExpression condition = new ResourceGETExpression(customer, Function.OK);
+        customers.addTransition(new Transition.Builder().method("GET").target(customer).flags(Transition.FOR_EACH).evaluation(condition).build());
+        customers.addTransition(new Transition.Builder().method("DELETE").target(deleted).flags(Transition.FOR_EACH_EMBEDDED).build());
+        customers.addTransition(new Transition.Builder().target(loaded).flags(Transition.AUTO).build());
+        customers.addTransition(new Transition.Builder().method("GET").target(accounts).build());
+
+        LinkPlan plan = LinkPlan.compile(customers);
+        assertSame(customers, plan.getSelfTransition().getSource());
+        assertSame(customers, plan.getSelfTransition().getTarget());
+
+        // the auto transition is left out
+        LinkPlan.Step[] steps = plan.getSteps();
+        assertEquals(3, steps.length);
+        assertSame(customer, steps[0].getTransition().getTarget());
+        assertTrue(steps[0].isForEach());
+        assertFalse(steps[0].isEmbeddedForEach());
+        assertSame(condition, steps[0].getEvaluation());
+        assertSame(condition, steps[0].getBatchEvaluation());
+        assertSame(deleted, steps[1].getTransition().getTarget());
+        assertTrue(steps[1].isForEach());
+        assertTrue(steps[1].isEmbeddedForEach());
+        assertSame(accounts, steps[2].getTransition().getTarget());
+        assertFalse(steps[2].isForEach());
+        assertNull(steps[2].getEvaluation());
+        assertNull(steps[2].getBatchEvaluation());
+    }
+
+    @Test
+    public void testRecompiledWhenTransitionAdded() {
+        ResourceState customers = new ResourceState("Customer", "customers", new ArrayList<Action>(), "/Customers");
+        ResourceState accounts = new ResourceState("Account", "accounts", new ArrayList<Action>(), "/Accounts");
+        LinkPlan plan = customers.getLinkPlan();
+        assertEquals(0, plan.getSteps().length);
+        assertSame(plan, customers.getLinkPlan());
+
+        customers.addTransition(new Transition.Builder().method("GET").target(accounts).build());
+        LinkPlan recompiled = customers.getLinkPlan();
+        assertNotSame(plan, recompiled);
+        assertEquals(1, recompiled.getSteps().length);
+    }
+
+    @Test
+    public void testRecompiledWhenTransitionsSet() {
+        ResourceState customers = new ResourceState("Customer", "customers", new ArrayList<Action>(), "/Customers");
+        ResourceState accounts = new ResourceState("Account", "accounts", new ArrayList<Action>(), "/Accounts");
+        assertEquals(0, customers.getLinkPlan().getSteps().length);
+
+        customers.setTransitions(Collections.singletonList(new Transition.Builder().method("GET").target(accounts).build()));
+        assertEquals(1, customers.getLinkPlan().getSteps().length);
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testTransitionsReadOnly() {
+        ResourceState customers = new ResourceState("Customer", "customers", new ArrayList<Action>(), "/Customers");
+        ResourceState accounts = new ResourceState("Account", "accounts", new ArrayList<Action>(), "/Accounts");
+        customers.getTransitions().add(new Transition.Builder().method("GET").target(accounts).build());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testCompileNull() {
+        LinkPlan.compile(null);
+    }
+}
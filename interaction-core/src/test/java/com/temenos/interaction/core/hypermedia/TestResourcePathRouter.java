@@ -0,0 +1,148 @@
+package com.temenos.interaction.core.hypermedia;
+
+/*
+ * #%L
+ * interaction-core
+ * %%
+ * Copyright (C) 2012 - 2017 Temenos Holdings N.V.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+
+import org.junit.Test;
+
+public class TestResourcePathRouter {
+
+    @Test
+    public void testEmptyRouter() {
+        assertTrue(ResourcePathRouter.EMPTY.isEmpty());
+        assertTrue(ResourcePathRouter.EMPTY.match("/").isEmpty());
+        assertTrue(ResourcePathRouter.EMPTY.match(null).isEmpty());
+    }
+
+    @Test
+    public void testLiteralPaths() {
+        ResourcePathRouter router = ResourcePathRouter.EMPTY
+                .with("/")
+                .with("/europe/uk/london")
+                .with("/asia/japan");
+
+        assertEquals(Collections.singletonList("/"), router.match("/"));
+        assertEquals(Collections.singletonList("/europe/uk/london"), router.match("/europe/uk/london"));
+        assertEquals(Collections.singletonList("/europe/uk/london"), router.match("/europe/uk/london/"));
+        assertEquals(Collections.singletonList("/asia/japan"), router.match("/asia/japan"));
+        assertTrue(router.match("/europe/uk").isEmpty());
+        assertTrue(router.match("/europe/germany").isEmpty());
+    }
+
+    @Test
+    public void testVariablePaths() {
+        ResourcePathRouter router = ResourcePathRouter.EMPTY
+                .with("/{fridge}/magnet/{size}")
+                .with("/{id}/profile")
+                .with("/notes/new")
+                .with("/notes/{id}");
+
+        assertEquals(Collections.singletonList("/{fridge}/magnet/{size}"), router.match("/smeg/magnet/large"));
+        assertEquals(Collections.singletonList("/{id}/profile"), router.match("/123/profile"));
+        assertEquals(Collections.singletonList("/notes/new"), router.match("/notes/new"));
+        assertEquals(Collections.singletonList("/notes/{id}"), router.match("/notes/1"));
+        assertTrue(router.match("/smeg/magnet").isEmpty());
+    }
+
+    @Test
+    public void testBacktrackingToVariable() {
+        ResourcePathRouter router = ResourcePathRouter.EMPTY
+                .with("/notes/new")
+                .with("/{id}/profile");
+
+        // the literal does not lead to a template so the variable is tried next
+        assertEquals(Collections.singletonList("/{id}/profile"), router.match("/notes/profile"));
+        assertEquals(Collections.singletonList("/notes/new"), router.match("/notes/new"));
+    }
+
+    @Test
+    public void testODataKeys() {
+        ResourcePathRouter router = ResourcePathRouter.EMPTY
+                .with("/Customers")
+                .with("/Customers()")
+                .with("/Customers('{id}')")
+                .with("/Customers('{id}')/Accounts")
+                .with("/Customers('new')")
+                .with("/{entity}({id})/{navproperty}");
+
+        assertEquals(Collections.singletonList("/Customers"), router.match("/Customers"));
+        assertEquals(Collections.singletonList("/Customers()"), router.match("/Customers()"));
+        assertEquals(Collections.singletonList("/Customers('{id}')"), router.match("/Customers('100')"));
+        assertEquals(Collections.singletonList("/Customers('{id}')"), router.match("/Customers('{id}')"));
+        assertEquals(Collections.singletonList("/Customers('{id}')/Accounts"), router.match("/Customers('100')/Accounts"));
+        assertEquals(Collections.singletonList("/Customers('new')"), router.match("/Customers('new')"));
+        assertEquals(Collections.singletonList("/{entity}({id})/{navproperty}"), router.match("/Customers('100')/Orders"));
+        assertEquals(Collections.singletonList("/{entity}({id})/{navproperty}"), router.match("/Orders(1)/Lines"));
+        assertTrue(router.match("/Orders(1)").isEmpty());
+    }
+
+    @Test
+    public void testVariableTakesWholeSegment() {
+        ResourcePathRouter router = ResourcePathRouter.EMPTY.with("/{path}/metadata");
+
+        assertEquals(Collections.singletonList("/{path}/metadata"), router.match("/Customers('100')/metadata"));
+    }
+
+    @Test
+    public void testPatternSegments() {
+        ResourcePathRouter router = ResourcePathRouter.EMPTY
+                .with("/{companyid}/Customer_{id}")
+                .with("/{companyid}/Customer_{id}_Details")
+                .with("/{companyid}/{entity}");
+
+        assertEquals(Collections.singletonList("/{companyid}/Customer_{id}_Details"), router.match("/GB0010001/Customer_100_Details"));
+        assertEquals(Collections.singletonList("/{companyid}/Customer_{id}"), router.match("/GB0010001/Customer_100"));
+        assertEquals(Collections.singletonList("/{companyid}/{entity}"), router.match("/GB0010001/Account_100"));
+    }
+
+    @Test
+    public void testTemplatesDifferingInVariableNames() {
+        ResourcePathRouter router = ResourcePathRouter.EMPTY
+                .with("/notes({id})")
+                .with("/notes('{id}')");
+
+        assertEquals(new HashSet<String>(Arrays.asList("/notes({id})", "/notes('{id}')")),
+                new HashSet<String>(router.match("/notes(1)")));
+    }
+
+    @Test
+    public void testAddAndRemove() {
+        ResourcePathRouter router = ResourcePathRouter.EMPTY.with("/notes").with("/notes('{id}')");
+        assertSame(router, router.with("/notes"));
+        assertSame(router, router.without("/unknown"));
+
+        ResourcePathRouter removed = router.without("/notes('{id}')");
+        assertTrue(removed.match("/notes('1')").isEmpty());
+        assertEquals(Collections.singletonList("/notes"), removed.match("/notes"));
+        // the original router is not modified
+        assertEquals(Collections.singletonList("/notes('{id}')"), router.match("/notes('1')"));
+
+        assertSame(ResourcePathRouter.EMPTY, removed.without("/notes"));
+    }
+}
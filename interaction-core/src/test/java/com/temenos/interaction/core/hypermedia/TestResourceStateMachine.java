@@ -24,7 +24,9 @@ package com.temenos.interaction.core.hypermedia;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 import static org.mockito.Matchers.anyObject;
@@ -35,6 +37,7 @@ import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
@@ -43,6 +46,7 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MultivaluedMap;
@@ -64,11 +68,13 @@ import org.odata4j.edm.EdmComplexType;
 import org.odata4j.edm.EdmEntitySet;
 
 import com.temenos.interaction.core.MultivaluedMapImpl;
+import com.temenos.interaction.core.command.ChainingCommandController;
 import com.temenos.interaction.core.command.CommandController;
 import com.temenos.interaction.core.command.InteractionCommand;
 import com.temenos.interaction.core.command.InteractionCommand.Result;
 import com.temenos.interaction.core.command.InteractionContext;
 import com.temenos.interaction.core.command.MapBasedCommandController;
+import com.temenos.interaction.core.command.NoopGETCommand;
 import com.temenos.interaction.core.entity.Entity;
 import com.temenos.interaction.core.entity.EntityMetadata;
 import com.temenos.interaction.core.entity.EntityProperties;
@@ -109,6 +115,34 @@ public class TestResourceStateMachine {
      * the @{link Transition} can be found.
      */
     @SuppressWarnings("unchecked")
+    @Test
+    public void testGetAffectedStateNames() {
+        ResourceState home = new ResourceState("home", "home", new ArrayList<Action>(), "/");
+        ResourceState customers = new ResourceState("Customer", "customers", new ArrayList<Action>(), "/Customers");
+        ResourceState customer = new ResourceState("Customer", "customer", new ArrayList<Action>(), "/Customers({id})");
+        ResourceState updated = new ResourceState("Customer", "updated", new ArrayList<Action>(), "/Customers({id})/updated");
+        ResourceState dashboard = new ResourceState("Dashboard", "dashboard", new ArrayList<Action>(), "/Dashboard");
+        ResourceState page = new ResourceState("Page", "page", new ArrayList<Action>(), "/Page");
+        ResourceState accounts = new ResourceState("Account", "accounts", new ArrayList<Action>(), "/Accounts");
+
+        home.addTransition(new Transition.Builder().method("GET").target(customers).build());
+        home.addTransition(new Transition.Builder().method("GET").target(accounts).build());
+        home.addTransition(new Transition.Builder().method("GET").target(page).build());
+        customers.addTransition(new Transition.Builder().method("GET").target(customer).flags(Transition.FOR_EACH).build());
+        customer.addTransition(new Transition.Builder().method("PUT").target(updated).build());
+        // the dashboard embeds the customers, and the page embeds the dashboard
+        page.addTransition(new Transition.Builder().method("GET").target(dashboard).flags(Transition.EMBEDDED).build());
+        dashboard.addTransition(new Transition.Builder().method("GET").target(customers).flags(Transition.EMBEDDED).build());
+        dashboard.addTransition(new Transition.Builder().method("GET").target(accounts).build());
+
+        ResourceStateMachine stateMachine = new ResourceStateMachine(home);
+        stateMachine.registerAllStartingFromState(home, "GET");
+
+        Set<String> affected = stateMachine.getAffectedStateNames(updated);
+        assertEquals(new HashSet<String>(Arrays.asList("customers", "customer", "updated", "dashboard", "page")), affected);
+        assertEquals(new HashSet<String>(Arrays.asList("accounts")), stateMachine.getAffectedStateNames(accounts));
+    }
+
     @Test
     public void testGetLinkForCustomLinkRelation() {
         ResourceState existsState = new ResourceState("toaster", "exists", new ArrayList<Action>(), "/machines/toaster");
@@ -1041,6 +1075,55 @@ public class TestResourceStateMachine {
         assertEquals("Number of states: all", 6, sm.getResourceStatesForPathRegex(".*notes.*").size());
     }
 
+    @Test
+    public void testResolveResourceStates() {
+        String ENTITY_NAME = "";
+        ResourceState initial = new ResourceState(ENTITY_NAME, "initial", new ArrayList<Action>(), "/notes");
+        ResourceState notesEntity = new ResourceState(ENTITY_NAME, "notesEntity", new ArrayList<Action>(), "/notes('{id}')");
+        ResourceState notesDeleted = new ResourceState(ENTITY_NAME, "notesDeleted", new ArrayList<Action>(), "/notes('{id}')");
+        ResourceState notesNavProperty = new ResourceState(ENTITY_NAME, "notesNavProperty", new ArrayList<Action>(), "/notes({id})/{navproperty}");
+
+        initial.addTransition(new Transition.Builder().method("GET").target(notesEntity).build());
+        initial.addTransition(new Transition.Builder().method("DELETE").target(notesDeleted).build());
+        initial.addTransition(new Transition.Builder().method("GET").target(notesNavProperty).build());
+
+        ResourceStateMachine sm = new ResourceStateMachine(initial);
+
+        assertEquals(Collections.singleton(initial), sm.resolveResourceStates("/notes", "GET"));
+        assertEquals(Collections.singleton(notesEntity), sm.resolveResourceStates("/notes('1')", "GET"));
+        assertEquals(Collections.singleton(notesDeleted), sm.resolveResourceStates("/notes('1')", "DELETE"));
+        assertEquals(2, sm.resolveResourceStates("/notes('1')", null).size());
+        assertEquals(Collections.singleton(notesNavProperty), sm.resolveResourceStates("/notes(1)/authors", "GET"));
+        assertTrue(sm.resolveResourceStates("/notes('1')", "PUT").isEmpty());
+        assertTrue(sm.resolveResourceStates("/authors", "GET").isEmpty());
+
+        // the router follows registration
+        ResourceState authors = new ResourceState(ENTITY_NAME, "authors", new ArrayList<Action>(), "/authors");
+        sm.register(authors, "GET");
+        assertEquals(Collections.singleton(authors), sm.resolveResourceStates("/authors", "GET"));
+        sm.unregister(authors, "GET");
+        assertTrue(sm.resolveResourceStates("/authors", "GET").isEmpty());
+    }
+
+    @Test
+    public void testDetermineStateOfRequestPath() {
+        String ENTITY_NAME = "";
+        ResourceState initial = new ResourceState(ENTITY_NAME, "initial", new ArrayList<Action>(), "/notes");
+        ResourceState notesEntity = new ResourceState(ENTITY_NAME, "notesEntity", new ArrayList<Action>(), "/notes('{id}')");
+        ResourceState notesDeleted = new ResourceState(ENTITY_NAME, "notesDeleted", new ArrayList<Action>(), "/notes('{id}')");
+
+        initial.addTransition(new Transition.Builder().method("GET").target(notesEntity).build());
+        initial.addTransition(new Transition.Builder().method("DELETE").target(notesDeleted).build());
+
+        ResourceStateMachine sm = new ResourceStateMachine(initial);
+
+        assertEquals(notesEntity, sm.determineState(new Event("GET", "GET"), "/notes('{id}')"));
+        assertEquals(notesEntity, sm.determineState(new Event("GET", "GET"), "/notes('1')"));
+        assertEquals(notesDeleted, sm.determineState(new Event("DELETE", "DELETE"), "/notes('1')"));
+        assertNull(sm.determineState(new Event("PUT", "PUT"), "/notes('1')"));
+        assertNull(sm.determineState(new Event("GET", "GET"), "/authors"));
+    }
+
     @Test
     public void testGetState() {
         String ENTITY_NAME = "";
@@ -2180,6 +2263,97 @@ public class TestResourceStateMachine {
 
     }
 
+    @Test
+    public void testDetermineActionReused() {
+        ResourceState initial = new ResourceState("", "initial", new ArrayList<Action>(), "/entity");
+        List<Action> actions = new ArrayList<Action>();
+        actions.add(new Action("GETEntities", Action.TYPE.VIEW));
+        ResourceState notes = new ResourceState(initial, "notes", actions, "/notes");
+        initial.addTransition(new Transition.Builder().method("GET").target(notes).build());
+
+        ResourceStateMachine sm = new ResourceStateMachine(initial);
+        Map<String, InteractionCommand> commands = new HashMap<String, InteractionCommand>();
+        commands.put("GETEntities", new NoopGETCommand());
+        MapBasedCommandController commandController = new MapBasedCommandController(commands);
+        sm.setCommandController(commandController);
+
+        InteractionCommand action = sm.determineAction(new Event("GET", "GET"), "/entity/notes");
+        assertNotNull(action);
+        assertSame(action, sm.determineAction(new Event("GET", "GET"), "/entity/notes"));
+        assertSame(sm.buildWorkflow(new Event("", "GET"), notes), sm.buildWorkflow(new Event("", "GET"), notes));
+
+        // assembled again once the commands change
+        commandController.getCommandMap().put("GETEntities", new NoopGETCommand());
+        assertNotSame(action, sm.determineAction(new Event("GET", "GET"), "/entity/notes"));
+
+        // and once states are registered
+        action = sm.determineAction(new Event("GET", "GET"), "/entity/notes");
+        sm.register(new ResourceState("", "other", new ArrayList<Action>(), "/other"), "GET");
+        assertNotSame(action, sm.determineAction(new Event("GET", "GET"), "/entity/notes"));
+    }
+
+    @Test
+    public void testDetermineActionNotReusedWithControllerNotVersioned() {
+        ResourceState initial = new ResourceState("", "initial", new ArrayList<Action>(), "/entity");
+        List<Action> actions = new ArrayList<Action>();
+        actions.add(new Action("GETEntities", Action.TYPE.VIEW));
+        ResourceState notes = new ResourceState(initial, "notes", actions, "/notes");
+        initial.addTransition(new Transition.Builder().method("GET").target(notes).build());
+
+        ResourceStateMachine sm = new ResourceStateMachine(initial);
+        // e.g. a Spring context returning a new prototype bean each time
+        CommandController prototypes = new CommandController() {
+            @Override
+            public InteractionCommand fetchCommand(String name) {
+                return new NoopGETCommand();
+            }
+
+            @Override
+            public boolean isValidCommand(String name) {
+                return true;
+            }
+        };
+        ChainingCommandController commandController = new ChainingCommandController();
+        commandController.setCommandControllers(Arrays.asList(new MapBasedCommandController(), prototypes));
+        sm.setCommandController(commandController);
+
+        InteractionCommand action = sm.determineAction(new Event("GET", "GET"), "/entity/notes");
+        assertNotNull(action);
+        assertNotSame(action, sm.determineAction(new Event("GET", "GET"), "/entity/notes"));
+        assertNotSame(sm.buildWorkflow(new Event("", "GET"), notes), sm.buildWorkflow(new Event("", "GET"), notes));
+    }
+
+    @Test
+    public void testDetermineActionRegisteredMeanwhile() {
+        ResourceState initial = new ResourceState("", "initial", new ArrayList<Action>(), "/entity");
+        List<Action> actions = new ArrayList<Action>();
+        actions.add(new Action("GETEntities", Action.TYPE.VIEW));
+        ResourceState notes = new ResourceState(initial, "notes", actions, "/notes");
+        initial.addTransition(new Transition.Builder().method("GET").target(notes).build());
+
+        final ResourceStateMachine sm = new ResourceStateMachine(initial);
+        Map<String, InteractionCommand> commands = new HashMap<String, InteractionCommand>();
+        commands.put("GETEntities", new NoopGETCommand());
+        final AtomicBoolean registering = new AtomicBoolean(true);
+        sm.setCommandController(new MapBasedCommandController(commands) {
+            @Override
+            public InteractionCommand fetchCommand(String name) {
+                // states registered while the workflow is assembled
+                if (registering.getAndSet(false)) {
+                    sm.register(new ResourceState("", "other", new ArrayList<Action>(), "/other"), "GET");
+                }
+                return super.fetchCommand(name);
+            }
+        });
+
+        InteractionCommand action = sm.determineAction(new Event("GET", "GET"), "/entity/notes");
+        assertFalse(registering.get());
+        // assembled before the registration, so not reused
+        InteractionCommand assembledAgain = sm.determineAction(new Event("GET", "GET"), "/entity/notes");
+        assertNotSame(action, assembledAgain);
+        assertSame(assembledAgain, sm.determineAction(new Event("GET", "GET"), "/entity/notes"));
+    }
+
     @Test
     public void testDetermineState() {
         String ENTITY_NAME = "";
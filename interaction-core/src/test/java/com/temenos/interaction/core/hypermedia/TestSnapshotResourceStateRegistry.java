@@ -0,0 +1,192 @@
+package com.temenos.interaction.core.hypermedia;
+
+/*
+ * #%L
+ * interaction-core
+ * %%
+ * Copyright (C) 2012 - 2017 Temenos Holdings N.V.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+public class TestSnapshotResourceStateRegistry {
+
+    private ResourceStateMachine buildStateMachine(ResourceState initial) {
+        return new ResourceStateMachine.Builder()
+                .initial(initial)
+                .registry(new SnapshotResourceStateRegistry())
+                .build();
+    }
+
+    @Test
+    public void testRegisterAndUnregister() {
+        String entityName = "Note";
+        ResourceState initialState = new ResourceState(entityName, "notes", new ArrayList<Action>(), "/notes");
+        ResourceState noteState = new ResourceState(entityName, "note", new ArrayList<Action>(), "/notes('{id}')");
+        initialState.addTransition(new Transition.Builder().flags(Transition.EMBEDDED).method("GET").target(noteState).build());
+        initialState.addTransition(new Transition.Builder().flags(Transition.EMBEDDED).method("POST").target(noteState).build());
+        ResourceState samePathState = new ResourceState(entityName, "noteCopy", new ArrayList<Action>(), "/notes('{id}')");
+        noteState.addTransition(new Transition.Builder().flags(Transition.EMBEDDED).method("GET").target(samePathState).build());
+
+        ResourceStateMachine stateMachine = buildStateMachine(initialState);
+
+        assertEquals("Number of states", 3, stateMachine.getStates().size());
+        assertEquals("Number of interactions for noteState", 2, stateMachine.getInteractions(noteState).size());
+        assertEquals("Number of states under \"/notes('{id}')\" path", 2, stateMachine.getResourceStatesForPath("/notes('{id}')").size());
+
+        stateMachine.unregister(noteState, "POST");
+        assertEquals("Number of states", 3, stateMachine.getStates().size());
+        assertEquals("Number of interactions for noteState", 1, stateMachine.getInteractions(noteState).size());
+
+        stateMachine.unregister(noteState, "GET");
+        assertEquals("Number of states", 2, stateMachine.getStates().size());
+        assertEquals("Number of states under \"/notes('{id}')\" path", 1, stateMachine.getResourceStatesForPath("/notes('{id}')").size());
+        assertFalse(stateMachine.getResourceStateByName().containsKey(noteState.getName()));
+
+        stateMachine.register(noteState, "GET");
+        assertEquals("Number of states", 3, stateMachine.getStates().size());
+        assertTrue(stateMachine.getResourceStateByName().containsKey(noteState.getName()));
+    }
+
+    @Test
+    public void testRegisterMethodsPublishedOnce() {
+        ResourceState initialState = new ResourceState("Note", "notes", new ArrayList<Action>(), "/notes");
+        ResourceState noteState = new ResourceState("Note", "note", new ArrayList<Action>(), "/notes('{id}')");
+        final AtomicInteger edits = new AtomicInteger();
+        ResourceStateMachine stateMachine = new ResourceStateMachine.Builder()
+                .initial(initialState)
+                .registry(new SnapshotResourceStateRegistry() {
+                    @Override
+                    Editor edit() {
+                        edits.incrementAndGet();
+                        return super.edit();
+                    }
+                })
+                .build();
+
+        edits.set(0);
+        stateMachine.register(noteState, Arrays.asList("GET", "PUT", "DELETE"), false);
+        assertEquals(1, edits.get());
+        assertEquals("Number of interactions for noteState", 3, stateMachine.getInteractions(noteState).size());
+
+        stateMachine.register(noteState, Arrays.asList("GET", "PUT"), true);
+        assertEquals(2, edits.get());
+        assertEquals("Number of interactions for noteState", 3, stateMachine.getInteractions(noteState).size());
+        assertSame(noteState, stateMachine.getResourceStateByName("note"));
+    }
+
+    @Test
+    public void testPublishedSnapshotIsNotModified() {
+        ResourceState A = new ResourceState("EN", "A", new ArrayList<Action>(), "/A");
+        ResourceState B = new ResourceState("EN", "B", new ArrayList<Action>(), "/B");
+        A.addTransition(new Transition.Builder().method("GET").target(B).build());
+
+        ResourceStateMachine stateMachine = buildStateMachine(A);
+        ResourceStateRegistry.Tables before = stateMachine.getRegistry().read();
+        assertEquals(2, before.getResourceStatesByName().size());
+
+        ResourceState C = new ResourceState("EN", "C", new ArrayList<Action>(), "/A");
+        stateMachine.register(C, "PUT");
+
+        // readers holding the old snapshot are unaffected by the registration
+        assertEquals(2, before.getResourceStatesByName().size());
+        assertEquals(1, before.getResourceStateNamesByPath().get("/A").size());
+        assertNull(before.getInteractionsByState().get("C"));
+
+        ResourceStateRegistry.Tables after = stateMachine.getRegistry().read();
+        assertEquals(3, after.getResourceStatesByName().size());
+        assertEquals(2, after.getResourceStateNamesByPath().get("/A").size());
+        assertTrue(after.getInteractionsByState().get("C").contains("PUT"));
+        // untouched sets are shared between snapshots
+        assertSame(before.getInteractionsByState().get("B"), after.getInteractionsByState().get("B"));
+    }
+
+    @Test
+    public void testRegisteringKnownStateDoesNotPublish() {
+        ResourceState A = new ResourceState("EN", "A", new ArrayList<Action>(), "/A");
+        ResourceStateMachine stateMachine = buildStateMachine(A);
+        ResourceStateRegistry.Tables before = stateMachine.getRegistry().read();
+
+        stateMachine.register(A, "GET");
+
+        assertSame(before, stateMachine.getRegistry().read());
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testSnapshotMapsAreUnmodifiable() {
+        ResourceState A = new ResourceState("EN", "A", new ArrayList<Action>(), "/A");
+        ResourceStateMachine stateMachine = buildStateMachine(A);
+        stateMachine.getInteractionByState().get("A").add("DELETE");
+    }
+
+    @Test
+    public void testConcurrentLookupsDuringRegistration() throws Exception {
+        final ResourceState initial = new ResourceState("EN", "initial", new ArrayList<Action>(), "/");
+        final ResourceStateMachine stateMachine = buildStateMachine(initial);
+        final Event get = new Event("GET", "GET");
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        final CountDownLatch done = new CountDownLatch(1);
+
+        List<Thread> readers = new ArrayList<Thread>();
+        for (int i = 0; i < 4; i++) {
+            Thread reader = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        while (done.getCount() > 0) {
+                            assertNotNull(stateMachine.determineState(get, "/"));
+                            stateMachine.getResourceStatesByPath();
+                        }
+                    } catch (Throwable t) {
+                        failure.compareAndSet(null, t);
+                    }
+                }
+            };
+            reader.start();
+            readers.add(reader);
+        }
+
+        for (int i = 0; i < 500; i++) {
+            ResourceState state = new ResourceState("EN", "state" + i, new ArrayList<Action>(), "/state" + i);
+            stateMachine.register(state, "GET");
+            if (i % 2 == 0) {
+                stateMachine.unregister(state, "GET");
+            }
+        }
+        done.countDown();
+        for (Thread reader : readers) {
+            reader.join();
+        }
+
+        assertNull(failure.get());
+        assertEquals(251, stateMachine.getStates().size());
+    }
+}
@@ -0,0 +1,144 @@
+package com.temenos.interaction.core.hypermedia;
+
+/*
+ * #%L
+ * interaction-core
+ * %%
+ * Copyright (C) 2012 - 2017 Temenos Holdings N.V.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class TestUriTemplate {
+
+    @Test
+    public void testCompile() {
+        UriTemplate template = UriTemplate.compile("/{companyid}/Customers('{id}')/{companyid}");
+        assertEquals(Arrays.asList("companyid", "id", "companyid"), template.getParameterNames());
+        assertTrue(template.hasParameters());
+        assertTrue(template.hasParameter("id"));
+        assertFalse(template.hasParameter("Customers"));
+        assertEquals(4, template.getLiteralCount());
+        assertEquals("/", template.getLiteral(0));
+        assertEquals("/Customers('", template.getLiteral(1));
+        assertEquals("')/", template.getLiteral(2));
+        assertEquals("", template.getLiteral(3));
+    }
+
+    @Test
+    public void testCompileWithoutParameters() {
+        UriTemplate template = UriTemplate.compile("/Customers");
+        assertFalse(template.hasParameters());
+        assertTrue(template.getParameterNames().isEmpty());
+        assertSame(template.getTemplate(), template.expand(new HashMap<String, Object>()));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testCompileNull() {
+        UriTemplate.compile(null);
+    }
+
+    @Test
+    public void testUnclosedParameters() {
+        assertTrue(UriTemplate.compile("/Customers{id").getParameterNames().isEmpty());
+        // as with the \{(.*?)\} expression a parameter does not span lines
+        assertEquals(Collections.singletonList("b"), UriTemplate.compile("{a\n}{b}").getParameterNames());
+        assertEquals(Collections.singletonList("{id"), UriTemplate.compile("/{{id}").getParameterNames());
+    }
+
+    @Test
+    public void testExpand() {
+        Map<String, Object> values = new HashMap<String, Object>();
+        values.put("companyid", "GB0010001");
+        values.put("id", 100);
+        assertEquals("/GB0010001/Customers('100')/GB0010001",
+                UriTemplate.compile("/{companyid}/Customers('{id}')/{companyid}").expand(values));
+    }
+
+    @Test
+    public void testExpandLeavesMissingParameters() {
+        Map<String, Object> values = new HashMap<String, Object>();
+        values.put("id", "100");
+        values.put("companyid", null);
+        StringBuilder sb = new StringBuilder();
+        assertFalse(UriTemplate.compile("/{companyid}/Customers('{id}')").expand(values, sb));
+        assertEquals("/{companyid}/Customers('100')", sb.toString());
+
+        sb.setLength(0);
+        assertTrue(UriTemplate.compile("/Customers('{id}')").expand(values, sb));
+        assertEquals("/Customers('100')", sb.toString());
+    }
+
+    @Test
+    public void testTemplateReplace() {
+        Map<String, Object> properties = new HashMap<String, Object>();
+        properties.put("companyid", "GB0010001");
+        assertEquals("/GB0010001/flights/{id}",
+                HypermediaTemplateHelper.templateReplace(UriTemplate.compile("/{companyid}/flights/{id}"), properties));
+        assertEquals(HypermediaTemplateHelper.templateReplace("/{companyid}/flights/{id}", properties),
+                HypermediaTemplateHelper.templateReplace(UriTemplate.compile("/{companyid}/flights/{id}"), properties));
+        assertNull(HypermediaTemplateHelper.templateReplace((String) null, properties));
+    }
+
+    @Test
+    public void testBuildEncodedHref() {
+        Map<String, Object> values = new HashMap<String, Object>();
+        values.put("id", "100");
+        List<ParameterAndValue> queryParams = new ArrayList<ParameterAndValue>();
+        queryParams.add(new ParameterAndValue("$filter", "name"));
+        assertEquals("http://localhost:8080/svc/Customers('100')?$filter=name",
+                LinkGeneratorImpl.buildEncodedHref("http://localhost:8080/svc", UriTemplate.compile("/Customers('{id}')"),
+                        values, queryParams));
+        assertEquals("http://localhost:8080/svc/Customers('a%20b')",
+                LinkGeneratorImpl.buildEncodedHref("http://localhost:8080/svc", UriTemplate.compile("/Customers('{id}')"),
+                        Collections.<String, Object>singletonMap("id", "a%20b"), new ArrayList<ParameterAndValue>()));
+    }
+
+    @Test
+    public void testBuildEncodedHrefFallsBack() {
+        Map<String, Object> values = new HashMap<String, Object>();
+        values.put("id", "a b");
+        List<ParameterAndValue> noQueryParams = new ArrayList<ParameterAndValue>();
+        UriTemplate template = UriTemplate.compile("/Customers('{id}')");
+        // characters the UriBuilder would encode
+        assertNull(LinkGeneratorImpl.buildEncodedHref("http://localhost/svc", template, values, noQueryParams));
+        // joining the base path and path is left to the UriBuilder
+        values.put("id", "100");
+        assertNull(LinkGeneratorImpl.buildEncodedHref("http://localhost/svc/", template, values, noQueryParams));
+        assertNull(LinkGeneratorImpl.buildEncodedHref(null, template, values, noQueryParams));
+        // missing path parameter
+        assertNull(LinkGeneratorImpl.buildEncodedHref("http://localhost/svc", UriTemplate.compile("/Customers('{key}')"),
+                values, noQueryParams));
+        // query values are encoded more strictly than the path
+        List<ParameterAndValue> queryParams = new ArrayList<ParameterAndValue>();
+        queryParams.add(new ParameterAndValue("$filter", "name eq 'a'"));
+        assertNull(LinkGeneratorImpl.buildEncodedHref("http://localhost/svc", template, values, queryParams));
+    }
+}
@@ -0,0 +1,106 @@
+package com.temenos.interaction.core.hypermedia;
+
+/*
+ * #%L
+ * interaction-core
+ * %%
+ * Copyright (C) 2012 - 2017 Temenos Holdings N.V.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares expanding a link template with the regular expressions previously
+ * used by {@link HypermediaTemplateHelper} against a compiled
+ * {@link UriTemplate}.
+ *
+ * Not run as part of the unit tests, run with the JMH runner, e.g.
+ * <pre>
+ * java -cp target/test-classes:... org.openjdk.jmh.Main UriTemplateBenchmark
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UriTemplateBenchmark {
+
+	private static final Pattern TEMPLATE_PATTERN = Pattern.compile("\\{(.*?)\\}");
+	private static final String TEMPLATE = "/{companyid}/Customers('{id}')/Accounts('{accountid}')";
+
+	private UriTemplate uriTemplate;
+	private Map<String, Object> properties;
+
+	@Setup
+	public void setup() {
+		uriTemplate = UriTemplate.compile(TEMPLATE);
+		properties = new HashMap<String, Object>();
+		properties.put("companyid", "GB0010001");
+		properties.put("id", "100123");
+		properties.put("accountid", "12345678");
+		properties.put("name", "Smith");
+	}
+
+	@Benchmark
+	public String regexTemplateReplace() {
+		String result = TEMPLATE;
+		Map<String, Object> normalizedProperties = null;
+		Matcher m = TEMPLATE_PATTERN.matcher(TEMPLATE);
+		while (m.find()) {
+			String param = m.group(1);
+			if (normalizedProperties == null) {
+				normalizedProperties = HypermediaTemplateHelper.normalizeProperties(properties);
+			}
+			if (normalizedProperties.containsKey(param)) {
+				result = result.replaceAll(Pattern.quote("{" + param + "}"), Matcher.quoteReplacement(normalizedProperties.get(param).toString()));
+			}
+		}
+		return result;
+	}
+
+	@Benchmark
+	public String compileAndExpand() {
+		return HypermediaTemplateHelper.templateReplace(TEMPLATE, properties);
+	}
+
+	@Benchmark
+	public String precompiledTemplateReplace() {
+		return HypermediaTemplateHelper.templateReplace(uriTemplate, properties);
+	}
+
+	@Benchmark
+	public String precompiledExpand() {
+		return uriTemplate.expand(properties);
+	}
+}
@@ -22,11 +22,14 @@ package com.temenos.interaction.core.hypermedia.expression;
  */
 
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import java.util.ArrayList;
@@ -43,6 +46,8 @@ import org.junit.Before;
 import org.junit.Ignore;
 import org.junit.Test;
 
+import com.temenos.interaction.core.MultivaluedMapImpl;
+import com.temenos.interaction.core.command.BatchInteractionCommand;
 import com.temenos.interaction.core.command.CommandController;
 import com.temenos.interaction.core.command.InteractionCommand;
 import com.temenos.interaction.core.command.InteractionCommand.Result;
@@ -50,14 +55,21 @@ import com.temenos.interaction.core.command.InteractionContext;
 import com.temenos.interaction.core.command.InteractionException;
 import com.temenos.interaction.core.command.NewCommandController;
 import com.temenos.interaction.core.command.NoopGETCommand;
+import com.temenos.interaction.core.entity.Entity;
 import com.temenos.interaction.core.entity.EntityMetadata;
+import com.temenos.interaction.core.entity.EntityProperties;
+import com.temenos.interaction.core.entity.EntityProperty;
 import com.temenos.interaction.core.entity.Metadata;
 import com.temenos.interaction.core.hypermedia.Action;
 import com.temenos.interaction.core.hypermedia.Action.TYPE;
+import com.temenos.interaction.core.hypermedia.CollectionResourceState;
+import com.temenos.interaction.core.hypermedia.EntityTransformer;
 import com.temenos.interaction.core.hypermedia.ResourceState;
 import com.temenos.interaction.core.hypermedia.ResourceStateMachine;
 import com.temenos.interaction.core.hypermedia.Transition;
 import com.temenos.interaction.core.hypermedia.expression.ResourceGETExpression.Function;
+import com.temenos.interaction.core.resource.CollectionResource;
+import com.temenos.interaction.core.resource.EntityResource;
 import com.temenos.interaction.core.rim.HTTPHypermediaRIM;
 import com.temenos.interaction.core.web.RequestContext;
 
@@ -176,4 +188,112 @@ public class TestResourceGETExpression {
 		assertFalse("We did a GET on 'pconfirmed' and it was OK(200), therefore NOT_FOUND link condition evaluates to 'false'", result2);
 	}
 	
+	@SuppressWarnings("unchecked")
+	@Test
+	public void testEvaluationMemoizedPerRequest() throws InteractionException {
+		HTTPHypermediaRIM rimHandler = mockRimHandler();
+		ResourceStateMachine rsm = rimHandler.getHypermediaEngine();
+		NewCommandController cc = new NewCommandController();
+		InteractionCommand notfound = mock(InteractionCommand.class);
+		when(notfound.execute(any(InteractionContext.class))).thenReturn(Result.FAILURE);
+		cc.addCommand("notfound", notfound);
+		rsm.setCommandController(cc);
+		InteractionContext ctx = new InteractionContext(mock(UriInfo.class), mock(HttpHeaders.class), mock(MultivaluedMap.class), mock(MultivaluedMap.class), rsm.getInitial(), mock(Metadata.class));
+
+		ResourceState pwaiting = rsm.getResourceStateByName("pwaiting");
+		assertFalse(new ResourceGETExpression(pwaiting, Function.OK).evaluate(rimHandler, ctx, null));
+		assertTrue(new ResourceGETExpression(pwaiting, Function.NOT_FOUND).evaluate(rimHandler, ctx, null));
+		// contexts copied from the request context share its cache
+		InteractionContext copy = new InteractionContext(ctx, null, null, null, null);
+		assertTrue(new ResourceGETExpression(pwaiting, Function.NOT_FOUND).evaluate(rimHandler, copy, null));
+
+		verify(notfound, times(1)).execute(any(InteractionContext.class));
+		assertEquals(1, ctx.getExpressionEvaluationCache().getMisses());
+		assertEquals(2, ctx.getExpressionEvaluationCache().getHits());
+
+		// a new request evaluates the condition again
+		InteractionContext nextRequest = new InteractionContext(mock(UriInfo.class), mock(HttpHeaders.class), mock(MultivaluedMap.class), mock(MultivaluedMap.class), rsm.getInitial(), mock(Metadata.class));
+		assertTrue(new ResourceGETExpression(pwaiting, Function.NOT_FOUND).evaluate(rimHandler, nextRequest, null));
+		verify(notfound, times(2)).execute(any(InteractionContext.class));
+	}
+
+	@Test
+	public void testBatchEvaluationOfCollection() throws InteractionException {
+		ResourceState notes = new CollectionResourceState("Note", "notes", new ArrayList<Action>(), "/notes");
+		ResourceState note = new ResourceState("Note", "note", new ArrayList<Action>(), "/notes({id})");
+		List<Action> flagActions = new ArrayList<Action>();
+		flagActions.add(new Action("flagged", TYPE.VIEW));
+		ResourceState flag = new ResourceState("Note", "flag", flagActions, "/notes({id})/flag");
+		notes.addTransition(new Transition.Builder().flags(Transition.FOR_EACH).method("GET").target(note).build());
+		note.addTransition(new Transition.Builder().method("GET").target(flag).build());
+
+		// notes with an even id are flagged
+		final List<List<InteractionContext>> batches = new ArrayList<List<InteractionContext>>();
+		BatchInteractionCommand flagged = new BatchInteractionCommand() {
+			@Override
+			public Result execute(InteractionContext ctx) {
+				throw new AssertionError("Should be executed as a batch");
+			}
+
+			@Override
+			public List<Result> executeAll(List<InteractionContext> contexts) {
+				batches.add(contexts);
+				List<Result> results = new ArrayList<Result>();
+				for (InteractionContext ctx : contexts) {
+					int id = Integer.parseInt(ctx.getPathParameters().getFirst("id"));
+					results.add(id % 2 == 0 ? Result.SUCCESS : Result.FAILURE);
+				}
+				return results;
+			}
+		};
+		NewCommandController cc = new NewCommandController();
+		cc.addCommand("flagged", flagged);
+		ResourceStateMachine rsm = new ResourceStateMachine(notes, new EntityTransformer());
+		rsm.setCommandController(cc);
+		Metadata metadata = mock(Metadata.class);
+		when(metadata.getEntityMetadata(anyString())).thenReturn(mock(EntityMetadata.class));
+		HTTPHypermediaRIM rimHandler = new HTTPHypermediaRIM(cc, rsm, metadata);
+
+		List<EntityResource<Entity>> entities = new ArrayList<EntityResource<Entity>>();
+		for (int i = 1; i <= 4; i++) {
+			EntityProperties properties = new EntityProperties();
+			properties.setProperty(new EntityProperty("id", i));
+			entities.add(new EntityResource<Entity>(new Entity("Note", properties)));
+		}
+		// the same note twice is only requested once
+		entities.add(entities.get(0));
+		InteractionContext ctx = new InteractionContext(mock(UriInfo.class), mock(HttpHeaders.class), new MultivaluedMapImpl<String>(), new MultivaluedMapImpl<String>(), notes, metadata);
+		ctx.setResource(new CollectionResource<Entity>(entities));
+
+		ResourceGETExpression isFlagged = new ResourceGETExpression(flag, Function.OK);
+		isFlagged.prepare(rimHandler, ctx, entities);
+
+		assertEquals(1, batches.size());
+		assertEquals(4, batches.get(0).size());
+		for (int i = 0; i < 4; i++) {
+			assertEquals((i + 1) % 2 == 0, isFlagged.evaluate(rimHandler, ctx, entities.get(i)));
+		}
+		assertEquals(0, ctx.getExpressionEvaluationCache().getMisses());
+		assertEquals(4, ctx.getExpressionEvaluationCache().getHits());
+
+		// already evaluated, nothing left to batch
+		isFlagged.prepare(rimHandler, ctx, entities);
+		assertEquals(1, batches.size());
+	}
+
+	@Test
+	public void testBatchEvaluationNotSupported() {
+		HTTPHypermediaRIM rimHandler = mockRimHandler();
+		ResourceStateMachine rsm = rimHandler.getHypermediaEngine();
+		rsm.setCommandController(mockCommandController());
+		InteractionContext ctx = new InteractionContext(mock(UriInfo.class), mock(HttpHeaders.class), new MultivaluedMapImpl<String>(), new MultivaluedMapImpl<String>(), rsm.getInitial(), mock(Metadata.class));
+
+		List<EntityResource<Entity>> entities = new ArrayList<EntityResource<Entity>>();
+		entities.add(new EntityResource<Entity>(new Entity("BOOKING", new EntityProperties())));
+		new ResourceGETExpression(rsm.getResourceStateByName("pwaiting"), Function.OK).prepare(rimHandler, ctx, entities);
+
+		// left to be evaluated one by one
+		assertEquals(0, ctx.getExpressionEvaluationCache().size());
+	}
+
 }
@@ -92,6 +92,37 @@ public class TestHeaderHelper {
 		assertNull(r.getMetadata().getFirst("Allow"));
 	}
 
+	@Test
+	public void testMatchesEntityTag() {
+		assertThat(HeaderHelper.matchesEntityTag("ABC", "ABC"), equalTo(true));
+		assertThat(HeaderHelper.matchesEntityTag("\"ABC\"", "ABC"), equalTo(true));
+		assertThat(HeaderHelper.matchesEntityTag("W/\"XYZ\", \"ABC\"", "\"ABC\""), equalTo(true));
+		assertThat(HeaderHelper.matchesEntityTag("*", "ABC"), equalTo(true));
+		assertThat(HeaderHelper.matchesEntityTag("XYZ", "ABC"), equalTo(false));
+		assertThat(HeaderHelper.matchesEntityTag(null, "ABC"), equalTo(false));
+		assertThat(HeaderHelper.matchesEntityTag("ABC", null), equalTo(false));
+	}
+
+	@Test
+	public void testVaryHeader() {
+		Response r = HeaderHelper.varyHeader(Response.ok(), Arrays.asList("Accept", "Accept-Language")).build();
+		assertEquals("Accept, Accept-Language", r.getMetadata().getFirst("Vary"));
+	}
+
+	@Test
+	public void testNoVaryHeader() {
+		Response r = HeaderHelper.varyHeader(Response.ok(), new ArrayList<String>()).build();
+		assertNull(r.getMetadata().getFirst("Vary"));
+	}
+
+	@Test
+	public void testMaxAgeHeaderWithStaleWhileRevalidate() {
+		Response r = HeaderHelper.maxAgeHeader(Response.ok(), 120, 30).build();
+		assertEquals("max-age=120, stale-while-revalidate=30", r.getMetadata().getFirst("Cache-Control"));
+		r = HeaderHelper.maxAgeHeader(Response.ok(), 120, 0).build();
+		assertEquals("max-age=120", r.getMetadata().getFirst("Cache-Control"));
+	}
+
 	@Test
 	public void testOptionsNoValidStates() {
 		Response r = HeaderHelper.allowHeader(Response.ok(), new HashSet<String>()).build();
@@ -261,6 +292,21 @@ public class TestHeaderHelper {
         assertEquals("value0", HeaderHelper.getFirstHeaderCaseInsensitive(httpHeadersMock, "Header0"));
     }
 
+    @Test
+    public void testNegotiateContentEncoding() {
+        assertNull(HeaderHelper.negotiateContentEncoding(null, "gzip"));
+        assertNull(HeaderHelper.negotiateContentEncoding("identity", "gzip"));
+        assertEquals("gzip", HeaderHelper.negotiateContentEncoding("gzip, deflate", "gzip", "deflate"));
+        assertEquals("deflate", HeaderHelper.negotiateContentEncoding("gzip, deflate", "deflate", "gzip"));
+        assertEquals("deflate", HeaderHelper.negotiateContentEncoding("gzip;q=0.5, deflate", "gzip", "deflate"));
+        assertEquals("gzip", HeaderHelper.negotiateContentEncoding("x-gzip", "gzip"));
+        assertEquals("gzip", HeaderHelper.negotiateContentEncoding("*", "gzip"));
+        assertNull(HeaderHelper.negotiateContentEncoding("gzip;q=0", "gzip"));
+        assertNull(HeaderHelper.negotiateContentEncoding("*, gzip;q=0", "gzip"));
+        assertNull(HeaderHelper.negotiateContentEncoding("GZIP;q=abc", "gzip"));
+        assertEquals("gzip", HeaderHelper.negotiateContentEncoding("GZIP;Q=1.0", "gzip"));
+    }
+
     private MultivaluedMap<String,String> buildHeaders() {
         MultivaluedMap<String, String> headers = new MultivaluedMapImpl<>();
         List<String> values = new ArrayList<>();
@@ -0,0 +1,311 @@
+package com.temenos.interaction.core.rim;
+
+/*
+ * #%L
+ * interaction-core
+ * %%
+ * Copyright (C) 2012 - 2017 Temenos Holdings N.V.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.UriInfo;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import com.temenos.interaction.core.MultivaluedMapImpl;
+import com.temenos.interaction.core.command.InteractionCommand;
+import com.temenos.interaction.core.command.InteractionContext;
+import com.temenos.interaction.core.entity.Metadata;
+import com.temenos.interaction.core.hypermedia.BeanTransformer;
+import com.temenos.interaction.core.hypermedia.Event;
+import com.temenos.interaction.core.hypermedia.ResourceState;
+import com.temenos.interaction.core.hypermedia.ResourceStateMachine;
+import com.temenos.interaction.core.hypermedia.Transition;
+import com.temenos.interaction.core.resource.EntityResource;
+import com.temenos.interaction.core.web.RequestContext;
+
+/**
+ * Test Cases for ParallelResourceRequestHandler
+ */
+public class TestParallelResourceRequestHandler {
+
+    private ParallelResourceRequestHandler handler;
+
+    @Before
+    public void setUp() {
+        RequestContext.setRequestContext(null);
+    }
+
+    @After
+    public void tearDown() {
+        if (handler != null) {
+            handler.shutdown();
+        }
+        RequestContext.setRequestContext(null);
+    }
+
+    @Test
+    public void testResourcesInTransitionOrder() {
+        handler = new ParallelResourceRequestHandler(8, 4, 5000);
+        ResourceRequestConfig config = config(6);
+        Map<Transition, ResourceRequestResult> results = handler.getResources(mockRIM(new SleepingAnswer(10, null)),
+                mock(HttpHeaders.class), createContext(), null, config);
+
+        assertEquals(6, results.size());
+        List<Transition> expected = new ArrayList<Transition>(config.getTransitions());
+        List<Transition> actual = new ArrayList<Transition>(results.keySet());
+        for (int i = 0; i < expected.size(); i++) {
+            assertSame(expected.get(i), actual.get(i));
+            assertEquals(200, results.get(expected.get(i)).getStatus());
+        }
+    }
+
+    @Test
+    public void testResourcesRequestedConcurrently() {
+        handler = new ParallelResourceRequestHandler(8, 4, 5000);
+        long start = System.currentTimeMillis();
+        Map<Transition, ResourceRequestResult> results = handler.getResources(mockRIM(new SleepingAnswer(200, null)),
+                mock(HttpHeaders.class), createContext(), null, config(4));
+        long elapsed = System.currentTimeMillis() - start;
+
+        assertEquals(4, results.size());
+        // one after another would take 800ms
+        assertTrue("took " + elapsed + "ms", elapsed < 600);
+    }
+
+    @Test
+    public void testMaxFanOut() {
+        handler = new ParallelResourceRequestHandler(8, 2, 5000);
+        SleepingAnswer answer = new SleepingAnswer(50, null);
+        Map<Transition, ResourceRequestResult> results = handler.getResources(mockRIM(answer),
+                mock(HttpHeaders.class), createContext(), null, config(6));
+
+        assertEquals(6, results.size());
+        assertEquals(6, answer.calls.get());
+        assertTrue(answer.maxConcurrent.get() <= 2);
+    }
+
+    @Test
+    public void testTimeout() {
+        handler = new ParallelResourceRequestHandler(8, 4, 200);
+        ResourceRequestConfig config = config(2);
+        final Thread requestThread = Thread.currentThread();
+        SleepingAnswer answer = new SleepingAnswer(10, null) {
+            @Override
+            long sleepMillis(InteractionContext ctx) {
+                // the request thread completes the transition it has started
+                return Thread.currentThread() == requestThread ? 300 : 2000;
+            }
+        };
+        long start = System.currentTimeMillis();
+        Map<Transition, ResourceRequestResult> results = handler.getResources(mockRIM(answer),
+                mock(HttpHeaders.class), createContext(), null, config);
+        long elapsed = System.currentTimeMillis() - start;
+
+        assertTrue("took " + elapsed + "ms", elapsed < 1500);
+        int unavailable = 0;
+        for (Transition t : config.getTransitions()) {
+            if (results.get(t).getStatus() == Response.Status.SERVICE_UNAVAILABLE.getStatusCode()) {
+                unavailable++;
+            } else {
+                assertEquals(200, results.get(t).getStatus());
+            }
+        }
+        assertEquals(1, unavailable);
+    }
+
+    @Test
+    public void testAttributesOfTimedOutTransitionsDropped() throws InterruptedException {
+        handler = new ParallelResourceRequestHandler(8, 4, 200);
+        final Thread requestThread = Thread.currentThread();
+        SleepingAnswer answer = new SleepingAnswer(10, null) {
+            @Override
+            long sleepMillis(InteractionContext ctx) {
+                return Thread.currentThread() == requestThread ? 300 : 1000;
+            }
+
+            @Override
+            public Response answer(InvocationOnMock invocation) throws Throwable {
+                Response response = super.answer(invocation);
+                ((InteractionContext) invocation.getArguments()[1]).setAttribute(Thread.currentThread().getName(), "set");
+                return response;
+            }
+        };
+        InteractionContext ctx = createContext();
+        ctx.setAttribute("removed", "set");
+        handler.getResources(mockRIM(answer), mock(HttpHeaders.class), ctx, null, config(2));
+
+        assertEquals("set", ctx.getAttribute(requestThread.getName()));
+        // still set by the transition that timed out, but not in the request
+        Thread.sleep(1000);
+        assertEquals(2, ctx.getAttributes().size());
+    }
+
+    @Test
+    public void testEmbeddedResourcesOfEmbeddedResourcesInSameThread() {
+        handler = new ParallelResourceRequestHandler(1, 4, 5000);
+        final AtomicInteger otherThread = new AtomicInteger();
+        final AtomicInteger nestedCalls = new AtomicInteger();
+        SleepingAnswer answer = new SleepingAnswer(10, null) {
+            @Override
+            public Response answer(InvocationOnMock invocation) throws Throwable {
+                final Thread embedding = Thread.currentThread();
+                SleepingAnswer nested = new SleepingAnswer(10, null) {
+                    @Override
+                    long sleepMillis(InteractionContext ctx) {
+                        nestedCalls.incrementAndGet();
+                        if (Thread.currentThread() != embedding) {
+                            otherThread.incrementAndGet();
+                        }
+                        return super.sleepMillis(ctx);
+                    }
+                };
+                Map<Transition, ResourceRequestResult> results = handler.getResources(mockRIM(nested),
+                        mock(HttpHeaders.class), createContext(), null, config(3));
+                for (ResourceRequestResult result : results.values()) {
+                    assertEquals(200, result.getStatus());
+                }
+                return super.answer(invocation);
+            }
+        };
+        Map<Transition, ResourceRequestResult> results = handler.getResources(mockRIM(answer),
+                mock(HttpHeaders.class), createContext(), null, config(4));
+
+        for (ResourceRequestResult result : results.values()) {
+            assertEquals(200, result.getStatus());
+        }
+        assertEquals(12, nestedCalls.get());
+        assertEquals(0, otherThread.get());
+    }
+
+    @Test
+    public void testRequestContextPropagated() {
+        handler = new ParallelResourceRequestHandler(8, 4, 5000);
+        RequestContext requestContext = new RequestContext("/base", "/requestUri", null);
+        RequestContext.setRequestContext(requestContext);
+        SleepingAnswer answer = new SleepingAnswer(10, requestContext);
+        handler.getResources(mockRIM(answer), mock(HttpHeaders.class), createContext(), null, config(4));
+
+        assertEquals(4, answer.calls.get());
+        assertEquals(0, answer.wrongRequestContext.get());
+        assertSame(requestContext, RequestContext.getRequestContext());
+    }
+
+    private static class SleepingAnswer implements Answer<Response> {
+        final AtomicInteger calls = new AtomicInteger();
+        final AtomicInteger concurrent = new AtomicInteger();
+        final AtomicInteger maxConcurrent = new AtomicInteger();
+        final AtomicInteger wrongRequestContext = new AtomicInteger();
+        private final long millis;
+        private final RequestContext requestContext;
+
+        SleepingAnswer(long millis, RequestContext requestContext) {
+            this.millis = millis;
+            this.requestContext = requestContext;
+        }
+
+        long sleepMillis(InteractionContext ctx) {
+            return millis;
+        }
+
+        @Override
+        public Response answer(InvocationOnMock invocation) throws Throwable {
+            calls.incrementAndGet();
+            if (RequestContext.getRequestContext() != requestContext) {
+                wrongRequestContext.incrementAndGet();
+            }
+            int now = concurrent.incrementAndGet();
+            int max;
+            while (now > (max = maxConcurrent.get()) && !maxConcurrent.compareAndSet(max, now)) {
+                // retry
+            }
+            try {
+                Thread.sleep(sleepMillis((InteractionContext) invocation.getArguments()[1]));
+            } finally {
+                concurrent.decrementAndGet();
+            }
+            return new Response() {
+                @Override
+                public Object getEntity() {
+                    return null;
+                }
+
+                @Override
+                public int getStatus() {
+                    return 200;
+                }
+
+                @Override
+                public MultivaluedMap<String, Object> getMetadata() {
+                    return null;
+                }
+            };
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private HTTPHypermediaRIM mockRIM(Answer<Response> answer) {
+        HTTPHypermediaRIM rimHandler = mock(HTTPHypermediaRIM.class);
+        ResourceStateMachine engine = new ResourceStateMachine(mock(ResourceState.class), new BeanTransformer());
+        when(rimHandler.getHypermediaEngine()).thenReturn(engine);
+        when(rimHandler.handleRequest(any(HttpHeaders.class), any(InteractionContext.class), any(Event.class),
+                any(InteractionCommand.class), any(EntityResource.class), any(ResourceRequestConfig.class)))
+                .thenAnswer(answer);
+        return rimHandler;
+    }
+
+    private ResourceRequestConfig config(int transitions) {
+        ResourceRequestConfig.Builder config = new ResourceRequestConfig.Builder();
+        for (int i = 0; i < transitions; i++) {
+            config.transition(new Transition.Builder().target(mockTarget("Target" + i, "/target" + i)).build());
+        }
+        return config.build();
+    }
+
+    private InteractionContext createContext() {
+        MultivaluedMap<String, String> pathParameters = new MultivaluedMapImpl<String>();
+        MultivaluedMap<String, String> queryParameters = new MultivaluedMapImpl<String>();
+        return new InteractionContext(mock(UriInfo.class), null, pathParameters, queryParameters,
+                mock(ResourceState.class), mock(Metadata.class));
+    }
+
+    private ResourceState mockTarget(String name, String path) {
+        ResourceState target = mock(ResourceState.class);
+        when(target.getName()).thenReturn(name);
+        when(target.getPath()).thenReturn(path);
+        when(target.getRel()).thenReturn("item");
+        return target;
+    }
+}
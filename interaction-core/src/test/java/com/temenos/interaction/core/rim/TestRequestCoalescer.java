@@ -0,0 +1,296 @@
+package com.temenos.interaction.core.rim;
+
+/*
+ * #%L
+ * interaction-core
+ * %%
+ * Copyright (C) 2012 - 2017 Temenos Holdings N.V.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.ws.rs.core.Response;
+
+import org.junit.After;
+import org.junit.Test;
+
+public class TestRequestCoalescer {
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(8);
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testIdenticalRequestsCoalesced() throws Exception {
+        final RequestCoalescer coalescer = new RequestCoalescer(5000);
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicInteger executions = new AtomicInteger();
+        final Map<String, String> cache = new ConcurrentHashMap<String, String>();
+        final Callable<Response> request = new Callable<Response>() {
+            @Override
+            public Response call() throws Exception {
+                String cached = cache.get("/customers");
+                if (cached != null) {
+                    return Response.ok(new String(cached)).header("ETag", "abc").build();
+                }
+                executions.incrementAndGet();
+                release.await();
+                cache.put("/customers", "entity");
+                return Response.ok("entity").header("ETag", "abc").build();
+            }
+        };
+
+        List<Future<Response>> responses = new ArrayList<Future<Response>>();
+        responses.add(submit(coalescer, "GET /customers", request));
+        waitFor(new Callable<Boolean>() {
+            @Override
+            public Boolean call() {
+                return executions.get() == 1;
+            }
+        });
+        for (int i = 0; i < 5; i++) {
+            responses.add(submit(coalescer, "GET /customers", request));
+        }
+        waitFor(new Callable<Boolean>() {
+            @Override
+            public Boolean call() {
+                return coalescer.getCoalesced() == 5;
+            }
+        });
+        release.countDown();
+
+        Response first = null;
+        for (Future<Response> future : responses) {
+            Response response = future.get(5, TimeUnit.SECONDS);
+            assertEquals(200, response.getStatus());
+            assertEquals("entity", response.getEntity());
+            assertEquals("abc", response.getMetadata().getFirst("ETag"));
+            if (first != null) {
+                // each request gets a response of its own
+                assertNotSame(first, response);
+                assertNotSame(first.getEntity(), response.getEntity());
+            }
+            first = response;
+        }
+        assertEquals(1, executions.get());
+        assertEquals(1, coalescer.getExecuted());
+        assertEquals(5, coalescer.getCoalesced());
+        assertEquals(0, coalescer.getTimeouts());
+    }
+
+    @Test
+    public void testDifferentRequestsNotCoalesced() throws Exception {
+        RequestCoalescer coalescer = new RequestCoalescer(5000);
+        Callable<Response> request = new Callable<Response>() {
+            @Override
+            public Response call() {
+                return Response.ok().build();
+            }
+        };
+        coalescer.execute("GET /customers", request);
+        coalescer.execute("GET /accounts", request);
+        coalescer.execute(null, request);
+        assertEquals(2, coalescer.getExecuted());
+        assertEquals(0, coalescer.getCoalesced());
+    }
+
+    @Test
+    public void testResponseNotShared() throws Exception {
+        final RequestCoalescer coalescer = new RequestCoalescer(5000);
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicInteger executions = new AtomicInteger();
+        Future<Response> failed = submit(coalescer, "GET /customers", new Callable<Response>() {
+            @Override
+            public Response call() throws Exception {
+                executions.incrementAndGet();
+                release.await();
+                return Response.status(403).build();
+            }
+        });
+        waitFor(new Callable<Boolean>() {
+            @Override
+            public Boolean call() {
+                return executions.get() == 1;
+            }
+        });
+        Future<Response> waiting = submit(coalescer, "GET /customers", new Callable<Response>() {
+            @Override
+            public Response call() {
+                return Response.ok("own").build();
+            }
+        });
+        waitFor(new Callable<Boolean>() {
+            @Override
+            public Boolean call() {
+                return coalescer.getCoalesced() == 1;
+            }
+        });
+        release.countDown();
+
+        assertEquals(403, failed.get(5, TimeUnit.SECONDS).getStatus());
+        // processed on its own once the first one completed
+        assertEquals("own", waiting.get(5, TimeUnit.SECONDS).getEntity());
+    }
+
+    @Test
+    public void testWaitingRequestsProcessedInTurnIfNotCached() throws Exception {
+        final RequestCoalescer coalescer = new RequestCoalescer(5000);
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicInteger executions = new AtomicInteger();
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger maxRunning = new AtomicInteger();
+        // never cached, e.g. an error response
+        final Callable<Response> request = new Callable<Response>() {
+            @Override
+            public Response call() throws Exception {
+                int concurrent = running.incrementAndGet();
+                int max;
+                while ((max = maxRunning.get()) < concurrent && !maxRunning.compareAndSet(max, concurrent)) {
+                    // raced with another one
+                }
+                try {
+                    executions.incrementAndGet();
+                    release.await();
+                    Thread.sleep(10);
+                    return Response.status(500).build();
+                } finally {
+                    running.decrementAndGet();
+                }
+            }
+        };
+
+        List<Future<Response>> responses = new ArrayList<Future<Response>>();
+        responses.add(submit(coalescer, "GET /customers", request));
+        waitFor(new Callable<Boolean>() {
+            @Override
+            public Boolean call() {
+                return executions.get() == 1;
+            }
+        });
+        for (int i = 0; i < 5; i++) {
+            responses.add(submit(coalescer, "GET /customers", request));
+        }
+        waitFor(new Callable<Boolean>() {
+            @Override
+            public Boolean call() {
+                return coalescer.getCoalesced() == 5;
+            }
+        });
+        release.countDown();
+
+        for (Future<Response> future : responses) {
+            assertEquals(500, future.get(5, TimeUnit.SECONDS).getStatus());
+        }
+        assertEquals(6, executions.get());
+        // one after the other, not all at once when the first one completed
+        assertEquals(1, maxRunning.get());
+        assertEquals(1, coalescer.getExecuted());
+        assertEquals(5, coalescer.getCoalesced());
+        assertEquals(0, coalescer.getTimeouts());
+    }
+
+    @Test
+    public void testTimeout() throws Exception {
+        final RequestCoalescer coalescer = new RequestCoalescer(50);
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicInteger executions = new AtomicInteger();
+        Future<Response> slow = submit(coalescer, "GET /customers", new Callable<Response>() {
+            @Override
+            public Response call() throws Exception {
+                executions.incrementAndGet();
+                release.await();
+                return Response.ok("slow").build();
+            }
+        });
+        waitFor(new Callable<Boolean>() {
+            @Override
+            public Boolean call() {
+                return executions.get() == 1;
+            }
+        });
+
+        Response response = coalescer.execute("GET /customers", new Callable<Response>() {
+            @Override
+            public Response call() {
+                return Response.ok("fast").build();
+            }
+        });
+        assertEquals("fast", response.getEntity());
+        assertEquals(1, coalescer.getTimeouts());
+        release.countDown();
+        assertEquals("slow", slow.get(5, TimeUnit.SECONDS).getEntity());
+    }
+
+    @Test
+    public void testFailurePropagated() {
+        RequestCoalescer coalescer = new RequestCoalescer(5000);
+        try {
+            coalescer.execute("GET /customers", new Callable<Response>() {
+                @Override
+                public Response call() {
+                    throw new IllegalStateException("failed");
+                }
+            });
+            fail("Expected the failure of the request");
+        } catch (IllegalStateException e) {
+            assertEquals("failed", e.getMessage());
+        }
+        // nothing left in flight
+        coalescer.execute("GET /customers", new Callable<Response>() {
+            @Override
+            public Response call() {
+                return Response.ok().build();
+            }
+        });
+        assertEquals(2, coalescer.getExecuted());
+    }
+
+    private Future<Response> submit(final RequestCoalescer coalescer, final String key, final Callable<Response> request) {
+        return executor.submit(new Callable<Response>() {
+            @Override
+            public Response call() {
+                return coalescer.execute(key, request);
+            }
+        });
+    }
+
+    private void waitFor(Callable<Boolean> condition) throws Exception {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.call()) {
+            assertTrue("Timed out waiting", System.currentTimeMillis() < deadline);
+            Thread.sleep(5);
+        }
+    }
+}
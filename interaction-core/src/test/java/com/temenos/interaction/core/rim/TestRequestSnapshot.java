@@ -0,0 +1,97 @@
+package com.temenos.interaction.core.rim;
+
+/*
+ * #%L
+ * interaction-core
+ * %%
+ * Copyright (C) 2012 - 2017 Temenos Holdings N.V.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.net.URI;
+import java.security.Principal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.core.UriInfo;
+
+import org.junit.Test;
+
+import com.temenos.interaction.core.MultivaluedMapImpl;
+import com.temenos.interaction.core.command.InteractionContext;
+import com.temenos.interaction.core.entity.Metadata;
+import com.temenos.interaction.core.hypermedia.Action;
+import com.temenos.interaction.core.hypermedia.ResourceState;
+import com.temenos.interaction.core.web.RequestContext;
+
+public class TestRequestSnapshot {
+
+    @Test
+    public void testNotAffectedByRecycledRequest() {
+        MultivaluedMap<String, String> requestHeaders = new MultivaluedMapImpl<String>();
+        requestHeaders.add(HttpHeaders.ACCEPT, "application/hal+json");
+        HttpHeaders headers = mock(HttpHeaders.class);
+        when(headers.getRequestHeaders()).thenReturn(requestHeaders);
+        UriInfo uriInfo = mock(UriInfo.class);
+        when(uriInfo.getRequestUri()).thenReturn(URI.create("http://localhost/service/Customers('1')"));
+        MultivaluedMap<String, String> pathParameters = new MultivaluedMapImpl<String>();
+        pathParameters.add("id", "1");
+        MultivaluedMap<String, String> queryParameters = new MultivaluedMapImpl<String>();
+        queryParameters.add("$select", "name");
+        ResourceState state = new ResourceState("Customer", "customer", new ArrayList<Action>(), "/Customers('{id}')");
+        Metadata metadata = new Metadata("Customers");
+        InteractionContext ctx = new InteractionContext(uriInfo, headers, pathParameters, queryParameters, state, metadata);
+        Principal alice = mock(Principal.class);
+        Map<String, List<String>> contextHeaders = new HashMap<String, List<String>>();
+        contextHeaders.put(HttpHeaders.ACCEPT, new ArrayList<String>(Arrays.asList("application/hal+json")));
+        RequestContext requestContext = new RequestContext("http://localhost/service", "/Customers('1')", null, alice, contextHeaders);
+
+        RequestSnapshot snapshot = new RequestSnapshot(headers, ctx, metadata, requestContext);
+
+        // the runtime reuses the objects for another request
+        requestHeaders.putSingle(HttpHeaders.ACCEPT, "application/atom+xml");
+        when(uriInfo.getRequestUri()).thenReturn(URI.create("http://localhost/service/Customers('2')"));
+        pathParameters.putSingle("id", "2");
+        queryParameters.clear();
+        contextHeaders.get(HttpHeaders.ACCEPT).set(0, "application/atom+xml");
+
+        InteractionContext copy = snapshot.createInteractionContext();
+        assertEquals(Arrays.asList("application/hal+json"), snapshot.getHeaders().getRequestHeader("accept"));
+        assertEquals("http://localhost/service/Customers('1')", copy.getRequestUri().toString());
+        assertEquals("1", copy.getPathParameters().getFirst("id"));
+        assertEquals("name", copy.getQueryParameters().getFirst("$select"));
+        assertSame(state, copy.getCurrentState());
+        assertSame(alice, snapshot.getRequestContext().getUserPrincipal());
+        assertEquals("application/hal+json", snapshot.getRequestContext().getFirstHeader(HttpHeaders.ACCEPT));
+
+        // every context gets parameters of its own
+        copy.getQueryParameters().clear();
+        InteractionContext another = snapshot.createInteractionContext();
+        assertNotSame(copy, another);
+        assertEquals("name", another.getQueryParameters().getFirst("$select"));
+    }
+}
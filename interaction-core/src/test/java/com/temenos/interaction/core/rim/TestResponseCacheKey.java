@@ -0,0 +1,125 @@
+package com.temenos.interaction.core.rim;
+
+/*
+ * #%L
+ * interaction-core
+ * %%
+ * Copyright (C) 2012 - 2017 Temenos Holdings N.V.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.security.Principal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+
+import javax.ws.rs.core.HttpHeaders;
+
+import org.junit.After;
+import org.junit.Test;
+
+import com.temenos.interaction.core.hypermedia.Action;
+import com.temenos.interaction.core.hypermedia.ResourceState;
+import com.temenos.interaction.core.web.RequestContext;
+
+public class TestResponseCacheKey {
+
+    private static final String URI = "http://localhost/service/Customers";
+
+    @After
+    public void tearDown() {
+        RequestContext.clearRequestContext();
+    }
+
+    @Test
+    public void testRequestUriOnly() {
+        ResourceState state = createState();
+        assertEquals(URI, ResponseCacheKey.create(URI, mockHeaders("application/hal+json", "en"), state));
+        assertEquals(Collections.emptyList(), ResponseCacheKey.getVary(state));
+        assertNull(ResponseCacheKey.create(null, null, state));
+    }
+
+    @Test
+    public void testVaryHeaders() {
+        ResourceState state = createState();
+        state.setVaryHeaders(Arrays.asList(HttpHeaders.ACCEPT, HttpHeaders.ACCEPT_LANGUAGE));
+
+        String halEnglish = ResponseCacheKey.create(URI, mockHeaders("application/hal+json", "en"), state);
+        assertEquals(halEnglish, ResponseCacheKey.create(URI, mockHeaders("application/hal+json", "en"), state));
+        assertFalse(halEnglish.equals(ResponseCacheKey.create(URI, mockHeaders("application/atom+xml", "en"), state)));
+        assertFalse(halEnglish.equals(ResponseCacheKey.create(URI, mockHeaders("application/hal+json", "fr"), state)));
+        assertFalse(halEnglish.equals(ResponseCacheKey.create(URI, mockHeaders(null, "en"), state)));
+        assertEquals(Arrays.asList(HttpHeaders.ACCEPT, HttpHeaders.ACCEPT_LANGUAGE), ResponseCacheKey.getVary(state));
+    }
+
+    @Test
+    public void testVaryByPrincipal() {
+        ResourceState state = createState();
+        state.setVaryByPrincipal(true);
+
+        RequestContext.setRequestContext(new RequestContext("/service", URI, null, mockPrincipal("alice")));
+        String alice = ResponseCacheKey.create(URI, null, state);
+        RequestContext.setRequestContext(new RequestContext("/service", URI, null, mockPrincipal("bob")));
+        String bob = ResponseCacheKey.create(URI, null, state);
+        RequestContext.clearRequestContext();
+        String anonymous = ResponseCacheKey.create(URI, null, state);
+
+        assertFalse(alice.equals(bob));
+        assertFalse(alice.equals(anonymous));
+        assertEquals(Arrays.asList(HttpHeaders.AUTHORIZATION), ResponseCacheKey.getVary(state));
+    }
+
+    @Test
+    public void testCoalescingKeyDistinguishesPrincipals() {
+        ResourceState state = createState();
+        assertEquals(URI, ResponseCacheKey.createCoalescingKey(URI, null, state));
+
+        RequestContext.setRequestContext(new RequestContext("/service", URI, null, mockPrincipal("alice")));
+        String alice = ResponseCacheKey.createCoalescingKey(URI, null, state);
+        RequestContext.setRequestContext(new RequestContext("/service", URI, null, mockPrincipal("bob")));
+        String bob = ResponseCacheKey.createCoalescingKey(URI, null, state);
+
+        assertFalse(alice.equals(bob));
+        assertFalse(alice.equals(URI));
+        // the cache key is left alone
+        assertEquals(URI, ResponseCacheKey.create(URI, null, state));
+        state.setVaryByPrincipal(true);
+        assertEquals(ResponseCacheKey.create(URI, null, state), ResponseCacheKey.createCoalescingKey(URI, null, state));
+    }
+
+    private HttpHeaders mockHeaders(String accept, String acceptLanguage) {
+        HttpHeaders headers = mock(HttpHeaders.class);
+        when(headers.getRequestHeader(HttpHeaders.ACCEPT)).thenReturn(accept != null ? Arrays.asList(accept) : null);
+        when(headers.getRequestHeader(HttpHeaders.ACCEPT_LANGUAGE)).thenReturn(acceptLanguage != null ? Arrays.asList(acceptLanguage) : null);
+        return headers;
+    }
+
+    private Principal mockPrincipal(String name) {
+        Principal principal = mock(Principal.class);
+        when(principal.getName()).thenReturn(name);
+        return principal;
+    }
+
+    private ResourceState createState() {
+        return new ResourceState("Customer", "customers", new ArrayList<Action>(), "/Customers");
+    }
+}
@@ -2200,6 +2200,67 @@ public class TestResponseHTTPHypermediaRIM {
 		assertNull("Should not have a response body", ge);
 	}
 	
+	/*
+	 * Test to ensure we return a 304 Not modified without executing the command if the
+	 * etag resolved for the state is the same as the etag on the request's If-None-Match header.
+	 */
+	@Test
+	public void testNotModifiedBeforeCommandExecution() {
+		InteractionCommand mockCommand = new InteractionCommand() {
+			@Override
+			public Result execute(InteractionContext ctx) {
+				fail("Command should not be executed");
+				return Result.FAILURE;
+			}
+		};
+		Response response = getMockResponseWithEntityTagResolver(mockCommand, "ABCDEFG", mockIfNoneMatchHeaders("W/\"ABCDEFG\""));
+		assertEquals(Response.Status.NOT_MODIFIED.getStatusCode(), response.getStatus());
+		assertEquals("ABCDEFG", response.getMetadata().getFirst(HttpHeaders.ETAG));
+		assertNull("Should not have a response body", response.getEntity());
+	}
+
+	/*
+	 * Test to ensure the command is executed if the etag resolved for the state is not
+	 * the same as the etag on the request's If-None-Match header.
+	 */
+	@Test
+	public void testModifiedAfterEntityTagResolution() {
+		Response response = getMockResponseWithEntityTagResolver(getEntityMockCommand("TestEntity", new EntityProperties(), "IJKLMNO"), "IJKLMNO", mockIfNoneMatchHeaders("ABCDEFG"));
+		assertEquals(Response.Status.OK.getStatusCode(), response.getStatus());
+		assertNotNull("Expected a response body", response.getEntity());
+	}
+
+	private HttpHeaders mockIfNoneMatchHeaders(final String ifNoneMatch) {
+		HttpHeaders httpHeaders = mock(HttpHeaders.class);
+		doAnswer(new Answer<List<String>>() {
+			@Override
+	        public List<String> answer(InvocationOnMock invocation) throws Throwable {
+	        	String headerName = (String) invocation.getArguments()[0];
+	        	if(headerName.equals(HttpHeaders.IF_NONE_MATCH)) {
+	        		return Collections.singletonList(ifNoneMatch);
+	        	}
+	            return null;
+	        }
+	    }).when(httpHeaders).getRequestHeader(any(String.class));
+		return httpHeaders;
+	}
+
+	private Response getMockResponseWithEntityTagResolver(InteractionCommand mockCommand, final String etag, HttpHeaders httpHeaders) {
+		MapBasedCommandController mockCommandController = mock(MapBasedCommandController.class);
+		when(mockCommandController.fetchCommand("GET")).thenReturn(mockCommand);
+
+		ResourceState initialState = new ResourceState("entity", "state", mockActions(), "/path");
+		initialState.setInitial(true);
+		initialState.setEntityTagResolver(new EntityTagResolver() {
+			@Override
+			public String getEntityTag(InteractionContext ctx) {
+				return etag;
+			}
+		});
+		HTTPHypermediaRIM rim = new HTTPHypermediaRIM(mockCommandController, new ResourceStateMachine(initialState), createMockMetadata());
+		return rim.get(httpHeaders, "id", mockEmptyUriInfo());
+	}
+
 	/*
 	 * Test to ensure we return a 200 Success if the etag of the response is not the same
 	 * as the etag on the request's If-None-Match header.
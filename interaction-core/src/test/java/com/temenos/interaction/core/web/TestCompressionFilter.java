@@ -0,0 +1,248 @@
+package com.temenos.interaction.core.web;
+
+/*
+ * #%L
+ * interaction-core
+ * %%
+ * Copyright (C) 2012 - 2017 Temenos Holdings N.V.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+public class TestCompressionFilter {
+
+    private final ByteArrayOutputStream sent = new ByteArrayOutputStream();
+
+    @Test
+    public void testGzip() throws Exception {
+        byte[] body = body(4000);
+        HttpServletResponse response = mockResponse("application/hal+json");
+
+        new CompressionFilter().doFilter(mockRequest("gzip, deflate"), response, writing(body));
+
+        verify(response).setHeader("Content-Encoding", "gzip");
+        verify(response).addHeader("Vary", "Accept-Encoding");
+        verify(response, never()).setHeader(eq("Content-Length"), anyString());
+        assertTrue(sent.size() < body.length);
+        assertArrayEquals(body, read(new GZIPInputStream(new ByteArrayInputStream(sent.toByteArray()))));
+    }
+
+    @Test
+    public void testDeflate() throws Exception {
+        byte[] body = body(4000);
+        HttpServletResponse response = mockResponse("application/atom+xml; charset=UTF-8");
+
+        new CompressionFilter().doFilter(mockRequest("gzip;q=0.5, deflate"), response, writing(body));
+
+        verify(response).setHeader("Content-Encoding", "deflate");
+        assertArrayEquals(body, read(new InflaterInputStream(new ByteArrayInputStream(sent.toByteArray()))));
+    }
+
+    @Test
+    public void testBelowMinSize() throws Exception {
+        byte[] body = body(100);
+        HttpServletResponse response = mockResponse("application/json");
+
+        new CompressionFilter().doFilter(mockRequest("gzip"), response, writing(body));
+
+        verify(response, never()).setHeader(eq("Content-Encoding"), anyString());
+        verify(response).addHeader("Vary", "Accept-Encoding");
+        verify(response).setHeader("Content-Length", "100");
+        assertArrayEquals(body, sent.toByteArray());
+    }
+
+    @Test
+    public void testMediaTypeNotCompressed() throws Exception {
+        byte[] body = body(4000);
+        HttpServletResponse response = mockResponse("image/png");
+
+        new CompressionFilter().doFilter(mockRequest("gzip"), response, writing(body));
+
+        verify(response, never()).setHeader(eq("Content-Encoding"), anyString());
+        verify(response, never()).addHeader("Vary", "Accept-Encoding");
+        assertArrayEquals(body, sent.toByteArray());
+    }
+
+    @Test
+    public void testAlreadyEncoded() throws Exception {
+        byte[] body = body(4000);
+        HttpServletResponse response = mockResponse("application/xml");
+        when(response.containsHeader("Content-Encoding")).thenReturn(true);
+
+        new CompressionFilter().doFilter(mockRequest("gzip"), response, writing(body));
+
+        verify(response, never()).setHeader(eq("Content-Encoding"), anyString());
+        assertArrayEquals(body, sent.toByteArray());
+    }
+
+    @Test
+    public void testNotAccepted() throws Exception {
+        byte[] body = body(4000);
+        HttpServletResponse response = mockResponse("application/xml");
+
+        new CompressionFilter().doFilter(mockRequest("identity"), response, writing(body));
+
+        verify(response, never()).setHeader(eq("Content-Encoding"), anyString());
+        verify(response).addHeader("Vary", "Accept-Encoding");
+        assertArrayEquals(body, sent.toByteArray());
+    }
+
+    @Test
+    public void testCompressedBodyPassedOn() throws Exception {
+        final byte[] body = body(4000);
+        final byte[][] compressed = new byte[1][];
+        HttpServletResponse response = mockResponse("application/json");
+        FilterChain chain = mock(FilterChain.class);
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) throws Throwable {
+                ResponseCompression compression = ResponseCompression.getResponseCompression();
+                assertEquals("gzip", compression.getContentCoding());
+                compression.setListener(new ResponseCompression.Listener() {
+                    @Override
+                    public void compressed(String contentType, byte[] compressedBody) {
+                        compressed[0] = compressedBody;
+                    }
+                });
+                ((ServletResponse) invocation.getArguments()[1]).getOutputStream().write(body);
+                return null;
+            }
+        }).when(chain).doFilter(any(ServletRequest.class), any(ServletResponse.class));
+
+        new CompressionFilter().doFilter(mockRequest("gzip"), response, chain);
+
+        assertArrayEquals(sent.toByteArray(), compressed[0]);
+        assertNull(ResponseCompression.getResponseCompression());
+    }
+
+    @Test
+    public void testInitParameters() throws Exception {
+        FilterConfig config = mock(FilterConfig.class);
+        when(config.getInitParameter("contentCodings")).thenReturn("deflate");
+        when(config.getInitParameter("minSize")).thenReturn("10");
+        when(config.getInitParameter("mediaTypes")).thenReturn("text/*, application/json");
+        CompressionFilter filter = new CompressionFilter();
+        filter.init(config);
+
+        assertEquals(Arrays.asList("deflate"), Arrays.asList(filter.getContentCodings()));
+        assertEquals(10, filter.getMinSize());
+        assertTrue(filter.isCompressible("text/csv"));
+        assertTrue(filter.isCompressible("Application/JSON; charset=UTF-8"));
+        assertFalse(filter.isCompressible("application/xml"));
+        assertFalse(filter.isCompressible(null));
+    }
+
+    @Test(expected = ServletException.class)
+    public void testUnsupportedCoding() throws Exception {
+        FilterConfig config = mock(FilterConfig.class);
+        when(config.getInitParameter("contentCodings")).thenReturn("br");
+        new CompressionFilter().init(config);
+    }
+
+    private static byte[] body(int length) {
+        byte[] body = new byte[length];
+        for (int i = 0; i < length; i++) {
+            body[i] = (byte) ('a' + i % 7);
+        }
+        return body;
+    }
+
+    private static byte[] read(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[1024];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        return out.toByteArray();
+    }
+
+    private static HttpServletRequest mockRequest(String acceptEncoding) {
+        HttpServletRequest request = mock(HttpServletRequest.class);
+        when(request.getMethod()).thenReturn("GET");
+        when(request.getHeader("Accept-Encoding")).thenReturn(acceptEncoding);
+        return request;
+    }
+
+    private HttpServletResponse mockResponse(String contentType) throws IOException {
+        HttpServletResponse response = mock(HttpServletResponse.class);
+        when(response.getContentType()).thenReturn(contentType);
+        when(response.getStatus()).thenReturn(200);
+        when(response.getCharacterEncoding()).thenReturn("UTF-8");
+        when(response.getOutputStream()).thenReturn(new ServletOutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                sent.write(b);
+            }
+        });
+        return response;
+    }
+
+    /*
+     * A chain that writes the body in small parts, setting its length first.
+     */
+    private static FilterChain writing(final byte[] body) throws IOException, ServletException {
+        FilterChain chain = mock(FilterChain.class);
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) throws Throwable {
+                ServletResponse response = (ServletResponse) invocation.getArguments()[1];
+                response.setContentLength(body.length);
+                ServletOutputStream out = response.getOutputStream();
+                for (int i = 0; i < body.length; i += 300) {
+                    out.write(body, i, Math.min(300, body.length - i));
+                    out.flush();
+                }
+                return null;
+            }
+        }).when(chain).doFilter(any(ServletRequest.class), any(ServletResponse.class));
+        return chain;
+    }
+}
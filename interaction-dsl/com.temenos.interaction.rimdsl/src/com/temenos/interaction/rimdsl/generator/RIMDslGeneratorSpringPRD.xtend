@@ -91,6 +91,9 @@ class RIMDslGeneratorSpringPRD implements IGenerator {
 			«ENDIF»
 			«IF state.cache > 0»
 			<property name="maxAge" value="«state.cache»" />
+			«IF state.stale > 0»
+			<property name="staleWhileRevalidate" value="«state.stale»" />
+			«ENDIF»
 			«ENDIF»
 			<!-- Start property transitions list -->
 			<property name="transitions">
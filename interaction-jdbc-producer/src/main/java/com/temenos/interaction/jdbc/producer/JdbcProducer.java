@@ -48,7 +48,7 @@ import org.springframework.jndi.JndiTemplate;
 import com.temenos.interaction.core.command.InteractionContext;
 import com.temenos.interaction.core.entity.Entity;
 import com.temenos.interaction.core.entity.EntityProperties;
-import com.temenos.interaction.core.entity.EntityProperty;
+import com.temenos.interaction.core.entity.EntitySchema;
 import com.temenos.interaction.core.resource.CollectionResource;
 import com.temenos.interaction.core.resource.EntityResource;
 import com.temenos.interaction.jdbc.ServerMode;
@@ -211,7 +211,7 @@ public class JdbcProducer {
                 // Add object to the property. getObject() returns an object
                 // with the correct java type for each sql type. So we don't
                 // need to cast.
-                properties.setProperty(new EntityProperty(columnName, value));
+                properties.setPropertyValue(columnName, value);
             }
         }
 
@@ -240,9 +240,12 @@ public class JdbcProducer {
         // requested.
         String[] columnNames = rowSet.getMetaData().getColumnNames();
 
+        // The slots of the columns, shared by the properties of all rows
+        EntitySchema schema = EntitySchema.of(columnNames);
+
         // For all rows returned add an entity to the collection.
         while (rowSet.next()) {
-            EntityProperties properties = new EntityProperties();
+            EntityProperties properties = new EntityProperties(schema);
 
             // For all columns in this row.
             for (String columnName : columnNames) {
@@ -253,7 +256,7 @@ public class JdbcProducer {
                     // Add object to the property. getObject() returns an object
                     // with the correct java type for each sql type. So we don't
                     // need to cast.
-                    properties.setProperty(new EntityProperty(columnName, value));
+                    properties.setPropertyValue(columnName, value);
                 }
             }
 
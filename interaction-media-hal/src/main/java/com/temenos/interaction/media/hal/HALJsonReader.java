@@ -0,0 +1,152 @@
+package com.temenos.interaction.media.hal;
+
+/*
+ * #%L
+ * interaction-media-hal
+ * %%
+ * Copyright (C) 2012 - 2017 Temenos Holdings N.V.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.temenos.interaction.core.entity.EntityMetadata;
+import com.temenos.interaction.core.entity.EntityProperties;
+import com.temenos.interaction.core.entity.EntityPropertyDescriptor;
+
+/**
+ * Reads the properties of a HAL+JSON request body straight from the JSON
+ * tokens, without building a halbuilder Representation of it first.
+ * 
+ * The properties are the ones HALProvider would have taken from the
+ * representation: only those in the vocabulary of the entity, none with a
+ * null value, objects as {@link EntityProperties}, arrays as lists of the
+ * {@link EntityProperties} of their objects, and other values as text or, for
+ * number properties, as Long. The top level properties are in name order and
+ * nested ones in document order, as halbuilder gives them.
+ */
+class HALJsonReader {
+
+	private static final JsonFactory FACTORY = new JsonFactory();
+
+	/**
+	 * @throws JsonParseException if the body is not a JSON object
+	 */
+	EntityProperties read(InputStream in, EntityMetadata entityMetadata) throws IOException {
+		JsonParser parser = FACTORY.createParser(in);
+		try {
+			if (parser.nextToken() != JsonToken.START_OBJECT) {
+				throw new JsonParseException("HAL+JSON must be a JSON object", parser.getCurrentLocation());
+			}
+			return readObject(parser, entityMetadata, "", new TreeMap<String, Object>());
+		} finally {
+			parser.close();
+		}
+	}
+
+	/*
+	 * Read the fields of the object the parser is at, keeping the values of
+	 * the properties in the vocabulary in the supplied map.
+	 */
+	private EntityProperties readObject(JsonParser parser, EntityMetadata entityMetadata, String prefix, Map<String, Object> values) throws IOException {
+		while (parser.nextToken() == JsonToken.FIELD_NAME) {
+			String name = parser.getCurrentName();
+			JsonToken token = parser.nextToken();
+			if (prefix.isEmpty() && (name.equals("_links") || name.equals("_embedded"))) {
+				parser.skipChildren();
+				continue;
+			}
+			String qualifiedName = prefix.isEmpty() ? name : prefix + "." + name;
+			if (!entityMetadata.getPropertyDescriptor(qualifiedName).isDefined()) {
+				parser.skipChildren();
+				continue;
+			}
+			Object value = readValue(parser, token, entityMetadata, name, qualifiedName);
+			if (value != null) {
+				values.put(name, value);
+			} else {
+				values.remove(name);
+			}
+		}
+		// the top level properties are held in the slots of the schema of the entity
+		EntityProperties properties = prefix.isEmpty() ? new EntityProperties(entityMetadata.getSchema()) : new EntityProperties();
+		for (Map.Entry<String, Object> value : values.entrySet()) {
+			properties.setPropertyValue(value.getKey(), value.getValue());
+		}
+		return properties;
+	}
+
+	private Object readValue(JsonParser parser, JsonToken token, EntityMetadata entityMetadata, String name, String qualifiedName) throws IOException {
+		switch (token) {
+		case VALUE_NULL:
+			return null;
+		case START_OBJECT:
+			return readObject(parser, entityMetadata, qualifiedName, new LinkedHashMap<String, Object>());
+		case START_ARRAY:
+			// only the objects of an array are kept
+			List<EntityProperties> list = new ArrayList<EntityProperties>();
+			JsonToken element;
+			while ((element = parser.nextToken()) != JsonToken.END_ARRAY) {
+				if (element == JsonToken.START_OBJECT) {
+					list.add(readObject(parser, entityMetadata, qualifiedName, new LinkedHashMap<String, Object>()));
+				} else {
+					parser.skipChildren();
+				}
+			}
+			return list;
+		default:
+			String text = readText(parser, token);
+			// typed by the simple name, as HALProvider does
+			EntityPropertyDescriptor descriptor = entityMetadata.getPropertyDescriptor(name);
+			if (!descriptor.isText() && descriptor.isNumber()) {
+				return Long.parseLong(text);
+			}
+			return text;
+		}
+	}
+
+	/*
+	 * The text of a scalar as halbuilder gives it, numbers as read by Jackson
+	 * rather than as written.
+	 */
+	private String readText(JsonParser parser, JsonToken token) throws IOException {
+		switch (token) {
+		case VALUE_NUMBER_INT:
+			switch (parser.getNumberType()) {
+			case INT:
+				return Integer.toString(parser.getIntValue());
+			case LONG:
+				return Long.toString(parser.getLongValue());
+			default:
+				return parser.getBigIntegerValue().toString();
+			}
+		case VALUE_NUMBER_FLOAT:
+			return Double.toString(parser.getDoubleValue());
+		default:
+			return parser.getText();
+		}
+	}
+}
@@ -0,0 +1,399 @@
+package com.temenos.interaction.media.hal;
+
+/*
+ * #%L
+ * interaction-media-hal
+ * %%
+ * Copyright (C) 2012 - 2017 Temenos Holdings N.V.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.StringWriter;
+import java.lang.reflect.Type;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.regex.Pattern;
+
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.Response;
+
+import org.apache.commons.lang.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.temenos.interaction.core.cache.FragmentCache;
+import com.temenos.interaction.core.hypermedia.Link;
+import com.temenos.interaction.core.hypermedia.Transition;
+import com.temenos.interaction.core.resource.CollectionResource;
+import com.temenos.interaction.core.resource.EntityResource;
+import com.temenos.interaction.core.resource.RESTResource;
+import com.temenos.interaction.core.resource.ResourceTypeHelper;
+
+/**
+ * Writes a {@link RESTResource} as HAL+JSON straight to a stream, without
+ * building a halbuilder Representation of it first.
+ * 
+ * The output is the same as the halbuilder JsonRepresentationWriter renders
+ * for the representation HALProvider would have built: the self link first
+ * and the other links ordered by rel, the self link as an object and the
+ * other links and embedded resources as arrays, the properties ordered by
+ * name and written by Jackson, and the embedded resources last. The items of
+ * a collection are written one at a time, so only the properties of the item
+ * being written are held in memory.
+ * 
+ * Given a {@link FragmentCache}, the items of a collection that have an
+ * entity tag and a self link or an id are rendered once per entity, entity
+ * tag, media type, links, property names and metadata version, and copied
+ * from the cache into later responses.
+ */
+class HALJsonWriter {
+	private static final Logger LOGGER = LoggerFactory.getLogger(HALJsonWriter.class);
+
+	private static final ObjectMapper MAPPER = new ObjectMapper();
+	private static final Pattern TEMPLATE = Pattern.compile(".*\\{.+\\}.*");
+	private static final String SELF = "self";
+	private static final String ITEM = "item";
+
+	/*
+	 * halbuilder's ordering of links: self first, then by rel.
+	 */
+	private static final Comparator<HalLink> LINK_ORDER = new Comparator<HalLink>() {
+		@Override
+		public int compare(HalLink l1, HalLink l2) {
+			boolean self1 = isSelf(l1.rel);
+			if (self1 != isSelf(l2.rel)) {
+				return self1 ? -1 : 1;
+			}
+			return l1.rel.compareTo(l2.rel);
+		}
+	};
+
+	/*
+	 * Whether self is one of the whitespace separated relations of a link.
+	 */
+	static boolean isSelf(String rel) {
+		int length = rel.length();
+		int start = 0;
+		while (start < length) {
+			while (start < length && Character.isWhitespace(rel.charAt(start))) {
+				start++;
+			}
+			int end = start;
+			while (end < length && !Character.isWhitespace(rel.charAt(end))) {
+				end++;
+			}
+			if (end - start == SELF.length() && rel.startsWith(SELF, start)) {
+				return true;
+			}
+			start = end;
+		}
+		return false;
+	}
+
+	private final HALProvider provider;
+
+	HALJsonWriter(HALProvider provider) {
+		this.provider = provider;
+	}
+
+	/**
+	 * Write the resource, using the self link of the resource if it has one
+	 * and the supplied id if it does not.
+	 */
+	void write(URI id, RESTResource resource, Class<?> type, Type genericType, OutputStream out, String mediaType, String charset) throws IOException, URISyntaxException {
+		JsonGenerator g;
+		if ("UTF-8".equalsIgnoreCase(charset)) {
+			g = MAPPER.getFactory().createGenerator(out, JsonEncoding.UTF8);
+		} else {
+			g = MAPPER.getFactory().createGenerator(new OutputStreamWriter(out, charset));
+		}
+		// the stream belongs to the container
+		g.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+		g.writeStartObject();
+		writeResource(g, id.toString(), resource, type, genericType, mediaType);
+		g.writeEndObject();
+		g.close();
+	}
+
+	private void writeResource(JsonGenerator g, String href, RESTResource resource, Class<?> type, Type genericType, String mediaType) throws IOException, URISyntaxException {
+		if (!ResourceTypeHelper.isType(type, genericType, EntityResource.class)
+				&& !ResourceTypeHelper.isType(type, genericType, CollectionResource.class))
+			throw new WebApplicationException(Response.Status.INTERNAL_SERVER_ERROR);
+
+		if (resource.getGenericEntity() == null) {
+			LOGGER.warn("Resource with URI {} has null genericEntity--no output produced", href);
+			writeLinks(g, Collections.singletonList(new HalLink(SELF, href, null, null)));
+			return;
+		}
+		if (genericType == null)
+			genericType = resource.getGenericEntity().getType();
+		if (type == null)
+			type = resource.getGenericEntity().getRawType();
+
+		// the links, with the self link in place of the one found
+		Collection<Link> links = resource.getLinks();
+		Link selfLink = provider.findSelfLink(links);
+		List<HalLink> halLinks = new ArrayList<HalLink>();
+		halLinks.add(new HalLink(SELF, selfLink != null ? selfLink.getHref() : href, null, null));
+		addLinks(halLinks, links, selfLink);
+		writeLinks(g, halLinks);
+
+		// the embedded resources, keyed as halbuilder keys them
+		Map<String, List<Object>> embedded = new HashMap<String, List<Object>>();
+		Map<Transition, RESTResource> embeddedResources = resource.getEmbedded();
+		if (embeddedResources != null) {
+			for (Transition t : embeddedResources.keySet()) {
+				RESTResource embeddedResource = embeddedResources.get(t);
+				Link link = findLinkByTransition(links, t);
+				if (link != null) {
+					String rel = (link.getRel() != null ? link.getRel() : "embedded/" + embeddedResource.getEntityName());
+					addEmbedded(embedded, rel, new Embedded(new URI(link.getHref()).toString(), embeddedResource));
+				}
+			}
+		}
+
+		Map<String, Object> propertyMap = provider.buildEntityProperties(resource, type, genericType);
+		CollectionResource<?> cr = null;
+		if (propertyMap == null) {
+			if (!ResourceTypeHelper.isType(type, genericType, CollectionResource.class)) {
+				LOGGER.error("Accepted object for writing in isWriteable, but type not supported in writeTo method");
+				throw new WebApplicationException(Response.Status.INTERNAL_SERVER_ERROR);
+			}
+			cr = (CollectionResource<?>) resource;
+			propertyMap = new HashMap<String, Object>();
+			String count = provider.buildCollectionCount(cr, type, genericType);
+			if (count != null) {
+				propertyMap.put("count", count);
+			}
+			for (EntityResource<?> er : cr.getEntities()) {
+				addEmbedded(embedded, ITEM, er);
+			}
+		}
+		writeProperties(g, propertyMap);
+
+		if (!embedded.isEmpty()) {
+			g.writeObjectFieldStart("_embedded");
+			for (Map.Entry<String, List<Object>> entry : embedded.entrySet()) {
+				g.writeArrayFieldStart(entry.getKey());
+				for (Object each : entry.getValue()) {
+					if (each instanceof Embedded) {
+						Embedded e = (Embedded) each;
+						g.writeStartObject();
+						writeResource(g, e.href, e.resource, e.resource.getGenericEntity().getRawType(), e.resource.getGenericEntity().getType(), mediaType);
+						g.writeEndObject();
+					} else {
+						writeItem(g, cr, (EntityResource<?>) each, type, genericType, mediaType);
+					}
+				}
+				g.writeEndArray();
+			}
+			g.writeEndObject();
+		}
+	}
+
+	private void writeItem(JsonGenerator g, CollectionResource<?> cr, EntityResource<?> er, Class<?> type, Type genericType, String mediaType) throws IOException {
+		List<HalLink> halLinks = new ArrayList<HalLink>();
+		addLinks(halLinks, er.getLinks(), null);
+		FragmentCache cache = provider.getFragmentCache();
+		FragmentCache.Key key = null;
+		if (cache != null) {
+			key = FragmentCache.key(cr.getEntityName(), itemId(halLinks, cr, er, type, genericType), er.getEntityTag(),
+					mediaType, variant(halLinks, er, type, genericType));
+			String fragment = cache.get(key);
+			if (fragment != null) {
+				g.writeRawValue(fragment);
+				return;
+			}
+		}
+		if (key == null) {
+			g.writeStartObject();
+			writeItemContent(g, halLinks, cr, er, type, genericType);
+			g.writeEndObject();
+			return;
+		}
+
+		StringWriter fragment = new StringWriter();
+		JsonGenerator fg = MAPPER.getFactory().createGenerator(fragment);
+		fg.writeStartObject();
+		writeItemContent(fg, halLinks, cr, er, type, genericType);
+		fg.writeEndObject();
+		fg.close();
+		cache.put(key, fragment.toString());
+		g.writeRawValue(fragment.toString());
+	}
+
+	private void writeItemContent(JsonGenerator g, List<HalLink> halLinks, CollectionResource<?> cr, EntityResource<?> er, Class<?> type, Type genericType) throws IOException {
+		writeLinks(g, halLinks);
+		writeProperties(g, provider.buildItemProperties(cr, er, type, genericType));
+	}
+
+	/*
+	 * What tells an item apart from the other entities of its name that may
+	 * have the same entity tag: the href of its self link, or else its id.
+	 */
+	private String itemId(List<HalLink> halLinks, CollectionResource<?> cr, EntityResource<?> er, Class<?> type, Type genericType) {
+		for (HalLink link : halLinks) {
+			if (SELF.equals(link.rel) && link.href != null) {
+				return link.href;
+			}
+		}
+		return provider.buildItemId(cr, er, type, genericType);
+	}
+
+	/*
+	 * What an item is rendered from besides its entity tag: the properties
+	 * of the entity and its links. Both vary with the request, e.g. with its
+	 * projection, its base uri or the outcome of conditional links.
+	 */
+	private List<String> variant(List<HalLink> halLinks, EntityResource<?> er, Class<?> type, Type genericType) {
+		List<String> variant = provider.buildItemPropertiesVariant(er, type, genericType);
+		for (HalLink link : halLinks) {
+			variant.add(link.rel);
+			variant.add(link.href);
+			variant.add(link.name);
+			variant.add(link.title);
+		}
+		return variant;
+	}
+
+	private void addLinks(List<HalLink> halLinks, Collection<Link> links, Link selfLink) {
+		if (links == null) {
+			return;
+		}
+		for (Link l : links) {
+			if (l == null || l.equals(selfLink))
+				continue;
+			if (l.getRel() != null) {
+				for (String rel : l.getRel().split(" ")) {
+					halLinks.add(new HalLink(rel, l.getHref(), l.getId(), l.getTitle()));
+				}
+			}
+		}
+	}
+
+	private void writeLinks(JsonGenerator g, List<HalLink> halLinks) throws IOException {
+		if (halLinks.isEmpty()) {
+			return;
+		}
+		List<HalLink> sorted = new ArrayList<HalLink>(halLinks);
+		Collections.sort(sorted, LINK_ORDER);
+		Map<String, List<HalLink>> byRel = new LinkedHashMap<String, List<HalLink>>();
+		for (HalLink link : sorted) {
+			List<HalLink> rel = byRel.get(link.rel);
+			if (rel == null) {
+				rel = new ArrayList<HalLink>();
+				byRel.put(link.rel, rel);
+			}
+			rel.add(link);
+		}
+
+		g.writeObjectFieldStart("_links");
+		for (Map.Entry<String, List<HalLink>> entry : byRel.entrySet()) {
+			if (SELF.equals(entry.getKey()) && entry.getValue().size() == 1) {
+				g.writeObjectFieldStart(entry.getKey());
+				writeLinkContent(g, entry.getValue().get(0));
+				g.writeEndObject();
+			} else {
+				g.writeArrayFieldStart(entry.getKey());
+				for (HalLink link : entry.getValue()) {
+					g.writeStartObject();
+					writeLinkContent(g, link);
+					g.writeEndObject();
+				}
+				g.writeEndArray();
+			}
+		}
+		g.writeEndObject();
+	}
+
+	private void writeLinkContent(JsonGenerator g, HalLink link) throws IOException {
+		g.writeStringField("href", link.href);
+		if (StringUtils.isNotEmpty(link.name)) {
+			g.writeStringField("name", link.name);
+		}
+		if (StringUtils.isNotEmpty(link.title)) {
+			g.writeStringField("title", link.title);
+		}
+		if (link.href != null && TEMPLATE.matcher(link.href).matches()) {
+			g.writeBooleanField("templated", true);
+		}
+	}
+
+	private void writeProperties(JsonGenerator g, Map<String, Object> propertyMap) throws IOException {
+		for (Map.Entry<String, Object> property : new TreeMap<String, Object>(propertyMap).entrySet()) {
+			g.writeObjectField(property.getKey(), property.getValue());
+		}
+	}
+
+	private static void addEmbedded(Map<String, List<Object>> embedded, String rel, Object resource) {
+		List<Object> resources = embedded.get(rel);
+		if (resources == null) {
+			resources = new ArrayList<Object>();
+			embedded.put(rel, resources);
+		}
+		resources.add(resource);
+	}
+
+	private static Link findLinkByTransition(Collection<Link> links, Transition transition) {
+		if (links != null) {
+			for (Link l : links) {
+				if (l.getTransition() != null && l.getTransition().equals(transition)) {
+					return l;
+				}
+			}
+		}
+		return null;
+	}
+
+	private static final class HalLink {
+		final String rel;
+		final String href;
+		final String name;
+		final String title;
+
+		HalLink(String rel, String href, String name, String title) {
+			this.rel = rel;
+			this.href = href;
+			this.name = name;
+			this.title = title;
+		}
+	}
+
+	private static final class Embedded {
+		final String href;
+		final RESTResource resource;
+
+		Embedded(String href, RESTResource resource) {
+			this.href = href;
+			this.resource = resource;
+		}
+	}
+}
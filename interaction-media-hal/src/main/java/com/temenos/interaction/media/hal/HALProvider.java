@@ -38,6 +38,7 @@ import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -64,20 +65,23 @@ import org.apache.commons.lang.StringUtils;
 import org.odata4j.core.OCollection;
 import org.odata4j.core.OComplexObject;
 import org.odata4j.core.OEntity;
+import org.odata4j.core.OEntityKey;
 import org.odata4j.core.OObject;
 import org.odata4j.core.OProperty;
 import org.odata4j.core.OSimpleObject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
 import com.temenos.interaction.core.UriInfoImpl;
+import com.temenos.interaction.core.cache.FragmentCache;
 import com.temenos.interaction.core.command.InteractionContext;
 import com.temenos.interaction.core.entity.Entity;
 import com.temenos.interaction.core.entity.EntityMetadata;
 import com.temenos.interaction.core.entity.EntityProperties;
 import com.temenos.interaction.core.entity.EntityProperty;
 import com.temenos.interaction.core.entity.Metadata;
-import com.temenos.interaction.core.entity.vocabulary.terms.TermMandatory;
+import com.temenos.interaction.core.entity.EntityPropertyDescriptor;
 import com.temenos.interaction.core.hypermedia.DefaultResourceStateProvider;
 import com.temenos.interaction.core.hypermedia.Link;
 import com.temenos.interaction.core.hypermedia.MethodNotAllowedException;
@@ -110,6 +114,10 @@ public class HALProvider implements MessageBodyReader<RESTResource>, MessageBody
 	private Metadata metadata = null;
 	private ResourceStateProvider resourceStateProvider;
     private RepresentationFactory representationFactory;
+	private final HALJsonWriter jsonWriter = new HALJsonWriter(this);
+	private final HALJsonReader jsonReader = new HALJsonReader();
+	private boolean streamingJson = false;
+	private FragmentCache fragmentCache;
 
 	public HALProvider(Metadata metadata, ResourceStateProvider resourceStateProvider) {
 		this(metadata);
@@ -130,6 +138,7 @@ public class HALProvider implements MessageBodyReader<RESTResource>, MessageBody
 	public HALProvider(Metadata metadata) {
 		this(metadata, irisRepresentationFactory());
 		this.metadata = metadata;
+		this.streamingJson = true;
 		assert(metadata != null);
 	}
 
@@ -138,6 +147,34 @@ public class HALProvider implements MessageBodyReader<RESTResource>, MessageBody
 		this.representationFactory = representationFactory;
 	}
 
+	public boolean isStreamingJson() {
+		return streamingJson;
+	}
+
+	/**
+	 * Write HAL+JSON straight to the response, and read it straight from the
+	 * request, rather than through a halbuilder Representation. On by
+	 * default, off when the provider is given its own RepresentationFactory
+	 * as the renderer and reader of that factory would be bypassed.
+	 */
+	public void setStreamingJson(boolean streamingJson) {
+		this.streamingJson = streamingJson;
+	}
+
+	public FragmentCache getFragmentCache() {
+		return fragmentCache;
+	}
+
+	/**
+	 * Keep the HAL+JSON rendered for the items of collections that have an
+	 * entity tag, and copy it into later responses for the same entity tag,
+	 * links, property names and metadata version. Only used when
+	 * {@link #isStreamingJson()}, not set by default.
+	 */
+	public void setFragmentCache(FragmentCache fragmentCache) {
+		this.fragmentCache = fragmentCache;
+	}
+
 	private static RepresentationFactory irisRepresentationFactory() {
 		return new StandardRepresentationFactory().
 			withReader(MediaType.APPLICATION_JSON, JsonRepresentationReader.class).
@@ -240,6 +277,9 @@ public class HALProvider implements MessageBodyReader<RESTResource>, MessageBody
 	 * provider only supports serialising OEntities
 	 * @postcondition non null HAL XML document written to OutputStream
 	 * @invariant valid OutputStream
+	 * 
+	 * HAL+JSON is written as it is produced when {@link #isStreamingJson()},
+	 * so an error part way through leaves a partial document in the stream.
 	 */
 	@Override
 	public void writeTo(RESTResource resource, Class<?> type, Type genericType,
@@ -248,17 +288,21 @@ public class HALProvider implements MessageBodyReader<RESTResource>, MessageBody
 			OutputStream entityStream) throws IOException,
 			WebApplicationException {
 		logger.debug("Writing " + mediaType);
+		String baseMediaType = HALMediaType.baseMediaType( mediaType );
+		String charset = HALMediaType.charset( mediaType, "UTF-8" );
 		Representation halResource;
 		try {
+			if (streamingJson && !baseMediaType.equals(HALMediaType.APPLICATION_HAL_XML)) {
+				jsonWriter.write(uriInfo.getBaseUri(), resource, type, genericType, entityStream, baseMediaType, charset);
+				return;
+			}
 			halResource = buildHalResource(uriInfo.getBaseUri(), resource, type, genericType);
 		}
 		catch(URISyntaxException e) {
 			logger.error("Invalid link syntax", e);
 			throw new WebApplicationException(Response.Status.INTERNAL_SERVER_ERROR);
 		}
-		String baseMediaType = HALMediaType.baseMediaType( mediaType );
 		String representation = halResource.toString(baseMediaType);
-		String charset = HALMediaType.charset( mediaType, "UTF-8" );
 
 		logger.debug("Produced [" + representation + "]");
 
@@ -361,9 +405,9 @@ public class HALProvider implements MessageBodyReader<RESTResource>, MessageBody
 					String simpleName = simpleOPropertyName(entityMetadata, property);
 					String qualifiedName = lengthenPrefix(prefix, simpleName);
 
-					if (entityMetadata.getPropertyVocabulary(qualifiedName) != null) {					    
-					    String mandatory = entityMetadata.getTermValue(qualifiedName, TermMandatory.TERM_NAME);		                
-		                if(property.getValue() != null || (null != mandatory && "true".equals(mandatory))) {
+					EntityPropertyDescriptor descriptor = entityMetadata.getPropertyDescriptor(qualifiedName);
+					if (descriptor.isDefined()) {
+		                if(property.getValue() != null || descriptor.isMandatory()) {
 		                    map.put(simpleName, buildFromOObject(entityMetadata, qualifiedName, property.getValue()));
 		                }
 					} else {
@@ -388,9 +432,9 @@ public class HALProvider implements MessageBodyReader<RESTResource>, MessageBody
 			// add properties if they are present on the resolved entity
 
 			String simpleName = simpleOPropertyName(entityMetadata, property);
-			if (entityMetadata.getPropertyVocabulary(simpleName) != null) {
-			    String mandatory = entityMetadata.getTermValue(simpleName, TermMandatory.TERM_NAME);                
-                if(property.getValue() != null || (null != mandatory && "true".equals(mandatory))) {
+			EntityPropertyDescriptor descriptor = entityMetadata.getPropertyDescriptor(simpleName);
+			if (descriptor.isDefined()) {
+                if(property.getValue() != null || descriptor.isMandatory()) {
 			        map.put(simpleName, buildFromOObject(entityMetadata, simpleName, property.getValue()));
 			    }
 			}
@@ -510,99 +554,172 @@ public class HALProvider implements MessageBodyReader<RESTResource>, MessageBody
 			genericType = resource.getGenericEntity().getType();
 		if (type == null)
 			type = resource.getGenericEntity().getRawType();
-		if (ResourceTypeHelper.isType(type, genericType, EntityResource.class, OEntity.class)) {
-			@SuppressWarnings("unchecked")
-			EntityResource<OEntity> oentityResource = (EntityResource<OEntity>) resource;
-			Map<String, Object> propertyMap = new HashMap<String, Object>();
-			buildFromOEntity(propertyMap, oentityResource.getEntity(), oentityResource.getEntityName());
+		Map<String, Object> propertyMap = buildEntityProperties(resource, type, genericType);
+		if (propertyMap != null) {
 			// add properties to HAL resource
 			for (String key : propertyMap.keySet()) {
-				logger.debug(String.format("add property to representation: %s %s = %s",
-										   propertyMap.get(key).getClass(), key,
-										   propertyMap.get(key)));
 				halResource.withProperty(key, propertyMap.get(key));
 			}
+		} else if (ResourceTypeHelper.isType(type, genericType, CollectionResource.class)) {
+			CollectionResource<?> cr = (CollectionResource<?>) resource;
+			String count = buildCollectionCount(cr, type, genericType);
+			if (count != null) {
+				halResource.withProperty("count", count);
+			}
+			for (EntityResource<?> er : cr.getEntities()) {
+				// the subresource is an item of the collection (http://tools.ietf.org/html/rfc6573)
+				Map<String, Object> itemProperties = buildItemProperties(cr, er, type, genericType);
+
+				// create hal resource and add link for self - if there is one
+				Representation subResource = representationFactory.newRepresentation();
+				collectLinksAndProperties(subResource, er.getLinks(), itemProperties);
+				halResource.withRepresentation("item", subResource);
+			}
+		} else {
+			logger.error("Accepted object for writing in isWriteable, but type not supported in writeTo method");
+			throw new WebApplicationException(Response.Status.INTERNAL_SERVER_ERROR);
+		}
+		return halResource;
+	}
+
+	/*
+	 * The properties of an entity resource, or null if the resource is not an
+	 * entity resource.
+	 */
+	@SuppressWarnings("unchecked")
+	Map<String, Object> buildEntityProperties(RESTResource resource, Class<?> type, Type genericType) {
+		Map<String, Object> propertyMap = null;
+		if (ResourceTypeHelper.isType(type, genericType, EntityResource.class, OEntity.class)) {
+			EntityResource<OEntity> oentityResource = (EntityResource<OEntity>) resource;
+			propertyMap = new HashMap<String, Object>();
+			buildFromOEntity(propertyMap, oentityResource.getEntity(), oentityResource.getEntityName());
 		} else if (ResourceTypeHelper.isType(type, genericType, EntityResource.class, Entity.class)) {
 			logger.debug("transforming EntityResource<Entity>");
-				EntityResource<Entity> entityResource = (EntityResource<Entity>) resource;
-				Map<String, Object> propertyMap = new HashMap<String, Object>();
-				buildFromEntity(propertyMap, entityResource.getEntity(), entityResource.getEntityName());
-				// add properties to HAL resource
-				for (String key : propertyMap.keySet()) {
-					halResource.withProperty(key, propertyMap.get(key));
-				}
+			EntityResource<Entity> entityResource = (EntityResource<Entity>) resource;
+			propertyMap = new HashMap<String, Object>();
+			buildFromEntity(propertyMap, entityResource.getEntity(), entityResource.getEntityName());
 		} else if (ResourceTypeHelper.isType(type, genericType, EntityResource.class)) {
 			EntityResource<?> entityResource = (EntityResource<?>) resource;
 			Object entity = entityResource.getEntity();
+			propertyMap = new HashMap<String, Object>();
 			if (entity != null) {
 				/*
 				 * // regular java bean
 				 * halResource.withBean(entity);
 				 */
 				// java bean, now limited to just the properties specified in the metadata entity model
-				Map<String, Object> propertyMap = new HashMap<String, Object>();
 				buildFromBean(propertyMap, entity, entityResource.getEntityName());
-				for (String key : propertyMap.keySet()) {
-					halResource.withProperty(key, propertyMap.get(key));
-				}
 			}
-		} else if(ResourceTypeHelper.isType(type, genericType, CollectionResource.class, OEntity.class)) {
-			@SuppressWarnings("unchecked")
-			CollectionResource<OEntity> cr = (CollectionResource<OEntity>) resource;
-			List<EntityResource<OEntity>> entities = (List<EntityResource<OEntity>>) cr.getEntities();
-			Integer inlineCount = cr.getInlineCount();
-			if (inlineCount != null) {
-				halResource.withProperty("count", inlineCount.toString());
+		}
+		return propertyMap;
+	}
+
+	/*
+	 * The count property of a collection resource, if it has one.
+	 */
+	String buildCollectionCount(CollectionResource<?> cr, Class<?> type, Type genericType) {
+		if (ResourceTypeHelper.isType(type, genericType, CollectionResource.class, OEntity.class)
+				&& cr.getInlineCount() != null) {
+			return cr.getInlineCount().toString();
+		}
+		return null;
+	}
+
+	/*
+	 * What the properties of an item of a collection resource are rendered
+	 * from besides its entity tag: the version of the metadata, and the names
+	 * of the properties of the entity, which a projection such as $select or
+	 * the authorization of the request may have reduced.
+	 */
+	List<String> buildItemPropertiesVariant(EntityResource<?> er, Class<?> type, Type genericType) {
+		List<String> names = new ArrayList<String>();
+		Object entity = er.getEntity();
+		if (ResourceTypeHelper.isType(type, genericType, CollectionResource.class, OEntity.class)) {
+			for (OProperty<?> property : ((OEntity) entity).getProperties()) {
+				names.add(property.getName());
 			}
-			for (EntityResource<OEntity> er : entities) {
-				OEntity entity = er.getEntity();
-				// the subresource is an item of the collection (http://tools.ietf.org/html/rfc6573)
-				String rel = "item";
-				// the properties
-				Map<String, Object> propertyMap = new HashMap<String, Object>();
-				buildFromOEntity(propertyMap, entity, cr.getEntityName());
+		} else if (ResourceTypeHelper.isType(type, genericType, CollectionResource.class, Entity.class)) {
+			names.addAll(((Entity) entity).getProperties().getProperties().keySet());
+		} else if (entity != null) {
+			// the properties of a bean are those of its class
+			names.add(entity.getClass().getName());
+		}
+		Collections.sort(names);
+		List<String> variant = new ArrayList<String>(names.size() + 2);
+		variant.add(metadata != null ? String.valueOf(metadata.getVersion()) : "");
+		variant.add(String.valueOf(names.size()));
+		variant.addAll(names);
+		return variant;
+	}
 
-				// create hal resource and add link for self - if there is one
-				Representation subResource = representationFactory.newRepresentation();
-				collectLinksAndProperties(subResource, er.getLinks(), propertyMap);
-				halResource.withRepresentation(rel, subResource);
+	/*
+	 * The id of an item of a collection resource, from its key or the id
+	 * fields of its entity metadata, or null if it has none.
+	 */
+	String buildItemId(CollectionResource<?> cr, EntityResource<?> er, Class<?> type, Type genericType) {
+		Object entity = er.getEntity();
+		if (entity == null) {
+			return null;
+		}
+		if (ResourceTypeHelper.isType(type, genericType, CollectionResource.class, OEntity.class)) {
+			OEntityKey key = ((OEntity) entity).getEntityKey();
+			return key != null ? key.toKeyString() : null;
+		}
+		EntityMetadata entityMetadata = metadata != null ? metadata.getEntityMetadata(cr.getEntityName()) : null;
+		List<String> idFields = entityMetadata != null ? entityMetadata.getIdFields() : null;
+		if (idFields == null || idFields.isEmpty()) {
+			return null;
+		}
+		StringBuilder id = new StringBuilder();
+		for (String idField : idFields) {
+			Object value;
+			if (ResourceTypeHelper.isType(type, genericType, CollectionResource.class, Entity.class)) {
+				EntityProperty property = ((Entity) entity).getProperties().getProperty(idField);
+				value = property != null ? property.getValue() : null;
+			} else {
+				value = readBeanProperty(entity, idField);
 			}
-		} else if(ResourceTypeHelper.isType(type, genericType, CollectionResource.class, Entity.class)) {
-			logger.debug("Transforming CollectionResource<Entity>");
-			@SuppressWarnings("unchecked")
-			CollectionResource<Entity> cr = (CollectionResource<Entity>) resource;
-			List<EntityResource<Entity>> entities = (List<EntityResource<Entity>>) cr.getEntities();
-			for (EntityResource<Entity> er : entities) {
-				// Make property Map
-				Map<String, Object> propertyMap = new HashMap<String, Object>();
-				buildFromEntity(propertyMap, er.getEntity(), cr.getEntityName());
-
-				// Make Representation
-				Representation subResource = representationFactory.newRepresentation();
-				collectLinksAndProperties(subResource, er.getLinks(), propertyMap);
-				halResource.withRepresentation("item", subResource);
+			if (value == null) {
+				return null;
 			}
-		} else if (ResourceTypeHelper.isType(type, genericType, CollectionResource.class)) {
-			@SuppressWarnings("unchecked")
-			CollectionResource<Object> cr = (CollectionResource<Object>) resource;
-			List<EntityResource<Object>> entities = (List<EntityResource<Object>>) cr.getEntities();
-			for (EntityResource<Object> er : entities) {
-				Object entity = er.getEntity();
-				// the properties
-				Map<String, Object> propertyMap = new HashMap<String, Object>();
-				buildFromBean(propertyMap, entity, cr.getEntityName());
-
-				// Make Representation
-				Representation subResource = representationFactory.newRepresentation();
-				collectLinksAndProperties(subResource, er.getLinks(), propertyMap);
-				halResource.withRepresentation("item", subResource);				
+			if (id.length() > 0) {
+				id.append(',');
 			}
-			
+			id.append(value);
+		}
+		return id.toString();
+	}
+
+	private Object readBeanProperty(Object bean, String name) {
+		try {
+			for (PropertyDescriptor propertyDesc : Introspector.getBeanInfo(bean.getClass()).getPropertyDescriptors()) {
+				if (propertyDesc.getName().equalsIgnoreCase(name) && propertyDesc.getReadMethod() != null) {
+					return propertyDesc.getReadMethod().invoke(bean);
+				}
+			}
+		} catch (IntrospectionException e) {
+			logger.error("Error accessing bean property", e);
+		} catch (IllegalAccessException e) {
+			logger.error("Error accessing bean property", e);
+		} catch (InvocationTargetException e) {
+			logger.error("Error accessing bean property", e);
+		}
+		return null;
+	}
+
+	/*
+	 * The properties of an item of a collection resource.
+	 */
+	Map<String, Object> buildItemProperties(CollectionResource<?> cr, EntityResource<?> er, Class<?> type, Type genericType) {
+		Map<String, Object> propertyMap = new HashMap<String, Object>();
+		if (ResourceTypeHelper.isType(type, genericType, CollectionResource.class, OEntity.class)) {
+			buildFromOEntity(propertyMap, (OEntity) er.getEntity(), cr.getEntityName());
+		} else if (ResourceTypeHelper.isType(type, genericType, CollectionResource.class, Entity.class)) {
+			buildFromEntity(propertyMap, (Entity) er.getEntity(), cr.getEntityName());
 		} else {
-			logger.error("Accepted object for writing in isWriteable, but type not supported in writeTo method");
-			throw new WebApplicationException(Response.Status.INTERNAL_SERVER_ERROR);
+			buildFromBean(propertyMap, er.getEntity(), cr.getEntityName());
 		}
-		return halResource;
+		return propertyMap;
 	}
 	
 	@Override
@@ -666,12 +783,9 @@ public class HALProvider implements MessageBodyReader<RESTResource>, MessageBody
 			}
 	}
 
-	private Entity buildEntityFromHal(InputStream entityStream, MediaType mediaType) throws MethodNotAllowedException {
+	private Entity buildEntityFromHal(InputStream entityStream, MediaType mediaType) throws MethodNotAllowedException, IOException {
 		try {
-			// create the hal resource
 			String baseUri = uriInfo.getBaseUri().toString();
-			ReadableRepresentation halResource = representationFactory.readRepresentation(mediaType.toString(), new InputStreamReader(entityStream));			
-			
 			String resourcePath = uriInfo.getPath();
 						
 			logger.info("Reading HAL content for [" + resourcePath + "]");
@@ -699,13 +813,23 @@ public class HALProvider implements MessageBodyReader<RESTResource>, MessageBody
 			if (entityMetadata == null)
 				throw new IllegalStateException("Entity metadata could not be found [" + entityName + "]");
 			// add properties if they are present on the resolved entity
-			EntityProperties entityFields = new EntityProperties();
-			Map<String, Object> halProperties = halResource.getProperties();
-			iterateProperties(entityMetadata, entityFields, halProperties, "");
+			EntityProperties entityFields;
+			if (streamingJson && !HALMediaType.baseMediaType(mediaType).equals(HALMediaType.APPLICATION_HAL_XML)) {
+				entityFields = jsonReader.read(entityStream, entityMetadata);
+			} else {
+				// create the hal resource
+				ReadableRepresentation halResource = representationFactory.readRepresentation(mediaType.toString(), new InputStreamReader(entityStream));
+				entityFields = new EntityProperties(entityMetadata.getSchema());
+				Map<String, Object> halProperties = halResource.getProperties();
+				iterateProperties(entityMetadata, entityFields, halProperties, "");
+			}
 			return new Entity(entityName, entityFields);
 		} catch (RepresentationException e) {
 			logger.warn("Malformed request from client", e);
 			throw new WebApplicationException(Status.BAD_REQUEST);
+		} catch (JsonProcessingException e) {
+			logger.warn("Malformed request from client", e);
+			throw new WebApplicationException(Status.BAD_REQUEST);
 		} catch (IllegalStateException e) {
 			logger.warn("Malformed request from client", e);
 			throw new WebApplicationException(Status.BAD_REQUEST);
@@ -795,9 +919,10 @@ public class HALProvider implements MessageBodyReader<RESTResource>, MessageBody
 	 * If a property is given with a null value, return it in a usable form for JSON
 	 */
 	private Object nullHalPropertyValue( EntityMetadata entityMetadata, String propertyName ) {
-		if ( entityMetadata.isPropertyText( propertyName ) )
+		EntityPropertyDescriptor descriptor = entityMetadata.getPropertyDescriptor( propertyName );
+		if ( descriptor.isText() )
 			return "";
-		else if ( entityMetadata.isPropertyNumber( propertyName ) )
+		else if ( descriptor.isNumber() )
 			return 0L;
 		return "";
 	}
@@ -816,12 +941,13 @@ public class HALProvider implements MessageBodyReader<RESTResource>, MessageBody
 		}
 		String stringValue = halPropertyValue.toString();
 		Object typedValue;
+		EntityPropertyDescriptor descriptor = entityMetadata.getPropertyDescriptor( propertyName );
 		
-		if ( entityMetadata.isPropertyText( propertyName ) )
+		if ( descriptor.isText() )
 		{
 			typedValue = stringValue;
 		}
-		else if ( entityMetadata.isPropertyNumber( propertyName ) )
+		else if ( descriptor.isNumber() )
 		{
 			typedValue = Long.parseLong( stringValue );
 		}
@@ -0,0 +1,40 @@
+package com.temenos.interaction.media.hal;
+
+/*
+ * #%L
+ * interaction-media-hal
+ * %%
+ * Copyright (C) 2012 - 2017 Temenos Holdings N.V.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class TestHALJsonWriter {
+
+	@Test
+	public void testIsSelf() {
+		assertTrue(HALJsonWriter.isSelf("self"));
+		assertTrue(HALJsonWriter.isSelf("item self"));
+		assertTrue(HALJsonWriter.isSelf(" self\tedit "));
+		assertFalse(HALJsonWriter.isSelf("myself"));
+		assertFalse(HALJsonWriter.isSelf("selfish item"));
+		assertFalse(HALJsonWriter.isSelf(""));
+	}
+}
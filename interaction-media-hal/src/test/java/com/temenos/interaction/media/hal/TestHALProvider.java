@@ -67,9 +67,12 @@ import org.odata4j.edm.EdmSimpleType;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.temenos.interaction.core.MultivaluedMapImpl;
+import com.temenos.interaction.core.cache.FragmentCache;
 import com.temenos.interaction.core.command.CommandHelper;
 import com.temenos.interaction.core.entity.Entity;
 import com.temenos.interaction.core.entity.EntityMetadata;
+import com.temenos.interaction.core.entity.EntityProperties;
+import com.temenos.interaction.core.entity.EntityProperty;
 import com.temenos.interaction.core.entity.Metadata;
 import com.temenos.interaction.core.entity.vocabulary.Vocabulary;
 import com.temenos.interaction.core.entity.vocabulary.terms.TermComplexType;
@@ -235,6 +238,61 @@ public class TestHALProvider {
 		assertEquals("2.5", PropertyUtils.getProperty(entity, "properties.properties.tuitions.value[0].properties.Duration.value"));
 	}
     
+	@Test
+	public void testStreamedReadAsParsed() throws Exception {
+		String body = "{'_links':{'self':{'href':'http://www.temenos.com/rest.svc/students'}},'_embedded':{'item':[{'name':'x'}]},'name':'noah','age':2,'unknown':'u','address': {'houseNumber':123, 'roadName': null, 'other': 'o'},'tuitions':[{'Duration':2.50,'TutionName':'Maths'},'dropped',{'TutionName':'English','Duration':'2', 'Teachers': [{'Name': 'John'}, {'Name': true}]}]}".replace('\'','\"');
+
+		Entity streamed = readStudent(body, true);
+		Entity parsed = readStudent(body, false);
+		assertEquals(toMap(parsed.getProperties()), toMap(streamed.getProperties()));
+		assertEquals(2L, streamed.getProperties().getProperty("age").getValue());
+		assertFalse(toMap(streamed.getProperties()).containsKey("unknown"));
+	}
+
+	@Test(expected = WebApplicationException.class)
+	public void testStreamedReadMalformed() throws Exception {
+		readStudent("{\"name\": ", true);
+	}
+
+	@SuppressWarnings("unchecked")
+	private Entity readStudent(String body, boolean streaming) throws Exception {
+		ResourceStateMachine sm = new ResourceStateMachine(new ResourceState("students", "initial", new ArrayList<Action>(), "/students"));
+		HALProvider hp = new HALProvider(createMoreComplexNestedMockStudentVocabMetadata(), new DefaultResourceStateProvider(sm));
+		hp.setStreamingJson(streaming);
+		UriInfo mockUriInfo = mock(UriInfo.class);
+		when(mockUriInfo.getBaseUri()).thenReturn(new URI("http://www.temenos.com/rest.svc"));
+		when(mockUriInfo.getPath()).thenReturn("/students");
+		hp.setUriInfo(mockUriInfo);
+		Request requestContext = mock(Request.class);
+		when(requestContext.getMethod()).thenReturn("GET");
+		hp.setRequestContext(requestContext);
+
+		GenericEntity<EntityResource<Entity>> ge = new GenericEntity<EntityResource<Entity>>(new EntityResource<Entity>()) {};
+		EntityResource<Entity> er = (EntityResource<Entity>) hp.readFrom(RESTResource.class, ge.getType(), null, MediaType.APPLICATION_HAL_JSON_TYPE, null, new ByteArrayInputStream(body.getBytes("UTF-8")));
+		return er.getEntity();
+	}
+
+	private Map<String, Object> toMap(EntityProperties properties) {
+		Map<String, Object> map = new HashMap<String, Object>();
+		for (EntityProperty property : properties.getProperties().values()) {
+			map.put(property.getName(), toValue(property.getValue()));
+		}
+		return map;
+	}
+
+	private Object toValue(Object value) {
+		if (value instanceof EntityProperties) {
+			return toMap((EntityProperties) value);
+		} else if (value instanceof List) {
+			List<Object> list = new ArrayList<Object>();
+			for (Object each : (List<?>) value) {
+				list.add(toValue(each));
+			}
+			return list;
+		}
+		return value;
+	}
+
     @SuppressWarnings("unchecked")
 	@Test
 	public void testMoreComplexNestedDeserialiseResolveEntityNameJSON() throws IOException, URISyntaxException, IllegalAccessException, InvocationTargetException, NoSuchMethodException {
@@ -709,6 +767,206 @@ public class TestHALProvider {
 		assertEquals(expectedData, actualData);
 	}
 
+	@Test
+	public void testStreamedEmbeddedResourcesAsRendered() throws Exception {
+		List<OProperty<?>> parentProperties = new ArrayList<OProperty<?>>();
+		parentProperties.add(OProperties.string("name", "aaron"));
+		parentProperties.add(OProperties.string("age", "30"));
+		List<OProperty<?>> childProperties = new ArrayList<OProperty<?>>();
+		childProperties.add(OProperties.string("name", "noah"));
+		childProperties.add(OProperties.string("age", "2"));
+
+		OEntity childEntity = OEntities.create(createMockChildrenEntitySet(), OEntityKey.create("123"), childProperties, new ArrayList<OLink>());
+		EntityResource<OEntity> childEntityResource = CommandHelper.createEntityResource(childEntity, OEntity.class);
+		childEntityResource.setEntityName("Children");
+		OEntity parentEntity = OEntities.create(createMockChildrenEntitySet(), OEntityKey.create("333"), parentProperties, new ArrayList<OLink>());
+		EntityResource<OEntity> parentEntityResource = CommandHelper.createEntityResource(parentEntity, OEntity.class);
+		parentEntityResource.setEntityName("Children");
+
+		Map<Transition, RESTResource> embedded = new HashMap<Transition, RESTResource>();
+		Transition childToParent = new Transition.Builder()
+				.source(new ResourceState("PERSON", "child", new ArrayList<Action>(), "/child/{id}"))
+				.target(new ResourceState("PERSON", "parent", new ArrayList<Action>(), "/parent/{id}"))
+				.build();
+		embedded.put(childToParent, parentEntityResource);
+		childEntityResource.setEmbedded(embedded);
+
+		List<Link> links = new ArrayList<Link>();
+		links.add(mockLink("child", "self", "/child/123", null));
+		links.add(mockLink("parent", "person", "/parent/333", childToParent));
+		links.add(mockLink("father", "_person edit", "humans/31", null));
+		links.add(mockLink("mother", "_person edit", "humans/32", null));
+		links.add(mockLink("siblings", "_family", "humans/phetheans", null));
+		childEntityResource.setLinks(links);
+
+		assertStreamedAsRendered(childEntityResource, EntityResource.class, OEntity.class);
+	}
+
+	@Test
+	public void testStreamedCollectionResourceAsRendered() throws Exception {
+		List<OProperty<?>> properties = new ArrayList<OProperty<?>>();
+		properties.add(OProperties.string("name", "noah"));
+		properties.add(OProperties.string("age", "2"));
+
+		Collection<EntityResource<OEntity>> entities = new ArrayList<EntityResource<OEntity>>();
+		for (int i = 1; i <= 3; i++) {
+			EntityResource<OEntity> entity = createEntityResourceWithSelfLink(OEntityKey.create("" + i), properties, "http://www.temenos.com/rest.svc/children/" + i);
+			entity.getLinks().add(mockLink("parent", "person", "/parent/" + i, null));
+			entities.add(entity);
+		}
+		CollectionResource<OEntity> cr = new CollectionResource<OEntity>("Children", entities);
+		cr.setEntityName("Children");
+		cr.setInlineCount(3);
+		List<Link> links = new ArrayList<Link>();
+		links.add(mockLink("children", "self", "/children", null));
+		cr.setLinks(links);
+
+		assertStreamedAsRendered(cr, CollectionResource.class, OEntity.class);
+	}
+
+	@Test
+	public void testCachedFragmentsAsRendered() throws Exception {
+		List<OProperty<?>> properties = new ArrayList<OProperty<?>>();
+		properties.add(OProperties.string("name", "noah"));
+		properties.add(OProperties.string("age", "2"));
+
+		Collection<EntityResource<OEntity>> entities = new ArrayList<EntityResource<OEntity>>();
+		for (int i = 1; i <= 3; i++) {
+			EntityResource<OEntity> entity = createEntityResourceWithSelfLink(OEntityKey.create("" + i), properties, "http://www.temenos.com/rest.svc/children/" + i);
+			entity.getLinks().add(mockLink("parent", "person", "/parent/" + i, null));
+			// the last one cannot be cached
+			if (i < 3) {
+				entity.setEntityTag("\"" + i + "\"");
+			}
+			entities.add(entity);
+		}
+		CollectionResource<OEntity> cr = new CollectionResource<OEntity>("Children", entities);
+		cr.setEntityName("Children");
+		cr.setInlineCount(3);
+		List<Link> links = new ArrayList<Link>();
+		links.add(mockLink("children", "self", "/children", null));
+		cr.setLinks(links);
+
+		HALProvider hp = new HALProvider(createMockChildVocabMetadata());
+		UriInfo mockUriInfo = mock(UriInfo.class);
+		when(mockUriInfo.getBaseUri()).thenReturn(new URI("http://www.temenos.com/rest.svc/"));
+		hp.setUriInfo(mockUriInfo);
+		ByteArrayOutputStream uncached = new ByteArrayOutputStream();
+		hp.writeTo(cr, CollectionResource.class, OEntity.class, null, MediaType.APPLICATION_HAL_JSON_TYPE, null, uncached);
+
+		FragmentCache cache = new FragmentCache();
+		hp.setFragmentCache(cache);
+		ByteArrayOutputStream first = new ByteArrayOutputStream();
+		hp.writeTo(cr, CollectionResource.class, OEntity.class, null, MediaType.APPLICATION_HAL_JSON_TYPE, null, first);
+		ByteArrayOutputStream second = new ByteArrayOutputStream();
+		hp.writeTo(cr, CollectionResource.class, OEntity.class, null, MediaType.APPLICATION_HAL_JSON_TYPE, null, second);
+
+		assertEquals(new String(uncached.toByteArray(), "UTF-8"), new String(first.toByteArray(), "UTF-8"));
+		assertEquals(new String(uncached.toByteArray(), "UTF-8"), new String(second.toByteArray(), "UTF-8"));
+		assertEquals(2, cache.size());
+		assertEquals(2, cache.getMisses());
+		assertEquals(2, cache.getHits());
+
+		// the links are part of the key
+		entities.iterator().next().getLinks().add(mockLink("sibling", "person", "/sibling/1", null));
+		hp.writeTo(cr, CollectionResource.class, OEntity.class, null, MediaType.APPLICATION_HAL_JSON_TYPE, null, new ByteArrayOutputStream());
+		assertEquals(3, cache.size());
+		assertEquals(3, cache.getHits());
+	}
+
+	@Test
+	public void testCachedFragmentsVaryWithProjection() throws Exception {
+		Metadata metadata = createMockChildVocabMetadata();
+		HALProvider hp = new HALProvider(metadata);
+		UriInfo mockUriInfo = mock(UriInfo.class);
+		when(mockUriInfo.getBaseUri()).thenReturn(new URI("http://www.temenos.com/rest.svc/"));
+		hp.setUriInfo(mockUriInfo);
+		FragmentCache cache = new FragmentCache();
+		hp.setFragmentCache(cache);
+
+		List<OProperty<?>> properties = new ArrayList<OProperty<?>>();
+		properties.add(OProperties.string("name", "noah"));
+		properties.add(OProperties.string("age", "2"));
+		ByteArrayOutputStream all = new ByteArrayOutputStream();
+		hp.writeTo(createTaggedChildren(properties), CollectionResource.class, OEntity.class, null, MediaType.APPLICATION_HAL_JSON_TYPE, null, all);
+		assertTrue(new String(all.toByteArray(), "UTF-8").contains("\"age\""));
+
+		// the same entity tag with fewer properties, e.g. for $select=name
+		properties.remove(1);
+		ByteArrayOutputStream selected = new ByteArrayOutputStream();
+		hp.writeTo(createTaggedChildren(properties), CollectionResource.class, OEntity.class, null, MediaType.APPLICATION_HAL_JSON_TYPE, null, selected);
+		assertFalse(new String(selected.toByteArray(), "UTF-8").contains("\"age\""));
+		assertEquals(2, cache.size());
+		assertEquals(0, cache.getHits());
+
+		// and once the metadata changes
+		metadata.setEntityMetadata(metadata.getEntityMetadata("Children"));
+		hp.writeTo(createTaggedChildren(properties), CollectionResource.class, OEntity.class, null, MediaType.APPLICATION_HAL_JSON_TYPE, null, new ByteArrayOutputStream());
+		assertEquals(3, cache.size());
+		assertEquals(0, cache.getHits());
+	}
+
+	@Test
+	public void testCachedFragmentsOfEntitiesWithSameEntityTag() throws Exception {
+		HALProvider hp = new HALProvider(createMockChildVocabMetadata());
+		UriInfo mockUriInfo = mock(UriInfo.class);
+		when(mockUriInfo.getBaseUri()).thenReturn(new URI("http://www.temenos.com/rest.svc/"));
+		hp.setUriInfo(mockUriInfo);
+		FragmentCache cache = new FragmentCache();
+		hp.setFragmentCache(cache);
+
+		// two entities with the same entity tag and no links
+		Collection<EntityResource<OEntity>> entities = new ArrayList<EntityResource<OEntity>>();
+		for (String name : new String[] {"noah", "leah"}) {
+			List<OProperty<?>> properties = new ArrayList<OProperty<?>>();
+			properties.add(OProperties.string("name", name));
+			OEntity oentity = OEntities.create(createMockChildrenEntitySet(), OEntityKey.create(name), properties, new ArrayList<OLink>());
+			EntityResource<OEntity> entity = new EntityResource<OEntity>(oentity);
+			entity.setEntityTag("\"1\"");
+			entities.add(entity);
+		}
+		CollectionResource<OEntity> cr = new CollectionResource<OEntity>("Children", entities);
+		cr.setEntityName("Children");
+
+		hp.writeTo(cr, CollectionResource.class, OEntity.class, null, MediaType.APPLICATION_HAL_JSON_TYPE, null, new ByteArrayOutputStream());
+		ByteArrayOutputStream cached = new ByteArrayOutputStream();
+		hp.writeTo(cr, CollectionResource.class, OEntity.class, null, MediaType.APPLICATION_HAL_JSON_TYPE, null, cached);
+		String output = new String(cached.toByteArray(), "UTF-8");
+		assertTrue(output.contains("\"noah\""));
+		assertTrue(output.contains("\"leah\""));
+		assertEquals(2, cache.size());
+		assertEquals(2, cache.getHits());
+	}
+
+	private CollectionResource<OEntity> createTaggedChildren(List<OProperty<?>> properties) {
+		EntityResource<OEntity> entity = createEntityResourceWithSelfLink(OEntityKey.create("1"), properties, "http://www.temenos.com/rest.svc/children/1");
+		entity.setEntityTag("\"1\"");
+		Collection<EntityResource<OEntity>> entities = new ArrayList<EntityResource<OEntity>>();
+		entities.add(entity);
+		CollectionResource<OEntity> cr = new CollectionResource<OEntity>("Children", entities);
+		cr.setEntityName("Children");
+		return cr;
+	}
+
+	/*
+	 * The streamed HAL+JSON must be byte for byte what halbuilder renders.
+	 */
+	private void assertStreamedAsRendered(RESTResource resource, Class<?> type, java.lang.reflect.Type genericType) throws Exception {
+		HALProvider hp = new HALProvider(createMockChildVocabMetadata());
+		UriInfo mockUriInfo = mock(UriInfo.class);
+		when(mockUriInfo.getBaseUri()).thenReturn(new URI("http://www.temenos.com/rest.svc/"));
+		hp.setUriInfo(mockUriInfo);
+		assertTrue(hp.isStreamingJson());
+
+		ByteArrayOutputStream streamed = new ByteArrayOutputStream();
+		hp.writeTo(resource, type, genericType, null, MediaType.APPLICATION_HAL_JSON_TYPE, null, streamed);
+		hp.setStreamingJson(false);
+		ByteArrayOutputStream rendered = new ByteArrayOutputStream();
+		hp.writeTo(resource, type, genericType, null, MediaType.APPLICATION_HAL_JSON_TYPE, null, rendered);
+
+		assertEquals(new String(rendered.toByteArray(), "UTF-8"), new String(streamed.toByteArray(), "UTF-8"));
+	}
+
 	private EntityResource<OEntity> createEntityResourceWithSelfLink(OEntityKey entityKey, List<OProperty<?>> properties, String selfLink) {
 		OEntity oentity = OEntities.create(createMockChildrenEntitySet(), entityKey, properties, new ArrayList<OLink>());
 		EntityResource<OEntity> entityResource = new EntityResource<OEntity>(oentity);
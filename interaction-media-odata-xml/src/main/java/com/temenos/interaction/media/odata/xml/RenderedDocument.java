@@ -0,0 +1,168 @@
+package com.temenos.interaction.media.odata.xml;
+
+/*
+ * #%L
+ * interaction-media-odata-xml
+ * %%
+ * Copyright (C) 2012 - 2017 Temenos Holdings N.V.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.zip.GZIPOutputStream;
+
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MultivaluedMap;
+
+import com.temenos.interaction.core.rim.HeaderHelper;
+
+/**
+ * A document rendered once and written as is to many responses, e.g. the
+ * $metadata or the service document, together with its gzip encoding and a
+ * strong entity tag for each.
+ * 
+ * The gzip encoding is written to clients that accept it, when it is the
+ * smaller of the two. As its bytes differ from those of the document it has
+ * an entity tag of its own, so that a cache does not take one for the other.
+ * 
+ * The entity tags are advisory: they are set as the document is written,
+ * after the status of the response has been decided, so a conditional
+ * request with If-None-Match is still answered with the whole document
+ * rather than 304 Not Modified.
+ */
+public final class RenderedDocument {
+	public static final String GZIP = "gzip";
+
+	private final byte[] content;
+	private final byte[] gzipContent;
+	private final String entityTag;
+	private final String gzipEntityTag;
+
+	/**
+	 * @param content the rendered document, must not be modified afterwards
+	 */
+	public RenderedDocument(byte[] content) {
+		if (content == null) {
+			throw new IllegalArgumentException("Content must not be null");
+		}
+		this.content = content;
+		this.gzipContent = gzip(content);
+		String digest = digest(content);
+		this.entityTag = "\"" + digest + "\"";
+		this.gzipEntityTag = "\"" + digest + "-" + GZIP + "\"";
+	}
+
+	private static byte[] gzip(byte[] content) {
+		try {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream(content.length / 4 + 32);
+			GZIPOutputStream gzip = new GZIPOutputStream(bytes);
+			gzip.write(content);
+			gzip.close();
+			return bytes.toByteArray();
+		} catch (IOException e) {
+			// not thrown by a ByteArrayOutputStream
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static String digest(byte[] content) {
+		try {
+			StringBuilder hex = new StringBuilder();
+			for (byte b : MessageDigest.getInstance("SHA-1").digest(content)) {
+				hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+			}
+			return hex.toString();
+		} catch (NoSuchAlgorithmException e) {
+			// every Java platform has SHA-1
+			throw new IllegalStateException(e);
+		}
+	}
+
+	public byte[] getContent() {
+		return content;
+	}
+
+	public byte[] getGzipContent() {
+		return gzipContent;
+	}
+
+	/**
+	 * @return a strong entity tag, a digest of the content
+	 */
+	public String getEntityTag() {
+		return entityTag;
+	}
+
+	/**
+	 * @return a strong entity tag of the gzip encoding
+	 */
+	public String getGzipEntityTag() {
+		return gzipEntityTag;
+	}
+
+	/*
+	 * The entity tag of the gzip encoding of a document with this entity tag,
+	 * weak if it is.
+	 */
+	static Object gzipEntityTag(Object entityTag) {
+		if (entityTag instanceof EntityTag) {
+			EntityTag tag = (EntityTag) entityTag;
+			return new EntityTag(tag.getValue() + "-" + GZIP, tag.isWeak());
+		}
+		String tag = entityTag.toString();
+		if (tag.endsWith("\"") && tag.length() > 1) {
+			return tag.substring(0, tag.length() - 1) + "-" + GZIP + "\"";
+		}
+		return tag + "-" + GZIP;
+	}
+
+	/**
+	 * Write the document, gzip encoded if the request accepts it. An entity
+	 * tag already set for the response is kept for the document and derived
+	 * from for its gzip encoding.
+	 * 
+	 * @param requestHeaders the headers of the request, may be null
+	 * @param httpHeaders the headers of the response, may be null
+	 * @param out the response
+	 */
+	public void writeTo(HttpHeaders requestHeaders, MultivaluedMap<String, Object> httpHeaders, OutputStream out) throws IOException {
+		String acceptEncoding = HeaderHelper.getFirstHeader(requestHeaders, HttpHeaders.ACCEPT_ENCODING);
+		boolean gzip = gzipContent.length < content.length
+				&& GZIP.equals(HeaderHelper.negotiateContentEncoding(acceptEncoding, GZIP));
+		byte[] body = gzip ? gzipContent : content;
+		if (httpHeaders != null) {
+			Object existing = httpHeaders.getFirst(HttpHeaders.ETAG);
+			if (existing == null) {
+				httpHeaders.putSingle(HttpHeaders.ETAG, gzip ? gzipEntityTag : entityTag);
+			} else if (gzip) {
+				// the tag of the resource names the document, not its gzip encoding
+				httpHeaders.putSingle(HttpHeaders.ETAG, gzipEntityTag(existing));
+			}
+			httpHeaders.add(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+			if (gzip) {
+				httpHeaders.putSingle(HttpHeaders.CONTENT_ENCODING, GZIP);
+			}
+			httpHeaders.putSingle(HttpHeaders.CONTENT_LENGTH, Integer.toString(body.length));
+		}
+		out.write(body);
+		out.flush();
+	}
+}
@@ -21,6 +21,7 @@ package com.temenos.interaction.media.odata.xml.atom;
  * #L%
  */
 
+import java.io.OutputStream;
 import java.io.Writer;
 import java.util.Collection;
 import java.util.List;
@@ -49,7 +50,7 @@ import com.temenos.interaction.core.entity.EntityMetadata;
 import com.temenos.interaction.core.entity.EntityProperties;
 import com.temenos.interaction.core.entity.EntityProperty;
 import com.temenos.interaction.core.entity.Metadata;
-import com.temenos.interaction.core.entity.vocabulary.terms.TermValueType;
+import com.temenos.interaction.core.entity.EntityPropertyDescriptor;
 import com.temenos.interaction.core.hypermedia.CollectionResourceState;
 import com.temenos.interaction.core.hypermedia.Link;
 import com.temenos.interaction.core.hypermedia.ResourceState;
@@ -88,6 +89,17 @@ public class AtomEntityEntryFormatWriter {
 			Entity entity,
 			Collection<Link> links, 
 			Map<Transition,RESTResource> embeddedResources) {
+		write(uriInfo, new WriterOutputStream(w), entityName, entity, links, embeddedResources);
+	}
+
+	/**
+	 * Write an entity as an Atom XML entry straight to the stream, UTF-8 encoded.
+	 */
+	public void write(UriInfo uriInfo, OutputStream out, 
+			String entityName, 
+			Entity entity,
+			Collection<Link> links, 
+			Map<Transition,RESTResource> embeddedResources) {
 		String baseUri = AtomXMLProvider.getBaseUri(serviceDocument, uriInfo);
 		
 		String absoluteId = getAbsoluteId(uriInfo, links);
@@ -97,7 +109,7 @@ public class AtomEntityEntryFormatWriter {
 
 		Abdera abdera = new Abdera();
 		StreamWriter writer = abdera.newStreamWriter();
-		writer.setOutputStream(new WriterOutputStream(w));
+		writer.setOutputStream(out);
 		writer.setAutoflush(false);
 		writer.setAutoIndent(true);
 		writer.startDocument();
@@ -270,14 +282,15 @@ public class AtomEntityEntryFormatWriter {
 	  
 	private String getAbsoluteId(String baseUri, String entitySetName, Entity entity, EntityMetadata entityMetadata) {
 		String absId = "";
-		for(String key : entityMetadata.getIdFields()) {		
-			EntityProperty prop = entity.getProperties().getProperty(entityMetadata.getSimplePropertyName(key));
+		for(EntityPropertyDescriptor key : entityMetadata.getIdFieldDescriptors()) {		
+			EntityProperty prop = entity.getProperties().getProperty(key.getSimpleName());
 			if(prop != null) {
 				absId += absId.isEmpty() ? (!baseUri.endsWith("/") ? baseUri + "/" : baseUri) + entitySetName : ",";
-				if(entityMetadata.isPropertyNumber(prop.getFullyQualifiedName())) {
-					absId += "(" + entityMetadata.getPropertyValueAsString(prop) + ")";
+				EntityPropertyDescriptor descriptor = entityMetadata.getPropertyDescriptor(prop.getFullyQualifiedName());
+				if(descriptor.isNumber()) {
+					absId += "(" + descriptor.formatValue(prop.getValue()) + ")";
 				} else {
-					absId += "('" + entityMetadata.getPropertyValueAsString(prop) + "')";
+					absId += "('" + descriptor.formatValue(prop.getValue()) + "')";
 				}
 			}
 		}
@@ -293,22 +306,22 @@ public class AtomEntityEntryFormatWriter {
 			// Work out what the property looks like by looking at the metadata
 			EntityProperty property = (EntityProperty) properties.get(propertyName);
 			if ( property == null ) logger.error( "Property " + propertyName + " listed but missing" );
-			boolean isComplex = entityMetadata.isPropertyComplex(property.getFullyQualifiedName());
-	   		if( !isComplex ) {
+			EntityPropertyDescriptor descriptor = entityMetadata.getPropertyDescriptor(property.getFullyQualifiedName());
+	   		if( !descriptor.isComplex() ) {
 	   			// Simple field
-	   			writeProperty( writer, entityMetadata, property);
+	   			writeProperty( writer, descriptor, property);
 	   		} else {
 	   			// Complex List
-	   			writePropertyComplexList( writer, entityMetadata, property, modelName);
+	   			writePropertyComplexList( writer, entityMetadata, descriptor, property, modelName);
 	   		}
 	   	}
 	}
 	
-	private void writeProperty( StreamWriter writer, EntityMetadata entityMetadata, EntityProperty property ) {
-		String elementText = entityMetadata.getPropertyValueAsString( property );
+	private void writeProperty( StreamWriter writer, EntityPropertyDescriptor descriptor, EntityProperty property ) {
+		String elementText = descriptor.formatValue( property.getValue() );
 		writer.startElement(new QName(d, property.getName(), "d"));
-		EdmType type = MetadataOData4j.termValueToEdmType(entityMetadata.getTermValue(property.getFullyQualifiedName(), TermValueType.TERM_NAME));
-		boolean isNullable = entityMetadata.isPropertyNullable(property.getFullyQualifiedName());
+		EdmType type = MetadataOData4j.termValueToEdmType(descriptor.getTermValueType());
+		boolean isNullable = descriptor.isNullable();
 		// Append Type Attribute
 		if(!type.equals(EdmSimpleType.STRING)) {
 			writer.writeAttribute(new QName(m, "type", "m"), type.getFullyQualifiedTypeName());
@@ -331,11 +344,12 @@ public class AtomEntityEntryFormatWriter {
 	 * Method to prepare Complex type representation. 
 	 * @param writer
 	 * @param entityMetadata
+	 * @param descriptor
 	 * @param propertyName
 	 * @param propertiesList
 	 * @param modelName
 	 */
-	private void writePropertyComplexList( StreamWriter writer, EntityMetadata entityMetadata, EntityProperty property, String modelName) {
+	private void writePropertyComplexList( StreamWriter writer, EntityMetadata entityMetadata, EntityPropertyDescriptor descriptor, EntityProperty property, String modelName) {
 		@SuppressWarnings("unchecked")
 		List<EntityProperties> propertiesList = (List<EntityProperties>) property.getValue();
 		String name = entityMetadata.getEntityName() + "_" + property.getName();
@@ -343,7 +357,7 @@ public class AtomEntityEntryFormatWriter {
 		for ( EntityProperties properties : propertiesList ) {
 			String fqTypeName = modelName + Metadata.MODEL_SUFFIX + "." + name;
 			// We should be able to differentiate List<ComplexType> with regular ComplexType 
-			if (entityMetadata.isPropertyList(property.getFullyQualifiedName())) {
+			if (descriptor.isList()) {
 				if (parseCount == 0) {
 					writer.startElement(new QName(d, name, "d"));
 					writer.writeAttribute(new QName(m, "type", "m"), "Bag(" + fqTypeName + ")");
@@ -360,7 +374,7 @@ public class AtomEntityEntryFormatWriter {
 			writer.endElement();
 		}
 		// For List<ComplexTypes> we should end the complex node here
-		if (!propertiesList.isEmpty() && entityMetadata.isPropertyList(property.getFullyQualifiedName())) {
+		if (!propertiesList.isEmpty() && descriptor.isList()) {
 			writer.endElement();
 		}
 	}
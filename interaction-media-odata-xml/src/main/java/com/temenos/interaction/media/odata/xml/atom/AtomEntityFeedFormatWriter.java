@@ -22,6 +22,7 @@ package com.temenos.interaction.media.odata.xml.atom;
  */
 
 
+import java.io.OutputStream;
 import java.io.Writer;
 import java.util.Collection;
 
@@ -76,6 +77,25 @@ public class AtomEntityFeedFormatWriter {
 			Integer inlineCount,
 			String skipToken,
 			String modelName) {
+		write(uriInfo, new WriterOutputStream(w), collectionResource, inlineCount, skipToken, modelName);
+	}
+
+	/**
+	 * Write a collection resource as an Atom XML feed straight to the stream,
+	 * UTF-8 encoded, so that the entries reach it as they are written.
+	 * @param uriInfo Current URI
+	 * @param out stream to write the atom+xml output to
+	 * @param collectionResource collection resource
+	 * @param inlineCount inline count
+	 * @param skipToken skip token
+	 * @param modelName Model name
+	 */
+	public void write(UriInfo uriInfo,
+			OutputStream out,
+			CollectionResource<Entity> collectionResource,
+			Integer inlineCount,
+			String skipToken,
+			String modelName) {
 		String baseUri = AtomXMLProvider.getBaseUri(serviceDocument, uriInfo);
 		String entitySetName = collectionResource.getEntitySetName();
 		Collection<Link> links = collectionResource.getLinks();
@@ -85,7 +105,7 @@ public class AtomEntityFeedFormatWriter {
 
 		Abdera abdera = new Abdera();
 		StreamWriter writer = abdera.newStreamWriter();
-		writer.setOutputStream(new WriterOutputStream(w));
+		writer.setOutputStream(out);
 		writer.setAutoflush(false);
 		writer.setAutoIndent(true);
 		writer.startDocument();
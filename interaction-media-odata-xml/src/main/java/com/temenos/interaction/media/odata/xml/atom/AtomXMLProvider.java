@@ -31,6 +31,7 @@ import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.PushbackInputStream;
 import java.io.Reader;
+import java.io.Writer;
 import java.lang.annotation.Annotation;
 import java.lang.reflect.Type;
 import java.util.ArrayList;
@@ -107,6 +108,7 @@ public class AtomXMLProvider implements MessageBodyReader<RESTResource>, Message
 	private static final String UTF_8 = "UTF-8";
 	private static final Logger LOGGER = LoggerFactory.getLogger(AtomXMLProvider.class);
 	private static final Pattern STRING_KEY_RESOURCE_PATTERN = Pattern.compile("(\\('.*'\\))");
+	public static final int DEFAULT_STREAMING_BUFFER_SIZE = 8192;
 
 	@Context
 	private UriInfo uriInfo;
@@ -121,6 +123,8 @@ public class AtomXMLProvider implements MessageBodyReader<RESTResource>, Message
 	private final ResourceState serviceDocument;
 	private final Transformer transformer;
 	private final LinkInterceptor linkInterceptor = new ODataLinkInterceptor(this);
+	private boolean streaming = false;
+	private int streamingBufferSize = DEFAULT_STREAMING_BUFFER_SIZE;
 
     private ResourceStateProvider resourceStateProvider;	
 
@@ -155,6 +159,33 @@ public class AtomXMLProvider implements MessageBodyReader<RESTResource>, Message
 		this.uriInfo = new UriInfoImpl(uriInfo);
 	}
 
+	public boolean isStreaming() {
+		return streaming;
+	}
+
+	/**
+	 * Stream the response rather than render it in memory before writing it,
+	 * see {@link #writeTo(RESTResource, Class, Type, Annotation[], MediaType, MultivaluedMap, OutputStream)}.
+	 */
+	public void setStreaming(boolean streaming) {
+		this.streaming = streaming;
+	}
+
+	public int getStreamingBufferSize() {
+		return streamingBufferSize;
+	}
+
+	/**
+	 * @param streamingBufferSize the number of bytes held back before streaming
+	 * starts, and written between flushes once it has
+	 */
+	public void setStreamingBufferSize(int streamingBufferSize) {
+		if (streamingBufferSize < 1) {
+			throw new IllegalArgumentException("Buffer size must be at least 1");
+		}
+		this.streamingBufferSize = streamingBufferSize;
+	}
+
 	@Override
 	public boolean isWriteable(Class<?> type, Type genericType,
 			Annotation[] annotations, MediaType mediaType) {
@@ -183,8 +214,17 @@ public class AtomXMLProvider implements MessageBodyReader<RESTResource>, Message
 	 * provider only supports serialising OEntities
 	 * @postcondition non null Atom (OData) XML document written to OutputStream
 	 * @invariant valid OutputStream
+	 * 
+	 * By default the document is rendered in memory and then written with a
+	 * Content-Length. When streaming, only the first
+	 * {@link #getStreamingBufferSize()} bytes are held back; a document that
+	 * fits is written as before, a larger one is written to the stream as it
+	 * is rendered, without a Content-Length. An error before streaming has
+	 * started is thrown as is. An error after that cannot change the status
+	 * or the headers any more, so it is logged and thrown as an IOException
+	 * for the container to abort the response, leaving the client with an
+	 * incomplete response rather than a well formed but truncated document.
 	 */
-	@SuppressWarnings("unchecked")
 	@Override
 	public void writeTo(RESTResource resource, Class<?> type, Type genericType,
 			Annotation[] annotations, MediaType mediaType,
@@ -193,7 +233,46 @@ public class AtomXMLProvider implements MessageBodyReader<RESTResource>, Message
 			WebApplicationException {
 		assert resource != null;
 		assert uriInfo != null;
-		ByteArrayOutputStream buffer = new ByteArrayOutputStream();  		
+		if (!streaming) {
+			ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+			write(resource, type, genericType, buffer);
+			setResponseHeaders(httpHeaders, buffer.size());
+			IOUtils.copy(new ByteArrayInputStream(buffer.toByteArray()), entityStream);
+			return;
+		}
+
+		StreamingOutputStream stream = new StreamingOutputStream(entityStream, streamingBufferSize);
+		// the headers must be set before anything is written
+		setResponseHeaders(httpHeaders, -1);
+		try {
+			write(resource, type, genericType, stream);
+		} catch (RuntimeException e) {
+			if (!stream.isCommitted()) {
+				throw e;
+			}
+			LOGGER.error("Error writing Atom response after streaming started, aborting the response", e);
+			throw new IOException("Atom response aborted after streaming started", e);
+		}
+		if (!stream.isCommitted()) {
+			setResponseHeaders(httpHeaders, stream.size());
+		}
+		stream.finish();
+	}
+
+	private void setResponseHeaders(MultivaluedMap<String, Object> httpHeaders, int contentLength) {
+		if(httpHeaders != null) {
+			httpHeaders.putSingle(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_ATOM_XML);        //Workaround for https://issues.apache.org/jira/browse/WINK-374
+			if (contentLength >= 0) {
+				httpHeaders.putSingle(HttpHeaders.CONTENT_LENGTH, Integer.toString(contentLength));
+			}
+		}
+	}
+
+	/*
+	 * Render the resource as an Atom entry or feed to the stream.
+	 */
+	@SuppressWarnings("unchecked")
+	private void write(RESTResource resource, Class<?> type, Type genericType, OutputStream out) throws IOException {
         RESTResource restResource = processLinks((RESTResource) resource);
         Collection<Link> processedLinks = restResource.getLinks();
         if(ResourceTypeHelper.isType(type, genericType, EntityResource.class, OEntity.class)) {
@@ -204,14 +283,16 @@ public class AtomXMLProvider implements MessageBodyReader<RESTResource>, Message
             //Write entry
             // create OEntity with our EdmEntitySet see issue https://github.com/aphethean/IRIS/issues/20
             OEntity oentity = OEntities.create(entitySet, tempEntity.getEntityKey(), tempEntity.getProperties(), null);
-            entryWriter.write(uriInfo, new OutputStreamWriter(buffer, UTF_8), Responses.entity(oentity), entitySet, olinks);
+            Writer writer = new OutputStreamWriter(out, UTF_8);
+            entryWriter.write(uriInfo, writer, Responses.entity(oentity), entitySet, olinks);
+            writer.flush();
         } else if(ResourceTypeHelper.isType(type, genericType, EntityResource.class, Entity.class)) {
             EntityResource<Entity> entityResource = (EntityResource<Entity>) resource;
             //Write entry
             Entity entity = entityResource.getEntity();
             String entityName = entityResource.getEntityName();
             // Write Entity object with Abdera implementation
-            entityEntryWriter.write(uriInfo, new OutputStreamWriter(buffer, UTF_8), entityName, entity, processedLinks, entityResource.getEmbedded());
+            entityEntryWriter.write(uriInfo, out, entityName, entity, processedLinks, entityResource.getEmbedded());
         } else if(ResourceTypeHelper.isType(type, genericType, EntityResource.class)) {
             EntityResource<Object> entityResource = (EntityResource<Object>) resource;
             //Links and entity properties
@@ -226,7 +307,7 @@ public class AtomXMLProvider implements MessageBodyReader<RESTResource>, Message
                     }
                 }
             }
-            entityEntryWriter.write(uriInfo, new OutputStreamWriter(buffer, UTF_8), entityName, new Entity(entityName, props), processedLinks, entityResource.getEmbedded());
+            entityEntryWriter.write(uriInfo, out, entityName, new Entity(entityName, props), processedLinks, entityResource.getEmbedded());
         } else if(ResourceTypeHelper.isType(type, genericType, CollectionResource.class, OEntity.class)) {
             CollectionResource<OEntity> collectionResource = ((CollectionResource<OEntity>) resource);
             EdmEntitySet entitySet = getEdmEntitySet(collectionResource.getEntityName());
@@ -245,10 +326,12 @@ public class AtomXMLProvider implements MessageBodyReader<RESTResource>, Message
             // TODO implement collection properties and get transient value for skiptoken
             Integer inlineCount = collectionResource.getInlineCount();
             String skipToken = null;
-            feedWriter.write(uriInfo, new OutputStreamWriter(buffer, UTF_8), 
+            Writer writer = new OutputStreamWriter(out, UTF_8);
+            feedWriter.write(uriInfo, writer, 
                     processedLinks, 
                     Responses.entities(entities, entitySet, inlineCount, skipToken), 
                     metadata.getModelName(), linkId);
+            writer.flush();
         } else if(ResourceTypeHelper.isType(type, genericType, CollectionResource.class, Entity.class)) {
             CollectionResource<Entity> collectionResource = ((CollectionResource<Entity>) resource);
             
@@ -257,18 +340,11 @@ public class AtomXMLProvider implements MessageBodyReader<RESTResource>, Message
             String skipToken = null;
             //Write feed
             AtomEntityFeedFormatWriter entityFeedWriter = new AtomEntityFeedFormatWriter(serviceDocument, metadata);
-            entityFeedWriter.write(uriInfo, new OutputStreamWriter(buffer, UTF_8), collectionResource, inlineCount, skipToken, metadata.getModelName());
+            entityFeedWriter.write(uriInfo, out, collectionResource, inlineCount, skipToken, metadata.getModelName());
         } else {
             LOGGER.error("Accepted object for writing in isWriteable, but type not supported in writeTo method");
             throw new WebApplicationException(Response.Status.INTERNAL_SERVER_ERROR);
         }
-        
-        //Set response headers
-        if(httpHeaders != null) {
-            httpHeaders.putSingle(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_ATOM_XML);        //Workaround for https://issues.apache.org/jira/browse/WINK-374
-            httpHeaders.putSingle(HttpHeaders.CONTENT_LENGTH, Integer.toString(buffer.size()));
-        }
-        IOUtils.copy(new ByteArrayInputStream(buffer.toByteArray()), entityStream);
 	}
 	
 	public RESTResource processLinks(RESTResource restResource) {
@@ -0,0 +1,133 @@
+package com.temenos.interaction.media.odata.xml.atom;
+
+/*
+ * #%L
+ * interaction-media-odata-xml
+ * %%
+ * Copyright (C) 2012 - 2017 Temenos Holdings N.V.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * An OutputStream that holds the start of a response in memory and streams
+ * the rest of it.
+ * 
+ * Up to <code>bufferSize</code> bytes are buffered, so a small response can
+ * still be sent with a Content-Length and an error writing it can still be
+ * reported with an error status. Once more has been written the buffer is
+ * committed to the response and the rest is written straight through,
+ * flushing the response every <code>bufferSize</code> bytes. The flushes of
+ * the writers are not passed on, Abdera for one flushes every entry.
+ */
+final class StreamingOutputStream extends OutputStream {
+
+	private final OutputStream out;
+	private final int bufferSize;
+	private byte[] buffer;
+	private int count;
+	private boolean committed;
+	private int unflushed;
+
+	StreamingOutputStream(OutputStream out, int bufferSize) {
+		if (bufferSize < 1) {
+			throw new IllegalArgumentException("Buffer size must be at least 1");
+		}
+		this.out = out;
+		this.bufferSize = bufferSize;
+		this.buffer = new byte[bufferSize];
+	}
+
+	/**
+	 * @return true once bytes have been written to the response
+	 */
+	boolean isCommitted() {
+		return committed;
+	}
+
+	/**
+	 * @return the number of bytes held back, only meaningful until committed
+	 */
+	int size() {
+		return count;
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		if (!committed) {
+			if (count < buffer.length) {
+				buffer[count++] = (byte) b;
+				return;
+			}
+			commit();
+		}
+		out.write(b);
+		written(1);
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		if (!committed) {
+			if (count + len <= buffer.length) {
+				System.arraycopy(b, off, buffer, count, len);
+				count += len;
+				return;
+			}
+			commit();
+		}
+		out.write(b, off, len);
+		written(len);
+	}
+
+	/**
+	 * Write whatever is still held back to the response.
+	 */
+	void finish() throws IOException {
+		if (!committed) {
+			out.write(buffer, 0, count);
+			buffer = null;
+			committed = true;
+		}
+	}
+
+	@Override
+	public void flush() {
+		// the response is flushed as it is written
+	}
+
+	@Override
+	public void close() {
+		// the response stream belongs to the container
+	}
+
+	private void commit() throws IOException {
+		out.write(buffer, 0, count);
+		unflushed = count;
+		count = 0;
+		buffer = null;
+		committed = true;
+	}
+
+	private void written(int len) throws IOException {
+		unflushed += len;
+		if (unflushed >= bufferSize) {
+			out.flush();
+			unflushed = 0;
+		}
+	}
+}
@@ -29,6 +29,8 @@ import java.io.StringWriter;
 import java.lang.annotation.Annotation;
 import java.lang.reflect.Type;
 import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import javax.ws.rs.Consumes;
 import javax.ws.rs.Produces;
@@ -53,6 +55,8 @@ import com.temenos.interaction.core.hypermedia.ResourceStateMachine;
 import com.temenos.interaction.core.resource.EntityResource;
 import com.temenos.interaction.core.resource.RESTResource;
 import com.temenos.interaction.core.resource.ResourceTypeHelper;
+import com.temenos.interaction.media.odata.xml.RenderedDocument;
+import com.temenos.interaction.odataext.entity.EdmDataServicesAdapter;
 
 /**
  * JAX-RS Provider class for marshalling Service document resources.
@@ -60,14 +64,24 @@ import com.temenos.interaction.core.resource.ResourceTypeHelper;
  * Service document representations are atomsvc+xml media types but we allow 
  * atom+xml accept headers to cater for OData clients which provide '* / *' 
  * accept headers.
+ * 
+ * The service document of a {@link EdmDataServicesAdapter} is rendered once
+ * per version of the metadata and base uri, and written to each request as
+ * is, gzip encoded if the request accepts it, with a strong entity tag.
  */
 @Provider
 @Consumes({ExtendedMediaTypes.APPLICATION_ATOMSVC_XML})
 @Produces({ExtendedMediaTypes.APPLICATION_ATOMSVC_XML, MediaType.APPLICATION_ATOM_XML, MediaType.APPLICATION_XML})
 public class ServiceDocumentProvider implements MessageBodyReader<RESTResource>, MessageBodyWriter<RESTResource> {
+	// documents kept per version, for a few base uris
+	private static final int MAX_BASE_URIS = 16;
+
 	@Context
 	private UriInfo uriInfo;
+	@Context
+	private HttpHeaders requestHeaders;
 	private final ResourceState serviceDocument;
+	private volatile Rendered rendered;
 
 	public ServiceDocumentProvider(ResourceStateMachine hypermediaEngine) {
 		this.serviceDocument = hypermediaEngine.getResourceStateByName("ServiceDocument");
@@ -109,29 +123,63 @@ public class ServiceDocumentProvider implements MessageBodyReader<RESTResource>,
 			WebApplicationException {
 		assert (resource != null);
 
-		final String svcDocString;
 		if(ResourceTypeHelper.isType(type, genericType, EntityResource.class, EdmDataServices.class)) {
 			EntityResource<EdmDataServices> serviceDocumentResource = (EntityResource<EdmDataServices>) resource;
 		    EdmDataServices metadata = (EdmDataServices) serviceDocumentResource.getEntity();
-		    StringWriter sw = new StringWriter();
-		    MediaType[] acceptedMediaTypes = { ExtendedMediaTypes.APPLICATION_ATOMSVC_XML_TYPE };
-		    FormatWriter<EdmDataServices> fw = FormatWriterFactory.getFormatWriter(EdmDataServices.class, Arrays.asList(acceptedMediaTypes), "atom", null);
-		    ExUriInfo extUriInfo = new ExUriInfo(serviceDocument, uriInfo);
-		    fw.write(extUriInfo, sw, metadata);
-			svcDocString = sw.toString();
 			
 			//Set HTTP response headers
 			if(httpHeaders != null) {
 				httpHeaders.putSingle(HttpHeaders.CONTENT_TYPE, ExtendedMediaTypes.APPLICATION_ATOMSVC_XML_TYPE);
 			}
+			if (metadata instanceof EdmDataServicesAdapter) {
+				getRenderedDocument((EdmDataServicesAdapter) metadata).writeTo(requestHeaders, httpHeaders, outputStream);
+				return;
+			}
+			outputStream.write(render(metadata));
 		}
 		else {
 			throw new WebApplicationException(Response.Status.INTERNAL_SERVER_ERROR);
 		}
-		outputStream.write(svcDocString.getBytes("UTF-8"));
 		outputStream.flush();
 	}
 
+	/*
+	 * The document rendered for the current version of the metadata and the
+	 * base uri of the request.
+	 */
+	private RenderedDocument getRenderedDocument(EdmDataServicesAdapter metadata) throws IOException {
+		// read before rendering, so that a change while rendering is rendered again
+		long version = metadata.getMetadataVersion();
+		String baseUri = String.valueOf(uriInfo.getBaseUri());
+		Rendered r = rendered;
+		if (r == null || !r.matches(metadata, version)) {
+			synchronized (this) {
+				r = rendered;
+				if (r == null || !r.matches(metadata, version)) {
+					r = new Rendered(metadata, version);
+					rendered = r;
+				}
+			}
+		}
+		RenderedDocument document = r.documents.get(baseUri);
+		if (document == null) {
+			document = new RenderedDocument(render(metadata));
+			if (r.documents.size() < MAX_BASE_URIS) {
+				r.documents.putIfAbsent(baseUri, document);
+			}
+		}
+		return document;
+	}
+
+	private byte[] render(EdmDataServices metadata) throws IOException {
+	    StringWriter sw = new StringWriter();
+	    MediaType[] acceptedMediaTypes = { ExtendedMediaTypes.APPLICATION_ATOMSVC_XML_TYPE };
+	    FormatWriter<EdmDataServices> fw = FormatWriterFactory.getFormatWriter(EdmDataServices.class, Arrays.asList(acceptedMediaTypes), "atom", null);
+	    ExUriInfo extUriInfo = new ExUriInfo(serviceDocument, uriInfo);
+	    fw.write(extUriInfo, sw, metadata);
+		return sw.toString().getBytes("UTF-8");
+	}
+
 	@Override
 	public boolean isReadable(Class<?> type, Type genericType,
 			Annotation[] annotations, MediaType mediaType) {
@@ -156,4 +204,23 @@ public class ServiceDocumentProvider implements MessageBodyReader<RESTResource>,
 	protected void setUriInfo(UriInfo uriInfo) {
 		this.uriInfo = uriInfo;
 	}
+
+	protected void setRequestHeaders(HttpHeaders requestHeaders) {
+		this.requestHeaders = requestHeaders;
+	}
+
+	private static final class Rendered {
+		final EdmDataServices metadata;
+		final long version;
+		final ConcurrentMap<String, RenderedDocument> documents = new ConcurrentHashMap<String, RenderedDocument>();
+
+		Rendered(EdmDataServices metadata, long version) {
+			this.metadata = metadata;
+			this.version = version;
+		}
+
+		boolean matches(EdmDataServices metadata, long version) {
+			return this.metadata == metadata && this.version == version;
+		}
+	}
 }
@@ -32,6 +32,7 @@ import java.lang.reflect.Type;
 import javax.ws.rs.Consumes;
 import javax.ws.rs.Produces;
 import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.Context;
 import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.MultivaluedMap;
@@ -43,6 +44,8 @@ import javax.ws.rs.ext.Provider;
 import org.odata4j.edm.EdmDataServices;
 
 import com.temenos.interaction.core.resource.MetaDataResource;
+import com.temenos.interaction.media.odata.xml.RenderedDocument;
+import com.temenos.interaction.odataext.entity.EdmDataServicesAdapter;
 import com.temenos.interaction.core.resource.RESTResource;
 import com.temenos.interaction.core.resource.ResourceTypeHelper;
 
@@ -51,11 +54,18 @@ import com.temenos.interaction.core.resource.ResourceTypeHelper;
  * 
  * EDMX representations have an xml media type but we allow atom+xml accept headers to cater
  * for OData clients which provide '* / *' accept headers.
+ * 
+ * The metadata of a {@link EdmDataServicesAdapter} is rendered once per
+ * version of the metadata, and written to each request as is, gzip encoded if
+ * the request accepts it, with a strong entity tag.
  */
 @Provider
 @Consumes({MediaType.APPLICATION_XML})
 @Produces({MediaType.APPLICATION_XML, MediaType.APPLICATION_ATOM_XML, MediaType.APPLICATION_XHTML_XML, MediaType.TEXT_HTML})
 public class EdmxMetaDataProvider implements MessageBodyReader<RESTResource>, MessageBodyWriter<RESTResource> {
+	@Context
+	private HttpHeaders requestHeaders;
+	private volatile Rendered rendered;
 	
 	public EdmxMetaDataProvider() {}
 	
@@ -88,24 +98,53 @@ public class EdmxMetaDataProvider implements MessageBodyReader<RESTResource>, Me
 			WebApplicationException {
 		assert (resource != null);
 
-		final String edmxString;
 		if(ResourceTypeHelper.isType(type, genericType, MetaDataResource.class, EdmDataServices.class)) {
 			//Set response headers
 			if (httpHeaders != null) {
 				httpHeaders.putSingle(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_XML);
 			}
 			MetaDataResource<EdmDataServices> metadataResource = (MetaDataResource<EdmDataServices>) resource;
-			StringWriter sw = new StringWriter();
-			EdmxMetaDataWriter.write(metadataResource.getMetadata(), sw);
-			edmxString = sw.toString();
+			EdmDataServices metadata = metadataResource.getMetadata();
+			if (metadata instanceof EdmDataServicesAdapter) {
+				getRenderedDocument((EdmDataServicesAdapter) metadata).writeTo(requestHeaders, httpHeaders, outputStream);
+				return;
+			}
+			outputStream.write(render(metadata));
 		}
 		else {
 			throw new WebApplicationException(Response.Status.INTERNAL_SERVER_ERROR);
 		}
-		outputStream.write(edmxString.getBytes("UTF-8"));
 		outputStream.flush();
 	}
 
+	/*
+	 * The document rendered for the current version of the metadata, rendered
+	 * by one request at a time as it can take a while.
+	 */
+	private RenderedDocument getRenderedDocument(EdmDataServicesAdapter metadata) throws IOException {
+		// read before rendering, so that a change while rendering is rendered again
+		long version = metadata.getMetadataVersion();
+		Rendered r = rendered;
+		if (r != null && r.matches(metadata, version)) {
+			return r.document;
+		}
+		synchronized (this) {
+			r = rendered;
+			if (r != null && r.matches(metadata, version)) {
+				return r.document;
+			}
+			RenderedDocument document = new RenderedDocument(render(metadata));
+			rendered = new Rendered(metadata, version, document);
+			return document;
+		}
+	}
+
+	private byte[] render(EdmDataServices metadata) throws IOException {
+		StringWriter sw = new StringWriter();
+		EdmxMetaDataWriter.write(metadata, sw);
+		return sw.toString().getBytes("UTF-8");
+	}
+
 	@Override
 	public boolean isReadable(Class<?> type, Type genericType,
 			Annotation[] annotations, MediaType mediaType) {
@@ -127,4 +166,23 @@ public class EdmxMetaDataProvider implements MessageBodyReader<RESTResource>, Me
 		return null;
 	}
 
+	protected void setRequestHeaders(HttpHeaders requestHeaders) {
+		this.requestHeaders = requestHeaders;
+	}
+
+	private static final class Rendered {
+		final EdmDataServices metadata;
+		final long version;
+		final RenderedDocument document;
+
+		Rendered(EdmDataServices metadata, long version, RenderedDocument document) {
+			this.metadata = metadata;
+			this.version = version;
+			this.document = document;
+		}
+
+		boolean matches(EdmDataServices metadata, long version) {
+			return this.metadata == metadata && this.version == version;
+		}
+	}
 }
@@ -0,0 +1,166 @@
+package com.temenos.interaction.media.odata.xml;
+
+/*
+ * #%L
+ * interaction-media-odata-xml
+ * %%
+ * Copyright (C) 2012 - 2017 Temenos Holdings N.V.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.zip.GZIPInputStream;
+
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MultivaluedMap;
+
+import org.junit.Test;
+
+import com.temenos.interaction.core.MultivaluedMapImpl;
+
+public class TestRenderedDocument {
+
+	private static final String DOCUMENT;
+	static {
+		StringBuilder sb = new StringBuilder("<service>");
+		for (int i = 0; i < 100; i++) {
+			sb.append("<collection href=\"Flight").append(i).append("\"/>");
+		}
+		DOCUMENT = sb.append("</service>").toString();
+	}
+
+	@Test
+	public void testIdentity() throws IOException {
+		RenderedDocument document = new RenderedDocument(DOCUMENT.getBytes("UTF-8"));
+		MultivaluedMap<String, Object> httpHeaders = new MultivaluedMapImpl<Object>();
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		document.writeTo(null, httpHeaders, out);
+
+		assertEquals(DOCUMENT, out.toString("UTF-8"));
+		assertNull(httpHeaders.getFirst(HttpHeaders.CONTENT_ENCODING));
+		assertEquals(Integer.toString(out.size()), httpHeaders.getFirst(HttpHeaders.CONTENT_LENGTH));
+		assertEquals(HttpHeaders.ACCEPT_ENCODING, httpHeaders.getFirst(HttpHeaders.VARY));
+		assertEquals(document.getEntityTag(), httpHeaders.getFirst(HttpHeaders.ETAG));
+	}
+
+	@Test
+	public void testGzip() throws IOException {
+		RenderedDocument document = new RenderedDocument(DOCUMENT.getBytes("UTF-8"));
+		MultivaluedMap<String, Object> httpHeaders = new MultivaluedMapImpl<Object>();
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		document.writeTo(requestHeaders("deflate, gzip"), httpHeaders, out);
+
+		assertEquals("gzip", httpHeaders.getFirst(HttpHeaders.CONTENT_ENCODING));
+		assertEquals(Integer.toString(out.size()), httpHeaders.getFirst(HttpHeaders.CONTENT_LENGTH));
+		assertTrue(out.size() < DOCUMENT.length());
+		assertArrayEquals(document.getGzipContent(), out.toByteArray());
+		assertEquals(DOCUMENT, gunzip(out.toByteArray()));
+		assertEquals(document.getGzipEntityTag(), httpHeaders.getFirst(HttpHeaders.ETAG));
+	}
+
+	@Test
+	public void testGzipWithEntityTagOfResource() throws IOException {
+		RenderedDocument document = new RenderedDocument(DOCUMENT.getBytes("UTF-8"));
+		MultivaluedMap<String, Object> httpHeaders = new MultivaluedMapImpl<Object>();
+		httpHeaders.putSingle(HttpHeaders.ETAG, "\"abc\"");
+		document.writeTo(requestHeaders("gzip"), httpHeaders, new ByteArrayOutputStream());
+
+		assertEquals("gzip", httpHeaders.getFirst(HttpHeaders.CONTENT_ENCODING));
+		assertEquals("\"abc-gzip\"", httpHeaders.getFirst(HttpHeaders.ETAG));
+	}
+
+	@Test
+	public void testIdentityWithEntityTagOfResource() throws IOException {
+		RenderedDocument document = new RenderedDocument(DOCUMENT.getBytes("UTF-8"));
+		MultivaluedMap<String, Object> httpHeaders = new MultivaluedMapImpl<Object>();
+		httpHeaders.putSingle(HttpHeaders.ETAG, "\"abc\"");
+		document.writeTo(null, httpHeaders, new ByteArrayOutputStream());
+
+		assertEquals("\"abc\"", httpHeaders.getFirst(HttpHeaders.ETAG));
+	}
+
+	@Test
+	public void testGzipEntityTagDerived() {
+		assertEquals("\"abc-gzip\"", RenderedDocument.gzipEntityTag("\"abc\""));
+		assertEquals("W/\"abc-gzip\"", RenderedDocument.gzipEntityTag("W/\"abc\""));
+		assertEquals(new EntityTag("abc-gzip", true), RenderedDocument.gzipEntityTag(new EntityTag("abc", true)));
+	}
+
+	@Test
+	public void testGzipNotAccepted() throws IOException {
+		RenderedDocument document = new RenderedDocument(DOCUMENT.getBytes("UTF-8"));
+		MultivaluedMap<String, Object> httpHeaders = new MultivaluedMapImpl<Object>();
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		document.writeTo(requestHeaders("gzip;q=0"), httpHeaders, out);
+
+		assertNull(httpHeaders.getFirst(HttpHeaders.CONTENT_ENCODING));
+		assertEquals(DOCUMENT, out.toString("UTF-8"));
+	}
+
+	@Test
+	public void testGzipNotSmaller() throws IOException {
+		RenderedDocument document = new RenderedDocument("<a/>".getBytes("UTF-8"));
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		document.writeTo(requestHeaders("gzip"), null, out);
+		assertEquals("<a/>", out.toString("UTF-8"));
+	}
+
+	@Test
+	public void testStrongEntityTag() throws IOException {
+		String entityTag = new RenderedDocument(DOCUMENT.getBytes("UTF-8")).getEntityTag();
+		assertTrue(entityTag.startsWith("\"") && entityTag.endsWith("\""));
+		assertEquals(entityTag, new RenderedDocument(DOCUMENT.getBytes("UTF-8")).getEntityTag());
+		assertFalse(entityTag.equals(new RenderedDocument("<a/>".getBytes("UTF-8")).getEntityTag()));
+	}
+
+	@Test
+	public void testGzipEntityTag() throws IOException {
+		RenderedDocument document = new RenderedDocument(DOCUMENT.getBytes("UTF-8"));
+		String gzipEntityTag = document.getGzipEntityTag();
+		assertTrue(gzipEntityTag.startsWith("\"") && gzipEntityTag.endsWith("\""));
+		assertFalse(gzipEntityTag.equals(document.getEntityTag()));
+		assertEquals(gzipEntityTag, new RenderedDocument(DOCUMENT.getBytes("UTF-8")).getGzipEntityTag());
+	}
+
+	private HttpHeaders requestHeaders(String acceptEncoding) {
+		HttpHeaders headers = mock(HttpHeaders.class);
+		when(headers.getRequestHeader(HttpHeaders.ACCEPT_ENCODING)).thenReturn(Collections.singletonList(acceptEncoding));
+		return headers;
+	}
+
+	private String gunzip(byte[] gzipped) throws IOException {
+		GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(gzipped));
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		byte[] buffer = new byte[1024];
+		int n;
+		while ((n = in.read(buffer)) != -1) {
+			out.write(buffer, 0, n);
+		}
+		return out.toString("UTF-8");
+	}
+}
@@ -0,0 +1,87 @@
+package com.temenos.interaction.media.odata.xml.atom;
+
+/*
+ * #%L
+ * interaction-media-odata-xml
+ * %%
+ * Copyright (C) 2012 - 2017 Temenos Holdings N.V.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import org.junit.Test;
+
+public class TestStreamingOutputStream {
+
+	private static class CountingStream extends ByteArrayOutputStream {
+		int flushes;
+
+		@Override
+		public void flush() throws IOException {
+			flushes++;
+		}
+	}
+
+	@Test
+	public void testHoldsBackSmallResponse() throws IOException {
+		CountingStream out = new CountingStream();
+		StreamingOutputStream stream = new StreamingOutputStream(out, 16);
+		stream.write("0123456789".getBytes("UTF-8"));
+		stream.write('A');
+		stream.flush();
+		assertFalse(stream.isCommitted());
+		assertEquals(11, stream.size());
+		assertEquals(0, out.size());
+
+		stream.finish();
+		assertTrue(stream.isCommitted());
+		assertEquals("0123456789A", out.toString("UTF-8"));
+		assertEquals(0, out.flushes);
+	}
+
+	@Test
+	public void testStreamsLargeResponse() throws IOException {
+		CountingStream out = new CountingStream();
+		StreamingOutputStream stream = new StreamingOutputStream(out, 4);
+		stream.write("012".getBytes("UTF-8"));
+		assertFalse(stream.isCommitted());
+		stream.write("3456".getBytes("UTF-8"));
+		assertTrue(stream.isCommitted());
+		assertEquals("0123456", out.toString("UTF-8"));
+		assertEquals(1, out.flushes);
+
+		stream.write('7');
+		stream.write('8');
+		stream.flush();
+		assertEquals(1, out.flushes);
+		stream.write("9ABC".getBytes("UTF-8"));
+		assertEquals(2, out.flushes);
+		stream.finish();
+		assertArrayEquals("0123456789ABC".getBytes("UTF-8"), out.toByteArray());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testBufferSizeMustBePositive() {
+		new StreamingOutputStream(new ByteArrayOutputStream(), 0);
+	}
+}
@@ -22,7 +22,9 @@ package com.temenos.interaction.media.odata.xml.atomsvc;
  */
 
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
@@ -49,10 +51,12 @@ import org.odata4j.edm.EdmSimpleType;
 
 import com.temenos.interaction.core.ExtendedMediaTypes;
 import com.temenos.interaction.core.MultivaluedMapImpl;
+import com.temenos.interaction.core.entity.Metadata;
 import com.temenos.interaction.core.hypermedia.Action;
 import com.temenos.interaction.core.hypermedia.ResourceState;
 import com.temenos.interaction.core.hypermedia.ResourceStateMachine;
 import com.temenos.interaction.core.resource.EntityResource;
+import com.temenos.interaction.odataext.entity.MetadataOData4j;
 
 public class TestServiceDocumentProvider {
 	public class MockServiceDocumentProvider extends ServiceDocumentProvider {
@@ -63,6 +67,10 @@ public class TestServiceDocumentProvider {
 		public void setUriInfo(UriInfo uriInfo) {
 			super.setUriInfo(uriInfo);
 		}
+
+		public void setRequestHeaders(HttpHeaders requestHeaders) {
+			super.setRequestHeaders(requestHeaders);
+		}
 	};
 	
 	private ResourceStateMachine mockResourceStateMachine() {
@@ -145,6 +153,42 @@ public class TestServiceDocumentProvider {
 		assertEquals(ExtendedMediaTypes.APPLICATION_ATOMSVC_XML_TYPE, httpHeaders.getFirst(HttpHeaders.CONTENT_TYPE));
 	}
 	
+	@SuppressWarnings("unchecked")
+	@Test
+	public void testWriteRenderedServiceDocument() throws Exception {
+		ResourceStateMachine rsm = mockResourceStateMachine();
+		MetadataOData4j metadataOData4j = new MetadataOData4j(new Metadata("MyModel"), rsm);
+		EntityResource<EdmDataServices> mr = mock(EntityResource.class);
+		when(mr.getEntity()).thenReturn(metadataOData4j.getMetadata());
+
+		MockServiceDocumentProvider p = new MockServiceDocumentProvider(rsm);
+		UriInfo uriInfo = mock(UriInfo.class);
+		when(uriInfo.getBaseUri()).thenReturn(new URI("http://localhost:8080/responder/rest"));
+		p.setUriInfo(uriInfo);
+
+		MultivaluedMap<String, Object> httpHeaders = new MultivaluedMapImpl<Object>();
+		ByteArrayOutputStream first = new ByteArrayOutputStream();
+		p.writeTo(mr, EntityResource.class, EdmDataServices.class, null, ExtendedMediaTypes.APPLICATION_ATOMSVC_XML_TYPE, httpHeaders, first);
+		Object entityTag = httpHeaders.getFirst(HttpHeaders.ETAG);
+		assertNotNull(entityTag);
+		assertEquals(Integer.toString(first.size()), httpHeaders.getFirst(HttpHeaders.CONTENT_LENGTH));
+
+		// the same document for the same version
+		httpHeaders = new MultivaluedMapImpl<Object>();
+		ByteArrayOutputStream second = new ByteArrayOutputStream();
+		p.writeTo(mr, EntityResource.class, EdmDataServices.class, null, ExtendedMediaTypes.APPLICATION_ATOMSVC_XML_TYPE, httpHeaders, second);
+		assertEquals(entityTag, httpHeaders.getFirst(HttpHeaders.ETAG));
+		assertArrayEquals(first.toByteArray(), second.toByteArray());
+
+		// rendered again once unloaded, to the same document here
+		metadataOData4j.unloadMetadata("Flight");
+		httpHeaders = new MultivaluedMapImpl<Object>();
+		ByteArrayOutputStream third = new ByteArrayOutputStream();
+		p.writeTo(mr, EntityResource.class, EdmDataServices.class, null, ExtendedMediaTypes.APPLICATION_ATOMSVC_XML_TYPE, httpHeaders, third);
+		assertEquals(entityTag, httpHeaders.getFirst(HttpHeaders.ETAG));
+		XMLAssert.assertXMLEqual(new String(first.toByteArray(), "UTF-8"), new String(third.toByteArray(), "UTF-8"));
+	}
+
 	private EdmDataServices createMockFlightEdmDataServices() {
 		EdmDataServices mockEDS = mock(EdmDataServices.class);
 
@@ -32,6 +32,7 @@ import java.util.Set;
 import com.temenos.interaction.core.entity.EntityMetadata;
 import com.temenos.interaction.core.entity.EntityProperties;
 import com.temenos.interaction.core.entity.EntityProperty;
+import com.temenos.interaction.core.entity.EntityPropertyDescriptor;
 import com.temenos.interaction.core.hypermedia.Link;
 import com.temenos.interaction.core.media.EntityResourceWrapper;
 import com.temenos.interaction.core.resource.EntityResource;
@@ -95,7 +96,7 @@ public class EntityResourceWrapperXHTML extends EntityResourceWrapper {
 			s += "</dl>";
 		}
 		else {
-			s += "<dd>" + entityMetadata.getPropertyValueAsString(entityProperty.getFullyQualifiedName(), value) + "</dd>";
+			s += "<dd>" + entityMetadata.getPropertyDescriptor(entityProperty.getFullyQualifiedName()).formatValue(value) + "</dd>";
 		}
 		return s;
 	}
@@ -112,11 +113,12 @@ public class EntityResourceWrapperXHTML extends EntityResourceWrapper {
 	public List<String> getEntityProperties() {
 		List<String> entityProperties = new ArrayList<String>();
 		if(entityPropertyNames != null) {
+			Map<String, Object> data = getResource().getEntity();
 			for(String entityPropertyName : entityPropertyNames) {
-				Map<String, Object> data = getResource().getEntity();
-				Object value = data.get(entityMetadata.getSimplePropertyName(entityPropertyName));
+				EntityPropertyDescriptor descriptor = entityMetadata.getPropertyDescriptor(entityPropertyName);
+				Object value = data.get(descriptor.getSimpleName());
 				if(value != null && !value.getClass().equals(EntityProperties.class)) {
-					entityProperties.add(entityMetadata.getPropertyValueAsString(entityPropertyName, value));
+					entityProperties.add(descriptor.formatValue(value));
 				}
 				else {
 					entityProperties.add(new String(""));
@@ -139,7 +141,7 @@ public class EntityResourceWrapperXHTML extends EntityResourceWrapper {
 				entityProperties.put(name, value);
 			}
 			else {
-				entityProperties.put(name, entityMetadata.getPropertyValueAsString(name, value));
+				entityProperties.put(name, entityMetadata.getPropertyDescriptor(name).formatValue(value));
 			}
 		}
 		return entityProperties;
@@ -55,6 +55,13 @@ public final class EdmDataServicesAdapter extends EdmDataServices {
 		
 		this.metadataOData4j = metadataOData4j;
 	}
+
+	/**
+	 * @see MetadataOData4j#getMetadataVersion()
+	 */
+	public long getMetadataVersion() {
+		return metadataOData4j.getMetadataVersion();
+	}
 			
 	@Override
 	public EdmComplexType findEdmComplexType(String typeName) {
@@ -33,6 +33,7 @@ import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.ws.rs.HttpMethod;
 
@@ -107,6 +108,7 @@ public class MetadataOData4j {
 	private ODataVersion odataVersion = ODataVersion.V1;
 	private EdmDataServicesAdapter edmDataServicesAdapter;
 	private EdmDataServices edmDataServices;
+	private final AtomicLong version = new AtomicLong();
 
 	/**
 	 * Construct the odata metadata ({@link EdmDataServices}) by looking up a resource 
@@ -144,6 +146,19 @@ public class MetadataOData4j {
 	public void setOdataVersion(ODataVersion odataVersion) {
 		LOGGER.debug("OData Version set to {}", odataVersion);
 		this.odataVersion = odataVersion;
+		version.incrementAndGet();
+	}
+
+	/**
+	 * Returns a number that changes whenever the metadata returned by
+	 * {@link #getMetadata()} may have changed, i.e. when this metadata or the
+	 * {@link Metadata} it is built from is unloaded, so that documents
+	 * rendered from it can be kept until then.
+	 * @return metadata version
+	 */
+	public long getMetadataVersion() {
+		// both only ever increase
+		return version.get() + metadata.getVersion();
 	}
 	
 	/**
@@ -307,6 +322,8 @@ public class MetadataOData4j {
 				}
 			}
 		}
+		// after the change, so that a document rendered meanwhile is not kept
+		version.incrementAndGet();
 	}
 
 	/**
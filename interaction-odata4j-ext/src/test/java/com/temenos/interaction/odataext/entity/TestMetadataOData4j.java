@@ -822,6 +822,21 @@ public class TestMetadataOData4j {
 		Assert.assertTrue(ann.getValue().toString().contains("EntityWithRestriction_address.postCode"));
 	}	
 	
+	@Test
+	public void testMetadataVersion() {
+		Metadata metadata = new Metadata("VersionModel");
+		ResourceState serviceRoot = new ResourceState("SD", "ServiceDocument", new ArrayList<Action>(), "/");
+		MetadataOData4j metadataOData4j = new MetadataOData4j(metadata, new ResourceStateMachine(serviceRoot));
+		long version = metadataOData4j.getMetadataVersion();
+		Assert.assertEquals(version, ((EdmDataServicesAdapter) metadataOData4j.getMetadata()).getMetadataVersion());
+
+		metadataOData4j.unloadMetadata("Customer");
+		Assert.assertTrue(metadataOData4j.getMetadataVersion() > version);
+		version = metadataOData4j.getMetadataVersion();
+		metadata.unload("Customer");
+		Assert.assertTrue(metadataOData4j.getMetadataVersion() > version);
+	}
+
 	@Test
     public void testCustomerEntityNoModelName() {
         EdmDataServices edmDataServices = metadataOdata4jNoModelName.getMetadata();
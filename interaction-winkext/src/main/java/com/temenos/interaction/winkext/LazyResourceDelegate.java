@@ -159,15 +159,10 @@ public class LazyResourceDelegate implements HTTPResourceInteractionModel, Dynam
                 // here it is assumed the resource wasn't loaded, so no need to unregister
                 hypermediaEngine.register(resourceState, httpMethod);                    
             } else {
-                for (String tmpHttpMethod : httpMethods) {
-                    // if the resource wasn't loaded, we assume it has changed and therefore it needs
-                    // first to be unregistered with the resource state machine
-                    if(!loaded) {
-                        // unregister unloaded resource state
-                        hypermediaEngine.unregister(resourceState, tmpHttpMethod);
-                    }
-                    hypermediaEngine.register(resourceState, tmpHttpMethod);
-                }                    
+                // if the resource wasn't loaded, we assume it has changed and therefore it needs
+                // first to be unregistered with the resource state machine; all its methods are
+                // registered at once
+                hypermediaEngine.register(resourceState, httpMethods, !loaded);
             }
             
             return new HTTPHypermediaRIM(null, commandController, hypermediaEngine, metadata, resourceState.getPath(), false);              
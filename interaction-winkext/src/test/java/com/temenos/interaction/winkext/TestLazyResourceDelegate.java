@@ -160,6 +160,43 @@ public class TestLazyResourceDelegate {
         
         verify(resourceStateMachine).register(myResourceState, "GET");
     }
+
+    /*
+     * All the methods of a resource that was not loaded are registered again at once.
+     */
+    @Test
+    public void testGetWithResourceReloaded() throws MethodNotAllowedException {
+        ResourceStateProvider resourceStateProvider = mock(ResourceStateProvider.class);
+
+        ResourceState myResourceState = mock(ResourceState.class);
+        when(myResourceState.getName()).thenReturn("resource");
+        when(myResourceState.getPath()).thenReturn("/myResource");
+        when(resourceStateProvider.isLoaded("resource")).thenReturn(false);
+        when(resourceStateProvider.getResourceState("resource")).thenReturn(myResourceState);
+        when(resourceStateProvider.getResourceStateId(eq("GET"), anyString())).thenReturn("resource");
+        Set<String> myResourceMethods = new HashSet<String>();
+        myResourceMethods.add("GET");
+        myResourceMethods.add("PUT");
+        Map<String, Set<String>> methodsByState = new HashMap<String, Set<String>>();
+        methodsByState.put("resource", myResourceMethods);
+        when(resourceStateProvider.getResourceMethodsByState()).thenReturn(methodsByState);
+
+        ResourceStateMachine resourceStateMachine = mock(ResourceStateMachine.class);
+
+        LazyResourceDelegate lazyResourceDelegate = new LazyResourceDelegate(resourceStateMachine,
+                resourceStateProvider, mock(CommandController.class), mock(Metadata.class), "test", "/", mock(HashSet.class));
+
+        HttpHeaders headers = mock(HttpHeaders.class);
+        UriInfo uriInfo = mock(UriInfo.class);
+        when(uriInfo.getPathParameters(eq(true))).thenReturn(mock(MultivaluedMap.class));
+        when(uriInfo.getQueryParameters(eq(false))).thenReturn(mock(MultivaluedMap.class));
+        when(uriInfo.getPath(eq(false))).thenReturn("");
+
+        lazyResourceDelegate.get(headers, "123", uriInfo);
+
+        verify(resourceStateMachine).register(myResourceState, myResourceMethods, true);
+        verify(resourceStateMachine, Mockito.never()).unregister(any(ResourceState.class), anyString());
+    }
     
     @Test
     public void testGetWhenResourceNotFound() throws MethodNotAllowedException {